@@ -1,8 +1,6 @@
 package net.kcundercover.spectral_analyzer.controllers;
 import javafx.application.Platform;
 import javafx.event.ActionEvent;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.geometry.Pos;
@@ -14,18 +12,22 @@ import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.Control;
 import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TableView;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextField;
 import javafx.scene.layout.VBox;
-import javafx.scene.shape.Rectangle;
 import javafx.scene.text.Text;
 import javafx.stage.Modality;
 import javafx.stage.Window;
 
 
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,14 +37,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 
 import org.springframework.stereotype.Component;
 
+import net.kcundercover.spectral_analyzer.data.AnnotationColumns;
+import net.kcundercover.spectral_analyzer.data.AnnotationColumns.Column;
 import net.kcundercover.spectral_analyzer.data.AnnotationGroup;
+import net.kcundercover.spectral_analyzer.data.AnnotationQuery;
 import net.kcundercover.spectral_analyzer.data.AnnotationRow;
+import net.kcundercover.spectral_analyzer.data.AnnotationTableItems;
 import net.kcundercover.spectral_analyzer.data.IqData;
 import net.kcundercover.spectral_analyzer.rest.Capability;
 import net.kcundercover.spectral_analyzer.rest.CapabilityConfig;
 import net.kcundercover.spectral_analyzer.data.AnnotationRow;
 
-import net.kcundercover.spectral_analyzer.sigmf.SigMfAnnotation;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
 import net.kcundercover.spectral_analyzer.sigmf.SigMfHelper;
 import net.kcundercover.spectral_analyzer.sigmf.SigMfHelper;
 import net.kcundercover.spectral_analyzer.services.AsyncExtractDownConvertService;
@@ -65,7 +71,10 @@ public class AnnotationController {
     @FXML private TableColumn<AnnotationRow, Double> centerFreqCol;
     @FXML private TableColumn<AnnotationRow, Double> durationCol;
     @FXML private TableColumn<AnnotationRow, Double> bandwidthCol;
+    @FXML private TextField queryField;
+    @FXML private Label lblQueryStatus;
     private boolean noneSelected;
+    private AnnotationTableItems items;
     private double sampleRate;
     private RestHelper restHelper;
     private SigMfHelper sigmfHelper;
@@ -161,6 +170,22 @@ public class AnnotationController {
         selectCol.setEditable(true);
         selectCol.setCellValueFactory(cellData -> cellData.getValue().selectedProperty());
         selectCol.setCellFactory(CheckBoxTableCell.forTableColumn(selectCol));
+
+        // NOTE: sort with the precomputed orders of the columns rather than comparing rows,
+        //       only the first column of the sort order is used
+        Map<TableColumn<AnnotationRow, ?>, Column> sortColumns = Map.of(
+            selectCol, Column.SELECTED, labelCol, Column.LABEL, descCol, Column.COMMENT,
+            startCol, Column.START, durationCol, Column.DURATION,
+            centerFreqCol, Column.CENTER_FREQ, bandwidthCol, Column.BANDWIDTH);
+        annotationTable.setSortPolicy(table -> {
+            if (items != null) {
+                List<TableColumn<AnnotationRow, ?>> sortOrder = table.getSortOrder();
+                TableColumn<AnnotationRow, ?> first = sortOrder.isEmpty() ? null : sortOrder.get(0);
+                items.sort(first == null ? null : sortColumns.get(first),
+                    first == null || first.getSortType() == TableColumn.SortType.ASCENDING);
+            }
+            return true;
+        });
     }
 
     /**
@@ -168,38 +193,21 @@ public class AnnotationController {
      *
      * This is the function to pass in the annotations of interest.
      *
-     * @param map Map of GUI rect -> AnnotationGroup (from MainController.java)
+     * @param groups Annotations of the file (from MainController.java)
      * @param sampleRate Sample rate of the signal
      */
-    public void configAnnotationController(Map<Rectangle, AnnotationGroup> map, double sampleRate, RestHelper restHelper, SigMfHelper sigmfHelper) {
+    public void configAnnotationController(Collection<AnnotationGroup> groups, double sampleRate, RestHelper restHelper, SigMfHelper sigmfHelper) {
         this.noneSelected = true;
         this.sampleRate = sampleRate;
         this.restHelper = restHelper;
         this.sigmfHelper = sigmfHelper;
         AC_LOGGER.debug("Initialized noneSelected = " + noneSelected
             + " and sampleRate = " + sampleRate);
-        ObservableList<AnnotationRow> rows = FXCollections.observableArrayList();
-
-        for (AnnotationGroup group : map.values()) {
-            SigMfAnnotation data = group.data;
-
-            // Derive values from SigMfAnnotation
-            double start = data.sampleStart() / sampleRate;
-            double duration = data.getSampleCount() / sampleRate;
-            double freqLow = data.getFreqLowerEdge().doubleValue();
-            double freqHigh = data.getFreqUpperEdge().doubleValue();
-            double centerFreq = 0.5 * (freqLow + freqHigh);
-            double bandwidth = freqHigh - freqLow;
-
-            rows.add(new AnnotationRow(
-                data.getLabel(),
-                data.getComment(),
-                start, duration, centerFreq, bandwidth,
-                group
-            ));
-        }
-
-        annotationTable.setItems(rows);
+        long begin = System.nanoTime();
+        items = new AnnotationTableItems(AnnotationColumns.of(groups, sampleRate));
+        annotationTable.setItems(items);
+        AC_LOGGER.info("Table of {} annotations built in {} ms", items.size(),
+            (System.nanoTime() - begin) / 1_000_000);
     }
 
 
@@ -208,28 +216,10 @@ public class AnnotationController {
      * modifications to the data in the tables.
      */
     public void updateMainAnnotations() {
-        // Access the TableView's items directly
-        ObservableList<AnnotationRow> tableRows = annotationTable.getItems();
-
-        for (AnnotationRow row : tableRows) {
-            AnnotationGroup group = row.getAssociatedGroup();
+        // Update the SigMF labels and comments, the frequencies are not editable
+        items.getColumns().writeBack();
 
-            // access the associated SigMF Annotation
-            SigMfAnnotation data = group.data;
-
-            // Update the SigMF label and comments
-            data.setLabel(row.getLabel());
-            group.label.setText(row.getLabel()); // update GUI label
-            data.setComment(row.getComment());
-
-            // Update frequency (based on changes to center frequency)
-            double freqLow = row.getCenterFreq() - (row.getBandwidth() / 2.0);
-            double freqHigh = row.getCenterFreq() + (row.getBandwidth() / 2.0);
-            data.setFreqLowerEdge(freqLow);
-            data.setFreqUpperEdge(freqHigh);
-
-            // NOTE: MainContoller.java will update the GUI for displaying updates.
-        }
+        // NOTE: MainContoller.java will update the GUI for displaying updates.
     }
 
     /**
@@ -238,14 +228,7 @@ public class AnnotationController {
      * @return Number of selections
      */
     public int getNumSelected() {
-        int numSelected = 0;
-        for (AnnotationRow row : annotationTable.getItems()) {
-            if (row.isSelected()) {
-                numSelected++;
-            }
-
-        }
-        return numSelected;
+        return items.getColumns().getSelectedCount();
     }
 
     /**
@@ -253,12 +236,8 @@ public class AnnotationController {
      */
     @FXML
     private void handleSelectAll() {
-        int numRows = 0;
-        for (AnnotationRow row : annotationTable.getItems()) {
-            row.setSelected(true);
-            numRows++;
-        }
-        if (numRows > 0) {
+        items.setSelectedInView(true);
+        if (!items.isEmpty()) {
             noneSelected = false;
         } else {
             // no entries to select
@@ -271,12 +250,72 @@ public class AnnotationController {
      */
     @FXML
     private void handleDeselectAll() {
-        for (AnnotationRow row : annotationTable.getItems()) {
-            row.setSelected(false);
-        }
+        items.setSelectedInView(false);
         this.noneSelected = true;
     }
 
+    // ---- query ----
+
+    /**
+     * Handler for the query field, show only the matching annotations
+     */
+    @FXML
+    private void handleFilter() {
+        if (queryField.getText().isBlank()) {
+            handleClearFilter();
+            return;
+        }
+        BitSet matches = runQuery();
+        if (matches != null) {
+            items.setFilter(matches::get);
+        }
+    }
+
+    /**
+     * Handler for clearing the query, show every annotation
+     */
+    @FXML
+    private void handleClearFilter() {
+        queryField.clear();
+        lblQueryStatus.setText("");
+        items.setFilter(null);
+    }
+
+    /**
+     * Handler for "Select Matching" MenuItem, select the annotations matching the query
+     *
+     * The selection feeds the batch capability runner.
+     */
+    @FXML
+    private void handleSelectMatching() {
+        BitSet matches = runQuery();
+        if (matches != null) {
+            items.select(matches);
+            noneSelected = getNumSelected() == 0;
+        }
+    }
+
+    /**
+     * Evaluate the query of the query field
+     * @return The positions of the matching annotations, null if the query is not valid
+     */
+    private BitSet runQuery() {
+        try {
+            long begin = System.nanoTime();
+            AnnotationQuery query = AnnotationQuery.parse(queryField.getText());
+            BitSet matches = query.evaluate(items.getColumns());
+            double ms = (System.nanoTime() - begin) / 1e6;
+            lblQueryStatus.setText(String.format("%d of %d annotations match (%.1f ms)",
+                matches.cardinality(), items.getColumns().size(), ms));
+            AC_LOGGER.info("Query '{}' matched {} annotations in {} ms", query, matches.cardinality(),
+                String.format("%.1f", ms));
+            return matches;
+        } catch (IllegalArgumentException e) {
+            lblQueryStatus.setText(e.getMessage());
+            return null;
+        }
+    }
+
     /**
      * Execute Capability in a batch
      *
@@ -295,14 +334,12 @@ public class AnnotationController {
         // Configure the capability
         // ====================================================================
         double sampleRate = this.sampleRate;
-        AnnotationRow firstSelected = annotationTable.getItems().stream()
-            .filter(AnnotationRow::isSelected)
-            .findFirst()
-            .orElse(null); // Returns null if nothing is selected
+        List<AnnotationRow> selectedRows = items.getSelectedRows();
+        AnnotationRow firstSelected = selectedRows.get(0);
 
         IqData iqDataTemplate = new IqData(
             "template", new double[2][10], sampleRate,
-            sigmfHelper.getMetadata(),
+            sigmfHelper.getMetadata(), sigmfHelper.getCaptureIndex(),
             firstSelected.getAssociatedGroup().data);
         CapabilityConfig cc = new CapabilityConfig(cap, iqDataTemplate);
         Map<String, Object> configTemplate = cc.configureCapability(owner, iqDataTemplate);
@@ -315,48 +352,43 @@ public class AnnotationController {
         Task<Void> restTask = new Task<>() {
             @Override
             protected Void call() throws Exception {
-                int numSelected = getNumSelected();
+                int numSelected = selectedRows.size();
                 int numProcessed = 0;
 
-                for (AnnotationRow row : annotationTable.getItems()) {
+                for (AnnotationRow row : selectedRows) {
                     if (isCancelled()) {
                         break;
                     }
-                    if (row.isSelected()) {
-                        AC_LOGGER.info("Excute capability ({}) for {} at {} seconds",
-                            cap.getPath(), row.getLabel(), row.getStartTime());
-
-                        int down = (int) Math.floor(sampleRate / row.getBandwidth());
-                        double targetFs = sampleRate / down;
-                        long targetStart = (long)(row.getStartTime() * sampleRate);
-                        long targetDur = (long)(row.getDuration() * sampleRate);
-                        String dataType = sigmfHelper.getMetadata().global().datatype();
-                        double inputFc = sigmfHelper.getMetadata().captures().get(0).frequency();
-                        double center = row.getCenterFreq() - inputFc;
-                        asyncDownConvertService.extractAndDownConvertAsync(
-                                sigmfHelper.getDataBuffer(), targetStart, (int) targetDur, dataType, center / sampleRate, down, false)
-                            .thenAccept(data -> {
-                                // downsample the burst
-                                IqData iqData = new IqData(
-                                    "current", data, targetFs,
-                                    sigmfHelper.getMetadata(), row.getAssociatedGroup().data);
-
-                                // Update config based on current iqData
-                                cc.updateConfig(configTemplate, iqData);
-
-                                String response = restHelper.executeCapability(cap, configTemplate, iqData);
-
-                                // append response in comment
-                                row.setComment(row.getComment() + "\n" + response);
-                            }).join();
-
-                        // Update progress bar
-                        numProcessed++;
-                        updateProgress(numProcessed, numSelected);
-                        if (numProcessed >= numSelected) {
-                            break;
-                        }
-                    }
+                    AC_LOGGER.info("Excute capability ({}) for {} at {} seconds",
+                        cap.getPath(), row.getLabel(), row.getStartTime());
+
+                    int down = (int) Math.floor(sampleRate / row.getBandwidth());
+                    double targetFs = sampleRate / down;
+                    long targetStart = (long)(row.getStartTime() * sampleRate);
+                    long targetDur = (long)(row.getDuration() * sampleRate);
+                    SampleDecoder decoder = sigmfHelper.getDecoder();
+                    double inputFc = sigmfHelper.getCaptureIndex().getFrequency(targetStart);
+                    double center = row.getCenterFreq() - inputFc;
+                    asyncDownConvertService.extractAndDownConvertAsync(
+                            sigmfHelper.getDataBuffer(), targetStart, (int) targetDur, decoder, center / sampleRate, down, false)
+                        .thenAccept(data -> {
+                            // downsample the burst
+                            IqData iqData = new IqData(
+                                "current", data, targetFs, sigmfHelper.getMetadata(),
+                                sigmfHelper.getCaptureIndex(), row.getAssociatedGroup().data);
+
+                            // Update config based on current iqData
+                            cc.updateConfig(configTemplate, iqData);
+
+                            String response = restHelper.executeCapability(cap, configTemplate, iqData);
+
+                            // append response in comment
+                            row.setComment(row.getComment() + "\n" + response);
+                        }).join();
+
+                    // Update progress bar
+                    numProcessed++;
+                    updateProgress(numProcessed, numSelected);
                 }
 
                 return null;
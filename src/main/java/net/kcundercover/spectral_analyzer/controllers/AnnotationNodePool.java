@@ -0,0 +1,148 @@
+package net.kcundercover.spectral_analyzer.controllers;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+import javafx.geometry.Insets;
+import javafx.scene.Cursor;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tooltip;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+
+import net.kcundercover.spectral_analyzer.data.AnnotationGroup;
+
+/**
+ * Recycled nodes showing the annotations on screen
+ *
+ * A file can hold far more annotations than the screen can show.  Only the
+ * annotations in view are bound to a {@code Rectangle}, {@code Label} and
+ * {@code Tooltip}.  The nodes of an annotation that leaves the view go back
+ * to the pool and are bound to the next one that comes in, so the number of
+ * nodes follows the number of annotations on screen, not in the file.
+ *
+ * The annotation bound to a rectangle is its user data.
+ */
+public final class AnnotationNodePool {
+    /** Spare nodes always kept */
+    private static final int MIN_SPARE = 64;
+
+    private final Pane overlay;
+    private final Consumer<MouseEvent> onClick;
+
+    /** Nodes not bound to an annotation (hidden) */
+    private final Deque<NodeSet> spare = new ArrayDeque<>();
+
+    private int bound;
+
+    /**
+     * Create an empty pool
+     * @param overlay Pane the nodes are added to
+     * @param onClick Handler of clicks on the rectangles
+     */
+    public AnnotationNodePool(Pane overlay, Consumer<MouseEvent> onClick) {
+        this.overlay = overlay;
+        this.onClick = onClick;
+    }
+
+    /**
+     * Bind nodes to an annotation, if it has none yet
+     * @param group The annotation coming into view
+     */
+    public void bind(AnnotationGroup group) {
+        if (group.rect != null) {
+            return;
+        }
+        NodeSet nodes = spare.isEmpty() ? createNodes() : spare.pop();
+        nodes.rect.setUserData(group);
+        group.rect = nodes.rect;
+        group.label = nodes.label;
+        group.tooltip = nodes.tooltip;
+        bound++;
+    }
+
+    /**
+     * Return the nodes of an annotation to the pool
+     * @param group The annotation leaving the view (or removed)
+     */
+    public void release(AnnotationGroup group) {
+        if (group.rect == null) {
+            return;
+        }
+        group.rect.setVisible(false);
+        group.label.setVisible(false);
+        group.rect.setUserData(null);
+        spare.push(new NodeSet(group.rect, group.label, group.tooltip));
+        group.rect = null;
+        group.label = null;
+        group.tooltip = null;
+        bound--;
+    }
+
+    /**
+     * Remove spare nodes beyond what the view used lately
+     */
+    public void trim() {
+        while (spare.size() > Math.max(MIN_SPARE, bound)) {
+            NodeSet nodes = spare.pop();
+            Tooltip.uninstall(nodes.rect, nodes.tooltip);
+            overlay.getChildren().removeAll(nodes.rect, nodes.label);
+        }
+    }
+
+    /**
+     * Forget every node (e.g. after the overlay was cleared for a new file)
+     */
+    public void clear() {
+        spare.clear();
+        bound = 0;
+    }
+
+    /**
+     * Get the number of annotations bound to nodes
+     * @return Number of rectangles in use
+     */
+    public int getBoundCount() {
+        return bound;
+    }
+
+    /**
+     * Get the number of rectangles waiting in the pool
+     * @return Number of spare rectangles
+     */
+    public int getSpareCount() {
+        return spare.size();
+    }
+
+    /** The nodes showing an annotation */
+    private record NodeSet(Rectangle rect, Label label, Tooltip tooltip) {}
+
+    private NodeSet createNodes() {
+        Rectangle rect = new Rectangle(); // Position will be set by updateDisplay()
+        rect.setStrokeWidth(2);
+        rect.setCursor(Cursor.HAND);
+        rect.setVisible(false);
+        rect.setOnMouseClicked(onClick::accept);
+
+        // Create the Label
+        // --------------------------------------
+        Label label = new Label();
+        label.setTextFill(Color.WHITE);
+        label.setStyle("-fx-font-family: 'Consolas'; -fx-font-size: 11px; -fx-background-color: rgba(0,0,0,0.5);");
+        label.setPadding(new Insets(2));
+        label.setMouseTransparent(true); // So the label doesn't block clicking the box
+        label.setVisible(false);
+
+        // set up the tool tip
+        Tooltip tooltip = new Tooltip();
+        tooltip.setStyle("-fx-font-family: 'Consolas'; -fx-background-color: #333; -fx-text-fill: #2ecc71;");
+        tooltip.setShowDelay(javafx.util.Duration.millis(300)); // Show quickly
+        Tooltip.install(rect, tooltip);
+
+        overlay.getChildren().addAll(rect, label);
+        return new NodeSet(rect, label, tooltip);
+    }
+}
@@ -4,7 +4,9 @@ import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.beans.value.ChangeListener;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
@@ -18,17 +20,17 @@ import javafx.scene.control.ColorPicker;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.PasswordField;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
-import javafx.scene.control.Tooltip;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Label;
 import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.ScrollBar;
-import javafx.scene.Cursor;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.PixelWriter;      // for fast drawing
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
@@ -56,14 +58,20 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import java.net.URI;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import net.rgielen.fxweaver.core.FxmlView;
 
@@ -80,14 +88,29 @@ import net.kcundercover.spectral_analyzer.controllers.RawSignalImportController;
 import net.kcundercover.spectral_analyzer.data.AnnotationGroup;
 import net.kcundercover.spectral_analyzer.data.IqData;
 import net.kcundercover.spectral_analyzer.data.RawSignalImportSettings;
+import net.kcundercover.spectral_analyzer.dsp.WindowFunction;
+import net.kcundercover.spectral_analyzer.render.SpectrogramFrame;
+import net.kcundercover.spectral_analyzer.render.SpectrogramPyramid;
+import net.kcundercover.spectral_analyzer.render.SpectrogramRequest;
 import net.kcundercover.spectral_analyzer.rest.Capability;
 import net.kcundercover.spectral_analyzer.rest.RestHelper;
+import net.kcundercover.spectral_analyzer.sigmf.AnnotationIndex;
+import net.kcundercover.spectral_analyzer.sigmf.CaptureIndex;
+import net.kcundercover.spectral_analyzer.sigmf.DataFileFollower;
 import net.kcundercover.spectral_analyzer.sigmf.SigMfHelper;
 import net.kcundercover.spectral_analyzer.sigmf.NonconformingDatasetHelper;
 import net.kcundercover.spectral_analyzer.sigmf.SigMfAnnotation;
+import net.kcundercover.spectral_analyzer.sigmf.SigMfArchive;
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
 import net.kcundercover.spectral_analyzer.services.AsyncExtractDownConvertService;
+import net.kcundercover.spectral_analyzer.services.BurstDetectorService;
+import net.kcundercover.spectral_analyzer.services.ColorMapService;
 import net.kcundercover.spectral_analyzer.services.ExtractDownConvertService;
-import net.kcundercover.spectral_analyzer.services.SpectralService;
+import net.kcundercover.spectral_analyzer.services.IntegrityService;
+import net.kcundercover.spectral_analyzer.services.PyramidService;
+import net.kcundercover.spectral_analyzer.services.ReadAheadService;
+import net.kcundercover.spectral_analyzer.services.SpectrogramRenderService;
 
 
 
@@ -106,15 +129,35 @@ public class MainController {
 
     private static final Logger MC_LOGGER = LoggerFactory.getLogger(MainController.class);
     private RestHelper restHelper = new RestHelper();
-    // throttle updates
+    // coalesce display updates to one per pulse
     private final AtomicBoolean redrawPending = new AtomicBoolean(false);
 
     private SigMfHelper sigMfHelper = new SigMfHelper();
     private long currentSampleOffset = 0; // Where we are in the file
     private int fftSize;
+    private int timeZoom = 1; // FFTs per pixel column (power of 2)
+    private int overlap = 0; // overlap of consecutive FFTs (percent)
     private double minDecibel = -100.0;
     private double maxDecibel = 0.0;
 
+    /** Render generation of the most recent spectrogram request, older frames are not painted */
+    private long latestGeneration;
+
+    /** The frame on the canvas, reused when scrolling */
+    private SpectrogramFrame displayedFrame;
+
+    /** The frames of the channels stacked on the canvas (multi-channel recordings) */
+    private List<SpectrogramFrame> displayedChannelFrames;
+
+    /** The pyramid being loaded or built for the current file and FFT size */
+    private CompletableFuture<SpectrogramPyramid> pendingPyramid;
+
+    /** Watches the data file while it is being recorded, null when not following */
+    private DataFileFollower dataFileFollower;
+
+    /** Cancels the running hash of the data file, null when no hash is running */
+    private AtomicBoolean integrityCancelled;
+
     // track the input file path
     private File lastOpenedDirectory;
     private Path inputFile;
@@ -125,9 +168,14 @@ public class MainController {
      */
     private final Map<String, Color> annotationStyles = new HashMap<>();
 
-    @Autowired private SpectralService spectralService;
     @Autowired private ExtractDownConvertService downConvertService;
     @Autowired private AsyncExtractDownConvertService asyncDownConvertService;
+    @Autowired private SpectrogramRenderService renderService;
+    @Autowired private PyramidService pyramidService;
+    @Autowired private ColorMapService colorMapService;
+    @Autowired private IntegrityService integrityService;
+    @Autowired private ReadAheadService readAheadService;
+    @Autowired private BurstDetectorService burstDetectorService;
 
     // ------------------------- majority of GUI  -----------------------------
     // main plot of spectrogram, overlays
@@ -149,6 +197,8 @@ public class MainController {
     @FXML CheckMenuItem fastDownConverter;
     @FXML ColorPicker selectColorPicker;
     @FXML CheckMenuItem menuItemShowAnnotations;
+    @FXML CheckMenuItem menuItemFollow;
+    @FXML CheckMenuItem menuItemAutoScroll;
     @FXML RadioMenuItem radioGrayscale;
     @FXML ComboBox<String> comboColorMap;
 
@@ -161,6 +211,12 @@ public class MainController {
     // FFT control and display
     @FXML private Slider nfftSlider;
     @FXML private Label lblNfftValue;
+    @FXML private ComboBox<String> comboWindow;
+    @FXML private ComboBox<String> comboOverlap;
+    // time zoom control and display
+    @FXML private Slider zoomSlider;
+    @FXML private Label lblZoomValue;
+    @FXML private ComboBox<String> comboAggregation;
 
     // Annotations
     @FXML private CheckBox showAnnotationsCheckbox;
@@ -175,25 +231,35 @@ public class MainController {
     @FXML private TextArea selectionDescField;
     @FXML private Button btnAnalyzeSelection;
 
-    /** This mapping tracks the AnnotationGroup based on the rectangle overlay */
-    private final Map<Rectangle, AnnotationGroup> annotationMap = new HashMap<>();
+    // data integrity
+    @FXML private Label lblIntegrity;
+    @FXML private Label lblReadAhead;
+    @FXML private ProgressBar integrityProgress;
+    @FXML private Button btnCancelIntegrity;
+
+    /** Annotations of the file, only the ones on screen are bound to nodes of the overlay */
+    private final Set<AnnotationGroup> annotationGroups = new LinkedHashSet<>();
+
+    /** Nodes of the annotations on screen, recycled as the view moves */
+    private AnnotationNodePool annotationNodes;
+
+    /** Time and frequency index of the annotations, a redraw only updates the ones in view */
+    private final AnnotationIndex<AnnotationGroup> annotationIndex = new AnnotationIndex<>();
+
+    /** Annotations in view at the last redraw */
+    private List<AnnotationGroup> shownAnnotations = new ArrayList<>();
 
     /**
-     * Remove the {@code rect} and the associated label/tooltip
-     * @param rect The rectangle object used as key to the {@code annotationMap}
+     * Remove an annotation, its label/tooltip go back to the node pool
+     * @param group The annotation to remove
      */
-    public void removeAnnotation(Rectangle rect) {
-        // remove the entry from annotationMap
-        AnnotationGroup group = annotationMap.remove(rect);
-
-        if (group != null) {
-            // Remote tooltips
-            if (group.tooltip != null) {
-                Tooltip.uninstall(group.rect, group.tooltip);
-            }
+    public void removeAnnotation(AnnotationGroup group) {
+        if (annotationGroups.remove(group)) {
+            annotationIndex.remove(group);
+            shownAnnotations.remove(group);
 
-            // remove visuals linked to the annotationOverlay panel
-            annotationOverlay.getChildren().removeAll(group.rect, group.label);
+            // the nodes are hidden and reused for another annotation
+            annotationNodes.release(group);
             MC_LOGGER.info("Annotation and Tooltip removed for: {}", group.data.getLabel());
         }
     }
@@ -210,6 +276,7 @@ public class MainController {
     private double selectionFreqHigh = 0;
     private boolean selectionComplete = false;
     private SigMfAnnotation selectionAnnotation;
+    private int selectionChannel = 0; // channel strip of the selection
 
 
     /**
@@ -222,6 +289,7 @@ public class MainController {
         selectionStartWidthSamples = 0; // How many samples wide it is
         selectionFreqLow = 0;
         selectionFreqHigh = 0;
+        selectionChannel = 0;
         selectionComplete = false;
 
         // NOTE: reset the UI display
@@ -255,6 +323,7 @@ public class MainController {
         selectColorPicker.setValue(Color.LIME);
         resetSelection();
 
+        comboColorMap.getItems().setAll(colorMapService.getNames());
         comboColorMap.valueProperty().addListener((observable, oldValue, newValue) -> {
             if (newValue != null) {
                 updateDisplay();
@@ -265,6 +334,7 @@ public class MainController {
         maxDecibel = Double.parseDouble(maxDbInput.getText());
         // initialize selection rectangle to be hidden
         annotationOverlay.getChildren().add(selectionRect);
+        annotationNodes = new AnnotationNodePool(annotationOverlay, this::handleAnnotationClicked);
         selectionRect.setVisible(false);
 
         // track the width of the right panel and update right axis spacer
@@ -281,14 +351,7 @@ public class MainController {
         menuItemShowAnnotations.selectedProperty().addListener((observable, oldValue, newValue) -> {
             updateAnnotationDisplay();
         });
-        ChangeListener<Number> resizeListener = (obs, o, n) -> {
-            if (redrawPending.compareAndSet(false, true)) {
-                Platform.runLater(() -> {
-                    redrawPending.set(false);
-                    updateDisplay();
-                });
-            }
-        };
+        ChangeListener<Number> resizeListener = (obs, o, n) -> updateDisplay();
 
         plotContainer.widthProperty().addListener(resizeListener);
         plotContainer.heightProperty().addListener(resizeListener);
@@ -304,9 +367,42 @@ public class MainController {
             lblNfftValue.setText(String.valueOf(fftSize));
 
             // Trigger re-processing
+            updateScrollRange();
             updateDisplay();
         });
 
+        // window and overlap of the FFTs
+        for (WindowFunction window : WindowFunction.values()) {
+            comboWindow.getItems().add(window.getDisplayName());
+        }
+        // rectangular as before the window choice, so the display levels do not change
+        comboWindow.setValue(WindowFunction.RECTANGULAR.getDisplayName());
+        comboWindow.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null) {
+                updateDisplay();
+            }
+        });
+        comboOverlap.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null) {
+                overlap = Integer.parseInt(newVal.replace("%", "").trim());
+                updateScrollRange();
+                updateDisplay();
+            }
+        });
+
+        // initialize time zoom by zoomSlider
+        zoomSlider.valueProperty().addListener((obs, oldVal, newVal) -> {
+            timeZoom = 1 << newVal.intValue();
+            lblZoomValue.setText(String.format("%d FFT/px", timeZoom));
+            updateScrollRange();
+            updateDisplay();
+        });
+        comboAggregation.valueProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal != null) {
+                updateDisplay();
+            }
+        });
+
         frequencyRuler.prefHeightProperty().bind(spectrogramCanvas.heightProperty());
 
         Rectangle clip = new Rectangle();
@@ -372,16 +468,19 @@ public class MainController {
                 // secondary used to remove previous selection...no need to track
             } else if (selectionRect != null) {
                 int canvasW = (int) spectrogramCanvas.getWidth();
-                int canvasH = (int) spectrogramCanvas.getHeight();
+                double stripH = getStripHeight();
                 double sampleRate = sigMfHelper.getMetadata().global().sampleRate();
-                double centerFreq = sigMfHelper.getMetadata().captures().get(0).frequency();
 
                 // track the selection information
                 // --------------------------------------------------
-                this.selectionStartSample = currentSampleOffset + (long)((selectionRect.getX() / canvasW) * (canvasW * fftSize));
-                this.selectionStartWidthSamples = (selectionRect.getWidth() / canvasW) * (canvasW * fftSize);
-                selectionFreqHigh = centerFreq + sampleRate / 2 - (selectionRect.getY() / canvasH) * sampleRate;
-                selectionFreqLow = selectionFreqHigh - (selectionRect.getHeight() / canvasH * sampleRate);
+                this.selectionStartSample = getViewStartSample() + (long)((selectionRect.getX() / canvasW) * (canvasW * getSamplesPerPixel()));
+                double centerFreq = sigMfHelper.getCaptureIndex().getFrequency(selectionStartSample);
+                this.selectionStartWidthSamples = (selectionRect.getWidth() / canvasW) * (canvasW * getSamplesPerPixel());
+                // channels are stacked, the top of the selection gives the channel
+                selectionChannel = Math.min((int) (selectionRect.getY() / stripH), sigMfHelper.getChannelCount() - 1);
+                double stripY = selectionRect.getY() - selectionChannel * stripH;
+                selectionFreqHigh = centerFreq + sampleRate / 2 - (stripY / stripH) * sampleRate;
+                selectionFreqLow = selectionFreqHigh - (selectionRect.getHeight() / stripH * sampleRate);
                 selectionComplete = true;
 
                 // set the characteristics of the selection
@@ -478,7 +577,7 @@ public class MainController {
 
         // Set extension filters (useful for SDR/Audio files)
         fileChooser.getExtensionFilters().addAll(
-            new FileChooser.ExtensionFilter("SigMF (*.sigmf-meta)", "*.sigmf-meta"),
+            new FileChooser.ExtensionFilter("SigMF (*.sigmf-meta, *.sigmf)", "*.sigmf-meta", "*.sigmf"),
             new FileChooser.ExtensionFilter("Raw Signal Files (*.cs16, *.ci16, *.cu8, *.ci8, *.cf32, *.cf64)",
         "*.cs16", "*.ci16", "*.cu8", "*.ci8", "*.cf32", "*.cf64", "*.iq", "*.raw"),
             new FileChooser.ExtensionFilter("Wave Audio (*.wav)", "*.wav"),
@@ -549,7 +648,7 @@ public class MainController {
                 }
 
 
-            } else if (!selectedName.endsWith(".sigmf-meta")) {
+            } else if (!selectedName.endsWith(".sigmf-meta") && !selectedName.endsWith(SigMfArchive.EXTENSION)) {
                 // Launch dialog to prompt user for info
                 Optional<RawSignalImportSettings> settings =
                     importRawFile(ownerWindow, selectedFile);
@@ -579,13 +678,24 @@ public class MainController {
             // Load SigMF Meta file
             // =======================================================
             try {
+                stopFollowing();
+                cancelIntegrityCheck();
+                readAheadService.reset();
+                showReadAhead();
                 sigMfHelper.load(selectedFile.toPath());
 
+                // drop cached tiles in case the data file changed since it was last viewed
+                renderService.getTileCache().invalidate(
+                    sigMfHelper.getDataPath().toAbsolutePath().toString());
+
                 // clear annotations and map
                 annotationOverlay.getChildren().clear();
                 annotationOverlay.getChildren().add(selectionRect);
                 selectionRect.setVisible(false);
-                annotationMap.clear();
+                annotationNodes.clear();
+                annotationGroups.clear();
+                annotationIndex.clear();
+                shownAnnotations.clear();
 
                 // track the input meta file
                 inputFile = selectedFile.toPath();
@@ -594,14 +704,14 @@ public class MainController {
                 // load annotations
                 List<SigMfAnnotation> fileAnnotations = sigMfHelper.getParsedAnnotations();
                 for (SigMfAnnotation data : fileAnnotations) {
-                    // Create the "Visual Proxy"
-                    createRectangleForData(data);
+                    // nodes are bound once it comes into view
+                    addAnnotation(data);
                 }
 
                 // print information about the meta file
                 var meta = sigMfHelper.getMetadata();
-                int bytesPerSample = meta.global().getBytesPerSample();
-                long totalBytes = sigMfHelper.getDataBuffer().capacity();
+                int bytesPerSample = sigMfHelper.getDecoder().getBytesPerSample();
+                long totalBytes = sigMfHelper.getDataBuffer().size();
                 totalSamples = totalBytes / bytesPerSample;
 
                 fileScrollBar.setMin(0);
@@ -618,15 +728,17 @@ public class MainController {
                     meta.global().sampleRate(),
                     meta.global().datatype());
 
+                // verify the data in the background, the file can be viewed meanwhile
+                if (meta.global().getSha512() != null) {
+                    startIntegrityCheck(false);
+                } else {
+                    showIntegrity("No core:sha512 in the metadata", Color.GRAY);
+                }
 
                 Platform.runLater(() -> {
-                    double canvasW = spectrogramCanvas.getWidth();
-
                     fileScrollBar.setMin(0);
-                    // Ensure we don't calculate a negative Max
-                    fileScrollBar.setMax(Math.max(0, totalSamples - (long)(canvasW * fftSize)));
                     fileScrollBar.setValue(0);
-                    fileScrollBar.setBlockIncrement(canvasW);
+                    updateScrollRange();
                     updateDisplay();
                 });
 
@@ -643,14 +755,25 @@ public class MainController {
      */
     @FXML
     private void handleSave() {
+        saveAnnotations();
+    }
+
+    /**
+     * Save the current set of annotations to file.
+     * @return True if the meta file was written
+     */
+    private boolean saveAnnotations() {
 
-        List<SigMfAnnotation> sortedAnnotations = annotationMap.values().stream()
+        List<SigMfAnnotation> sortedAnnotations = annotationGroups.stream()
             .map(group -> group.data) // Access the field directly
             .sorted(Comparator.<SigMfAnnotation>comparingLong(SigMfAnnotation::sampleStart))
             .toList();
 
-        sigMfHelper.saveSigMF(sortedAnnotations);
+        if (!sigMfHelper.saveSigMF(sortedAnnotations)) {
+            return false;
+        }
         MC_LOGGER.info("SigMF saved: {} annotations written in chronological order.", sortedAnnotations.size());
+        return true;
     }
 
     /**
@@ -693,7 +816,7 @@ public class MainController {
         }
 
         double inputFs = sigMfHelper.getMetadata().global().sampleRate();
-        double inputFc = sigMfHelper.getMetadata().captures().get(0).frequency();
+        double inputFc = sigMfHelper.getCaptureIndex().getFrequency(selectionStartSample);
 
         // =======================================================
         // NOTE: Send a little exta bw and time for PSD analysis
@@ -731,7 +854,7 @@ public class MainController {
 
         final double finalTargetFs = targetFs;
         final double finalStartTime = targetStart / inputFs;
-        String dataType = sigMfHelper.getMetadata().global().datatype();
+        SampleDecoder decoder = sigMfHelper.getDecoder(selectionChannel);
 
         // Run off-thread to avoid [lication Thread] freezes
         // ==========================================================
@@ -740,7 +863,7 @@ public class MainController {
                 sigMfHelper.getDataBuffer(),
                 targetStart,
                 (int) targetWidth,
-                dataType,
+                decoder,
                 center / inputFs,
                 down,
                 fastDownConverter.isSelected()
@@ -785,6 +908,11 @@ public class MainController {
             // ------------------------------------------------------
             selectionAnnotation.copy(controller.getUpdatedAnnotation());
             updateRect(selectionRect, selectionAnnotation); // update rect if annotation has updated.
+            for (AnnotationGroup group : annotationGroups) {
+                if (group.data == selectionAnnotation) {
+                    annotationIndex.put(group, group.data); // bounds may have changed
+                }
+            }
 
             // NOTE: potential updates to labels/comments and frequency bounds)
             updateAnnotationDisplay();
@@ -813,22 +941,9 @@ public class MainController {
         // reset the selection variables
         resetSelection();
 
-        MouseEvent fakeClick = new MouseEvent(
-            MouseEvent.MOUSE_CLICKED, 0, 0, 0, 0,
-            MouseButton.PRIMARY, 1,
-            false, false, false, false, // Shift, Ctrl, Alt, Meta
-            true, false, false, true,   // Primary, Middle, Secondary, Synthesized
-            false, false, null
-        );
-
-        // NOTE: create rect/label for this annotation.
-        //       trigger mouse click event for rect to "select" it
-        //       so that it can jump straight into analysis
-        Rectangle rect = createRectangleForData(selectAnnot);
-        rect.fireEvent(fakeClick);
-
-        // refresh display
-        updateAnnotationDisplay();
+        // NOTE: "select" the new annotation so that it can jump straight into analysis,
+        //       this also refreshes the display
+        selectAnnotation(addAnnotation(selectAnnot));
     }
 
 
@@ -838,9 +953,331 @@ public class MainController {
      */
     @FXML
     public void handleExit(ActionEvent event) {
+        stopFollowing();
+        cancelIntegrityCheck();
         Platform.exit();
     }
 
+    // ---- follow mode (data file still being recorded) ----
+
+    /**
+     * Start or stop following the growth of the data file
+     * @param event The event that triggered this handler
+     */
+    @FXML
+    private void handleFollowToggle(ActionEvent event) {
+        boolean follow = menuItemFollow.isSelected();
+        stopFollowing();
+        if (!follow || sigMfHelper.getDataPath() == null) {
+            menuItemFollow.setSelected(false);
+            return;
+        }
+        try {
+            dataFileFollower = new DataFileFollower(sigMfHelper.getDataPath(),
+                DataFileFollower.DEFAULT_POLL_INTERVAL, size -> Platform.runLater(this::handleDataGrowth));
+            menuItemFollow.setSelected(true);
+            MC_LOGGER.info("Following {}", sigMfHelper.getDataPath());
+            handleDataGrowth(); // samples written since the file was opened
+        } catch (IOException e) {
+            menuItemFollow.setSelected(false);
+            showErrorAlert(spectrogramCanvas.getScene().getWindow(), "Failed to follow the data file",
+                e.getMessage());
+        }
+    }
+
+    /**
+     * Stop following the data file
+     */
+    private void stopFollowing() {
+        if (dataFileFollower != null) {
+            dataFileFollower.close();
+            dataFileFollower = null;
+            MC_LOGGER.info("Stopped following the data file");
+        }
+        if (menuItemFollow != null) {
+            menuItemFollow.setSelected(false);
+        }
+    }
+
+    /**
+     * Map the new samples of the followed data file and show them
+     *
+     * The previous frame is reused, only the columns of the new samples are
+     * computed.  With auto-scroll the view jumps to the newest samples.
+     */
+    private void handleDataGrowth() {
+        if (dataFileFollower == null) {
+            return; // stopped in the meantime
+        }
+        try {
+            if (!sigMfHelper.refreshDataBuffer()) {
+                return;
+            }
+        } catch (IOException e) {
+            MC_LOGGER.warn("Failed to map the new samples of {}", sigMfHelper.getDataPath(), e);
+            return;
+        }
+        totalSamples = sigMfHelper.getDataBuffer().size() / sigMfHelper.getDecoder().getBytesPerSample();
+        updateScrollRange();
+        if (menuItemAutoScroll.isSelected()) {
+            fileScrollBar.setValue(fileScrollBar.getMax());
+        }
+        updateDisplay();
+    }
+
+    // ---- data integrity (core:sha512) ----
+
+    /**
+     * Verify the data file against the SHA-512 hash of the metadata
+     * @param event The event that triggered this handler
+     */
+    @FXML
+    private void handleVerifyIntegrity(ActionEvent event) {
+        if (sigMfHelper.getDataPath() == null) {
+            return;
+        }
+        if (sigMfHelper.getMetadata().global().getSha512() == null) {
+            showIntegrity("No core:sha512 in the metadata", Color.GRAY);
+            return;
+        }
+        startIntegrityCheck(false);
+    }
+
+    /**
+     * Compute the SHA-512 hash of the data file, store it in the metadata and save
+     * @param event The event that triggered this handler
+     */
+    @FXML
+    private void handleSaveWithHash(ActionEvent event) {
+        if (sigMfHelper.getDataPath() != null) {
+            startIntegrityCheck(true);
+        }
+    }
+
+    /**
+     * Cancel the running hash
+     * @param event The event that triggered this handler
+     */
+    @FXML
+    private void handleCancelIntegrity(ActionEvent event) {
+        cancelIntegrityCheck();
+        showIntegrity("SHA-512 check cancelled", Color.GRAY);
+    }
+
+    /**
+     * Hash the dataset in the background, showing the progress
+     * @param store True to store the hash in the metadata and save, false to verify it
+     */
+    private void startIntegrityCheck(boolean store) {
+        cancelIntegrityCheck();
+        long length;
+        try {
+            length = sigMfHelper.getDatasetLength();
+        } catch (IOException e) {
+            showIntegrity("Failed to read the data file: " + e.getMessage(), Color.ORANGERED);
+            return;
+        }
+        String expected = sigMfHelper.getMetadata().global().getSha512();
+        AtomicBoolean cancelled = new AtomicBoolean(false);
+        integrityCancelled = cancelled;
+
+        showIntegrity(store ? "Computing SHA-512..." : "Verifying SHA-512...", Color.LIGHTGRAY);
+        integrityProgress.setProgress(0);
+        integrityProgress.setVisible(true);
+        btnCancelIntegrity.setVisible(true);
+        integrityService.hashAsync(sigMfHelper.getDataPath(), sigMfHelper.getDatasetStart(), length,
+                fraction -> Platform.runLater(() -> {
+                    if (integrityCancelled == cancelled) {
+                        integrityProgress.setProgress(fraction);
+                    }
+                }),
+                cancelled::get)
+            .whenComplete((hash, ex) -> Platform.runLater(
+                () -> finishIntegrityCheck(cancelled, store, expected, hash, ex)));
+    }
+
+    /**
+     * Show the result of a hash
+     * @param cancelled Cancellation flag of the hash
+     * @param store True to store the hash and save
+     * @param expected Hash of the metadata (may be null)
+     * @param hash The computed hash (null on failure)
+     * @param ex The failure (null on success)
+     */
+    private void finishIntegrityCheck(AtomicBoolean cancelled, boolean store, String expected, String hash,
+            Throwable ex) {
+        if (integrityCancelled != cancelled) {
+            return; // cancelled, or replaced by a newer check
+        }
+        integrityCancelled = null;
+        integrityProgress.setVisible(false);
+        btnCancelIntegrity.setVisible(false);
+
+        if (ex != null) {
+            Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+            MC_LOGGER.error("Failed to hash the data file", cause);
+            showIntegrity("SHA-512 failed: " + cause.getMessage(), Color.ORANGERED);
+        } else if (store) {
+            sigMfHelper.setSha512(hash);
+            if (saveAnnotations()) {
+                showIntegrity("SHA-512 stored in the metadata", Color.LIGHTGREEN);
+            } else {
+                showIntegrity("SHA-512 computed, but failed to save the metadata", Color.ORANGERED);
+            }
+        } else if (IntegrityService.matches(expected, hash)) {
+            showIntegrity("SHA-512 verified", Color.LIGHTGREEN);
+        } else {
+            MC_LOGGER.warn("SHA-512 mismatch for {}: metadata {}, data {}",
+                sigMfHelper.getDataPath(), expected, hash);
+            showIntegrity("SHA-512 MISMATCH, the data file differs from the metadata", Color.ORANGERED);
+        }
+    }
+
+    /**
+     * Cancel the running hash, if any
+     */
+    private void cancelIntegrityCheck() {
+        if (integrityCancelled != null) {
+            integrityCancelled.set(true);
+            integrityCancelled = null;
+        }
+        if (integrityProgress != null) {
+            integrityProgress.setVisible(false);
+            btnCancelIntegrity.setVisible(false);
+        }
+    }
+
+    /**
+     * Show the state of the data integrity
+     * @param text The state
+     * @param color Text color
+     */
+    private void showIntegrity(String text, Color color) {
+        lblIntegrity.setText(text);
+        lblIntegrity.setTextFill(color);
+    }
+
+    /**
+     * Show how often the read-ahead loaded the samples of the viewport in time
+     */
+    private void showReadAhead() {
+        long viewports = readAheadService.getHits() + readAheadService.getMisses();
+        lblReadAhead.setText(viewports == 0 ? "Read-ahead: no scroll yet"
+            : String.format("Read-ahead: %.0f%% hits (%d viewports)", 100 * readAheadService.getHitRate(), viewports));
+    }
+
+    // ---- automatic burst detection ----
+
+    /**
+     * Detect the bursts of the whole recording and add them as "auto" annotations
+     *
+     * Uses the FFT size and window of the spectrogram.  A multi-channel
+     * recording is scanned on the channel of the selection (as the analysis
+     * does).  Annotations still labelled "auto" from a previous detection are
+     * replaced.
+     * @param event The event that triggered this handler
+     */
+    @FXML
+    private void handleDetectBursts(ActionEvent event) {
+        if (sigMfHelper.getDataBuffer() == null) {
+            return;
+        }
+        Window owner = spectrogramCanvas.getScene().getWindow();
+        int channel = selectionChannel;
+        int channelCount = sigMfHelper.getChannelCount();
+        TextInputDialog thresholdDialog = new TextInputDialog("10");
+        thresholdDialog.initOwner(owner);
+        thresholdDialog.setTitle("Detect Bursts");
+        thresholdDialog.setHeaderText(channelCount > 1
+            ? String.format("Detect the bursts of channel %d of %d (the channel of the selection)",
+                channel + 1, channelCount)
+            : "Detect the bursts of the whole recording");
+        thresholdDialog.setContentText("Threshold above the noise floor (dB):");
+        Optional<String> result = thresholdDialog.showAndWait();
+        if (result.isEmpty()) {
+            return;
+        }
+        BurstDetectorService.Settings settings;
+        try {
+            settings = BurstDetectorService.Settings.defaults(fftSize, WindowFunction.forName(comboWindow.getValue()))
+                .withThresholdDb(Double.parseDouble(result.get().strip()));
+        } catch (NumberFormatException e) {
+            showErrorAlert(owner, "Invalid Format", "Please enter a valid numeric value.");
+            return;
+        }
+
+        SampleBuffer buffer = sigMfHelper.getDataBuffer();
+        SampleDecoder decoder = sigMfHelper.getDecoder(channel);
+        CaptureIndex captures = sigMfHelper.getCaptureIndex();
+        double sampleRate = sigMfHelper.getMetadata().global().sampleRate();
+        Task<List<SigMfAnnotation>> detectTask = new Task<>() {
+            @Override
+            protected List<SigMfAnnotation> call() {
+                return burstDetectorService.detect(buffer, decoder, captures, sampleRate, settings,
+                    fraction -> updateProgress(fraction, 1.0), this::isCancelled);
+            }
+        };
+
+        Dialog<Void> progressDialog = new Dialog<>();
+        progressDialog.initOwner(owner);
+        progressDialog.setTitle("Detect Bursts");
+        progressDialog.setHeaderText("Scanning the recording...");
+        progressDialog.getDialogPane().getButtonTypes().add(ButtonType.CANCEL);
+        Button stopButton = (Button) progressDialog.getDialogPane().lookupButton(ButtonType.CANCEL);
+        stopButton.setText("Stop");
+        stopButton.addEventHandler(ActionEvent.ACTION, e -> {
+            if (detectTask.isRunning()) {
+                detectTask.cancel();
+            }
+        });
+
+        ProgressBar progressBar = new ProgressBar(0);
+        progressBar.progressProperty().bind(detectTask.progressProperty());
+        progressBar.setPrefWidth(300);
+        VBox vbox = new VBox(10, progressBar);
+        vbox.setAlignment(Pos.CENTER);
+        vbox.setPadding(new Insets(20));
+        progressDialog.getDialogPane().setContent(vbox);
+        // Esc or the close button of the window stop the scan too
+        progressDialog.setOnHidden(e -> detectTask.cancel());
+
+        detectTask.setOnSucceeded(e -> {
+            List<SigMfAnnotation> bursts = detectTask.getValue();
+            replaceAutoAnnotations(bursts);
+            stopButton.setText("Close");
+            progressDialog.setHeaderText(String.format("Found %d bursts", bursts.size()));
+        });
+        detectTask.setOnCancelled(e -> progressDialog.close());
+        detectTask.setOnFailed(e -> {
+            MC_LOGGER.error("Failed to detect the bursts", detectTask.getException());
+            stopButton.setText("Close");
+            progressDialog.setHeaderText("Burst detection failed: " + detectTask.getException().getMessage());
+        });
+
+        Thread detectThread = new Thread(detectTask, "Burst-Detection");
+        detectThread.setDaemon(true);
+        detectThread.start();
+        progressDialog.showAndWait();
+    }
+
+    /**
+     * Replace the annotations of a previous detection with new bursts
+     * @param bursts The detected bursts
+     */
+    private void replaceAutoAnnotations(List<SigMfAnnotation> bursts) {
+        for (AnnotationGroup group : new ArrayList<>(annotationGroups)) {
+            if (BurstDetectorService.LABEL.equals(group.data.getLabel())) {
+                if (group.data == selectionAnnotation) {
+                    selectionAnnotation = null;
+                    btnAnalyzeSelection.setDisable(true);
+                }
+                removeAnnotation(group);
+            }
+        }
+        bursts.forEach(this::addAnnotation);
+        updateAnnotationDisplay();
+    }
+
     @FXML
     public void handleTableView(ActionEvent event) {
         Window owner = ((javafx.scene.control.MenuItem) event.getSource())
@@ -856,7 +1293,7 @@ public class MainController {
             var global = sigMfHelper.getMetadata().global();
             double sampleRate = global.sampleRate();
             controller.configAnnotationController(
-                this.annotationMap, sampleRate, restHelper, sigMfHelper);
+                this.annotationGroups, sampleRate, restHelper, sigMfHelper);
 
             Dialog<ButtonType> dialog = new Dialog<>();
             dialog.setTitle("Table View Annotations");
@@ -869,6 +1306,8 @@ public class MainController {
             if (result.isPresent() && result.get() == ButtonType.OK) {
                 // ACCEPT: User selected to accept changes made in the Table View
                 controller.updateMainAnnotations();
+                // frequencies may have been edited, only moved annotations are re-indexed
+                annotationGroups.forEach(group -> annotationIndex.put(group, group.data));
                 updateAnnotationDisplay();
 
             } else {
@@ -918,84 +1357,91 @@ public class MainController {
     // ============================================================================================
 
     /**
-     * Convert the double value to color value
+     * Core update method to redraw GUI
      *
-     * @param db The double value
-     * @return Interpretted color
+     * Resizing, scrolling and the sliders can call this many times per
+     * pulse, the redraw runs once with the latest state.
      */
-    private Color getColorForMagnitude(double db) {
-        // Normalize dB (assume range -100 to 0)
-        // double normalized = (db + 100) / 100.0;
-        double normalized = (db - minDecibel) / (maxDecibel - minDecibel);
-        normalized = Math.clamp(normalized, 0.0, 1.0); // Java 21+ clamp
-
-        String comboChoice = (String) comboColorMap.getValue();
-        if (comboChoice == null) {
-            // if not ready...default to grayscale
-            comboChoice = "Grayscale";
+    public void updateDisplay() {
+        if (redrawPending.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                redrawPending.set(false);
+                redraw();
+            });
         }
-
-        // if (radioGrayscale.isSelected()) {
-        switch(comboChoice) {
-            case "Grayscale":
-                // ================  Grayscale =====================
-                // Linearly interpolate from Black (0.0) to White (1.0)
-                return Color.BLACK.interpolate(Color.WHITE, normalized);
-
-            case "Heatmap":
-                            // Simple "Heat" map: Black -> Blue -> Red -> Yellow
-                if (normalized < 0.2) {
-                    return Color.BLACK;
-                }
-                if (normalized < 0.5) {
-                    return Color.BLUE.interpolate(Color.RED, (normalized - 0.2) / 0.3);
-                }
-                return Color.RED.interpolate(Color.YELLOW, (normalized - 0.5) / 0.5);
-            default:
-                return Color.BLACK.interpolate(Color.WHITE, normalized);
-        } // end of switch
     }
 
     /**
-     * Core update method to redraw GUI
+     * Schedule the spectrogram of the current viewport and redraw the overlays
+     *
+     * The render of the previous viewport is cancelled if it is still running.
      */
-    public void updateDisplay() {
+    private void redraw() {
         if (sigMfHelper.getDataBuffer() == null) {
             return;
         }
 
-        // Get pixel width
+        // Get pixel width, the channels are stacked
         int canvasW = (int) spectrogramCanvas.getWidth();
-        // int canvasH = (int) spectrogramCanvas.getHeight();
-        if (canvasW <= 0) {
+        int channels = sigMfHelper.getChannelCount();
+        int stripH = (int) getStripHeight();
+        if (canvasW <= 0 || stripH <= 0) {
             return; // Wait for layout
         }
 
         var global = sigMfHelper.getMetadata().global();
-        String dataType = global.datatype();
-        int bytesPerSample = global.getBytesPerSample();
         double sampleRate = global.sampleRate();
 
-        // waterfall[Time][Frequency]
-        double[][] waterfall = new double[canvasW][fftSize];
-
-        for (int t = 0; t < canvasW; t++) {
-            // t * fftSize determines how many samples per horizontal pixel
-            long sampleIndex = currentSampleOffset + ((long) t * fftSize);
-            int byteOffset = (int) (sampleIndex * bytesPerSample);
-
-            if (byteOffset + (fftSize * bytesPerSample) <= sigMfHelper.getDataBuffer().capacity()) {
-                waterfall[t] = spectralService.computeMagnitudes(
-                    sigMfHelper.getDataBuffer(),
-                    byteOffset,
-                    fftSize,
-                    dataType
-                );
-            } else {
-                // Fill with a very low dB value so the end of file is black
-                waterfall[t] = new double[fftSize];
-                java.util.Arrays.fill(waterfall[t], -150.0);
+        // --------------------------------------------------------------
+        // Compute the spectrogram on the worker pool, paint on FX thread
+        // --------------------------------------------------------------
+        String colorMap = comboColorMap.getValue();
+        SpectrogramRequest request = new SpectrogramRequest(
+            sigMfHelper.getDataBuffer(),
+            sigMfHelper.getDataPath().toAbsolutePath().toString(),
+            sigMfHelper.getDecoder(),
+            currentSampleOffset,
+            canvasW, stripH,
+            fftSize,
+            timeZoom,
+            comboAggregation.getValue() == null ? SpectrogramRequest.MAX_HOLD : comboAggregation.getValue(),
+            comboWindow.getValue(),
+            overlap,
+            null,
+            null,
+            sampleRate,
+            minDecibel, maxDecibel,
+            colorMap == null ? ColorMapService.GRAYSCALE : colorMap);
+        request = request.withPyramid(pyramidService.getPyramid(request))
+            .withSidecar(sigMfHelper.getSpectrumSidecar(fftSize, request.getWindowKey()));
+        if (request.pyramid() == null && dataFileFollower == null && channels == 1) {
+            // not while following, the pyramid would be out of date right away
+            requestPyramid(request);
+        }
+        if (!request.usesPyramid() && !request.usesSidecar()) {
+            // the samples are read, load the next viewports in the scroll direction
+            readAheadService.onViewport(sigMfHelper.getDataBuffer(), sigMfHelper.getDecoder().getBytesPerSample(),
+                currentSampleOffset, canvasW * getSamplesPerPixel());
+            showReadAhead();
+        }
+        if (channels == 1) {
+            CompletableFuture<SpectrogramFrame> future = renderService.renderLatest(request, displayedFrame);
+            long generation = renderService.getGeneration();
+            latestGeneration = generation;
+            future.thenAccept(frame -> Platform.runLater(() -> renderSpectrogram(frame, generation)))
+                .exceptionally(this::logRenderFailure);
+        } else {
+            // one strip per channel, rendered together
+            List<SpectrogramRequest> requests = new ArrayList<>(channels);
+            for (int c = 0; c < channels; c++) {
+                requests.add(request.withDecoder(sigMfHelper.getDecoder(c)));
             }
+            CompletableFuture<List<SpectrogramFrame>> future =
+                renderService.renderLatest(requests, displayedChannelFrames);
+            long generation = renderService.getGeneration();
+            latestGeneration = generation;
+            future.thenAccept(frames -> Platform.runLater(() -> renderChannels(frames, generation)))
+                .exceptionally(this::logRenderFailure);
         }
 
         // update labels and Rectangles associated with annotations
@@ -1004,10 +1450,10 @@ public class MainController {
         // selection rectangle
         if (selectionRect != null) {
             double canvasWD = spectrogramCanvas.getWidth();
-            long samplesInView = (long)canvasW * fftSize;
+            long samplesInView = (long)canvasW * getSamplesPerPixel();
 
             // Calculate new X based on current scroll offset
-            double newX = ((double)(selectionStartSample - currentSampleOffset) / samplesInView) * canvasWD;
+            double newX = ((double)(selectionStartSample - getViewStartSample()) / samplesInView) * canvasWD;
             double newWidth = (selectionStartWidthSamples / samplesInView) * canvasWD;
 
             selectionRect.setX(newX);
@@ -1025,7 +1471,7 @@ public class MainController {
         double labelWidth = 60;
         for (int i = 0; i <= 4; i++) {
             double xPixel = (canvasW * 0.25) * i;
-            long sampleAtPixel = currentSampleOffset + ((long) (xPixel * fftSize));
+            long sampleAtPixel = getViewStartSample() + ((long) (xPixel * getSamplesPerPixel()));
             double seconds = (double) sampleAtPixel / sampleRate;
 
             Line tick = new Line(xPixel, 0, xPixel, 5);
@@ -1045,18 +1491,99 @@ public class MainController {
         rightAxisSpacer.setMinWidth(rightPanel.getWidth());
 
         updateRulers();
-        renderSpectrogram(waterfall);
+    }
+
+    /**
+     * Get the number of samples covered by a pixel column of the spectrogram
+     * @return Samples per pixel (FFT hop size * timeZoom)
+     */
+    private long getSamplesPerPixel() {
+        return (long) SpectrogramRequest.getHopSize(fftSize, overlap) * timeZoom;
+    }
+
+    /**
+     * Get the first sample of the leftmost pixel column
+     *
+     * The spectrogram columns start on a multiple of the samples per pixel
+     * ({@link SpectrogramRequest#getFirstColumn()}), the overlays are placed
+     * from the same sample so they stay on the pixels under them.
+     * @return First sample shown
+     */
+    private long getViewStartSample() {
+        long samplesPerPixel = getSamplesPerPixel();
+        return Math.floorDiv(currentSampleOffset, samplesPerPixel) * samplesPerPixel;
+    }
+
+    /**
+     * Update the scroll bar range for the samples in view
+     */
+    private void updateScrollRange() {
+        long samplesInView = (long) (spectrogramCanvas.getWidth() * getSamplesPerPixel());
+
+        // Ensure we don't calculate a negative Max
+        fileScrollBar.setMax(Math.max(0, totalSamples - samplesInView));
+        fileScrollBar.setBlockIncrement(Math.max(1, samplesInView / 2));
+        if (fileScrollBar.getValue() > fileScrollBar.getMax()) {
+            fileScrollBar.setValue(fileScrollBar.getMax());
+        }
+    }
+
+    /**
+     * Load (or build in the background) the spectrogram pyramid and the
+     * spectrum sidecar for the current file and FFT size, redraw once they
+     * are available.
+     * @param request The current viewport
+     */
+    private void requestPyramid(SpectrogramRequest request) {
+        CompletableFuture<SpectrogramPyramid> future = pyramidService.requestPyramid(
+            request, sigMfHelper.getSpectrumSidecarPath(request.fftSize()));
+        if (future == pendingPyramid) {
+            return; // already waiting for it
+        }
+        pendingPyramid = future;
+        future.thenAccept(pyramid -> Platform.runLater(() -> {
+            if (pyramid != null && pendingPyramid == future) {
+                // the build also wrote the spectrum sidecar
+                if (sigMfHelper.getSpectrumSidecar(request.fftSize(), request.getWindowKey()) == null) {
+                    sigMfHelper.detectSpectrumSidecars();
+                }
+                updateDisplay();
+            }
+        })).exceptionally(ex -> {
+            // cancelled when another file or FFT size was requested
+            MC_LOGGER.debug("Spectrogram pyramid not built", ex);
+            return null;
+        });
+    }
+
+    /**
+     * Zoom out so that the whole file fits in the spectrogram
+     * @param event The event that triggered this handler
+     */
+    @FXML
+    private void handleFitFile(ActionEvent event) {
+        double canvasW = spectrogramCanvas.getWidth();
+        if (totalSamples <= 0 || canvasW <= 0) {
+            return;
+        }
+        int exponent = 0;
+        long hopSize = SpectrogramRequest.getHopSize(fftSize, overlap);
+        while (exponent < zoomSlider.getMax() && canvasW * hopSize * (1L << exponent) < totalSamples) {
+            exponent++;
+        }
+        fileScrollBar.setValue(0);
+        zoomSlider.setValue(exponent);
     }
 
     private void updateRect(Rectangle rect, SigMfAnnotation annot) {
         double canvasW = spectrogramCanvas.getWidth();
-        double canvasH = spectrogramCanvas.getHeight();
+        double canvasH = getStripHeight(); // annotations are shown on the first channel
         double sampleRate = sigMfHelper.getMetadata().global().sampleRate();
-        double centerFreq = sigMfHelper.getMetadata().captures().get(0).frequency();
+        double centerFreq = sigMfHelper.getCaptureIndex().getFrequency(annot.getSampleStart());
 
-        long offsetInSamples = annot.getSampleStart() - currentSampleOffset;
-        double x = (double) offsetInSamples / fftSize;
-        double width = (double) annot.getSampleCount() / fftSize;
+        long offsetInSamples = annot.getSampleStart() - getViewStartSample();
+        double x = (double) offsetInSamples / getSamplesPerPixel();
+        double width = (double) annot.getSampleCount() / getSamplesPerPixel();
 
         // Map Frequency back to 0.0-1.0 range of the current capture bandwidth
         double bw = sampleRate;
@@ -1088,93 +1615,79 @@ public class MainController {
     }
 
     /**
-     * Prepares a {@code Label} and a {@code Rectangle} to represent the
-     * provided annotation
-     * @param data Current Annotation
-     * @return The created rectangle
+     * Add an annotation to the display
+     *
+     * No node is created here, the {@code Rectangle}, {@code Label} and
+     * {@code Tooltip} are bound from the pool while the annotation is on screen.
+     * @param cAnnot Current Annotation
+     * @return The group tracking the annotation
      */
-    private Rectangle createRectangleForData(SigMfAnnotation cAnnot) {
-        Rectangle rect = new Rectangle(); // Position will be set by updateDisplay()
-
-        rect.setFill(annotationColorPicker.getValue());
-        rect.setStroke(annotationColorPicker.getValue());
-        rect.setStrokeWidth(2);
-        rect.setCursor(Cursor.HAND);
-
-        // Create the Label
-        // --------------------------------------
-        Label label = new Label(cAnnot.getLabel() != null ? cAnnot.getLabel() : "Unknown");
-        label.setTextFill(Color.WHITE);
-        label.setStyle("-fx-font-family: 'Consolas'; -fx-font-size: 11px; -fx-background-color: rgba(0,0,0,0.5);");
-        label.setPadding(new Insets(2));
-        label.setMouseTransparent(true); // So the label doesn't block clicking the box
-
-        // set up the tool tip
-        String tooltipText = String.format("Label: %s%nComment: %s",
-                            cAnnot.getLabel() != null ? cAnnot.getLabel() : "N/A",
-                            cAnnot.getComment() != null ? cAnnot.getComment() : "No comment");
-
-        Tooltip tooltip = new Tooltip(tooltipText);
-        tooltip.setStyle("-fx-font-family: 'Consolas'; -fx-background-color: #333; -fx-text-fill: #2ecc71;");
-        tooltip.setShowDelay(javafx.util.Duration.millis(300)); // Show quickly
-        Tooltip.install(rect, tooltip);
-
-        // Store the association
-        // --------------------------------------
+    private AnnotationGroup addAnnotation(SigMfAnnotation cAnnot) {
         AnnotationGroup group = new AnnotationGroup();
-        group.rect = rect;
-        group.label = label;
         group.data = cAnnot;
-        group.tooltip = tooltip;
-        annotationMap.put(rect, group);
-
-        annotationOverlay.getChildren().addAll(rect, label);
-
-        rect.setOnMouseClicked(e -> {
-            // do not let event bubble up to the pane
-            e.consume();
-
-            if (e.getButton() == MouseButton.SECONDARY) {
-                // NOTE: Support removing selected annotation
-                //       with the right mouse button.
-                annotationOverlay.getChildren().remove(rect);
-                removeAnnotation(rect);
+        annotationGroups.add(group);
+        annotationIndex.put(group, cAnnot);
+        return group;
+    }
 
-                // disable the selectionAnnotaiton and button for analyze selection
-                selectionAnnotation = null;
-                btnAnalyzeSelection.setDisable(true);
+    /**
+     * Handle a click on the rectangle of an annotation
+     * @param e The mouse event, its source is the rectangle
+     */
+    private void handleAnnotationClicked(MouseEvent e) {
+        // do not let event bubble up to the pane
+        e.consume();
+        if (!(((Rectangle) e.getSource()).getUserData() instanceof AnnotationGroup group)) {
+            return; // the rectangle was released meanwhile
+        }
 
-            } else {
-                // Note: update selection to point to the current annotation
-                resetSelection();
+        if (e.getButton() == MouseButton.SECONDARY) {
+            // NOTE: Support removing selected annotation
+            //       with the right mouse button.
+            removeAnnotation(group);
 
-                // Assign selected annotation to the one being clicked on.
-                selectionAnnotation = cAnnot;
-                btnAnalyzeSelection.setDisable(false);
+            // disable the selectionAnnotaiton and button for analyze selection
+            selectionAnnotation = null;
+            btnAnalyzeSelection.setDisable(true);
 
-                // prepare current annotation for analysis
-                selectionStartSample = cAnnot.getSampleStart();
-                selectionStartWidthSamples = cAnnot.getSampleCount();
-                selectionFreqLow =  cAnnot.getFreqLowerEdge();
-                selectionFreqHigh = cAnnot.getFreqUpperEdge();
+        } else {
+            selectAnnotation(group);
+        }
+    }
 
-                updateRect(selectionRect, selectionAnnotation);
-                selectionRect.setVisible(true);
+    /**
+     * Make an annotation the current selection
+     * @param group The annotation to select
+     */
+    private void selectAnnotation(AnnotationGroup group) {
+        SigMfAnnotation cAnnot = group.data;
+        // Note: update selection to point to the current annotation
+        resetSelection();
 
-                //---------------  update UI  ------------------------
-                selectionNameField.setText(cAnnot.getLabel());
-                selectionDescField.setText(cAnnot.getComment());
-                selectionComplete = true;
-                lblFreqLow.setText(
-                    String.format("%.6f MHz", cAnnot.getFreqLowerEdge() / 1e6));
-                lblFreqHigh.setText(
-                    String.format("%.6f MHz", cAnnot.getFreqUpperEdge() / 1e6));
-                lblSelectionStart.setText(String.format("%d samples", cAnnot.getSampleStart()));
-                lblSelectionDur.setText(String.format("%d samples", cAnnot.getSampleCount()));
-                updateDisplay();
-            }
-        });
-        return rect;
+        // Assign selected annotation to the one being clicked on.
+        selectionAnnotation = cAnnot;
+        btnAnalyzeSelection.setDisable(false);
+
+        // prepare current annotation for analysis
+        selectionStartSample = cAnnot.getSampleStart();
+        selectionStartWidthSamples = cAnnot.getSampleCount();
+        selectionFreqLow =  cAnnot.getFreqLowerEdge();
+        selectionFreqHigh = cAnnot.getFreqUpperEdge();
+
+        updateRect(selectionRect, selectionAnnotation);
+        selectionRect.setVisible(true);
+
+        //---------------  update UI  ------------------------
+        selectionNameField.setText(cAnnot.getLabel());
+        selectionDescField.setText(cAnnot.getComment());
+        selectionComplete = true;
+        lblFreqLow.setText(
+            String.format("%.6f MHz", cAnnot.getFreqLowerEdge() / 1e6));
+        lblFreqHigh.setText(
+            String.format("%.6f MHz", cAnnot.getFreqUpperEdge() / 1e6));
+        lblSelectionStart.setText(String.format("%d samples", cAnnot.getSampleStart()));
+        lblSelectionDur.setText(String.format("%d samples", cAnnot.getSampleCount()));
+        updateDisplay();
     }
 
 
@@ -1184,11 +1697,24 @@ public class MainController {
      * This function will check if user enable/disabled annotations
      * It will pull from the default and custom color maps
      * It will determine which annotations are actually visible in
-     * in the current time frame.
+     * in the current time frame.  Only the annotations the index finds in
+     * the time and frequency window of the view are updated.  The ones that
+     * left the view give their nodes back to the pool before the ones that
+     * came in are bound, so the nodes are reused.
      */
     public void updateAnnotationDisplay() {
+        List<AnnotationGroup> inView = queryAnnotationsInView();
+        Set<AnnotationGroup> stillShown = new HashSet<>(inView);
+        for (AnnotationGroup group : shownAnnotations) {
+            if (!stillShown.contains(group)) {
+                annotationNodes.release(group);
+            }
+        }
+        shownAnnotations = inView;
 
-        annotationMap.forEach((rect, group) -> {
+        inView.forEach(group -> {
+            annotationNodes.bind(group);
+            Rectangle rect = group.rect;
             // update rect (x,y,width, height) based on annotation information
             updateRect(rect, group.data);
 
@@ -1204,6 +1730,37 @@ public class MainController {
             group.label.setVisible(rect.isVisible());
 
         });
+        annotationNodes.trim();
+    }
+
+    /**
+     * Find the annotations intersecting the samples and frequencies in view
+     * @return The annotations in view
+     */
+    private List<AnnotationGroup> queryAnnotationsInView() {
+        if (annotationIndex.size() == 0 || sigMfHelper.getMetadata() == null) {
+            return new ArrayList<>();
+        }
+        long fromSample = getViewStartSample();
+        long toSample = fromSample + (long) Math.ceil(spectrogramCanvas.getWidth()) * getSamplesPerPixel();
+
+        // band covered by the captures in view
+        double sampleRate = sigMfHelper.getMetadata().global().sampleRate();
+        CaptureIndex captures = sigMfHelper.getCaptureIndex();
+        double freqLow = Double.NEGATIVE_INFINITY;
+        double freqHigh = Double.POSITIVE_INFINITY;
+        if (captures.size() > 0) {
+            freqLow = Double.POSITIVE_INFINITY;
+            freqHigh = Double.NEGATIVE_INFINITY;
+            int last = captures.indexOf(Math.max(fromSample, toSample - 1));
+            for (int i = captures.indexOf(fromSample); i <= last; i++) {
+                Double frequency = captures.get(i).frequency();
+                double centerFreq = frequency == null ? 0.0 : frequency;
+                freqLow = Math.min(freqLow, centerFreq - sampleRate / 2);
+                freqHigh = Math.max(freqHigh, centerFreq + sampleRate / 2);
+            }
+        }
+        return annotationIndex.query(fromSample, toSample, freqLow, freqHigh);
     }
 
     @FXML
@@ -1252,42 +1809,78 @@ public class MainController {
     }
 
     /**
-     * This is your main rendering loop.
-     * It connects the math (SpectralService) to the UI (Canvas).
+     * Paint a finished spectrogram frame.
      *
-     * This writes directly to the PixelWriter for speed.
-     * @param waterfallData The input data
+     * The frame is computed by {@code SpectrogramRenderService} on the worker
+     * pool, this only copies the pixel buffer to the canvas in a single call.
+     * Frames of an older generation (or an outdated canvas size) are dropped.
+     * The painted frame is kept so that scrolling only computes the newly
+     * exposed columns.
+     * @param frame The rendered frame
+     * @param generation Render generation of the frame
+     */
+    private void renderSpectrogram(SpectrogramFrame frame, long generation) {
+        SpectrogramRequest request = frame.request();
+        if (generation != latestGeneration
+                || request.width() != (int) spectrogramCanvas.getWidth()
+                || request.height() != (int) spectrogramCanvas.getHeight()) {
+            return;
+        }
+
+        PixelWriter pw = spectrogramCanvas.getGraphicsContext2D().getPixelWriter();
+        pw.setPixels(0, 0, request.width(), request.height(),
+            PixelFormat.getIntArgbPreInstance(), frame.pixels(), 0, request.width());
+        displayedFrame = frame;
+    }
+
+    /**
+     * Paint the finished spectrograms of the channels, stacked from the first channel at the top
+     * @param frames The rendered frames, by channel
+     * @param generation Render generation of the frames
      */
-    private void renderSpectrogram(double[][] waterfallData) {
+    private void renderChannels(List<SpectrogramFrame> frames, long generation) {
+        int width = (int) spectrogramCanvas.getWidth();
+        int height = (int) spectrogramCanvas.getHeight();
+        int stripH = (int) getStripHeight();
+        SpectrogramRequest first = frames.get(0).request();
+        if (generation != latestGeneration
+                || frames.size() != sigMfHelper.getChannelCount()
+                || first.width() != width
+                || first.height() != stripH) {
+            return;
+        }
+
         GraphicsContext gc = spectrogramCanvas.getGraphicsContext2D();
         PixelWriter pw = gc.getPixelWriter();
+        for (int c = 0; c < frames.size(); c++) {
+            pw.setPixels(0, c * stripH, width, stripH,
+                PixelFormat.getIntArgbPreInstance(), frames.get(c).pixels(), 0, width);
+        }
+        // rows left over by the division of the height
+        gc.setFill(Color.BLACK);
+        gc.fillRect(0, frames.size() * stripH, width, height - frames.size() * stripH);
+        displayedChannelFrames = frames;
+    }
 
-        int canvasW = (int) spectrogramCanvas.getWidth();
-        int canvasH = (int) spectrogramCanvas.getHeight();
-        int fftSize = waterfallData[0].length;
-        double fs = sigMfHelper.getMetadata().global().sampleRate();
-
-        // NOTE: waterfallData uses Common Math FFT with no normalization
-        //       that scales by 1/fftSize**2
-        //       Also convert from dB/bin -> dB/Hz
-        double binBandwidth = fs / fftSize;
-        double conversion = 10 * Math.log10(binBandwidth) + 20 * Math.log10(fftSize);
-
-        for (int t = 0; t < canvasW; t++) {
-            for (int f = 0; f < canvasH; f++) {
-                // Map Canvas Y pixel to FFT Bin
-                // We scale the fftSize down to the canvasH
-                int fftBinIndex = (int) ((double) f / canvasH * fftSize);
-
-                // NOTE: trying to compensate so threshold is not dependent of NFFT
-                double db = waterfallData[t][fftBinIndex] - conversion;
-                // double db = waterfallData[t][fftBinIndex];
-                Color color = getColorForMagnitude(db);
-
-                // Draw time on X, Frequency on Y (inverted so low freq is bottom)
-                pw.setColor(t, canvasH - 1 - f, color);
-            }
+    /**
+     * Log a failed render, a render superseded by a newer viewport is not a failure
+     * @param ex The exception completing the render
+     * @return null
+     */
+    private <T> T logRenderFailure(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException ? ex.getCause() : ex;
+        if (!(cause instanceof CancellationException)) {
+            MC_LOGGER.error("Failed to compute the spectrogram", ex);
         }
+        return null;
+    }
+
+    /**
+     * Get the height of the spectrogram of a channel, the channels are stacked on the canvas
+     * @return Height (pixels) of a channel strip
+     */
+    private double getStripHeight() {
+        return Math.floor(spectrogramCanvas.getHeight() / sigMfHelper.getChannelCount());
     }
 
     /**
@@ -1300,32 +1893,40 @@ public class MainController {
         }
 
         var global = sigMfHelper.getMetadata().global();
-        var capture = sigMfHelper.getMetadata().captures().get(0);
+        // capture segment in the middle of the view
+        long centerSample = getViewStartSample() + (long) (spectrogramCanvas.getWidth() * getSamplesPerPixel() / 2);
 
-        double centerFreq = capture.frequency();
+        double centerFreq = sigMfHelper.getCaptureIndex().getFrequency(centerSample);
         double sampleRate = global.sampleRate();
-        double canvasH = spectrogramCanvas.getHeight();
-
-        // Create 5 markers: Top, Mid-Top, Center, Mid-Bottom, Bottom
-        int numMarkers = 5;
-        for (int i = 0; i < numMarkers; i++) {
-            // Calculate frequency for this marker
-            // i=0 is top (+fs/2), i=4 is bottom (-fs/2)
-            double percentage = (double) i / (numMarkers - 1);
-            double freqOffset = (sampleRate / 2.0) - (percentage * sampleRate);
-            double freqMhz = (centerFreq + freqOffset) / 1e6;
-
-            Label label = new Label(String.format("%.2f MHz", freqMhz));
-            label.setTextFill(Color.LIGHTGRAY);
-            label.setStyle("-fx-font-family: 'Consolas'; -fx-font-size: 10px;");
-
-            // Position the label
-            // We subtract a small amount (5px) to center the text vertically on the tick
-            double yPos = (percentage * canvasH) - 5;
-            label.setLayoutY(Math.max(0, yPos));
-            label.setLayoutX(5); // Slight margin from the left edge
-
-            frequencyRuler.getChildren().add(label);
+        int channels = sigMfHelper.getChannelCount();
+        double stripH = getStripHeight();
+
+        // Create 5 markers: Top, Mid-Top, Center, Mid-Bottom, Bottom (3 per channel when stacked)
+        int numMarkers = channels == 1 ? 5 : 3;
+        for (int c = 0; c < channels; c++) {
+            for (int i = 0; i < numMarkers; i++) {
+                // Calculate frequency for this marker
+                // i=0 is top (+fs/2), i=numMarkers-1 is bottom (-fs/2)
+                double percentage = (double) i / (numMarkers - 1);
+                double freqOffset = (sampleRate / 2.0) - (percentage * sampleRate);
+                double freqMhz = (centerFreq + freqOffset) / 1e6;
+
+                String text = String.format("%.2f MHz", freqMhz);
+                if (channels > 1 && i == 0) {
+                    text = "CH " + c + "  " + text;
+                }
+                Label label = new Label(text);
+                label.setTextFill(Color.LIGHTGRAY);
+                label.setStyle("-fx-font-family: 'Consolas'; -fx-font-size: 10px;");
+
+                // Position the label
+                // We subtract a small amount (5px) to center the text vertically on the tick
+                double yPos = c * stripH + (percentage * stripH) - 5;
+                label.setLayoutY(Math.max(c * stripH, yPos));
+                label.setLayoutX(5); // Slight margin from the left edge
+
+                frequencyRuler.getChildren().add(label);
+            }
         }
     }
 
@@ -1477,7 +2078,7 @@ public class MainController {
         }
 
         double inputFs = sigMfHelper.getMetadata().global().sampleRate();
-        double inputFc = sigMfHelper.getMetadata().captures().get(0).frequency();
+        double inputFc = sigMfHelper.getCaptureIndex().getFrequency(selectionStartSample);
 
         // =======================================================
         // NOTE: Send a little exta bw and time for PSD analysis
@@ -1493,16 +2094,17 @@ public class MainController {
 
         final double finalTargetFs = targetFs;
         // final double finalStartTime = targetStart / inputFs;
-        String dataType = sigMfHelper.getMetadata().global().datatype();
+        SampleDecoder decoder = sigMfHelper.getDecoder(selectionChannel);
         MC_LOGGER.info(String.format(
             "Down sample by %d from %.2f to %.2f",
             down, inputFs, targetFs));
         asyncDownConvertService.extractAndDownConvertAsync(
-                sigMfHelper.getDataBuffer(), targetStart, (int) targetWidth, dataType, center / inputFs, down, fastDownConverter.isSelected())
+                sigMfHelper.getDataBuffer(), targetStart, (int) targetWidth, decoder, center / inputFs, down, fastDownConverter.isSelected())
             .thenAccept(data -> {
             // Build the IqData object
             IqData iqData = new IqData(
-                "current", data, finalTargetFs, this.sigMfHelper.getMetadata(), selectionAnnotation);
+                "current", data, finalTargetFs, this.sigMfHelper.getMetadata(),
+                this.sigMfHelper.getCaptureIndex(), selectionAnnotation);
 
             // NOTE: return to UI thread
             Platform.runLater(() -> {
@@ -19,7 +19,9 @@ public class RawSignalImportController {
 
     @FXML
     public void initialize() {
-        datatypeCombo.getItems().addAll("cf32_le", "cf32_be", "ci16_le", "ci16_be", "cf64_le", "ci8", "cu8");
+        datatypeCombo.getItems().addAll("cf32_le", "cf32_be", "ci16_le", "ci16_be", "cf64_le", "cf64_be",
+            "ci32_le", "ci32_be", "cu16_le", "cu16_be", "ci8", "cu8",
+            "rf32_le", "rf32_be", "ri16_le", "ri16_be", "ri8", "ru8");
 
     }
     public void populateDefaults(File file) {
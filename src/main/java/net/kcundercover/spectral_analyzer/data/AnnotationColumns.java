@@ -0,0 +1,461 @@
+package net.kcundercover.spectral_analyzer.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import net.kcundercover.spectral_analyzer.sigmf.SigMfAnnotation;
+
+/**
+ * Column store of the annotations shown in the table
+ *
+ * Every field of the annotations is kept in a primitive array indexed by
+ * the position of the annotation, labels are interned so a label shared by
+ * many annotations is stored once.  The order of the annotations by a
+ * column is a permutation of the positions, computed with a radix sort on
+ * the first request and kept until the column is edited.
+ *
+ * Edits of the label and comment are kept here until {@link #writeBack()}
+ * copies them to the annotations.
+ */
+public final class AnnotationColumns {
+
+    /** Columns the annotations can be sorted by */
+    public enum Column {
+        SELECTED, LABEL, COMMENT, START, DURATION, CENTER_FREQ, BANDWIDTH
+    }
+
+    private final int size;
+    private final double sampleRate;
+    private final AnnotationGroup[] groups;
+    private final long[] sampleStarts;
+    private final long[] sampleCounts;
+    private final double[] centerFreqs; // NaN without frequency edges
+    private final double[] bandwidths;
+    private final int[] labelIds;
+    private final String[] comments;
+    private final BitSet selected;
+
+    // ---- interned labels ----
+    private final List<String> labels = new ArrayList<>();
+    private final Map<String, Integer> labelIdByText = new HashMap<>();
+
+    /** Ascending order of the positions by column, built on demand */
+    private final Map<Column, int[]> orders = new EnumMap<>(Column.class);
+
+    /** Rank of each label id in the order of {@link Column#LABEL} */
+    private long[] labelRanks;
+
+    private AnnotationColumns(AnnotationGroup[] groups, double sampleRate) {
+        this.size = groups.length;
+        this.sampleRate = sampleRate;
+        this.groups = groups;
+        this.sampleStarts = new long[size];
+        this.sampleCounts = new long[size];
+        this.centerFreqs = new double[size];
+        this.bandwidths = new double[size];
+        this.labelIds = new int[size];
+        this.comments = new String[size];
+        this.selected = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            SigMfAnnotation data = groups[i].data;
+            sampleStarts[i] = data.getSampleStart();
+            sampleCounts[i] = data.getSampleCount();
+            Double low = data.getFreqLowerEdge();
+            Double high = data.getFreqUpperEdge();
+            boolean hasEdges = low != null && high != null;
+            centerFreqs[i] = hasEdges ? 0.5 * (low + high) : Double.NaN;
+            bandwidths[i] = hasEdges ? high - low : Double.NaN;
+            labelIds[i] = intern(data.getLabel());
+            comments[i] = data.getComment();
+        }
+    }
+
+    /**
+     * Build the columns of a set of annotations
+     * @param groups The annotations, in the order of the positions
+     * @param sampleRate Sample rate of the signal (to convert samples to seconds)
+     * @return The columns
+     */
+    public static AnnotationColumns of(Collection<AnnotationGroup> groups, double sampleRate) {
+        return new AnnotationColumns(groups.toArray(new AnnotationGroup[0]), sampleRate);
+    }
+
+    /**
+     * Get the number of annotations
+     * @return Number of positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the annotation at a position
+     * @param index Position of the annotation
+     * @return The annotation group (from MainController.java)
+     */
+    public AnnotationGroup getGroup(int index) {
+        return groups[index];
+    }
+
+    /**
+     * First sample of an annotation
+     * @param index Position of the annotation
+     * @return Sample start
+     */
+    public long getSampleStart(int index) {
+        return sampleStarts[index];
+    }
+
+    /**
+     * Number of samples of an annotation
+     * @param index Position of the annotation
+     * @return Sample count
+     */
+    public long getSampleCount(int index) {
+        return sampleCounts[index];
+    }
+
+    /**
+     * Start of an annotation
+     * @param index Position of the annotation
+     * @return Start time (seconds)
+     */
+    public double getStartTime(int index) {
+        return sampleStarts[index] / sampleRate;
+    }
+
+    /**
+     * Duration of an annotation
+     * @param index Position of the annotation
+     * @return Duration (seconds)
+     */
+    public double getDuration(int index) {
+        return sampleCounts[index] / sampleRate;
+    }
+
+    /**
+     * Center frequency of an annotation
+     * @param index Position of the annotation
+     * @return Center frequency (Hz), NaN without frequency edges
+     */
+    public double getCenterFreq(int index) {
+        return centerFreqs[index];
+    }
+
+    /**
+     * Bandwidth of an annotation
+     * @param index Position of the annotation
+     * @return Bandwidth (Hz), NaN without frequency edges
+     */
+    public double getBandwidth(int index) {
+        return bandwidths[index];
+    }
+
+    /**
+     * Label of an annotation
+     * @param index Position of the annotation
+     * @return The label
+     */
+    public String getLabel(int index) {
+        return labels.get(labelIds[index]);
+    }
+
+    /**
+     * Comment of an annotation
+     * @param index Position of the annotation
+     * @return The comment
+     */
+    public String getComment(int index) {
+        return comments[index];
+    }
+
+    /**
+     * Check if an annotation is selected
+     * @param index Position of the annotation
+     * @return True if selected
+     */
+    public synchronized boolean isSelected(int index) {
+        return selected.get(index);
+    }
+
+    /**
+     * Edit the label of an annotation
+     * @param index Position of the annotation
+     * @param label New label
+     */
+    public synchronized void setLabel(int index, String label) {
+        labelIds[index] = intern(label);
+        orders.remove(Column.LABEL);
+    }
+
+    /**
+     * Edit the comment of an annotation (e.g. from a capability running in the background)
+     * @param index Position of the annotation
+     * @param comment New comment
+     */
+    public synchronized void setComment(int index, String comment) {
+        comments[index] = comment;
+        orders.remove(Column.COMMENT);
+    }
+
+    /**
+     * Select or deselect an annotation
+     * @param index Position of the annotation
+     * @param isSelected True to select it
+     */
+    public synchronized void setSelected(int index, boolean isSelected) {
+        selected.set(index, isSelected);
+        orders.remove(Column.SELECTED);
+    }
+
+    /**
+     * Get the selected annotations
+     * @return A copy of the selected positions
+     */
+    public synchronized BitSet getSelected() {
+        return (BitSet) selected.clone();
+    }
+
+    /**
+     * Get the number of selected annotations
+     * @return Number of selected positions
+     */
+    public synchronized int getSelectedCount() {
+        return selected.cardinality();
+    }
+
+    /**
+     * Get the positions in ascending order of a column
+     *
+     * The order is stable, equal values keep the order of the positions.
+     * The array is shared, it must not be modified.
+     * @param column The column
+     * @return Permutation of the positions
+     */
+    public synchronized int[] order(Column column) {
+        return orders.computeIfAbsent(column, this::sort);
+    }
+
+    /**
+     * Get the value of a numeric column
+     * @param column START, DURATION (seconds), CENTER_FREQ or BANDWIDTH (Hz)
+     * @param index Position of the annotation
+     * @return The value
+     */
+    public double getValue(Column column, int index) {
+        return switch (column) {
+            case START -> getStartTime(index);
+            case DURATION -> getDuration(index);
+            case CENTER_FREQ -> centerFreqs[index];
+            case BANDWIDTH -> bandwidths[index];
+            default -> throw new IllegalArgumentException(column + " is not a numeric column");
+        };
+    }
+
+    /**
+     * Find the annotations with the value of a numeric column in a range
+     *
+     * The range is found by binary search in the order of the column, the
+     * annotations without a value (NaN) never match.
+     * @param column START, DURATION (seconds), CENTER_FREQ or BANDWIDTH (Hz)
+     * @param low Lower bound of the range (may be -infinity)
+     * @param includeLow True if the lower bound is in the range
+     * @param high Upper bound of the range (may be +infinity)
+     * @param includeHigh True if the upper bound is in the range
+     * @return The positions of the annotations in the range
+     */
+    public BitSet findRange(Column column, double low, boolean includeLow, double high, boolean includeHigh) {
+        int[] order = order(column);
+        // first position not below the range, first position above the range
+        int from = search(order, column, low, !includeLow);
+        int to = search(order, column, high, includeHigh);
+        BitSet found = new BitSet(size);
+        for (int k = from; k < to; k++) {
+            int index = order[k];
+            if (!Double.isNaN(getValue(column, index))) {
+                found.set(index);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find the annotations with a label
+     *
+     * The test runs once per distinct label, the annotations of a label are a
+     * run in the order of {@link Column#LABEL}.
+     * @param test Test of a label (null for annotations without label)
+     * @return The positions of the annotations with a matching label
+     */
+    public synchronized BitSet findLabels(Predicate<String> test) {
+        int[] order = order(Column.LABEL);
+        BitSet found = new BitSet(size);
+        for (int id = 0; id < labels.size(); id++) {
+            if (!test.test(labels.get(id))) {
+                continue;
+            }
+            long rank = labelRanks[id];
+            int from = searchRank(order, rank);
+            int to = searchRank(order, rank + 1);
+            for (int k = from; k < to; k++) {
+                found.set(order[k]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Copy the edited labels and comments to the annotations
+     */
+    public synchronized void writeBack() {
+        for (int i = 0; i < size; i++) {
+            SigMfAnnotation data = groups[i].data;
+            data.setLabel(getLabel(i));
+            data.setComment(comments[i]);
+        }
+    }
+
+    // ---- sorting ----
+
+    private int intern(String label) {
+        return labelIdByText.computeIfAbsent(label, text -> {
+            labels.add(text);
+            return labels.size() - 1;
+        });
+    }
+
+    private int[] sort(Column column) {
+        long[] keys = new long[size];
+        switch (column) {
+            case SELECTED -> {
+                for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+                    keys[i] = 1;
+                }
+            }
+            case LABEL -> {
+                // rank of the labels, the annotations are sorted by rank
+                Integer[] ids = new Integer[labels.size()];
+                Arrays.setAll(ids, i -> i);
+                Arrays.sort(ids, Comparator.comparing(labels::get, Comparator.nullsFirst(Comparator.naturalOrder())));
+                long[] ranks = new long[ids.length];
+                for (int rank = 0; rank < ids.length; rank++) {
+                    ranks[ids[rank]] = rank;
+                }
+                labelRanks = ranks;
+                for (int i = 0; i < size; i++) {
+                    keys[i] = ranks[labelIds[i]];
+                }
+            }
+            case COMMENT -> {
+                // free text, no primitive key
+                Integer[] positions = new Integer[size];
+                Arrays.setAll(positions, i -> i);
+                Arrays.sort(positions, Comparator.comparing(i -> comments[i],
+                    Comparator.nullsFirst(Comparator.naturalOrder())));
+                return Arrays.stream(positions).mapToInt(Integer::intValue).toArray();
+            }
+            case START -> Arrays.setAll(keys, i -> sampleStarts[i] ^ Long.MIN_VALUE);
+            case DURATION -> Arrays.setAll(keys, i -> sampleCounts[i] ^ Long.MIN_VALUE);
+            case CENTER_FREQ -> Arrays.setAll(keys, i -> doubleKey(centerFreqs[i]));
+            case BANDWIDTH -> Arrays.setAll(keys, i -> doubleKey(bandwidths[i]));
+            default -> throw new IllegalArgumentException("Unknown column " + column);
+        }
+        return radixOrder(keys);
+    }
+
+    /**
+     * Binary search of a value in the order of a numeric column
+     * @param order Order of the column
+     * @param column The column
+     * @param value Value searched
+     * @param after True to skip the positions equal to the value
+     * @return First position of the order above the value (or not below it)
+     */
+    private int search(int[] order, Column column, double value, boolean after) {
+        int lo = 0;
+        int hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            // same order as the radix sort: -0.0 before 0.0, NaN last
+            int cmp = Double.compare(getValue(column, order[mid]), value);
+            if (cmp < 0 || (after && cmp == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int searchRank(int[] order, long rank) {
+        int lo = 0;
+        int hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (labelRanks[labelIds[order[mid]]] < rank) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Map a double to a long with the same unsigned order (NaN last)
+     * @param value The value
+     * @return The key
+     */
+    static long doubleKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    /**
+     * Stable sort of the positions by unsigned key, least significant byte first
+     * @param keys Key of each position
+     * @return Permutation of the positions in ascending order of the keys
+     */
+    static int[] radixOrder(long[] keys) {
+        int n = keys.length;
+        int[] order = new int[n];
+        Arrays.setAll(order, i -> i);
+        if (n < 2) {
+            return order;
+        }
+        // histogram of every byte in one pass
+        int[][] counts = new int[Long.BYTES][256];
+        for (long key : keys) {
+            for (int b = 0; b < Long.BYTES; b++) {
+                counts[b][(int) (key >>> (8 * b)) & 0xFF]++;
+            }
+        }
+        int[] next = new int[n];
+        for (int b = 0; b < Long.BYTES; b++) {
+            int shift = 8 * b;
+            int[] count = counts[b];
+            if (count[(int) (keys[0] >>> shift) & 0xFF] == n) {
+                continue; // every key has the same byte
+            }
+            int[] offsets = new int[256];
+            for (int d = 1; d < 256; d++) {
+                offsets[d] = offsets[d - 1] + count[d - 1];
+            }
+            for (int position : order) {
+                next[offsets[(int) (keys[position] >>> shift) & 0xFF]++] = position;
+            }
+            int[] swap = order;
+            order = next;
+            next = swap;
+        }
+        return order;
+    }
+}
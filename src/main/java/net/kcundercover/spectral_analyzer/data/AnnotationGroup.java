@@ -13,6 +13,9 @@ import net.kcundercover.spectral_analyzer.sigmf.SigMfAnnotation;
  * {@code rect} is a overlaying Rectangle to visually show time/frequency position
  * {@code data} is the SigMF Annotation information.
  * {@code tooltip} is the comment from the annotation shown as a tooltip for the rectangle.
+ *
+ * The nodes are pooled, {@code rect}, {@code label} and {@code tooltip}
+ * are null while the annotation is off screen.
  */
 public class AnnotationGroup {
     public Rectangle rect;
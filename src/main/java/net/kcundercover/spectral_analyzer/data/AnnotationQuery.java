@@ -0,0 +1,294 @@
+package net.kcundercover.spectral_analyzer.data;
+
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import net.kcundercover.spectral_analyzer.data.AnnotationColumns.Column;
+
+/**
+ * Query of the annotations of the table
+ *
+ * A query combines conditions on the fields of the annotations with
+ * {@code AND}, {@code OR}, {@code NOT} and parentheses, e.g.
+ * {@code label=wifi AND bw>15e6 AND t in [10,20]}.
+ * <ul>
+ *   <li>{@code t} (or {@code time}, {@code start}) start time in seconds</li>
+ *   <li>{@code dur} (or {@code duration}) duration in seconds</li>
+ *   <li>{@code fc} (or {@code freq}) center frequency in Hz</li>
+ *   <li>{@code bw} (or {@code bandwidth}) bandwidth in Hz</li>
+ *   <li>{@code label} regular expression matching the whole label
+ *       ({@code =} or {@code !=}) or a part of it ({@code ~}), ignoring case</li>
+ * </ul>
+ * Numbers take the operators {@code = != < <= > >=} or {@code in [low,high]}
+ * and may end with {@code k}, {@code M} or {@code G}.  Values with spaces or
+ * parentheses are quoted.
+ *
+ * A numeric condition is a binary search in the order of its column and a
+ * label is tested once per distinct label, so a query does not go through
+ * the annotations one by one.  Conditions are combined as bit sets.
+ */
+public final class AnnotationQuery {
+
+    /** Fields of the queries and the column they search */
+    private static final Map<String, Column> FIELDS = Map.of(
+        "t", Column.START, "time", Column.START, "start", Column.START,
+        "dur", Column.DURATION, "duration", Column.DURATION,
+        "fc", Column.CENTER_FREQ, "freq", Column.CENTER_FREQ,
+        "bw", Column.BANDWIDTH, "bandwidth", Column.BANDWIDTH,
+        "label", Column.LABEL);
+
+    /** Condition evaluated to the positions of the matching annotations */
+    @FunctionalInterface
+    private interface Node {
+        BitSet evaluate(AnnotationColumns columns);
+    }
+
+    private final String text;
+    private final Node root;
+
+    private AnnotationQuery(String text, Node root) {
+        this.text = text;
+        this.root = root;
+    }
+
+    /**
+     * Parse a query
+     * @param text The query, e.g. {@code label=wifi AND bw>15e6 AND t in [10,20]}
+     * @return The query
+     * @throws IllegalArgumentException The query is not valid (the message tells where)
+     */
+    public static AnnotationQuery parse(String text) {
+        Parser parser = new Parser(text);
+        Node root = parser.parseOr();
+        parser.skipSpaces();
+        if (parser.pos < text.length()) {
+            throw parser.error("Unexpected '" + text.charAt(parser.pos) + "'");
+        }
+        return new AnnotationQuery(text.strip(), root);
+    }
+
+    /**
+     * Find the annotations matching the query
+     * @param columns The annotations
+     * @return The positions of the matching annotations
+     */
+    public BitSet evaluate(AnnotationColumns columns) {
+        return root.evaluate(columns);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    // ---- parsing ----
+
+    /** Recursive descent parser, one method per level of precedence */
+    private static final class Parser {
+        private final String text;
+        private int pos;
+
+        private Parser(String text) {
+            this.text = text;
+        }
+
+        private Node parseOr() {
+            Node node = parseAnd();
+            while (keyword("OR") || symbol("||")) {
+                Node left = node;
+                Node right = parseAnd();
+                node = columns -> {
+                    BitSet found = left.evaluate(columns);
+                    found.or(right.evaluate(columns));
+                    return found;
+                };
+            }
+            return node;
+        }
+
+        private Node parseAnd() {
+            Node node = parseUnary();
+            while (keyword("AND") || symbol("&&")) {
+                Node left = node;
+                Node right = parseUnary();
+                node = columns -> {
+                    BitSet found = left.evaluate(columns);
+                    if (!found.isEmpty()) {
+                        found.and(right.evaluate(columns));
+                    }
+                    return found;
+                };
+            }
+            return node;
+        }
+
+        private Node parseUnary() {
+            if (keyword("NOT") || symbol("!")) {
+                return not(parseUnary());
+            }
+            if (symbol("(")) {
+                Node node = parseOr();
+                expect(")");
+                return node;
+            }
+            return parseCondition();
+        }
+
+        private Node parseCondition() {
+            int start = skipSpaces();
+            while (pos < text.length() && Character.isLetter(text.charAt(pos))) {
+                pos++;
+            }
+            String name = text.substring(start, pos).toLowerCase(Locale.ROOT);
+            Column column = FIELDS.get(name);
+            if (column == null) {
+                pos = start;
+                throw error(name.isEmpty() ? "Expected a field (t, dur, fc, bw or label)"
+                    : "Unknown field '" + name + "' (expected t, dur, fc, bw or label)");
+            }
+            return column == Column.LABEL ? parseLabel() : parseNumeric(column);
+        }
+
+        private Node parseLabel() {
+            boolean negate = symbol("!=");
+            boolean partial = !negate && symbol("~");
+            if (!negate && !partial) {
+                expect("=");
+            }
+            int start = skipSpaces();
+            Pattern pattern;
+            try {
+                pattern = Pattern.compile(parseText(), Pattern.CASE_INSENSITIVE);
+            } catch (PatternSyntaxException e) {
+                pos = start;
+                throw error("Invalid regular expression (" + e.getDescription() + ")");
+            }
+            Node node = columns -> columns.findLabels(label -> label != null
+                && (partial ? pattern.matcher(label).find() : pattern.matcher(label).matches()));
+            return negate ? not(node) : node;
+        }
+
+        private Node parseNumeric(Column column) {
+            if (keyword("in")) {
+                expect("[");
+                double low = parseNumber();
+                expect(",");
+                double high = parseNumber();
+                expect("]");
+                return range(column, low, true, high, true);
+            }
+            double inf = Double.POSITIVE_INFINITY;
+            if (symbol("<=")) {
+                return range(column, -inf, true, parseNumber(), true);
+            } else if (symbol(">=")) {
+                return range(column, parseNumber(), true, inf, true);
+            } else if (symbol("!=")) {
+                double value = parseNumber();
+                return not(range(column, value, true, value, true));
+            } else if (symbol("<")) {
+                return range(column, -inf, true, parseNumber(), false);
+            } else if (symbol(">")) {
+                return range(column, parseNumber(), false, inf, true);
+            } else if (symbol("=")) {
+                double value = parseNumber();
+                return range(column, value, true, value, true);
+            }
+            throw error("Expected = != < <= > >= or in");
+        }
+
+        private static Node range(Column column, double low, boolean includeLow, double high, boolean includeHigh) {
+            return columns -> columns.findRange(column, low, includeLow, high, includeHigh);
+        }
+
+        private static Node not(Node node) {
+            return columns -> {
+                BitSet found = node.evaluate(columns);
+                found.flip(0, columns.size());
+                return found;
+            };
+        }
+
+        private double parseNumber() {
+            int start = skipSpaces();
+            while (pos < text.length() && "0123456789+-.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            int end = pos;
+            double scale = 1.0;
+            int suffix = pos < text.length() ? "kMG".indexOf(text.charAt(pos)) : -1;
+            if (suffix >= 0) {
+                scale = Math.pow(1e3, suffix + 1);
+                pos++;
+            }
+            try {
+                return Double.parseDouble(text.substring(start, end)) * scale;
+            } catch (NumberFormatException e) {
+                pos = start;
+                throw error("Expected a number");
+            }
+        }
+
+        /**
+         * Parse a quoted text, or a word ending at a space or parenthesis
+         * @return The text
+         */
+        private String parseText() {
+            int start = skipSpaces();
+            if (pos < text.length() && (text.charAt(pos) == '"' || text.charAt(pos) == '\'')) {
+                int end = text.indexOf(text.charAt(pos), pos + 1);
+                if (end < 0) {
+                    throw error("Unterminated quote");
+                }
+                pos = end + 1;
+                return text.substring(start + 1, end);
+            }
+            while (pos < text.length() && !Character.isWhitespace(text.charAt(pos))
+                    && text.charAt(pos) != '(' && text.charAt(pos) != ')') {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("Expected a label");
+            }
+            return text.substring(start, pos);
+        }
+
+        private boolean keyword(String word) {
+            int start = skipSpaces();
+            int end = start + word.length();
+            if (text.regionMatches(true, start, word, 0, word.length())
+                    && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)))) {
+                pos = end;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean symbol(String symbol) {
+            if (text.startsWith(symbol, skipSpaces())) {
+                pos += symbol.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String symbol) {
+            if (!symbol(symbol)) {
+                throw error("Expected '" + symbol + "'");
+            }
+        }
+
+        private int skipSpaces() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (pos + 1));
+        }
+    }
+}
@@ -1,97 +1,113 @@
 package net.kcundercover.spectral_analyzer.data;
 
 import javafx.beans.property.BooleanProperty;
-import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.StringProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
-import javafx.beans.property.SimpleDoubleProperty;
 import org.apache.logging.log4j.internal.annotation.SuppressFBWarnings;
 
 /**
  * Annotation Row to be use in displaying Table of annotations
+ *
+ * A row reads its values from the {@link AnnotationColumns}, the editable
+ * properties are only created once a table cell binds to them and write
+ * their changes back to the columns.
  */
 public class AnnotationRow {
-    private final StringProperty label;
-    private final StringProperty comment;
-    private final DoubleProperty startTime; // derived from offset / sample_rate
-    private final DoubleProperty duration;  // derived from sample_count / sample_rate
-    private final DoubleProperty centerFreq;
-    private final DoubleProperty bandwidth;
-    private final BooleanProperty selected = new SimpleBooleanProperty(false);
-    private final AnnotationGroup associatedGroup;
+    private final AnnotationColumns columns;
+    private final int position;
+    private StringProperty label;
+    private StringProperty comment;
+    private BooleanProperty selected;
 
     /**
      * Constructor for the Annotation
-     * @param label Label of the annotation
-     * @param comment Description of the annotation
-     * @param start Time start (in seconds)
-     * @param dur Time duratio (in seconds)
-     * @param cf Center frequency (Hertz)
-     * @param bw Bandwidth (Hertz)
-     * @param group Associated AnnotationGroup, access to SigMFAnnotation to be updated
+     * @param columns Annotations of the table
+     * @param position Position of this annotation in the columns
      */
-    public AnnotationRow(
-            String label, String comment,
-            double start, double dur, double cf, double bw,
-            AnnotationGroup group) {
-
-        this.label = new SimpleStringProperty(label);
-        this.comment = new SimpleStringProperty(comment);
-        this.startTime = new SimpleDoubleProperty(start);
-        this.duration = new SimpleDoubleProperty(dur);
-        this.centerFreq = new SimpleDoubleProperty(cf);
-        this.bandwidth = new SimpleDoubleProperty(bw);
-        this.associatedGroup = group;
+    public AnnotationRow(AnnotationColumns columns, int position) {
+        this.columns = columns;
+        this.position = position;
     }
 
     @SuppressFBWarnings
     public StringProperty labelProperty() {
+        if (label == null) {
+            label = new SimpleStringProperty(columns.getLabel(position));
+            label.addListener((obs, oldValue, newValue) -> columns.setLabel(position, newValue));
+        }
         return this.label;
     }
     public void setLabel(String newString) {
-        this.label.setValue(newString);
+        if (label != null) {
+            label.setValue(newString);
+        } else {
+            columns.setLabel(position, newString);
+        }
     }
     public String getLabel() {
-        return label.get();
+        return columns.getLabel(position);
     }
     @SuppressFBWarnings
     public StringProperty commentProperty() {
+        if (comment == null) {
+            comment = new SimpleStringProperty(columns.getComment(position));
+            comment.addListener((obs, oldValue, newValue) -> columns.setComment(position, newValue));
+        }
         return this.comment;
     }
     public String getComment() {
-        return comment.get();
+        return columns.getComment(position);
     }
     public void setComment(String newString) {
-        this.comment.setValue(newString);
+        if (comment != null) {
+            comment.setValue(newString);
+        } else {
+            columns.setComment(position, newString);
+        }
     }
     public double getStartTime() {
-        return startTime.get();
+        return columns.getStartTime(position);
     }
     public double getDuration() {
-        return duration.get();
+        return columns.getDuration(position);
     }
     public double getCenterFreq() {
-        return centerFreq.get();
+        return columns.getCenterFreq(position);
     }
     public double getBandwidth() {
-        return bandwidth.get();
+        return columns.getBandwidth(position);
     }
 
     @SuppressFBWarnings
     public BooleanProperty selectedProperty() {
-        // return selected.getReadOnlyProperty();
+        if (selected == null) {
+            selected = new SimpleBooleanProperty(columns.isSelected(position));
+            selected.addListener((obs, oldValue, newValue) -> columns.setSelected(position, newValue));
+        }
         return selected;
     }
 
-    public void setSelected(boolean selected) {
-        this.selected.set(selected);
+    public void setSelected(boolean isSelected) {
+        if (selected != null) {
+            selected.set(isSelected);
+        } else {
+            columns.setSelected(position, isSelected);
+        }
     }
     public boolean isSelected() {
-        return selected.get();
+        return columns.isSelected(position);
     }
 
     public AnnotationGroup getAssociatedGroup() {
-        return associatedGroup;
+        return columns.getGroup(position);
+    }
+
+    /**
+     * Get the position of the annotation in the columns
+     * @return Position of the annotation
+     */
+    public int getPosition() {
+        return position;
     }
 }
@@ -0,0 +1,183 @@
+package net.kcundercover.spectral_analyzer.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import javafx.collections.ObservableListBase;
+
+import net.kcundercover.spectral_analyzer.data.AnnotationColumns.Column;
+
+/**
+ * Items of the annotation table, a view over {@link AnnotationColumns}
+ *
+ * The list holds the positions of the annotations in the order and with
+ * the filter of the table.  An {@link AnnotationRow} is only created when
+ * the table asks for it, i.e. for the rows on screen, and is then kept so
+ * edits and selections stay on the same object.  Sorting uses the
+ * permutations of the columns instead of comparing rows.
+ */
+public final class AnnotationTableItems extends ObservableListBase<AnnotationRow> {
+    private final AnnotationColumns columns;
+    private final AnnotationRow[] rows;
+
+    /** Positions of the annotations shown, in table order */
+    private int[] view;
+
+    private Column sortColumn; // null for the order of the file
+    private boolean ascending = true;
+    private IntPredicate filter; // null to show everything
+
+    /**
+     * Create the items showing every annotation in file order
+     * @param columns The annotations
+     */
+    public AnnotationTableItems(AnnotationColumns columns) {
+        this.columns = columns;
+        this.rows = new AnnotationRow[columns.size()];
+        this.view = buildView();
+    }
+
+    @Override
+    public AnnotationRow get(int index) {
+        return getRow(view[index]);
+    }
+
+    @Override
+    public int size() {
+        return view.length;
+    }
+
+    /**
+     * Get the annotations behind the table
+     * @return The columns
+     */
+    public AnnotationColumns getColumns() {
+        return columns;
+    }
+
+    /**
+     * Get the row of an annotation, created on first use
+     * @param position Position of the annotation in the columns
+     * @return The row
+     */
+    public AnnotationRow getRow(int position) {
+        AnnotationRow row = rows[position];
+        if (row == null) {
+            row = new AnnotationRow(columns, position);
+            rows[position] = row;
+        }
+        return row;
+    }
+
+    /**
+     * Sort the table by a column
+     * @param column The column, null for the order of the file
+     * @param isAscending True for ascending order
+     */
+    public void sort(Column column, boolean isAscending) {
+        this.sortColumn = column;
+        this.ascending = isAscending;
+        refresh();
+    }
+
+    /**
+     * Show only some annotations
+     * @param newFilter Test of the position of an annotation, null to show everything
+     */
+    public void setFilter(IntPredicate newFilter) {
+        this.filter = newFilter;
+        refresh();
+    }
+
+    /**
+     * Select or deselect the annotations shown
+     * @param isSelected True to select them
+     */
+    public void setSelectedInView(boolean isSelected) {
+        for (int position : view) {
+            setSelected(position, isSelected);
+        }
+    }
+
+    /**
+     * Select annotations (e.g. the ones matching a query), shown or not
+     * @param positions Positions of the annotations in the columns
+     */
+    public void select(BitSet positions) {
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(i + 1)) {
+            setSelected(i, true);
+        }
+    }
+
+    /**
+     * Get the selected annotations, shown or not
+     *
+     * The annotations shown come first in table order, then the ones hidden
+     * by the filter (e.g. selected by a query) in file order.
+     * @return The selected rows
+     */
+    public List<AnnotationRow> getSelectedRows() {
+        BitSet remaining = columns.getSelected();
+        List<AnnotationRow> selected = new ArrayList<>(remaining.cardinality());
+        for (int position : view) {
+            if (remaining.get(position)) {
+                selected.add(getRow(position));
+                remaining.clear(position);
+            }
+        }
+        for (int i = remaining.nextSetBit(0); i >= 0; i = remaining.nextSetBit(i + 1)) {
+            selected.add(getRow(i));
+        }
+        return selected;
+    }
+
+    /**
+     * Recompute the positions shown after a change of order or filter
+     */
+    public void refresh() {
+        int[] old = view;
+        view = buildView();
+        beginChange();
+        // the removed rows are only created if a listener looks at them
+        nextRemove(0, new AbstractList<AnnotationRow>() {
+            @Override
+            public AnnotationRow get(int index) {
+                return getRow(old[index]);
+            }
+
+            @Override
+            public int size() {
+                return old.length;
+            }
+        });
+        nextAdd(0, view.length);
+        endChange();
+    }
+
+    private void setSelected(int position, boolean isSelected) {
+        if (rows[position] != null) {
+            rows[position].setSelected(isSelected); // updates the check box
+        } else {
+            columns.setSelected(position, isSelected);
+        }
+    }
+
+    private int[] buildView() {
+        int n = columns.size();
+        int[] order = sortColumn == null ? null : columns.order(sortColumn);
+        int[] shown = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int k = ascending ? i : n - 1 - i;
+            int position = order == null ? k : order[k];
+            if (filter == null || filter.test(position)) {
+                shown[count++] = position;
+            }
+        }
+        return count == n ? shown : Arrays.copyOf(shown, count);
+    }
+}
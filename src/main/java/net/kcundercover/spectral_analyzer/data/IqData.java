@@ -14,6 +14,7 @@ import org.slf4j.LoggerFactory;
 import net.kcundercover.spectral_analyzer.sigmf.SigMfAnnotation;
 import net.kcundercover.spectral_analyzer.sigmf.SigMfMetadata;
 import net.kcundercover.spectral_analyzer.sigmf.Capture;
+import net.kcundercover.spectral_analyzer.sigmf.CaptureIndex;
 import net.kcundercover.spectral_analyzer.sigmf.Global;
 
 /**
@@ -39,6 +40,24 @@ public class IqData {
      * @param origAnnot THe annotation from the original file.
      */
     public IqData(String name, double[][] iq, double newFs, SigMfMetadata origMeta, SigMfAnnotation origAnnot) {
+        this(name, iq, newFs, origMeta, CaptureIndex.of(origMeta.captures()), origAnnot);
+    }
+
+    /**
+     * Constructor for new IQ Data, with the capture index of the original file
+     *
+     * The timestamp is taken from the capture segment holding the start of
+     * the annotation.
+     *
+     * @param name A name for the IQ Data
+     * @param iq The downsampled iq data
+     * @param newFs New sample rate
+     * @param origMeta the original SigMF metadata
+     * @param captures Index of the captures of the original metadata
+     * @param origAnnot THe annotation from the original file.
+     */
+    public IqData(String name, double[][] iq, double newFs, SigMfMetadata origMeta, CaptureIndex captures,
+            SigMfAnnotation origAnnot) {
         this.name = name;
         this.sampleRate = newFs;
 
@@ -57,10 +76,12 @@ public class IqData {
         this.bandwidth = origAnnot.getFreqUpperEdge() - origAnnot.getFreqLowerEdge();
 
         String newTimeStamp = null;
-        if (origMeta.captures().get(0).hasTimestamp()) {
+        Capture origCapture = captures.getCapture(origAnnot.getSampleStart());
+        if (origCapture != null && origCapture.hasTimestamp()) {
+            // the capture timestamp is the time of its first sample
             newTimeStamp = getNewTimestamp(
-                origMeta.captures().get(0).datetime(),
-                origAnnot.getSampleStart(), origMeta.global().sampleRate());
+                origCapture.datetime(),
+                origAnnot.getSampleStart() - origCapture.sampleStart(), origMeta.global().sampleRate());
         }
 
         // ----------------------  create capture, global, metadata  ------------------------------
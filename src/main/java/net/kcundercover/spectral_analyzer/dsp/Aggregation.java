@@ -0,0 +1,76 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+/**
+ * How the power spectra of several FFTs are combined into a single spectrum.
+ *
+ * The spectra are reduced bin by bin into an accumulator, the first spectrum
+ * initializes it (see {@link #combine(float, float)}).
+ */
+public enum Aggregation {
+    /** Average power, accumulated as a sum and scaled by {@link #finish} */
+    MEAN("Mean"),
+
+    /** Peak power (max-hold) */
+    MAX("Max"),
+
+    /** Lowest power (min-hold), shows the noise floor under intermittent signals */
+    MIN("Min");
+
+    private final String displayName;
+
+    Aggregation(String displayName) {
+        this.displayName = displayName;
+    }
+
+    /**
+     * Get the name shown to the user
+     * @return The display name
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Combine a new value into the accumulated value
+     * @param accumulated The value accumulated so far
+     * @param value The new value
+     * @return The combined value
+     */
+    public float combine(float accumulated, float value) {
+        return switch (this) {
+            case MEAN -> accumulated + value;
+            case MAX -> Math.max(accumulated, value);
+            case MIN -> Math.min(accumulated, value);
+        };
+    }
+
+    /**
+     * Finish an accumulated power spectrum in place (divides the sum for {@link #MEAN})
+     * @param accumulated The accumulated power
+     * @param length Number of bins
+     * @param count Number of spectra that were combined
+     */
+    public void finish(float[] accumulated, int length, long count) {
+        if (this != MEAN || count <= 1) {
+            return;
+        }
+        float scale = 1.0f / count;
+        for (int i = 0; i < length; i++) {
+            accumulated[i] *= scale;
+        }
+    }
+
+    /**
+     * Get the aggregation by display name
+     * @param name Display name ("Mean", "Max" or "Min")
+     * @return The aggregation, defaults to {@link #MAX}
+     */
+    public static Aggregation forName(String name) {
+        for (Aggregation aggregation : values()) {
+            if (aggregation.displayName.equalsIgnoreCase(name)) {
+                return aggregation;
+            }
+        }
+        return MAX;
+    }
+}
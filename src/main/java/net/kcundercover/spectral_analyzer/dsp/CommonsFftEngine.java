@@ -0,0 +1,51 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+import java.util.Arrays;
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+
+/**
+ * FFT engine backed by Apache Commons Math.
+ *
+ * Kept as the reference implementation to compare against
+ * {@link RadixTwoFftEngine}.  This path copies the input when the arrays
+ * are not exactly {@code n} long or are single precision.
+ */
+public class CommonsFftEngine implements FftEngine {
+
+    /** Default constructor */
+    public CommonsFftEngine() {}
+
+    @Override
+    public String getName() {
+        return COMMONS;
+    }
+
+    @Override
+    public void forward(double[] re, double[] im, int n) {
+        if (re.length == n && im.length == n) {
+            FastFourierTransformer.transformInPlace(
+                new double[][] {re, im}, DftNormalization.STANDARD, TransformType.FORWARD);
+            return;
+        }
+        double[][] data = {Arrays.copyOf(re, n), Arrays.copyOf(im, n)};
+        FastFourierTransformer.transformInPlace(data, DftNormalization.STANDARD, TransformType.FORWARD);
+        System.arraycopy(data[0], 0, re, 0, n);
+        System.arraycopy(data[1], 0, im, 0, n);
+    }
+
+    @Override
+    public void forward(float[] re, float[] im, int n) {
+        double[][] data = new double[2][n];
+        for (int i = 0; i < n; i++) {
+            data[0][i] = re[i];
+            data[1][i] = im[i];
+        }
+        FastFourierTransformer.transformInPlace(data, DftNormalization.STANDARD, TransformType.FORWARD);
+        for (int i = 0; i < n; i++) {
+            re[i] = (float) data[0][i];
+            im[i] = (float) data[1][i];
+        }
+    }
+}
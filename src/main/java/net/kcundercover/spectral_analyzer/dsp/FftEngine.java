@@ -0,0 +1,51 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+/**
+ * A forward FFT operating in-place on split real/imaginary arrays.
+ *
+ * Implementations do not apply any normalization (same as the Apache Commons
+ * {@code DftNormalization.STANDARD} forward transform) so that the magnitudes
+ * are comparable between engines.
+ */
+public interface FftEngine {
+
+    /** Name of the primitive radix-2 engine */
+    String PRIMITIVE = "primitive";
+
+    /** Name of the Apache Commons Math engine */
+    String COMMONS = "commons";
+
+    /**
+     * Get the name of the engine
+     * @return The name used to select this engine
+     */
+    String getName();
+
+    /**
+     * Forward FFT in-place on the first {@code n} elements of the arrays
+     * @param re Real part (input and output)
+     * @param im Imaginary part (input and output)
+     * @param n Number of points (MUST be a power of 2)
+     */
+    void forward(double[] re, double[] im, int n);
+
+    /**
+     * Forward FFT in-place on the first {@code n} elements of the arrays
+     * @param re Real part (input and output)
+     * @param im Imaginary part (input and output)
+     * @param n Number of points (MUST be a power of 2)
+     */
+    void forward(float[] re, float[] im, int n);
+
+    /**
+     * Get the FFT engine by name
+     * @param name Name of the engine ("primitive" or "commons")
+     * @return The FFT engine, defaults to the primitive engine
+     */
+    static FftEngine forName(String name) {
+        if (COMMONS.equalsIgnoreCase(name)) {
+            return new CommonsFftEngine();
+        }
+        return new RadixTwoFftEngine();
+    }
+}
@@ -0,0 +1,152 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed tables for a radix-2 FFT of a given size.
+ *
+ * Plans are immutable and cached per nfft, so they are shared between
+ * all threads computing the spectrogram.
+ */
+public final class FftPlan {
+    private static final Map<Integer, FftPlan> PLANS = new ConcurrentHashMap<>();
+
+    private final int size;
+
+    /** Pairs of indices (i, j) with i &lt; j to swap for the bit reversal */
+    private final int[] swaps;
+
+    // twiddles for the forward transform: exp(-2 pi i k / n), k in [0, n/2)
+    private final double[] cos;
+    private final double[] sin;
+    private final float[] cosF;
+    private final float[] sinF;
+
+    private FftPlan(int size) {
+        this.size = size;
+        int bits = Integer.numberOfTrailingZeros(size);
+
+        // ------------------------  bit reversal  ----------------------------
+        int numSwaps = 0;
+        int[] tmp = new int[size];
+        for (int i = 0; i < size; i++) {
+            int j = (bits == 0) ? 0 : Integer.reverse(i) >>> (32 - bits);
+            if (i < j) {
+                tmp[2 * numSwaps] = i;
+                tmp[2 * numSwaps + 1] = j;
+                numSwaps++;
+            }
+        }
+        this.swaps = Arrays.copyOf(tmp, 2 * numSwaps);
+
+        // -------------------------  twiddles  -------------------------------
+        int half = Math.max(1, size / 2);
+        cos = new double[half];
+        sin = new double[half];
+        cosF = new float[half];
+        sinF = new float[half];
+        for (int k = 0; k < half; k++) {
+            double angle = -2.0 * Math.PI * k / size;
+            cos[k] = Math.cos(angle);
+            sin[k] = Math.sin(angle);
+            cosF[k] = (float) cos[k];
+            sinF[k] = (float) sin[k];
+        }
+    }
+
+    /**
+     * Get the (cached) plan for the FFT size
+     * @param size Number of FFT points (MUST be a power of 2)
+     * @return The plan
+     */
+    public static FftPlan forSize(int size) {
+        if (size <= 0 || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of 2, got " + size);
+        }
+        return PLANS.computeIfAbsent(size, FftPlan::new);
+    }
+
+    /**
+     * Get the FFT size of this plan
+     * @return Number of FFT points
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * In-place forward transform
+     * @param re Real part
+     * @param im Imaginary part
+     */
+    void forward(double[] re, double[] im) {
+        for (int s = 0; s < swaps.length; s += 2) {
+            int i = swaps[s];
+            int j = swaps[s + 1];
+            double tr = re[i];
+            re[i] = re[j];
+            re[j] = tr;
+            double ti = im[i];
+            im[i] = im[j];
+            im[j] = ti;
+        }
+
+        for (int len = 2; len <= size; len <<= 1) {
+            int half = len >> 1;
+            int step = size / len;
+            for (int start = 0; start < size; start += len) {
+                for (int k = 0, tw = 0; k < half; k++, tw += step) {
+                    int a = start + k;
+                    int b = a + half;
+                    double wr = cos[tw];
+                    double wi = sin[tw];
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    /**
+     * In-place forward transform
+     * @param re Real part
+     * @param im Imaginary part
+     */
+    void forward(float[] re, float[] im) {
+        for (int s = 0; s < swaps.length; s += 2) {
+            int i = swaps[s];
+            int j = swaps[s + 1];
+            float tr = re[i];
+            re[i] = re[j];
+            re[j] = tr;
+            float ti = im[i];
+            im[i] = im[j];
+            im[j] = ti;
+        }
+
+        for (int len = 2; len <= size; len <<= 1) {
+            int half = len >> 1;
+            int step = size / len;
+            for (int start = 0; start < size; start += len) {
+                for (int k = 0, tw = 0; k < half; k++, tw += step) {
+                    int a = start + k;
+                    int b = a + half;
+                    float wr = cosF[tw];
+                    float wi = sinF[tw];
+                    float xr = re[b] * wr - im[b] * wi;
+                    float xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+/**
+ * Allocation-free iterative radix-2 FFT on primitive arrays.
+ *
+ * The bit reversal and twiddle tables come from the shared {@link FftPlan}
+ * cache, so repeated transforms of the same size only touch the input arrays.
+ */
+public class RadixTwoFftEngine implements FftEngine {
+
+    /** Default constructor */
+    public RadixTwoFftEngine() {}
+
+    @Override
+    public String getName() {
+        return PRIMITIVE;
+    }
+
+    @Override
+    public void forward(double[] re, double[] im, int n) {
+        FftPlan.forSize(n).forward(re, im);
+    }
+
+    @Override
+    public void forward(float[] re, float[] im, int n) {
+        FftPlan.forSize(n).forward(re, im);
+    }
+}
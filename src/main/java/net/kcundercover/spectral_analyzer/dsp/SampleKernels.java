@@ -0,0 +1,121 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+/**
+ * Inner loops of the spectrogram: sample conversion, windowing, power and dB.
+ *
+ * The scalar implementation is always available.  When the JVM is started
+ * with {@code --add-modules jdk.incubator.vector}, an implementation on the
+ * Vector API (SIMD, e.g. AVX2 / AVX-512) is used instead, after checking
+ * that it gives the same results as the scalar code.
+ *
+ * Integer samples are scaled to a full scale of 1.0, unsigned samples are
+ * centered on half their range (e.g. 127.5 for 8 bits).
+ */
+public interface SampleKernels {
+
+    /** Name of the scalar kernels */
+    String SCALAR = "scalar";
+
+    /** Name of the Vector API kernels */
+    String VECTOR = "vector";
+
+    /**
+     * Get the kernels selected for this JVM
+     * @return The Vector API kernels if available and consistent, else the scalar kernels
+     */
+    static SampleKernels get() {
+        return SampleKernelsLoader.INSTANCE;
+    }
+
+    /**
+     * Get the name of the implementation
+     * @return {@link #SCALAR} or {@link #VECTOR} (with the vector size)
+     */
+    String getName();
+
+    /**
+     * Convert real 8-bit samples
+     * @param src Samples
+     * @param unsigned True for unsigned samples
+     * @param dst Output
+     * @param offset Index of the first output
+     * @param count Number of samples
+     */
+    void convert(byte[] src, boolean unsigned, float[] dst, int offset, int count);
+
+    /**
+     * Convert real 16-bit samples
+     * @param src Samples
+     * @param unsigned True for unsigned samples
+     * @param dst Output
+     * @param offset Index of the first output
+     * @param count Number of samples
+     */
+    void convert(short[] src, boolean unsigned, float[] dst, int offset, int count);
+
+    /**
+     * Convert interleaved complex 8-bit samples (I, Q, I, Q, ...)
+     * @param src Samples (2 * count values)
+     * @param unsigned True for unsigned samples
+     * @param re Output in-phase samples
+     * @param im Output quadrature samples
+     * @param offset Index of the first output
+     * @param count Number of samples
+     */
+    void deinterleave(byte[] src, boolean unsigned, float[] re, float[] im, int offset, int count);
+
+    /**
+     * Convert interleaved complex 16-bit samples (I, Q, I, Q, ...)
+     * @param src Samples (2 * count values)
+     * @param unsigned True for unsigned samples
+     * @param re Output in-phase samples
+     * @param im Output quadrature samples
+     * @param offset Index of the first output
+     * @param count Number of samples
+     */
+    void deinterleave(short[] src, boolean unsigned, float[] re, float[] im, int offset, int count);
+
+    /**
+     * Split interleaved complex float samples (I, Q, I, Q, ...)
+     * @param src Samples (2 * count values)
+     * @param re Output in-phase samples
+     * @param im Output quadrature samples
+     * @param offset Index of the first output
+     * @param count Number of samples
+     */
+    void deinterleave(float[] src, float[] re, float[] im, int offset, int count);
+
+    /**
+     * Multiply a frame by a window
+     * @param re In-phase samples
+     * @param im Quadrature samples
+     * @param offset Index of the first sample of the frame
+     * @param window Window coefficients (n long)
+     * @param outRe Windowed in-phase samples (from index 0)
+     * @param outIm Windowed quadrature samples (from index 0)
+     * @param n Number of samples
+     */
+    void window(float[] re, float[] im, int offset, float[] window, float[] outRe, float[] outIm, int n);
+
+    /**
+     * Compute the power (re^2 + im^2) of a range of FFT bins and combine it into an accumulator
+     * @param re Real part of the FFT
+     * @param im Imaginary part of the FFT
+     * @param from Index of the first bin
+     * @param accumulated Accumulated power
+     * @param to Index of the first bin in the accumulator
+     * @param length Number of bins
+     * @param aggregation How the power is combined
+     * @param first True to overwrite the accumulator
+     */
+    void accumulatePower(float[] re, float[] im, int from, float[] accumulated, int to, int length,
+        Aggregation aggregation, boolean first);
+
+    /**
+     * Convert power to dB in place (10 * log10(power), -200 dB for 0)
+     * @param values Power (linear), converted to dB
+     * @param offset Index of the first value
+     * @param length Number of values
+     */
+    void toDecibels(float[] values, int offset, int length);
+}
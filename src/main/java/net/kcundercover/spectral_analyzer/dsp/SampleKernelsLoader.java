@@ -0,0 +1,162 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+import java.util.Random;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Selects the sample kernels once per JVM.
+ *
+ * The Vector API kernels are only loaded when the {@code jdk.incubator.vector}
+ * module is in the boot layer (so the class is never touched without it),
+ * and only used when they give the same results as the scalar kernels on a
+ * test signal.  Anything going wrong falls back to the scalar kernels.
+ */
+final class SampleKernelsLoader {
+    private static final Logger SKL_LOGGER = LoggerFactory.getLogger(SampleKernelsLoader.class);
+
+    /** Name of the incubator module */
+    static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    /** Largest difference allowed on the dB values (the vector log is not correctly rounded) */
+    static final float DB_TOLERANCE = 1e-3f;
+
+    /** Kernels selected for this JVM */
+    static final SampleKernels INSTANCE = select();
+
+    private SampleKernelsLoader() {
+    }
+
+    private static SampleKernels select() {
+        SampleKernels vector = loadVector();
+        if (vector == null) {
+            return ScalarSampleKernels.INSTANCE;
+        }
+        String mismatch = crossCheck(vector, ScalarSampleKernels.INSTANCE);
+        if (mismatch != null) {
+            SKL_LOGGER.warn("Vector kernels disagree with the scalar kernels ({}), using scalar", mismatch);
+            return ScalarSampleKernels.INSTANCE;
+        }
+        return vector;
+    }
+
+    /**
+     * Load the Vector API kernels
+     * @return The kernels, null if the module is missing or the kernels cannot run here
+     */
+    static SampleKernels loadVector() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            SKL_LOGGER.debug("{} not available, start with --add-modules {} to use SIMD kernels",
+                VECTOR_MODULE, VECTOR_MODULE);
+            return null;
+        }
+        try {
+            return (SampleKernels) Class.forName(SampleKernelsLoader.class.getPackageName() + ".VectorSampleKernels")
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            SKL_LOGGER.warn("Vector kernels not usable, using scalar: {}", e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Compare two implementations on the same random input
+     *
+     * Odd lengths are used so that the loop tails are checked as well.
+     * @param candidate Kernels to check
+     * @param reference Reference kernels
+     * @return Description of the first difference, null if they agree
+     */
+    static String crossCheck(SampleKernels candidate, SampleKernels reference) {
+        Random random = new Random(1234);
+        int count = 1000 + 37;
+
+        byte[] bytes = new byte[2 * count];
+        random.nextBytes(bytes);
+        short[] shorts = new short[2 * count];
+        float[] floats = new float[2 * count];
+        for (int i = 0; i < 2 * count; i++) {
+            shorts[i] = (short) random.nextInt();
+            floats[i] = (float) random.nextGaussian();
+        }
+
+        float[][] expected = new float[2][count + 3];
+        float[][] actual = new float[2][count + 3];
+        for (boolean unsigned : new boolean[] {false, true}) {
+            reference.convert(bytes, unsigned, expected[0], 3, count);
+            candidate.convert(bytes, unsigned, actual[0], 3, count);
+            String diff = compare("convert 8-bit", expected, actual, 0);
+            if (diff != null) {
+                return diff;
+            }
+            reference.convert(shorts, unsigned, expected[0], 3, count);
+            candidate.convert(shorts, unsigned, actual[0], 3, count);
+            diff = compare("convert 16-bit", expected, actual, 0);
+            if (diff != null) {
+                return diff;
+            }
+            reference.deinterleave(bytes, unsigned, expected[0], expected[1], 3, count);
+            candidate.deinterleave(bytes, unsigned, actual[0], actual[1], 3, count);
+            diff = compare("deinterleave 8-bit", expected, actual, 0);
+            if (diff != null) {
+                return diff;
+            }
+            reference.deinterleave(shorts, unsigned, expected[0], expected[1], 3, count);
+            candidate.deinterleave(shorts, unsigned, actual[0], actual[1], 3, count);
+            diff = compare("deinterleave 16-bit", expected, actual, 0);
+            if (diff != null) {
+                return diff;
+            }
+        }
+        reference.deinterleave(floats, expected[0], expected[1], 3, count);
+        candidate.deinterleave(floats, actual[0], actual[1], 3, count);
+        String diff = compare("deinterleave float", expected, actual, 0);
+        if (diff != null) {
+            return diff;
+        }
+
+        // window and power on the deinterleaved floats
+        float[] re = expected[0].clone();
+        float[] im = expected[1].clone();
+        float[] window = WindowFunction.HANN.getCoefficients(count);
+        reference.window(re, im, 3, window, expected[0], expected[1], count);
+        candidate.window(re, im, 3, window, actual[0], actual[1], count);
+        diff = compare("window", expected, actual, 0);
+        if (diff != null) {
+            return diff;
+        }
+        for (Aggregation aggregation : Aggregation.values()) {
+            float[][] power = {new float[count + 3], new float[count + 3]};
+            reference.accumulatePower(re, im, 3, power[0], 1, count, aggregation, true);
+            candidate.accumulatePower(re, im, 3, power[1], 1, count, aggregation, true);
+            reference.accumulatePower(im, re, 0, power[0], 1, count, aggregation, false);
+            candidate.accumulatePower(im, re, 0, power[1], 1, count, aggregation, false);
+            diff = compare("power " + aggregation, new float[][] {power[0]}, new float[][] {power[1]}, 0);
+            if (diff != null) {
+                return diff;
+            }
+
+            power[0][5] = 0;
+            power[1][5] = 0;
+            reference.toDecibels(power[0], 1, count);
+            candidate.toDecibels(power[1], 1, count);
+            diff = compare("dB", new float[][] {power[0]}, new float[][] {power[1]}, DB_TOLERANCE);
+            if (diff != null) {
+                return diff;
+            }
+        }
+        return null;
+    }
+
+    private static String compare(String kernel, float[][] expected, float[][] actual, float tolerance) {
+        for (int a = 0; a < expected.length; a++) {
+            for (int i = 0; i < expected[a].length; i++) {
+                if (!(Math.abs(expected[a][i] - actual[a][i]) <= tolerance)
+                        && Float.compare(expected[a][i], actual[a][i]) != 0) {
+                    return String.format("%s[%d]: %s instead of %s", kernel, i, actual[a][i], expected[a][i]);
+                }
+            }
+        }
+        return null;
+    }
+}
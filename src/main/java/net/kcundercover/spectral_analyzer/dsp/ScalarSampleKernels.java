@@ -0,0 +1,164 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+/**
+ * Plain Java implementation of the sample kernels (reference and fallback).
+ */
+final class ScalarSampleKernels implements SampleKernels {
+    /** Shared instance (stateless) */
+    static final ScalarSampleKernels INSTANCE = new ScalarSampleKernels();
+
+    static final float SCALE_8 = 1.0f / 128;
+    static final float SCALE_16 = 1.0f / 32768;
+
+    /** Added to the power before the log so that 0 is -200 dB */
+    static final float POWER_FLOOR = 1e-20f;
+
+    private ScalarSampleKernels() {
+    }
+
+    @Override
+    public String getName() {
+        return SCALAR;
+    }
+
+    @Override
+    public void convert(byte[] src, boolean unsigned, float[] dst, int offset, int count) {
+        convert(src, 0, unsigned, dst, offset, count);
+    }
+
+    @Override
+    public void convert(short[] src, boolean unsigned, float[] dst, int offset, int count) {
+        convert(src, 0, unsigned, dst, offset, count);
+    }
+
+    @Override
+    public void deinterleave(byte[] src, boolean unsigned, float[] re, float[] im, int offset, int count) {
+        deinterleave(src, 0, unsigned, re, im, offset, count);
+    }
+
+    @Override
+    public void deinterleave(short[] src, boolean unsigned, float[] re, float[] im, int offset, int count) {
+        deinterleave(src, 0, unsigned, re, im, offset, count);
+    }
+
+    @Override
+    public void deinterleave(float[] src, float[] re, float[] im, int offset, int count) {
+        deinterleave(src, 0, re, im, offset, count);
+    }
+
+    @Override
+    public void window(float[] re, float[] im, int offset, float[] window, float[] outRe, float[] outIm, int n) {
+        window(re, im, offset, window, outRe, outIm, 0, n);
+    }
+
+    @Override
+    public void accumulatePower(float[] re, float[] im, int from, float[] accumulated, int to, int length,
+            Aggregation aggregation, boolean first) {
+        if (first) {
+            for (int i = 0; i < length; i++) {
+                accumulated[to + i] = re[from + i] * re[from + i] + im[from + i] * im[from + i];
+            }
+            return;
+        }
+
+        // one loop per aggregation keeps the switch out of the inner loop
+        switch (aggregation) {
+            case MEAN -> {
+                for (int i = 0; i < length; i++) {
+                    accumulated[to + i] += re[from + i] * re[from + i] + im[from + i] * im[from + i];
+                }
+            }
+            case MAX -> {
+                for (int i = 0; i < length; i++) {
+                    float power = re[from + i] * re[from + i] + im[from + i] * im[from + i];
+                    accumulated[to + i] = Math.max(accumulated[to + i], power);
+                }
+            }
+            case MIN -> {
+                for (int i = 0; i < length; i++) {
+                    float power = re[from + i] * re[from + i] + im[from + i] * im[from + i];
+                    accumulated[to + i] = Math.min(accumulated[to + i], power);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void toDecibels(float[] values, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            // NOTE: 20 * log10(|X|) == 10 * log10(|X|^2), avoids the sqrt
+            values[i] = (float) (10 * Math.log10(values[i] + POWER_FLOOR));
+        }
+    }
+
+    // ---- range versions, also used for the tails of the vector loops ----
+
+    static void convert(byte[] src, int start, boolean unsigned, float[] dst, int offset, int count) {
+        if (unsigned) {
+            for (int i = start; i < count; i++) {
+                dst[offset + i] = ((src[i] & 0xFF) - 127.5f) * SCALE_8;
+            }
+        } else {
+            for (int i = start; i < count; i++) {
+                dst[offset + i] = src[i] * SCALE_8;
+            }
+        }
+    }
+
+    static void convert(short[] src, int start, boolean unsigned, float[] dst, int offset, int count) {
+        if (unsigned) {
+            for (int i = start; i < count; i++) {
+                dst[offset + i] = ((src[i] & 0xFFFF) - 32767.5f) * SCALE_16;
+            }
+        } else {
+            for (int i = start; i < count; i++) {
+                dst[offset + i] = src[i] * SCALE_16;
+            }
+        }
+    }
+
+    static void deinterleave(byte[] src, int start, boolean unsigned, float[] re, float[] im, int offset,
+            int count) {
+        if (unsigned) {
+            for (int i = start; i < count; i++) {
+                re[offset + i] = ((src[2 * i] & 0xFF) - 127.5f) * SCALE_8;
+                im[offset + i] = ((src[2 * i + 1] & 0xFF) - 127.5f) * SCALE_8;
+            }
+        } else {
+            for (int i = start; i < count; i++) {
+                re[offset + i] = src[2 * i] * SCALE_8;
+                im[offset + i] = src[2 * i + 1] * SCALE_8;
+            }
+        }
+    }
+
+    static void deinterleave(short[] src, int start, boolean unsigned, float[] re, float[] im, int offset,
+            int count) {
+        if (unsigned) {
+            for (int i = start; i < count; i++) {
+                re[offset + i] = ((src[2 * i] & 0xFFFF) - 32767.5f) * SCALE_16;
+                im[offset + i] = ((src[2 * i + 1] & 0xFFFF) - 32767.5f) * SCALE_16;
+            }
+        } else {
+            for (int i = start; i < count; i++) {
+                re[offset + i] = src[2 * i] * SCALE_16;
+                im[offset + i] = src[2 * i + 1] * SCALE_16;
+            }
+        }
+    }
+
+    static void deinterleave(float[] src, int start, float[] re, float[] im, int offset, int count) {
+        for (int i = start; i < count; i++) {
+            re[offset + i] = src[2 * i];
+            im[offset + i] = src[2 * i + 1];
+        }
+    }
+
+    static void window(float[] re, float[] im, int offset, float[] window, float[] outRe, float[] outIm,
+            int start, int n) {
+        for (int i = start; i < n; i++) {
+            outRe[i] = re[offset + i] * window[i];
+            outIm[i] = im[offset + i] * window[i];
+        }
+    }
+}
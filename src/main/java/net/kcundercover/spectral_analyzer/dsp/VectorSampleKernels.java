@@ -0,0 +1,198 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Sample kernels on the Vector API ({@code jdk.incubator.vector}).
+ *
+ * Only loaded by {@link SampleKernelsLoader} once the module is known to be
+ * present.  The integer species have as many lanes as the preferred float
+ * species, so a block of samples converts to exactly one float vector;
+ * complex samples are split into I and Q with shuffles within a vector and
+ * a blend.  The loop
+ * tails are handled by the scalar code.
+ *
+ * Needs at least 8 float lanes (AVX2 or wider, 8-bit samples need a 64-bit
+ * byte vector), the class fails to initialize on smaller vectors.
+ */
+final class VectorSampleKernels implements SampleKernels {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = FLOATS.length();
+    private static final VectorSpecies<Byte> BYTES =
+        VectorSpecies.of(byte.class, VectorShape.forBitSize(LANES * Byte.SIZE));
+    private static final VectorSpecies<Short> SHORTS =
+        VectorSpecies.of(short.class, VectorShape.forBitSize(LANES * Short.SIZE));
+
+    // single vector shuffles, the two vector unzip shuffle is slower than scalar code
+    private static final VectorShuffle<Float> EVENS_FIRST = shuffle(0);
+    private static final VectorShuffle<Float> ODDS_FIRST = shuffle(1);
+    private static final VectorShuffle<Float> SWAP_HALVES =
+        VectorShuffle.fromOp(FLOATS, i -> (i + LANES / 2) % LANES);
+    private static final VectorMask<Float> UPPER_HALF = FLOATS.indexInRange(-LANES / 2, LANES / 2);
+
+    @Override
+    public String getName() {
+        return VECTOR + " (" + FLOATS.vectorBitSize() + " bits)";
+    }
+
+    @Override
+    public void convert(byte[] src, boolean unsigned, float[] dst, int offset, int count) {
+        int bound = BYTES.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            toFloats(ByteVector.fromArray(BYTES, src, i), unsigned).intoArray(dst, offset + i);
+        }
+        ScalarSampleKernels.convert(src, bound, unsigned, dst, offset, count);
+    }
+
+    @Override
+    public void convert(short[] src, boolean unsigned, float[] dst, int offset, int count) {
+        int bound = SHORTS.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            toFloats(ShortVector.fromArray(SHORTS, src, i), unsigned).intoArray(dst, offset + i);
+        }
+        ScalarSampleKernels.convert(src, bound, unsigned, dst, offset, count);
+    }
+
+    @Override
+    public void deinterleave(byte[] src, boolean unsigned, float[] re, float[] im, int offset, int count) {
+        int bound = FLOATS.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector low = toFloats(ByteVector.fromArray(BYTES, src, 2 * i), unsigned);
+            FloatVector high = toFloats(ByteVector.fromArray(BYTES, src, 2 * i + LANES), unsigned);
+            split(low, high, re, im, offset + i);
+        }
+        ScalarSampleKernels.deinterleave(src, bound, unsigned, re, im, offset, count);
+    }
+
+    @Override
+    public void deinterleave(short[] src, boolean unsigned, float[] re, float[] im, int offset, int count) {
+        int bound = FLOATS.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector low = toFloats(ShortVector.fromArray(SHORTS, src, 2 * i), unsigned);
+            FloatVector high = toFloats(ShortVector.fromArray(SHORTS, src, 2 * i + LANES), unsigned);
+            split(low, high, re, im, offset + i);
+        }
+        ScalarSampleKernels.deinterleave(src, bound, unsigned, re, im, offset, count);
+    }
+
+    @Override
+    public void deinterleave(float[] src, float[] re, float[] im, int offset, int count) {
+        int bound = FLOATS.loopBound(count);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector low = FloatVector.fromArray(FLOATS, src, 2 * i);
+            FloatVector high = FloatVector.fromArray(FLOATS, src, 2 * i + LANES);
+            split(low, high, re, im, offset + i);
+        }
+        ScalarSampleKernels.deinterleave(src, bound, re, im, offset, count);
+    }
+
+    @Override
+    public void window(float[] re, float[] im, int offset, float[] window, float[] outRe, float[] outIm, int n) {
+        int bound = FLOATS.loopBound(n);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector w = FloatVector.fromArray(FLOATS, window, i);
+            FloatVector.fromArray(FLOATS, re, offset + i).mul(w).intoArray(outRe, i);
+            FloatVector.fromArray(FLOATS, im, offset + i).mul(w).intoArray(outIm, i);
+        }
+        ScalarSampleKernels.window(re, im, offset, window, outRe, outIm, bound, n);
+    }
+
+    @Override
+    public void accumulatePower(float[] re, float[] im, int from, float[] accumulated, int to, int length,
+            Aggregation aggregation, boolean first) {
+        int bound = FLOATS.loopBound(length);
+        for (int i = 0; i < bound; i += LANES) {
+            FloatVector x = FloatVector.fromArray(FLOATS, re, from + i);
+            FloatVector y = FloatVector.fromArray(FLOATS, im, from + i);
+            // not fused, so that the result is the same as the scalar code
+            FloatVector power = x.mul(x).add(y.mul(y));
+            if (!first) {
+                FloatVector acc = FloatVector.fromArray(FLOATS, accumulated, to + i);
+                power = switch (aggregation) {
+                    case MEAN -> acc.add(power);
+                    case MAX -> acc.max(power);
+                    case MIN -> acc.min(power);
+                };
+            }
+            power.intoArray(accumulated, to + i);
+        }
+        ScalarSampleKernels.INSTANCE.accumulatePower(re, im, from + bound, accumulated, to + bound,
+            length - bound, aggregation, first);
+    }
+
+    @Override
+    public void toDecibels(float[] values, int offset, int length) {
+        int bound = FLOATS.loopBound(length);
+        for (int i = offset; i < offset + bound; i += LANES) {
+            FloatVector.fromArray(FLOATS, values, i)
+                .add(ScalarSampleKernels.POWER_FLOOR)
+                .lanewise(VectorOperators.LOG10)
+                .mul(10.0f)
+                .intoArray(values, i);
+        }
+        ScalarSampleKernels.INSTANCE.toDecibels(values, offset + bound, length - bound);
+    }
+
+    /**
+     * Split 2 vectors of interleaved I/Q values
+     * @param low First vector (I0, Q0, I1, Q1, ...)
+     * @param high Next vector
+     * @param re Output in-phase values (one vector)
+     * @param im Output quadrature values (one vector)
+     * @param at Index of the output vectors
+     */
+    private static void split(FloatVector low, FloatVector high, float[] re, float[] im, int at) {
+        FloatVector evensOdds = low.rearrange(EVENS_FIRST);  // I of low | Q of low
+        FloatVector oddsEvens = high.rearrange(ODDS_FIRST);  // Q of high | I of high
+        evensOdds.blend(oddsEvens, UPPER_HALF).intoArray(re, at);
+        oddsEvens.blend(evensOdds, UPPER_HALF).rearrange(SWAP_HALVES).intoArray(im, at);
+    }
+
+    /**
+     * Shuffle moving the even or odd lanes to the first half
+     * @param first 0 for the even lanes first, 1 for the odd lanes first
+     * @return The shuffle
+     */
+    private static VectorShuffle<Float> shuffle(int first) {
+        int half = LANES / 2;
+        return VectorShuffle.fromOp(FLOATS, i -> i < half ? 2 * i + first : 2 * (i - half) + 1 - first);
+    }
+
+    /**
+     * Convert 8-bit samples to floats (full scale 1.0)
+     * @param v The samples
+     * @param unsigned True for unsigned samples
+     * @return The floats
+     */
+    private static FloatVector toFloats(ByteVector v, boolean unsigned) {
+        if (unsigned) {
+            // (u - 127.5) == (u ^ 0x80 as signed) + 0.5, exact in float
+            FloatVector f = (FloatVector) v.lanewise(VectorOperators.XOR, (byte) 0x80)
+                .convertShape(VectorOperators.B2F, FLOATS, 0);
+            return f.add(0.5f).mul(ScalarSampleKernels.SCALE_8);
+        }
+        return ((FloatVector) v.convertShape(VectorOperators.B2F, FLOATS, 0)).mul(ScalarSampleKernels.SCALE_8);
+    }
+
+    /**
+     * Convert 16-bit samples to floats (full scale 1.0)
+     * @param v The samples
+     * @param unsigned True for unsigned samples
+     * @return The floats
+     */
+    private static FloatVector toFloats(ShortVector v, boolean unsigned) {
+        if (unsigned) {
+            FloatVector f = (FloatVector) v.lanewise(VectorOperators.XOR, (short) 0x8000)
+                .convertShape(VectorOperators.S2F, FLOATS, 0);
+            return f.add(0.5f).mul(ScalarSampleKernels.SCALE_16);
+        }
+        return ((FloatVector) v.convertShape(VectorOperators.S2F, FLOATS, 0)).mul(ScalarSampleKernels.SCALE_16);
+    }
+}
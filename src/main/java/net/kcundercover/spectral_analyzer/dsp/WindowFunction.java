@@ -0,0 +1,155 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Window applied to the samples before the FFT to reduce spectral leakage.
+ *
+ * The coefficients are periodic (DFT-even) and computed once per
+ * (window, nfft), the tables are shared between threads.
+ */
+public enum WindowFunction {
+    /** No window (highest resolution, highest leakage) */
+    RECTANGULAR("Rectangular", "rectangular"),
+
+    /** Hann (raised cosine) */
+    HANN("Hann", "hann"),
+
+    /** 4-term Blackman-Harris, about -92 dB side lobes */
+    BLACKMAN_HARRIS("Blackman-Harris", "blackman-harris"),
+
+    /** Kaiser with beta = {@value #KAISER_BETA} */
+    KAISER("Kaiser", "kaiser"),
+
+    /** Flat-top, accurate amplitude of tones between bins */
+    FLAT_TOP("Flat-top", "flat-top");
+
+    /** Shape parameter of the Kaiser window (higher is lower side lobes, wider main lobe) */
+    public static final double KAISER_BETA = 9.0;
+
+    private static final double[] BLACKMAN_HARRIS_TERMS = {0.35875, 0.48829, 0.14128, 0.01168};
+    private static final double[] FLAT_TOP_TERMS = {
+        0.21557895, 0.41663158, 0.277263158, 0.083578947, 0.006947368};
+
+    /** Coefficient tables by window and size */
+    private static final Map<String, Table> TABLES = new ConcurrentHashMap<>();
+
+    private final String displayName;
+    private final String key;
+
+    WindowFunction(String displayName, String key) {
+        this.displayName = displayName;
+        this.key = key;
+    }
+
+    /**
+     * Get the name shown to the user
+     * @return The display name
+     */
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Get the key identifying the window in cache keys and sidecar files
+     * @return The key
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Get the coefficients of the window
+     * @param n Number of points
+     * @return The coefficients (shared, must not be modified)
+     */
+    public float[] getCoefficients(int n) {
+        return getTable(n).coefficients();
+    }
+
+    /**
+     * Get the sum of the squared coefficients
+     *
+     * The power of white noise in an FFT bin is scaled by this sum (it is
+     * {@code n} without a window), used to convert to dB/Hz.
+     * @param n Number of points
+     * @return Sum of w[i]^2
+     */
+    public double getPowerSum(int n) {
+        return getTable(n).powerSum();
+    }
+
+    /**
+     * Get the window by display name
+     * @param name Display name (e.g. "Hann")
+     * @return The window, defaults to {@link #RECTANGULAR}
+     */
+    public static WindowFunction forName(String name) {
+        for (WindowFunction window : values()) {
+            if (window.displayName.equalsIgnoreCase(name)) {
+                return window;
+            }
+        }
+        return RECTANGULAR;
+    }
+
+    private Table getTable(int n) {
+        return TABLES.computeIfAbsent(key + "|" + n, k -> {
+            float[] coefficients = new float[n];
+            double powerSum = 0;
+            for (int i = 0; i < n; i++) {
+                coefficients[i] = (float) coefficient(i, n);
+                powerSum += (double) coefficients[i] * coefficients[i];
+            }
+            return new Table(coefficients, powerSum);
+        });
+    }
+
+    private double coefficient(int i, int n) {
+        double x = 2 * Math.PI * i / n;
+        return switch (this) {
+            case RECTANGULAR -> 1.0;
+            case HANN -> 0.5 - 0.5 * Math.cos(x);
+            case BLACKMAN_HARRIS -> cosineSum(BLACKMAN_HARRIS_TERMS, x);
+            case FLAT_TOP -> cosineSum(FLAT_TOP_TERMS, x);
+            case KAISER -> {
+                double r = 2.0 * i / n - 1.0;
+                yield besselI0(KAISER_BETA * Math.sqrt(1 - r * r)) / besselI0(KAISER_BETA);
+            }
+        };
+    }
+
+    private static double cosineSum(double[] terms, double x) {
+        double value = 0;
+        for (int k = 0; k < terms.length; k++) {
+            // alternating signs: a0 - a1 cos(x) + a2 cos(2x) - ...
+            value += (k % 2 == 0 ? 1 : -1) * terms[k] * Math.cos(k * x);
+        }
+        return value;
+    }
+
+    /**
+     * Modified Bessel function of the first kind, order 0 (power series)
+     * @param x The argument
+     * @return I0(x)
+     */
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double half = x / 2;
+        for (int k = 1; k < 50 && term > 1e-12 * sum; k++) {
+            term *= (half / k) * (half / k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    /**
+     * Cached coefficients of a window
+     * @param coefficients The window coefficients
+     * @param powerSum Sum of the squared coefficients
+     */
+    private record Table(float[] coefficients, double powerSum) {
+    }
+}
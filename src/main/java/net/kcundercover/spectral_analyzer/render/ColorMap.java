@@ -0,0 +1,160 @@
+package net.kcundercover.spectral_analyzer.render;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Colormap as a precomputed lookup table of ARGB colors.
+ *
+ * The table has {@link #SIZE} opaque entries from the lowest to the highest
+ * magnitude, so coloring a pixel is a single array lookup instead of a
+ * {@code Color.interpolate} per pixel.  Opaque colors are the same in the
+ * premultiplied and non-premultiplied ARGB formats.
+ */
+public final class ColorMap {
+    /** Number of entries of the lookup table */
+    public static final int SIZE = 1024;
+
+    private final String name;
+    private final int[] table;
+
+    private ColorMap(String name, int[] table) {
+        this.name = name;
+        this.table = table;
+    }
+
+    /**
+     * Build a colormap by linear interpolation between color stops
+     *
+     * Two stops at the same position make a sharp transition.
+     * @param name Name of the colormap
+     * @param positions Increasing positions of the stops (0.0 to 1.0)
+     * @param rgb Colors of the stops, {r, g, b} from 0.0 to 1.0
+     * @return The colormap
+     */
+    public static ColorMap fromStops(String name, double[] positions, double[][] rgb) {
+        if (positions.length != rgb.length || positions.length < 2) {
+            throw new IllegalArgumentException("A colormap needs at least 2 stops with one color each");
+        }
+        int[] table = new int[SIZE];
+        int segment = 0;
+        for (int i = 0; i < SIZE; i++) {
+            double x = (double) i / (SIZE - 1);
+            while (segment < positions.length - 2 && x >= positions[segment + 1]) {
+                segment++;
+            }
+            double span = positions[segment + 1] - positions[segment];
+            double frac = span <= 0 ? 1.0 : Math.clamp((x - positions[segment]) / span, 0.0, 1.0);
+            double[] lo = rgb[segment];
+            double[] hi = rgb[segment + 1];
+            table[i] = argb(
+                lo[0] + (hi[0] - lo[0]) * frac,
+                lo[1] + (hi[1] - lo[1]) * frac,
+                lo[2] + (hi[2] - lo[2]) * frac);
+        }
+        return new ColorMap(name, table);
+    }
+
+    /**
+     * Build a colormap from evenly spaced colors
+     * @param name Name of the colormap
+     * @param rgb Colors from low to high, {r, g, b} from 0.0 to 1.0
+     * @return The colormap
+     */
+    public static ColorMap fromColors(String name, double[][] rgb) {
+        double[] positions = new double[rgb.length];
+        for (int i = 0; i < rgb.length; i++) {
+            positions[i] = (double) i / (rgb.length - 1);
+        }
+        return fromStops(name, positions, rgb);
+    }
+
+    /**
+     * Load a colormap file
+     *
+     * One color per line as {@code r,g,b} from low to high, either from 0.0
+     * to 1.0 or from 0 to 255 (if any value is above 1).  Empty lines and
+     * lines starting with '#' are ignored.
+     * @param name Name of the colormap
+     * @param input The file content
+     * @return The colormap
+     * @throws IOException Failed to read or parse the file
+     */
+    public static ColorMap load(String name, InputStream input) throws IOException {
+        List<double[]> colors = new ArrayList<>();
+        boolean bytes = false;
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("[,;\\s]+");
+            if (parts.length < 3) {
+                throw new IOException("Expected r,g,b in colormap " + name + ": " + line);
+            }
+            try {
+                double[] rgb = {
+                    Double.parseDouble(parts[0]), Double.parseDouble(parts[1]), Double.parseDouble(parts[2])};
+                bytes |= rgb[0] > 1 || rgb[1] > 1 || rgb[2] > 1;
+                colors.add(rgb);
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid color in colormap " + name + ": " + line, e);
+            }
+        }
+        if (colors.size() < 2) {
+            throw new IOException("Colormap " + name + " needs at least 2 colors");
+        }
+        if (bytes) {
+            for (double[] rgb : colors) {
+                rgb[0] /= 255;
+                rgb[1] /= 255;
+                rgb[2] /= 255;
+            }
+        }
+        return fromColors(name, colors.toArray(new double[0][]));
+    }
+
+    /**
+     * Get the name of the colormap
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the lookup table (shared, must not be modified)
+     * @return {@link #SIZE} ARGB colors from the lowest to the highest magnitude
+     */
+    public int[] getTable() {
+        return table;
+    }
+
+    /**
+     * Get the color of a normalized magnitude
+     * @param normalized Magnitude from 0.0 (lowest) to 1.0 (highest), clamped
+     * @return ARGB color
+     */
+    public int getColor(double normalized) {
+        int index = (int) (Math.clamp(normalized, 0.0, 1.0) * (SIZE - 1) + 0.5);
+        return table[index];
+    }
+
+    private static int argb(double r, double g, double b) {
+        return 0xFF000000
+            | (toByte(r) << 16)
+            | (toByte(g) << 8)
+            | toByte(b);
+    }
+
+    private static int toByte(double v) {
+        return (int) Math.round(Math.clamp(v, 0.0, 1.0) * 255);
+    }
+}
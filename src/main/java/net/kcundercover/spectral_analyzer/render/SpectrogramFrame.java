@@ -0,0 +1,15 @@
+package net.kcundercover.spectral_analyzer.render;
+
+/**
+ * A rendered spectrogram viewport.
+ *
+ * @param request The request that produced this frame
+ * @param columns Magnitudes (dB) reduced to display rows, columns[x][row], row 0 is the lowest frequency
+ *        (shared with the tile cache, must not be modified)
+ * @param pixels ARGB pixels of the frame (row major, width x height)
+ */
+public record SpectrogramFrame(
+    SpectrogramRequest request,
+    float[][] columns,
+    int[] pixels) {
+}
@@ -0,0 +1,357 @@
+package net.kcundercover.spectral_analyzer.render;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import net.kcundercover.spectral_analyzer.dsp.Aggregation;
+
+/**
+ * Multi-resolution pyramid of power spectra covering a whole data file.
+ *
+ * Level 0 holds one column per {@code baseDecimation} FFTs, every level above
+ * halves the number of columns (2x time decimation) until a single column
+ * covers the file.  Each column keeps the mean, the max-held and the min-held
+ * power (linear, not dB) of the FFTs it covers, reduced to at most
+ * {@link #MAX_BINS} frequency bins.  When an FFT has more bins, a pyramid
+ * bin holds the peak of the FFT bins that fall on it before aggregating.
+ *
+ * The pyramid is immutable once built and can be shared between threads.
+ */
+public final class SpectrogramPyramid {
+    /** Maximum number of frequency bins per column */
+    public static final int MAX_BINS = 512;
+
+    /** Maximum number of columns of level 0 */
+    public static final int MAX_BASE_COLUMNS = 8192;
+
+    private static final int MAGIC = 0x53505952; // "SPYR"
+    private static final int VERSION = 2;
+
+    // fixed part of the file header (before the settings and the column counts)
+    private static final int HEADER_BYTES = 52;
+
+    private final int fftSize;
+    private final int bins;
+    private final int baseDecimation;
+    private final long fftCount;
+    private final String settings;
+
+    // power per level, [level][column * bins + bin]
+    private final float[][] mean;
+    private final float[][] max;
+    private final float[][] min;
+
+    /**
+     * Constructor
+     * @param fftSize Number of FFT points
+     * @param bins Number of frequency bins per column
+     * @param baseDecimation Number of FFTs per column of level 0 (power of 2)
+     * @param fftCount Number of FFTs in the data file
+     * @param settings Processing settings used to compute the FFTs (window)
+     * @param mean Mean power per level
+     * @param max Max-held power per level
+     * @param min Min-held power per level
+     */
+    private SpectrogramPyramid(int fftSize, int bins, int baseDecimation, long fftCount,
+            String settings, float[][] mean, float[][] max, float[][] min) {
+        this.fftSize = fftSize;
+        this.bins = bins;
+        this.baseDecimation = baseDecimation;
+        this.fftCount = fftCount;
+        this.settings = settings;
+        this.mean = mean;
+        this.max = max;
+        this.min = min;
+    }
+
+    /**
+     * Build the pyramid from its level 0
+     *
+     * @param fftSize Number of FFT points
+     * @param baseDecimation Number of FFTs per column of level 0 (power of 2)
+     * @param fftCount Number of FFTs in the data file
+     * @param settings Processing settings used to compute the FFTs (window)
+     * @param baseMean Mean power of level 0 (column * bins + bin)
+     * @param baseMax Max-held power of level 0 (column * bins + bin)
+     * @param baseMin Min-held power of level 0 (column * bins + bin)
+     * @return The pyramid
+     */
+    public static SpectrogramPyramid fromBase(int fftSize, int baseDecimation, long fftCount,
+            String settings, float[] baseMean, float[] baseMax, float[] baseMin) {
+        int bins = getBinCount(fftSize);
+        int levels = 1;
+        for (int columns = baseMean.length / bins; columns > 1; columns = (columns + 1) / 2) {
+            levels++;
+        }
+
+        float[][] mean = new float[levels][];
+        float[][] max = new float[levels][];
+        float[][] min = new float[levels][];
+        mean[0] = baseMean;
+        max[0] = baseMax;
+        min[0] = baseMin;
+        for (int level = 1; level < levels; level++) {
+            int below = mean[level - 1].length / bins;
+            int columns = (below + 1) / 2;
+            mean[level] = new float[columns * bins];
+            max[level] = new float[columns * bins];
+            min[level] = new float[columns * bins];
+            for (int c = 0; c < columns; c++) {
+                int left = 2 * c * bins;
+                int right = (2 * c + 1) * bins;
+                for (int b = 0; b < bins; b++) {
+                    if (2 * c + 1 < below) {
+                        mean[level][c * bins + b] = 0.5f * (mean[level - 1][left + b] + mean[level - 1][right + b]);
+                        max[level][c * bins + b] = Math.max(max[level - 1][left + b], max[level - 1][right + b]);
+                        min[level][c * bins + b] = Math.min(min[level - 1][left + b], min[level - 1][right + b]);
+                    } else {
+                        // odd number of columns, the last one has no sibling
+                        mean[level][c * bins + b] = mean[level - 1][left + b];
+                        max[level][c * bins + b] = max[level - 1][left + b];
+                        min[level][c * bins + b] = min[level - 1][left + b];
+                    }
+                }
+            }
+        }
+        return new SpectrogramPyramid(fftSize, bins, baseDecimation, fftCount, settings, mean, max, min);
+    }
+
+    /**
+     * Get the number of frequency bins per column for an FFT size
+     * @param fftSize Number of FFT points
+     * @return Number of bins
+     */
+    public static int getBinCount(int fftSize) {
+        return Math.min(fftSize, MAX_BINS);
+    }
+
+    /**
+     * Get the number of FFTs per column of level 0
+     * @param fftCount Number of FFTs in the data file
+     * @return Smallest power of 2 that keeps level 0 under {@link #MAX_BASE_COLUMNS} columns
+     */
+    public static int getBaseDecimation(long fftCount) {
+        int decimation = 1;
+        while ((fftCount + decimation - 1) / decimation > MAX_BASE_COLUMNS) {
+            decimation *= 2;
+        }
+        return decimation;
+    }
+
+    /**
+     * Get the number of FFT points
+     * @return The FFT size
+     */
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    /**
+     * Get the number of frequency bins per column
+     * @return Number of bins
+     */
+    public int getBinCount() {
+        return bins;
+    }
+
+    /**
+     * Get the number of FFTs per column of level 0
+     * @return The decimation of level 0
+     */
+    public int getBaseDecimation() {
+        return baseDecimation;
+    }
+
+    /**
+     * Get the number of FFTs in the data file
+     * @return Number of FFTs
+     */
+    public long getFftCount() {
+        return fftCount;
+    }
+
+    /**
+     * Get the processing settings used to compute the FFTs
+     * @return The settings key
+     */
+    public String getSettings() {
+        return settings;
+    }
+
+    /**
+     * Get the number of levels
+     * @return Number of levels
+     */
+    public int getLevelCount() {
+        return mean.length;
+    }
+
+    /**
+     * Get the number of columns of a level
+     * @param level The level
+     * @return Number of columns
+     */
+    public int getColumnCount(int level) {
+        return mean[level].length / bins;
+    }
+
+    /**
+     * Check if a zoom can be served by the pyramid
+     * @param zoom Number of FFTs per display column (power of 2)
+     * @return True if a level covers at least as many FFTs per column
+     */
+    public boolean covers(int zoom) {
+        return zoom >= baseDecimation;
+    }
+
+    /**
+     * Copy a display column from the level matching the zoom
+     *
+     * @param zoom Number of FFTs per display column (power of 2, see {@link #covers(int)})
+     * @param column Index of the display column from the start of the data
+     * @param aggregation Which power to copy (mean, max-held or min-held)
+     * @param out Output power (at least {@link #getBinCount()} long)
+     * @return False if the column is past the end of the data
+     */
+    public boolean copyColumn(int zoom, long column, Aggregation aggregation, float[] out) {
+        int level = Integer.numberOfTrailingZeros(zoom / baseDecimation);
+        if (level >= mean.length) {
+            // the top level is a single column covering the whole file
+            level = mean.length - 1;
+            if (column != 0) {
+                return false;
+            }
+        }
+        if (column < 0 || column >= getColumnCount(level)) {
+            return false;
+        }
+        float[] source = switch (aggregation) {
+            case MEAN -> mean[level];
+            case MAX -> max[level];
+            case MIN -> min[level];
+        };
+        System.arraycopy(source, (int) column * bins, out, 0, bins);
+        return true;
+    }
+
+    // ------------------------------- persistence -------------------------------
+
+    /**
+     * Save the pyramid (written to a temporary file, then moved in place)
+     *
+     * @param path The pyramid file
+     * @param sourceSize Size of the data file the pyramid was computed from
+     * @param sourceModified Last modified time (ms) of the data file
+     * @throws IOException Failed to write the file
+     */
+    public void save(Path path, long sourceSize, long sourceModified) throws IOException {
+        byte[] settingsBytes = settings.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + settingsBytes.length + 4 * mean.length)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION)
+            .putLong(sourceSize).putLong(sourceModified)
+            .putInt(fftSize).putInt(bins).putInt(baseDecimation).putLong(fftCount)
+            .putInt(mean.length)
+            .putInt(settingsBytes.length).put(settingsBytes);
+        for (float[] level : mean) {
+            header.putInt(level.length / bins);
+        }
+        header.flip();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            for (int level = 0; level < mean.length; level++) {
+                writeFloats(channel, mean[level]);
+                writeFloats(channel, max[level]);
+                writeFloats(channel, min[level]);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Load a saved pyramid
+     *
+     * @param path The pyramid file
+     * @param sourceSize Current size of the data file
+     * @param sourceModified Current last modified time (ms) of the data file
+     * @param fftSize The expected FFT size
+     * @param settings The expected processing settings
+     * @return The pyramid, or null if the file is missing, from another version or stale
+     * @throws IOException Failed to read the file
+     */
+    public static SpectrogramPyramid load(Path path, long sourceSize, long sourceModified,
+            int fftSize, String settings) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < HEADER_BYTES
+                    || buffer.getInt() != MAGIC
+                    || buffer.getInt() != VERSION
+                    || buffer.getLong() != sourceSize
+                    || buffer.getLong() != sourceModified
+                    || buffer.getInt() != fftSize) {
+                return null;
+            }
+            int bins = buffer.getInt();
+            int baseDecimation = buffer.getInt();
+            long fftCount = buffer.getLong();
+            int levels = buffer.getInt();
+            byte[] settingsBytes = new byte[buffer.getInt()];
+            buffer.get(settingsBytes);
+            if (!settings.equals(new String(settingsBytes, StandardCharsets.UTF_8))) {
+                return null;
+            }
+
+            int[] columns = new int[levels];
+            long expected = 0;
+            for (int level = 0; level < levels; level++) {
+                columns[level] = buffer.getInt();
+                expected += 3L * columns[level] * bins * Float.BYTES;
+            }
+            if (buffer.remaining() != expected) {
+                return null; // truncated
+            }
+
+            float[][] mean = new float[levels][];
+            float[][] max = new float[levels][];
+            float[][] min = new float[levels][];
+            for (int level = 0; level < levels; level++) {
+                mean[level] = readFloats(buffer, columns[level] * bins);
+                max[level] = readFloats(buffer, columns[level] * bins);
+                min[level] = readFloats(buffer, columns[level] * bins);
+            }
+            return new SpectrogramPyramid(fftSize, bins, baseDecimation, fftCount, settings, mean, max, min);
+        }
+    }
+
+    private static float[] readFloats(ByteBuffer buffer, int count) {
+        float[] values = new float[count];
+        buffer.asFloatBuffer().get(values);
+        buffer.position(buffer.position() + count * Float.BYTES);
+        return values;
+    }
+
+    private static void writeFloats(FileChannel channel, float[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(values);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
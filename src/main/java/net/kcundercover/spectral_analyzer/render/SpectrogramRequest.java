@@ -0,0 +1,262 @@
+package net.kcundercover.spectral_analyzer.render;
+
+import net.kcundercover.spectral_analyzer.dsp.Aggregation;
+import net.kcundercover.spectral_analyzer.dsp.WindowFunction;
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
+import net.kcundercover.spectral_analyzer.sigmf.SpectrumSidecar;
+
+/**
+ * Snapshot of everything needed to render the spectrogram viewport.
+ *
+ * Built on the JavaFX Application Thread and handed to the worker pool,
+ * so the workers never touch UI controls.
+ *
+ * @param buffer The data buffer of the SigMF recording
+ * @param dataKey Identifies the data file (used to key the tile cache)
+ * @param decoder Decoder of the SigMF datatype of the buffer
+ * @param sampleOffset Sample offset of the first (left most) column (rounded down to a multiple
+ *        of the samples per column when rendered, so that columns line up with the cached tiles)
+ * @param width Number of columns (canvas width in pixels)
+ * @param height Number of rows (canvas height in pixels)
+ * @param fftSize Number of FFT points
+ * @param zoom Number of FFTs per column (power of 2, 1 is one FFT per column)
+ * @param aggregation How the FFTs of a column are combined ({@link #MAX_HOLD}, {@link #MEAN} or {@link #MIN_HOLD})
+ * @param window Window applied before each FFT (display name of a {@link WindowFunction})
+ * @param overlap Overlap of consecutive FFTs (percent, 0 to 75)
+ * @param pyramid The spectrogram pyramid of the data file (null if not available yet)
+ * @param sidecar The spectrum sidecar of the data file (null if not available)
+ * @param sampleRate Sample rate of the recording
+ * @param minDb Lower bound of the color scale (dB/Hz)
+ * @param maxDb Upper bound of the color scale (dB/Hz)
+ * @param colorMap Name of the color map
+ */
+public record SpectrogramRequest(
+    SampleBuffer buffer,
+    String dataKey,
+    SampleDecoder decoder,
+    long sampleOffset,
+    int width,
+    int height,
+    int fftSize,
+    int zoom,
+    String aggregation,
+    String window,
+    int overlap,
+    SpectrogramPyramid pyramid,
+    SpectrumSidecar sidecar,
+    double sampleRate,
+    double minDb,
+    double maxDb,
+    String colorMap) {
+
+    /** Keep the peak power of the FFTs of a column */
+    public static final String MAX_HOLD = "Max";
+
+    /** Average the power of the FFTs of a column */
+    public static final String MEAN = "Mean";
+
+    /** Keep the lowest power of the FFTs of a column */
+    public static final String MIN_HOLD = "Min";
+
+    /**
+     * Copy of this request with another pyramid
+     * @param newPyramid The spectrogram pyramid (may be null)
+     * @return The new request
+     */
+    public SpectrogramRequest withPyramid(SpectrogramPyramid newPyramid) {
+        return new SpectrogramRequest(buffer, dataKey, decoder, sampleOffset,
+            width, height, fftSize, zoom, aggregation, window, overlap, newPyramid, sidecar, sampleRate, minDb, maxDb, colorMap);
+    }
+
+    /**
+     * Copy of this request with another spectrum sidecar
+     * @param newSidecar The spectrum sidecar (may be null)
+     * @return The new request
+     */
+    public SpectrogramRequest withSidecar(SpectrumSidecar newSidecar) {
+        return new SpectrogramRequest(buffer, dataKey, decoder, sampleOffset,
+            width, height, fftSize, zoom, aggregation, window, overlap, pyramid, newSidecar, sampleRate, minDb, maxDb, colorMap);
+    }
+
+    /**
+     * Copy of this request for another channel of the recording
+     * @param newDecoder The decoder of the channel
+     * @return The new request
+     */
+    public SpectrogramRequest withDecoder(SampleDecoder newDecoder) {
+        return new SpectrogramRequest(buffer, dataKey, newDecoder, sampleOffset,
+            width, height, fftSize, zoom, aggregation, window, overlap, pyramid, sidecar, sampleRate, minDb, maxDb, colorMap);
+    }
+
+    /**
+     * Get the number of samples between the starts of two consecutive FFTs
+     * @return The hop size (fftSize without overlap)
+     */
+    public int getHopSize() {
+        return getHopSize(fftSize, overlap);
+    }
+
+    /**
+     * Get the number of samples between the starts of two consecutive FFTs
+     * @param fftSize Number of FFT points
+     * @param overlap Overlap of consecutive FFTs (percent)
+     * @return The hop size
+     */
+    public static int getHopSize(int fftSize, int overlap) {
+        return Math.max(1, fftSize * (100 - Math.clamp(overlap, 0, 99)) / 100);
+    }
+
+    /**
+     * Get the number of samples covered by a column
+     *
+     * A column starts {@code zoom} FFTs, its last FFT reaches
+     * {@code fftSize - hopSize} samples into the next column.
+     * @return Samples per column (hopSize * zoom)
+     */
+    public long getSamplesPerColumn() {
+        return (long) getHopSize() * zoom;
+    }
+
+    /**
+     * Get the number of complete FFTs in the data buffer
+     * @return Number of FFTs, FFT k starts at sample k * hopSize
+     */
+    public long getFftCount() {
+        long samples = buffer.size() / decoder.getBytesPerSample();
+        return samples < fftSize ? 0 : (samples - fftSize) / getHopSize() + 1;
+    }
+
+    /**
+     * Get the window applied before each FFT
+     * @return The window function
+     */
+    public WindowFunction getWindow() {
+        return WindowFunction.forName(window);
+    }
+
+    /**
+     * Check if the columns keep the peak power (rather than the mean)
+     * @return True for max-hold
+     */
+    public boolean isMaxHold() {
+        return MAX_HOLD.equals(aggregation);
+    }
+
+    /**
+     * Get how the FFTs of a column are combined
+     * @return The aggregation
+     */
+    public Aggregation getAggregation() {
+        return Aggregation.forName(aggregation);
+    }
+
+    /**
+     * Check if the columns are read from the pyramid (rather than computed)
+     *
+     * Pyramids and sidecars hold a single channel, they are not used for multi-channel recordings.
+     * At zoom 1 the pyramid is only used when its bins are as fine as the
+     * display rows, otherwise the FFTs are computed.
+     * @return True if the pyramid covers the zoom
+     */
+    public boolean usesPyramid() {
+        return pyramid != null && decoder.getChannelCount() == 1
+            && pyramid.getFftSize() == fftSize && pyramid.covers(zoom)
+            && (zoom > 1 || hasEnoughBins(pyramid.getBinCount()));
+    }
+
+    /**
+     * Check if the FFTs are read from the spectrum sidecar (rather than computed)
+     *
+     * The sidecar keeps the peak of the FFT bins that fall on a sidecar bin,
+     * so averaged or min-held columns only use it when it has one bin per
+     * FFT bin.  It is not used when it has fewer bins than the display rows.
+     * @return True if the sidecar matches the FFT size and window
+     */
+    public boolean usesSidecar() {
+        return sidecar != null
+            && decoder.getChannelCount() == 1
+            && !usesPyramid()
+            && sidecar.getFftSize() == fftSize
+            && sidecar.getWindow().equals(getWindowKey())
+            && hasEnoughBins(sidecar.getBinCount())
+            && (zoom == 1 || isMaxHold() || sidecar.getBinCount() == fftSize);
+    }
+
+    /**
+     * Check if reduced spectra have as many bins as the rows showing the FFT
+     * @param bins Number of bins of the reduced spectra
+     * @return True if the rows do not need more bins
+     */
+    private boolean hasEnoughBins(int bins) {
+        return bins >= Math.min(fftSize, height);
+    }
+
+    /**
+     * Get the offset from dB/bin (unnormalized FFT) to dB/Hz
+     *
+     * The FFT has no normalization and scales the noise power by the sum
+     * of the squared window coefficients (fftSize without a window), also
+     * convert from dB/bin to dB/Hz.
+     * @return The value to subtract from the FFT magnitudes
+     */
+    public double getDbConversion() {
+        return 10 * Math.log10(sampleRate * getWindow().getPowerSum(fftSize));
+    }
+
+    /**
+     * Get the index of the first (left most) column from the start of the data
+     * @return The column index, the column starts at sample columnIndex * getSamplesPerColumn()
+     */
+    public long getFirstColumn() {
+        return Math.floorDiv(sampleOffset, getSamplesPerColumn());
+    }
+
+    /**
+     * Check if another request shows the same view, apart from the scroll position
+     *
+     * Frames of such requests can share the columns and pixels they overlap on.
+     * The data buffer may have grown since the other request (file still being
+     * recorded), the columns past the end of its data are then out of date.
+     * @param other The other request
+     * @return True if only the sample offset (and the amount of data) differs
+     */
+    public boolean isSameViewAs(SpectrogramRequest other) {
+        return other != null
+            && buffer.hasSameSource(other.buffer)
+            && dataKey.equals(other.dataKey)
+            && width == other.width
+            && height == other.height
+            && fftSize == other.fftSize
+            && zoom == other.zoom
+            && aggregation.equals(other.aggregation)
+            && pyramid == other.pyramid
+            && sidecar == other.sidecar
+            && sampleRate == other.sampleRate
+            && minDb == other.minDb
+            && maxDb == other.maxDb
+            && colorMap.equals(other.colorMap)
+            && getSettingsKey().equals(other.getSettingsKey());
+    }
+
+    /**
+     * Get the window settings that change the FFT values
+     * @return The window key (window and overlap)
+     */
+    public String getWindowKey() {
+        String key = getWindow().getKey();
+        return overlap > 0 ? key + "|overlap" + overlap : key;
+    }
+
+    /**
+     * Get the processing settings that change the column values
+     *
+     * Columns computed with different settings (or of another channel) must not share cached tiles.
+     * @return The settings key
+     */
+    public String getSettingsKey() {
+        return getWindowKey() + "|" + aggregation + "|x" + zoom + (usesPyramid() ? "|pyramid" : "")
+            + (usesSidecar() ? "|sidecar" : "")
+            + (decoder.getChannelCount() > 1 ? "|ch" + decoder.getChannel() : "");
+    }
+}
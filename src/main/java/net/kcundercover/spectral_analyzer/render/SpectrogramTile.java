@@ -0,0 +1,37 @@
+package net.kcundercover.spectral_analyzer.render;
+
+/**
+ * A fixed number of consecutive spectrogram columns.
+ *
+ * The columns are shared with the frames that use them and must not be
+ * modified once the tile is in the cache.
+ *
+ * The last tile of a file can be cached before the file is complete (file
+ * still being recorded): only its first {@code completeColumns} columns have
+ * all their FFTs, the other ones are computed again when the file grows.
+ *
+ * @param key The key of this tile
+ * @param columns Magnitudes (dB) reduced to display rows, columns[x][row], row 0 is the lowest frequency
+ * @param completeColumns Number of leading columns that have all their FFTs
+ */
+public record SpectrogramTile(
+    TileKey key,
+    float[][] columns,
+    int completeColumns) {
+
+    /**
+     * Check if all the columns have all their FFTs
+     * @return True if no column needs to be computed again
+     */
+    public boolean isComplete() {
+        return completeColumns == columns.length;
+    }
+
+    /**
+     * Approximate memory used by this tile
+     * @return Size in bytes
+     */
+    public long sizeBytes() {
+        return (long) columns.length * key.height() * Float.BYTES;
+    }
+}
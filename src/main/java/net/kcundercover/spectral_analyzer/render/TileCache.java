@@ -0,0 +1,153 @@
+package net.kcundercover.spectral_analyzer.render;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size bounded LRU cache of spectrogram tiles.
+ *
+ * Scrolling back to a region that was recently viewed reuses the computed
+ * columns instead of recomputing every FFT.  When the total size of the
+ * tiles exceeds the limit, the least recently used tiles are evicted.
+ */
+public class TileCache {
+    private final long maxBytes;
+    private long currentBytes = 0;
+
+    // access-order so iteration starts at the least recently used tile
+    private final LinkedHashMap<TileKey, SpectrogramTile> tiles = new LinkedHashMap<>(64, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Constructor
+     * @param maxBytes Maximum total size of the cached tiles (bytes)
+     */
+    public TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Look up a tile (updates the hit/miss counters)
+     * @param key The tile key
+     * @return The tile, or null if it is not cached
+     */
+    public synchronized SpectrogramTile get(TileKey key) {
+        SpectrogramTile tile = tiles.get(key);
+        if (tile == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+        return tile;
+    }
+
+    /**
+     * Add a tile, evicting the least recently used tiles if needed
+     * @param tile The tile to add
+     */
+    public synchronized void put(SpectrogramTile tile) {
+        long size = tile.sizeBytes();
+        if (size > maxBytes) {
+            return; // would evict everything else
+        }
+        SpectrogramTile old = tiles.put(tile.key(), tile);
+        if (old != null) {
+            currentBytes -= old.sizeBytes();
+        }
+        currentBytes += size;
+
+        Iterator<SpectrogramTile> it = tiles.values().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            SpectrogramTile eldest = it.next();
+            it.remove();
+            currentBytes -= eldest.sizeBytes();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Remove all the tiles of a data file (e.g. the file was reloaded)
+     * @param dataKey Identifies the data file
+     */
+    public synchronized void invalidate(String dataKey) {
+        Iterator<Map.Entry<TileKey, SpectrogramTile>> it = tiles.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<TileKey, SpectrogramTile> entry = it.next();
+            if (entry.getKey().dataKey().equals(dataKey)) {
+                currentBytes -= entry.getValue().sizeBytes();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Remove all the tiles
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * Get the number of cached tiles
+     * @return Number of tiles
+     */
+    public synchronized int size() {
+        return tiles.size();
+    }
+
+    /**
+     * Get the total size of the cached tiles
+     * @return Size in bytes
+     */
+    public synchronized long getSizeBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Get the maximum total size of the cached tiles
+     * @return Size in bytes
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the number of lookups that found a tile
+     * @return Number of hits
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of lookups that did not find a tile
+     * @return Number of misses
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * Get the number of tiles evicted to stay under the size limit
+     * @return Number of evictions
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * Get the ratio of lookups that found a tile
+     * @return Hit rate (0.0 to 1.0)
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+}
@@ -0,0 +1,18 @@
+package net.kcundercover.spectral_analyzer.render;
+
+/**
+ * Key of a spectrogram tile in the {@link TileCache}.
+ *
+ * @param dataKey Identifies the data file (absolute path of the data file)
+ * @param tileIndex Index of the tile, the tile starts at sample tileIndex * columns * samplesPerColumn
+ * @param fftSize Number of FFT points per column
+ * @param height Number of display rows per column
+ * @param settings Processing settings that change the column values (window and overlap)
+ */
+public record TileKey(
+    String dataKey,
+    long tileIndex,
+    int fftSize,
+    int height,
+    String settings) {
+}
@@ -1,7 +1,6 @@
 package net.kcundercover.spectral_analyzer.services;
 
 // import org.springframework.beans.factory.annotation.Autowired;
-import java.nio.MappedByteBuffer;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -9,6 +8,9 @@ import java.util.concurrent.Executors;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
+
 /**
  * Service to call the extract and down convert service asynchronously
  */
@@ -39,18 +41,18 @@ public class AsyncExtractDownConvertService {
      * @param buffer The data buffer
      * @param startSample The sample offset from start of buffer
      * @param count Count in samples to extract
-     * @param datatype The data type of the buffer
+     * @param decoder Decoder of the SigMF datatype of the buffer
      * @param freqOff Frequency offset to apply
      * @param down Down convert rate
      * @param fast Use fast mode or not.  Fast mode has less out of bound attenuation
      * @return The completable future output
      */
     public CompletableFuture<double[][]> extractAndDownConvertAsync(
-            MappedByteBuffer buffer, long startSample,
-            int count, String datatype, double freqOff, int down, boolean fast) {
+            SampleBuffer buffer, long startSample,
+            int count, SampleDecoder decoder, double freqOff, int down, boolean fast) {
 
         return CompletableFuture.supplyAsync(() ->
-            syncService.extractAndDownConvert(buffer, startSample, count, datatype, freqOff, down, fast),
+            syncService.extractAndDownConvert(buffer, startSample, count, decoder, freqOff, down, fast),
             dspExecutor
         );
     }
@@ -0,0 +1,518 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import net.kcundercover.spectral_analyzer.dsp.Aggregation;
+import net.kcundercover.spectral_analyzer.dsp.WindowFunction;
+import net.kcundercover.spectral_analyzer.sigmf.CaptureIndex;
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
+import net.kcundercover.spectral_analyzer.sigmf.SigMfAnnotation;
+
+/**
+ * Service to detect bursts over a whole recording
+ *
+ * The recording is cut into rows of a few FFTs whose power is averaged.
+ * The noise floor of each FFT bin is the median power of the bin, taken
+ * over a sample of the file.  A cell (row, bin) is detected when its power
+ * is a given number of dB above the floor of its bin (CFAR), and touching
+ * cells are grown into regions whose bounding box becomes an annotation.
+ *
+ * Both passes run in parallel over chunks of rows.  A region can cross the
+ * edge of a chunk, so each chunk keeps the detections of its first and last
+ * rows and the regions are joined across the edges once all chunks are done.
+ */
+@Service
+public class BurstDetectorService {
+    private static final Logger BDS_LOGGER = LoggerFactory.getLogger(BurstDetectorService.class);
+
+    /** Label of the detected bursts */
+    public static final String LABEL = "auto";
+
+    /** Number of rows in a chunk (unit of work of the pool) */
+    static final int ROWS_PER_CHUNK = 256;
+
+    /** Number of chunks the noise floor is estimated from */
+    private static final int NOISE_CHUNKS = 64;
+
+    private final SpectralService spectralService;
+
+    // every core, the user waits for the detection
+    private final ForkJoinPool detectorPool = new ForkJoinPool(
+        Runtime.getRuntime().availableProcessors(),
+        pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("Burst-Worker-" + t.getPoolIndex());
+            t.setDaemon(true); // Ensures threads don't block app shutdown
+            return t;
+        },
+        null, false);
+
+    /** Per-thread decoded samples, shared by the FFTs of a chunk */
+    private final ThreadLocal<FrameReader> frameReaders = ThreadLocal.withInitial(FrameReader::new);
+
+    /**
+     * Constructor
+     * @param spectralService Computes the power spectra
+     */
+    @Autowired
+    public BurstDetectorService(SpectralService spectralService) {
+        this.spectralService = spectralService;
+    }
+
+    /**
+     * Settings of a detection
+     * @param fftSize Number of FFT points (MUST be a power of 2)
+     * @param window Window applied before the FFT
+     * @param integration Number of FFTs averaged into a row
+     * @param thresholdDb Power above the noise floor of a bin for a cell to be detected (dB)
+     * @param minCells Number of detected cells below which a region is dropped
+     */
+    public record Settings(int fftSize, WindowFunction window, int integration, double thresholdDb, int minCells) {
+
+        /**
+         * Get the default settings for an FFT size
+         * @param fftSize Number of FFT points (MUST be a power of 2)
+         * @param window Window applied before the FFT
+         * @return Settings averaging 4 FFTs per row with a 10 dB threshold
+         */
+        public static Settings defaults(int fftSize, WindowFunction window) {
+            return new Settings(fftSize, window, 4, 10.0, 4);
+        }
+
+        /**
+         * Get the same settings with another threshold
+         * @param newThresholdDb Power above the noise floor of a bin for a cell to be detected (dB)
+         * @return The new settings
+         */
+        public Settings withThresholdDb(double newThresholdDb) {
+            return new Settings(fftSize, window, integration, newThresholdDb, minCells);
+        }
+
+        /**
+         * Get the number of samples in a row
+         * @return Samples per row
+         */
+        public long getRowSamples() {
+            return (long) fftSize * integration;
+        }
+    }
+
+    /**
+     * Detect the bursts of a recording (blocks until done)
+     * @param buffer The SigMF data buffer
+     * @param decoder Decoder of the SigMF datatype of the buffer
+     * @param captures Captures of the recording (center frequencies)
+     * @param sampleRate Sample rate (Hz)
+     * @param settings Settings of the detection
+     * @param progress Called with the processed fraction (0 to 1) after each chunk, on a worker thread
+     * @param cancelled Checked before each chunk
+     * @return Annotations of the bursts labelled {@link #LABEL}, sorted by start
+     * @throws CancellationException Cancelled before the end
+     */
+    public List<SigMfAnnotation> detect(SampleBuffer buffer, SampleDecoder decoder, CaptureIndex captures,
+            double sampleRate, Settings settings, DoubleConsumer progress, BooleanSupplier cancelled) {
+        long start = System.nanoTime();
+        long rowCount = buffer.size() / decoder.getBytesPerSample() / settings.getRowSamples();
+        if (rowCount == 0) {
+            return List.of();
+        }
+        int chunkCount = (int) ((rowCount + ROWS_PER_CHUNK - 1) / ROWS_PER_CHUNK);
+        int noiseChunks = Math.min(chunkCount, NOISE_CHUNKS);
+        Scan scan = new Scan(buffer, decoder, settings, rowCount);
+        AtomicInteger done = new AtomicInteger();
+        double total = noiseChunks + chunkCount;
+
+        // ---- noise floor: median of each bin over evenly spread chunks ----
+        int fftSize = settings.fftSize();
+        float[][] medians = new float[noiseChunks][];
+        RangeTask.run(detectorPool, 0, noiseChunks, 1, i -> {
+            checkCancelled(cancelled);
+            medians[i] = scan.medianPower((int) ((long) i * chunkCount / noiseChunks));
+            progress.accept(done.incrementAndGet() / total);
+        });
+        float[] floor = new float[fftSize];
+        float[] threshold = new float[fftSize];
+        float[] column = new float[noiseChunks];
+        float factor = (float) Math.pow(10, settings.thresholdDb() / 10);
+        for (int b = 0; b < fftSize; b++) {
+            for (int i = 0; i < noiseChunks; i++) {
+                column[i] = medians[i][b];
+            }
+            floor[b] = median(column, noiseChunks);
+            threshold[b] = floor[b] * factor;
+        }
+
+        // ---- regions of each chunk ----
+        Chunk[] chunks = new Chunk[chunkCount];
+        RangeTask.run(detectorPool, 0, chunkCount, 1, c -> {
+            checkCancelled(cancelled);
+            chunks[c] = scan.findRegions(c, floor, threshold);
+            progress.accept(done.incrementAndGet() / total);
+        });
+
+        // ---- join the regions across the edges of the chunks ----
+        Regions all = new Regions();
+        int previousOffset = 0;
+        for (int c = 0; c < chunkCount; c++) {
+            int offset = all.size();
+            all.append(chunks[c].regions);
+            if (c > 0) {
+                connect(chunks[c - 1].lastRuns, previousOffset, chunks[c].firstRuns, offset, all);
+                chunks[c - 1] = null;
+            }
+            previousOffset = offset;
+        }
+
+        List<SigMfAnnotation> bursts = toAnnotations(all, captures, sampleRate, settings);
+        BDS_LOGGER.info("Detected {} bursts in {} rows in {} s", bursts.size(), rowCount,
+            String.format("%.2f", (System.nanoTime() - start) / 1e9));
+        return bursts;
+    }
+
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Burst detection cancelled");
+        }
+    }
+
+    /**
+     * Convert the regions to annotations
+     * @param all The regions (joined)
+     * @param captures Captures of the recording (center frequencies)
+     * @param sampleRate Sample rate (Hz)
+     * @param settings Settings of the detection
+     * @return Annotations of the regions large enough, sorted by start
+     */
+    private static List<SigMfAnnotation> toAnnotations(Regions all, CaptureIndex captures, double sampleRate,
+            Settings settings) {
+        int fftSize = settings.fftSize();
+        long rowSamples = settings.getRowSamples();
+        double binHz = sampleRate / fftSize;
+        List<SigMfAnnotation> bursts = new ArrayList<>();
+        for (int r = 0; r < all.size(); r++) {
+            if (all.find(r) != r || all.cells[r] < settings.minCells()) {
+                continue;
+            }
+            long first = all.rowLo[r] * rowSamples;
+            double fc = captures.getFrequency(first);
+            // bins are centered on (b - fftSize / 2) * binHz, edges half a bin away
+            double low = fc + (all.binLo[r] - fftSize / 2 - 0.5) * binHz;
+            double high = fc + (all.binHi[r] - fftSize / 2 - 0.5) * binHz;
+            bursts.add(new SigMfAnnotation(first, (all.rowHi[r] - all.rowLo[r]) * rowSamples, low, high, LABEL,
+                String.format(Locale.ROOT, "Peak %.1f dB above the noise floor", 10 * Math.log10(all.peak[r]))));
+        }
+        bursts.sort(Comparator.comparingLong(SigMfAnnotation::getSampleStart));
+        return bursts;
+    }
+
+    /**
+     * Join the regions of touching runs of two consecutive rows
+     * @param above Runs of the upper row {lo, hi, region, ...}
+     * @param aboveOffset Added to the regions of the upper row
+     * @param below Runs of the lower row
+     * @param belowOffset Added to the regions of the lower row
+     * @param regions The regions
+     */
+    private static void connect(int[] above, int aboveOffset, int[] below, int belowOffset, Regions regions) {
+        int i = 0;
+        for (int j = 0; j < below.length; j += 3) {
+            // skip the runs ending before this one (diagonal neighbours touch)
+            while (i < above.length && above[i + 1] < below[j]) {
+                i += 3;
+            }
+            for (int k = i; k < above.length && above[k] <= below[j + 1]; k += 3) {
+                regions.union(above[k + 2] + aboveOffset, below[j + 2] + belowOffset);
+            }
+        }
+    }
+
+    private static float median(float[] values, int count) {
+        Arrays.sort(values, 0, count);
+        return values[count / 2];
+    }
+
+    // ---- scanning a chunk ----
+
+    /** Rows of a recording, read by the workers */
+    private final class Scan {
+        private final SampleBuffer buffer;
+        private final SampleDecoder decoder;
+        private final Settings settings;
+        private final long rowCount;
+
+        private Scan(SampleBuffer buffer, SampleDecoder decoder, Settings settings, long rowCount) {
+            this.buffer = buffer;
+            this.decoder = decoder;
+            this.settings = settings;
+            this.rowCount = rowCount;
+        }
+
+        private int getRowCount(int chunk) {
+            return (int) Math.min(ROWS_PER_CHUNK, rowCount - (long) chunk * ROWS_PER_CHUNK);
+        }
+
+        /**
+         * Compute the average power of the FFTs of a row
+         * @param reader Reader of the frames (started for the chunk)
+         * @param row Index of the row in the recording
+         * @param lastFrame Frames up to this index (exclusive) are read next
+         * @param power Output power, frequency range is -fs/2 to fs/2
+         */
+        private void computeRow(FrameReader reader, long row, long lastFrame, float[] power) {
+            int fftSize = settings.fftSize();
+            long firstFrame = row * settings.integration();
+            for (int k = 0; k < settings.integration(); k++) {
+                int at = reader.locate(firstFrame + k, lastFrame);
+                spectralService.accumulatePowerSpectrum(reader.getRe(), reader.getIm(), at, fftSize,
+                    settings.window(), Aggregation.MEAN, power, k == 0);
+            }
+            Aggregation.MEAN.finish(power, fftSize, settings.integration());
+        }
+
+        private FrameReader beginChunk() {
+            FrameReader reader = frameReaders.get();
+            reader.begin(buffer, decoder, settings.fftSize(), settings.fftSize(),
+                rowCount * settings.integration());
+            return reader;
+        }
+
+        /**
+         * Get the median power of each bin over the rows of a chunk
+         * @param chunk Index of the chunk
+         * @return The median power of each bin
+         */
+        private float[] medianPower(int chunk) {
+            int fftSize = settings.fftSize();
+            int rows = getRowCount(chunk);
+            long firstRow = (long) chunk * ROWS_PER_CHUNK;
+            long lastFrame = (firstRow + rows) * settings.integration();
+            float[] power = new float[rows * fftSize];
+            float[] row = new float[fftSize];
+            FrameReader reader = beginChunk();
+            for (int r = 0; r < rows; r++) {
+                computeRow(reader, firstRow + r, lastFrame, row);
+                System.arraycopy(row, 0, power, r * fftSize, fftSize);
+            }
+
+            float[] medians = new float[fftSize];
+            float[] column = new float[rows];
+            for (int b = 0; b < fftSize; b++) {
+                for (int r = 0; r < rows; r++) {
+                    column[r] = power[r * fftSize + b];
+                }
+                medians[b] = median(column, rows);
+            }
+            return medians;
+        }
+
+        /**
+         * Grow the detected cells of a chunk into regions
+         * @param chunk Index of the chunk
+         * @param floor Noise floor of each bin
+         * @param threshold Detection threshold of each bin
+         * @return The regions of the chunk
+         */
+        private Chunk findRegions(int chunk, float[] floor, float[] threshold) {
+            int fftSize = settings.fftSize();
+            int rows = getRowCount(chunk);
+            long firstRow = (long) chunk * ROWS_PER_CHUNK;
+            long lastFrame = (firstRow + rows) * settings.integration();
+            float[] power = new float[fftSize];
+            FrameReader reader = beginChunk();
+
+            Regions regions = new Regions();
+            int[] previous = new int[0];
+            int[] firstRuns = null;
+            for (int r = 0; r < rows; r++) {
+                computeRow(reader, firstRow + r, lastFrame, power);
+                int[] runs = new int[3 * 8];
+                int count = 0;
+                for (int b = 0; b < fftSize; b++) {
+                    if (power[b] <= threshold[b]) {
+                        continue;
+                    }
+                    int lo = b;
+                    float peak = 0;
+                    while (b < fftSize && power[b] > threshold[b]) {
+                        peak = Math.max(peak, floor[b] > 0 ? power[b] / floor[b] : Float.MAX_VALUE);
+                        b++;
+                    }
+                    if (count + 3 > runs.length) {
+                        runs = Arrays.copyOf(runs, 2 * runs.length);
+                    }
+                    runs[count] = lo;
+                    runs[count + 1] = b;
+                    runs[count + 2] = regions.add(firstRow + r, lo, b, peak);
+                    count += 3;
+                }
+                runs = Arrays.copyOf(runs, count);
+                connect(previous, 0, runs, 0, regions);
+                if (r == 0) {
+                    firstRuns = runs;
+                }
+                previous = runs;
+            }
+            // only the roots are kept, the runs are moved to them
+            int[] roots = regions.compact();
+            return new Chunk(regions, remap(firstRuns, roots), remap(previous, roots));
+        }
+    }
+
+    /**
+     * Regions of a chunk, only the roots
+     * @param regions The regions
+     * @param firstRuns Runs of the first row {lo, hi, region, ...}
+     * @param lastRuns Runs of the last row
+     */
+    private record Chunk(Regions regions, int[] firstRuns, int[] lastRuns) {}
+
+    private static int[] remap(int[] runs, int[] roots) {
+        int[] moved = runs.clone(); // the first and last rows may be the same
+        for (int i = 2; i < moved.length; i += 3) {
+            moved[i] = roots[moved[i]];
+        }
+        return moved;
+    }
+
+    /**
+     * Bounding boxes of regions, joined with a union-find
+     *
+     * The box, cell count and peak of a region are kept on its root.
+     */
+    private static final class Regions {
+        private int size;
+        private int[] parent = new int[16];
+        private long[] rowLo = new long[16];
+        private long[] rowHi = new long[16]; // exclusive
+        private int[] binLo = new int[16];
+        private int[] binHi = new int[16]; // exclusive
+        private long[] cells = new long[16];
+        private float[] peak = new float[16];
+
+        private int size() {
+            return size;
+        }
+
+        /**
+         * Add a region of a single run
+         * @param row Index of the row in the recording
+         * @param lo First bin of the run
+         * @param hi Last bin of the run (exclusive)
+         * @param runPeak Peak power of the run over the noise floor
+         * @return Index of the region
+         */
+        private int add(long row, int lo, int hi, float runPeak) {
+            ensureCapacity(size + 1);
+            parent[size] = size;
+            rowLo[size] = row;
+            rowHi[size] = row + 1;
+            binLo[size] = lo;
+            binHi[size] = hi;
+            cells[size] = hi - lo;
+            peak[size] = runPeak;
+            return size++;
+        }
+
+        /**
+         * Append the regions of a chunk (compacted, every region is a root)
+         * @param other The regions of the chunk
+         */
+        private void append(Regions other) {
+            ensureCapacity(size + other.size);
+            for (int i = 0; i < other.size; i++) {
+                parent[size + i] = size + i;
+            }
+            System.arraycopy(other.rowLo, 0, rowLo, size, other.size);
+            System.arraycopy(other.rowHi, 0, rowHi, size, other.size);
+            System.arraycopy(other.binLo, 0, binLo, size, other.size);
+            System.arraycopy(other.binHi, 0, binHi, size, other.size);
+            System.arraycopy(other.cells, 0, cells, size, other.size);
+            System.arraycopy(other.peak, 0, peak, size, other.size);
+            size += other.size;
+        }
+
+        private int find(int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]]; // path halving
+                i = parent[i];
+            }
+            return i;
+        }
+
+        private void union(int a, int b) {
+            int ra = find(a);
+            int rb = find(b);
+            if (ra == rb) {
+                return;
+            }
+            parent[rb] = ra;
+            rowLo[ra] = Math.min(rowLo[ra], rowLo[rb]);
+            rowHi[ra] = Math.max(rowHi[ra], rowHi[rb]);
+            binLo[ra] = Math.min(binLo[ra], binLo[rb]);
+            binHi[ra] = Math.max(binHi[ra], binHi[rb]);
+            cells[ra] += cells[rb];
+            peak[ra] = Math.max(peak[ra], peak[rb]);
+        }
+
+        /**
+         * Keep only the roots
+         * @return New index of the root of each former region
+         */
+        private int[] compact() {
+            int[] root = new int[size];
+            for (int i = 0; i < size; i++) {
+                root[i] = find(i);
+            }
+            int[] index = new int[size];
+            int roots = 0;
+            for (int i = 0; i < size; i++) {
+                if (root[i] == i) {
+                    index[i] = roots;
+                    parent[roots] = roots;
+                    rowLo[roots] = rowLo[i];
+                    rowHi[roots] = rowHi[i];
+                    binLo[roots] = binLo[i];
+                    binHi[roots] = binHi[i];
+                    cells[roots] = cells[i];
+                    peak[roots] = peak[i];
+                    roots++;
+                }
+            }
+            for (int i = 0; i < size; i++) {
+                index[i] = index[root[i]];
+            }
+            size = roots;
+            return index;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity <= parent.length) {
+                return;
+            }
+            int n = Math.max(capacity, 2 * parent.length);
+            parent = Arrays.copyOf(parent, n);
+            rowLo = Arrays.copyOf(rowLo, n);
+            rowHi = Arrays.copyOf(rowHi, n);
+            binLo = Arrays.copyOf(binLo, n);
+            binHi = Arrays.copyOf(binHi, n);
+            cells = Arrays.copyOf(cells, n);
+            peak = Arrays.copyOf(peak, n);
+        }
+    }
+}
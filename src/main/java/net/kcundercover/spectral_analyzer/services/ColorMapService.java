@@ -0,0 +1,132 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import net.kcundercover.spectral_analyzer.render.ColorMap;
+
+/**
+ * Service providing the colormaps of the spectrogram
+ *
+ * Grayscale and Heatmap are built in, viridis, inferno and turbo are loaded
+ * from the bundled colormap files, and any {@code *.csv} file in the user
+ * colormap directory is added as well (see {@link ColorMap#load}).
+ */
+@Service
+public class ColorMapService {
+    private static final Logger CMS_LOGGER = LoggerFactory.getLogger(ColorMapService.class);
+
+    /** Name of the default colormap */
+    public static final String GRAYSCALE = "Grayscale";
+
+    /** Colormap files bundled with the application */
+    private static final String[] BUNDLED = {"viridis", "inferno", "turbo"};
+
+    private final Map<String, ColorMap> colorMaps = new ConcurrentHashMap<>();
+
+    // insertion order is the order shown to the user
+    private final List<String> names = new ArrayList<>();
+
+    /** Default constructor (built in and bundled colormaps only) */
+    public ColorMapService() {
+        this("");
+    }
+
+    /**
+     * Constructor also loading the colormaps of a directory
+     * @param userDirectory Directory of additional colormap files (empty to skip)
+     */
+    @Autowired
+    public ColorMapService(@Value("${spectral.colormap.dir:}") String userDirectory) {
+        // Linearly interpolate from Black (0.0) to White (1.0)
+        add(ColorMap.fromColors(GRAYSCALE, new double[][] {{0, 0, 0}, {1, 1, 1}}));
+
+        // Simple "Heat" map: Black -> Blue -> Red -> Yellow
+        add(ColorMap.fromStops("Heatmap",
+            new double[] {0.0, 0.2, 0.2, 0.5, 1.0},
+            new double[][] {{0, 0, 0}, {0, 0, 0}, {0, 0, 1}, {1, 0, 0}, {1, 1, 0}}));
+
+        for (String name : BUNDLED) {
+            try (InputStream input = ColorMapService.class.getResourceAsStream(
+                    "/net/kcundercover/spectral_analyzer/colormaps/" + name + ".csv")) {
+                if (input == null) {
+                    CMS_LOGGER.warn("Bundled colormap {} not found", name);
+                    continue;
+                }
+                add(ColorMap.load(name, input));
+            } catch (IOException e) {
+                CMS_LOGGER.warn("Failed to load bundled colormap {}", name, e);
+            }
+        }
+
+        if (userDirectory != null && !userDirectory.isBlank()) {
+            loadDirectory(Path.of(userDirectory));
+        }
+    }
+
+    /**
+     * Load the {@code *.csv} colormap files of a directory (named after the file)
+     * @param directory The directory
+     */
+    public void loadDirectory(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            CMS_LOGGER.warn("Colormap directory {} does not exist", directory);
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.csv")) {
+            for (Path path : stream) {
+                String fileName = path.getFileName().toString();
+                String name = fileName.substring(0, fileName.length() - ".csv".length());
+                try (InputStream input = Files.newInputStream(path)) {
+                    add(ColorMap.load(name, input));
+                    CMS_LOGGER.info("Loaded colormap {}", path);
+                } catch (IOException e) {
+                    CMS_LOGGER.warn("Failed to load colormap {}", path, e);
+                }
+            }
+        } catch (IOException e) {
+            CMS_LOGGER.warn("Failed to list colormap directory {}", directory, e);
+        }
+    }
+
+    /**
+     * Add (or replace) a colormap
+     * @param colorMap The colormap
+     */
+    public synchronized void add(ColorMap colorMap) {
+        if (colorMaps.put(colorMap.getName(), colorMap) == null) {
+            names.add(colorMap.getName());
+        }
+    }
+
+    /**
+     * Get the names of the colormaps
+     * @return Names in the order they were added
+     */
+    public synchronized List<String> getNames() {
+        return List.copyOf(names);
+    }
+
+    /**
+     * Get a colormap
+     * @param name The name of the colormap
+     * @return The colormap, grayscale if there is no colormap with that name
+     */
+    public ColorMap get(String name) {
+        ColorMap colorMap = name == null ? null : colorMaps.get(name);
+        return colorMap != null ? colorMap : colorMaps.get(GRAYSCALE);
+    }
+}
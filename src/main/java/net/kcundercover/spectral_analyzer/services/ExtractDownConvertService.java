@@ -1,7 +1,8 @@
 package net.kcundercover.spectral_analyzer.services;
 
 import org.springframework.stereotype.Service;
-import java.nio.MappedByteBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import net.kcundercover.jdsp.signal.Resampler;
@@ -26,17 +27,17 @@ public class ExtractDownConvertService {
      * @param buffer The bytes buffer
      * @param startSample The sample offset from the start of buffer
      * @param count The number of samples to extract
-     * @param datatype The data type, controls the number of bytes per sample
+     * @param decoder Decoder of the SigMF datatype of the buffer
      * @param freqOff The frequency offset
      * @param down The down sample rate.
      * @return the downconverted samples
      */
     public double[][] extractAndDownConvert(
-            MappedByteBuffer buffer, long startSample,
-            int count, String datatype, double freqOff, int down) {
+            SampleBuffer buffer, long startSample,
+            int count, SampleDecoder decoder, double freqOff, int down) {
         // Default to use the fast mode
         return extractAndDownConvert(
-            buffer, startSample, count, datatype, freqOff, down, false);
+            buffer, startSample, count, decoder, freqOff, down, false);
     }
 
 
@@ -45,59 +46,22 @@ public class ExtractDownConvertService {
      * @param buffer The bytes buffer
      * @param startSample The sample offset from the start of buffer
      * @param count The number of samples to extract
-     * @param datatype The data type, controls the number of bytes per sample
+     * @param decoder Decoder of the SigMF datatype of the buffer
      * @param freqOff The frequency offset
      * @param down The down sample rate.
      * @param fast Choose between two modes.  fast has less attenuation of out of band noise
      * @return the downconverted samples
      */
     public double[][] extractAndDownConvert(
-            MappedByteBuffer buffer, long startSample,
-            int count, String datatype, double freqOff, int down,
+            SampleBuffer buffer, long startSample,
+            int count, SampleDecoder decoder, double freqOff, int down,
             boolean fast) {
         EDCS_LOGGER.info("Extracting {} samples, Down-converting by factor: {}", count, down);
 
-        int bytesPerIQ;
-        if (datatype.startsWith("ci16")) {
-            bytesPerIQ = 4;
-        } else if (datatype.startsWith("cu8") || datatype.startsWith("ci8")) {
-            bytesPerIQ = 2;
-        } else {
-            bytesPerIQ = 8;
-        }
-        long startByte = startSample * bytesPerIQ;
-
         // -----------------------  load time signal  -------------------------
         double[] inReal = new double[count];
         double[] inImag = new double[count];
-
-        for (int ind = 0; ind < count; ind++) {
-            // Map the new index back to the original buffer index
-            long byteOffset = startByte + (ind * bytesPerIQ);
-
-            double real, imag;
-            if (datatype.startsWith("cf64")) {
-                real = buffer.getDouble((int) byteOffset);
-                imag = buffer.getDouble((int) (byteOffset + 8));
-
-            } else if (datatype.startsWith("ci16")) {
-                real = buffer.getShort((int) byteOffset) / 32768.0;
-                imag = buffer.getShort((int) byteOffset + 2) / 32768.0;
-            } else if (datatype.startsWith("cu8")) {
-                real = buffer.get((int) byteOffset ) & 0xFF;
-                imag = buffer.get((int) (byteOffset + 1)) & 0xFF;
-                real = (real - 127.5) / 128;
-                imag = (imag - 127.5) / 128;
-            } else if (datatype.startsWith("ci8")) {
-                real = buffer.get((int) byteOffset) / 128.0;
-                imag = buffer.get((int) (byteOffset + 1)) / 128.0;
-            } else {
-                real = buffer.getFloat((int) byteOffset);
-                imag = buffer.getFloat((int) byteOffset + 4);
-            }
-            inReal[ind] = real;
-            inImag[ind] = imag;
-        }
+        decoder.decode(buffer, startSample, count, inReal, inImag);
 
         // ----------------------  perform converter  -------------------------
         double[][] result;
@@ -0,0 +1,86 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
+
+/**
+ * Decodes the samples of consecutive FFT frames in blocks
+ *
+ * With overlap, neighbouring frames share most of their samples.  A block
+ * of frames is decoded once from the data buffer and every frame of the
+ * block is read from the decoded samples, so a sample is decoded once
+ * instead of once per frame.  Meant to be kept per thread and reset with
+ * {@link #begin} before walking through a run of frames.
+ */
+final class FrameReader {
+    /** Minimum number of samples decoded at once */
+    private static final int BLOCK_SAMPLES = 1 << 16;
+
+    private SampleBuffer buffer;
+    private SampleDecoder decoder;
+    private int fftSize;
+    private int hopSize;
+    private long fftCount;
+
+    private float[] re = new float[0];
+    private float[] im = new float[0];
+    private long blockFirstFft = -1;
+    private long blockFftCount;
+
+    /**
+     * Start reading the frames of a data buffer (drops the decoded block)
+     * @param newBuffer The data buffer
+     * @param newDecoder Decoder of the SigMF datatype of the buffer
+     * @param newFftSize Number of samples per frame
+     * @param newHopSize Number of samples between the starts of two frames
+     * @param newFftCount Number of frames in the buffer
+     */
+    void begin(SampleBuffer newBuffer, SampleDecoder newDecoder,
+            int newFftSize, int newHopSize, long newFftCount) {
+        this.buffer = newBuffer;
+        this.decoder = newDecoder;
+        this.fftSize = newFftSize;
+        this.hopSize = newHopSize;
+        this.fftCount = newFftCount;
+        this.blockFirstFft = -1;
+        this.blockFftCount = 0;
+    }
+
+    /**
+     * Locate a frame in the decoded samples, decoding the block starting at it if needed
+     * @param fft Index of the frame (must be below the frame count)
+     * @param lastFft Frames up to this index (exclusive) will be read next, the block does not go past it
+     * @return Offset of the frame in {@link #getRe()} and {@link #getIm()}
+     */
+    int locate(long fft, long lastFft) {
+        if (fft < blockFirstFft || fft >= blockFirstFft + blockFftCount) {
+            int perBlock = (int) Math.max(1, (Math.max(BLOCK_SAMPLES, 4L * fftSize) - fftSize) / hopSize + 1);
+            long end = Math.min(Math.min(lastFft, fftCount), fft + perBlock);
+            blockFirstFft = fft;
+            blockFftCount = Math.max(1, end - fft);
+            int samples = (int) ((blockFftCount - 1) * hopSize + fftSize);
+            if (re.length < samples) {
+                re = new float[samples];
+                im = new float[samples];
+            }
+            decoder.decode(buffer, fft * hopSize, samples, re, im);
+        }
+        return (int) ((fft - blockFirstFft) * hopSize);
+    }
+
+    /**
+     * Get the decoded in-phase samples of the block
+     * @return The samples
+     */
+    float[] getRe() {
+        return re;
+    }
+
+    /**
+     * Get the decoded quadrature samples of the block
+     * @return The samples
+     */
+    float[] getIm() {
+        return im;
+    }
+}
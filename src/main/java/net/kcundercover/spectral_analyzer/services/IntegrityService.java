@@ -0,0 +1,191 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Service to hash data files with SHA-512 ({@code core:sha512})
+ *
+ * A SHA-512 digest is sequential, so a single file cannot be split across
+ * cores.  Large blocks are read sequentially on one thread while the
+ * previous block is hashed on another, so the hash keeps up with the disk.
+ * The blocks are read with plain reads rather than through the memory map
+ * of the samples, which avoids a page fault per page.
+ */
+@Service
+public class IntegrityService {
+    private static final Logger IS_LOGGER = LoggerFactory.getLogger(IntegrityService.class);
+
+    /** Digest algorithm of core:sha512 */
+    public static final String ALGORITHM = "SHA-512";
+
+    /** Size of a sequential read */
+    static final int BLOCK_BYTES = 8 * 1024 * 1024;
+
+    /** Default constructor */
+    public IntegrityService() {}
+
+    // hashing and reading threads, a hash uses two of them
+    private final AtomicInteger threadCount = new AtomicInteger();
+    private final ExecutorService hashExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread t = new Thread(runnable);
+        t.setName("Integrity-Worker-" + threadCount.getAndIncrement());
+        t.setDaemon(true); // Ensures threads don't block app shutdown
+        return t;
+    });
+
+    /**
+     * Hash a byte range of a file in the background
+     * @param file The data file (or archive)
+     * @param offset Byte offset of the dataset in the file
+     * @param length Number of bytes to hash
+     * @param progress Called with the hashed fraction (0 to 1) after each block, on the hashing thread
+     * @param cancelled Checked after each block
+     * @return Future completed with the hexadecimal digest, or a {@link CancellationException} when cancelled
+     */
+    public CompletableFuture<String> hashAsync(Path file, long offset, long length, DoubleConsumer progress,
+            BooleanSupplier cancelled) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return hash(file, offset, length, progress, cancelled);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, hashExecutor);
+    }
+
+    /**
+     * Hash a byte range of a file (blocks until done)
+     * @param file The data file (or archive)
+     * @param offset Byte offset of the dataset in the file
+     * @param length Number of bytes to hash
+     * @param progress Called with the hashed fraction (0 to 1) after each block
+     * @param cancelled Checked after each block
+     * @return The hexadecimal digest (lower case)
+     * @throws IOException Failed to read the file, or it is shorter than the range
+     * @throws CancellationException Cancelled before the end
+     */
+    public String hash(Path file, long offset, long length, DoubleConsumer progress, BooleanSupplier cancelled)
+            throws IOException {
+        MessageDigest digest = newDigest();
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer[] blocks = {
+                ByteBuffer.allocateDirect((int) Math.min(BLOCK_BYTES, Math.max(1, length))),
+                ByteBuffer.allocateDirect((int) Math.min(BLOCK_BYTES, Math.max(1, length)))
+            };
+            long end = offset + length;
+            long position = offset;
+            int next = 0;
+            Future<ByteBuffer> pending = readAsync(channel, blocks[next], position, end);
+            try {
+                while (position < end) {
+                    ByteBuffer block = await(pending);
+                    position += block.remaining();
+                    // read the next block while this one is hashed
+                    next ^= 1;
+                    pending = position < end ? readAsync(channel, blocks[next], position, end) : null;
+
+                    digest.update(block);
+                    progress.accept((double) (position - offset) / length);
+                    if (cancelled.getAsBoolean()) {
+                        throw new CancellationException("Hash of " + file.getFileName() + " cancelled");
+                    }
+                }
+            } finally {
+                if (pending != null) {
+                    // the read of the next block must end before the channel is closed
+                    awaitQuietly(pending);
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        IS_LOGGER.info("Hashed {} bytes of {} in {} s ({} MB/s)", length, file.getFileName(),
+            String.format("%.2f", seconds), String.format("%.0f", length / 1e6 / Math.max(seconds, 1e-9)));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Compare a digest to the one of the metadata
+     * @param expected Digest of the metadata (core:sha512, any case)
+     * @param actual Computed digest
+     * @return True if they match
+     */
+    public static boolean matches(String expected, String actual) {
+        return expected != null && actual != null && expected.trim().equalsIgnoreCase(actual.trim());
+    }
+
+    /**
+     * Read a block on a worker thread
+     * @param channel The file
+     * @param block The block to fill (up to its capacity)
+     * @param position Byte offset of the block in the file
+     * @param end End of the range to hash
+     * @return Future completed with the block, flipped for reading
+     */
+    private Future<ByteBuffer> readAsync(FileChannel channel, ByteBuffer block, long position, long end) {
+        return hashExecutor.submit(() -> {
+            block.clear().limit((int) Math.min(block.capacity(), end - position));
+            while (block.hasRemaining()) {
+                if (channel.read(block, position + block.position()) < 0) {
+                    throw new EOFException("Data file is shorter than expected (" + end + " bytes)");
+                }
+            }
+            return block.flip();
+        });
+    }
+
+    private static ByteBuffer await(Future<ByteBuffer> read) throws IOException {
+        try {
+            return read.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new CompletionException(e.getCause());
+        }
+    }
+
+    private static void awaitQuietly(Future<ByteBuffer> read) {
+        try {
+            read.get();
+        } catch (CancellationException | ExecutionException e) {
+            // the hash already failed or was cancelled
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is required by the Java platform", e);
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import net.kcundercover.spectral_analyzer.dsp.WindowFunction;
+import net.kcundercover.spectral_analyzer.render.SpectrogramPyramid;
+import net.kcundercover.spectral_analyzer.render.SpectrogramRequest;
+import net.kcundercover.spectral_analyzer.sigmf.SigMfArchive;
+import net.kcundercover.spectral_analyzer.sigmf.SpectrumSidecar;
+
+/**
+ * Service to build the multi-resolution spectrogram pyramid of a data file
+ *
+ * The pyramid is computed in the background on a small pool of its own (so
+ * the interactive spectrogram keeps the {@link SpectrogramRenderService}
+ * workers) and saved next to the data file.  Opening the file again loads
+ * the saved pyramid instead of recomputing it.
+ *
+ * Since the build computes every FFT of the file, it also writes the
+ * {@link SpectrumSidecar} of the recording, unless it is disabled or would
+ * be larger than a fraction of the data file (small FFTs with overlap).
+ */
+@Service
+public class PyramidService {
+    private static final Logger PS_LOGGER = LoggerFactory.getLogger(PyramidService.class);
+
+    /** Number of level 0 columns below which a task stops splitting */
+    private static final int COLUMNS_PER_TASK = 4;
+
+    /** Default constructor (sidecar up to half the size of the data file) */
+    public PyramidService() {
+        this(true, 0.5);
+    }
+
+    /**
+     * Constructor
+     * @param sidecarEnabled True to write the spectrum sidecar while building a pyramid
+     * @param sidecarMaxFraction Largest size of the sidecar, relative to the data file
+     */
+    @Autowired
+    public PyramidService(@Value("${spectral.sidecar.enabled:true}") boolean sidecarEnabled,
+            @Value("${spectral.sidecar.max-fraction:0.5}") double sidecarMaxFraction) {
+        this.sidecarEnabled = sidecarEnabled;
+        this.sidecarMaxFraction = sidecarMaxFraction;
+    }
+
+    private final boolean sidecarEnabled;
+    private final double sidecarMaxFraction;
+
+    @Autowired
+    private SpectralService spectralService;
+
+    // Half of the cores, the pyramid is background work
+    private final ForkJoinPool builderPool = new ForkJoinPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 2),
+        pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("Pyramid-Worker-" + t.getPoolIndex());
+            t.setPriority(Thread.MIN_PRIORITY);
+            t.setDaemon(true); // Ensures threads don't block app shutdown
+            return t;
+        },
+        null, false);
+
+    /** Finished pyramids of the current data file */
+    private final Map<String, SpectrogramPyramid> pyramids = new ConcurrentHashMap<>();
+
+    /** The pyramid being built (only one at a time) */
+    private Build currentBuild;
+
+    /** Per-thread scratch for the full (nfft point) power spectrum */
+    private final ThreadLocal<float[]> powerScratch = ThreadLocal.withInitial(() -> new float[0]);
+
+    /** Per-thread decoded samples, shared by overlapping FFTs */
+    private final ThreadLocal<FrameReader> frameReaders = ThreadLocal.withInitial(FrameReader::new);
+
+    /**
+     * Get a finished pyramid
+     * @param request The viewport (data file, FFT size and window)
+     * @return The pyramid, or null if it is not available (yet)
+     */
+    public SpectrogramPyramid getPyramid(SpectrogramRequest request) {
+        return pyramids.get(getKey(request));
+    }
+
+    /**
+     * Get the pyramid for the viewport, loading or building it in the background if needed
+     *
+     * A build for a different file or FFT size is cancelled.
+     * @param request The viewport (data file, FFT size and window)
+     * @param sidecarPath Where to write the spectrum sidecar (null to skip it)
+     * @return Future completed with the pyramid (null if the file is too short)
+     */
+    public synchronized CompletableFuture<SpectrogramPyramid> requestPyramid(
+            SpectrogramRequest request, Path sidecarPath) {
+        String key = getKey(request);
+        SpectrogramPyramid pyramid = pyramids.get(key);
+        if (pyramid != null) {
+            return CompletableFuture.completedFuture(pyramid);
+        }
+        if (currentBuild != null && currentBuild.key.equals(key)) {
+            return currentBuild.future;
+        }
+        if (currentBuild != null) {
+            currentBuild.cancelled.set(true);
+        }
+
+        // only keep the pyramids of the file being viewed
+        pyramids.keySet().removeIf(k -> !k.startsWith(request.dataKey() + "|"));
+
+        Build build = new Build(key);
+        build.future = CompletableFuture.supplyAsync(() -> loadOrBuild(request, sidecarPath, build), builderPool);
+        currentBuild = build;
+        build.future.whenComplete((result, ex) -> {
+            synchronized (this) {
+                if (result != null && !build.cancelled.get()) {
+                    pyramids.put(key, result);
+                }
+                if (currentBuild == build) {
+                    currentBuild = null;
+                }
+            }
+        });
+        return build.future;
+    }
+
+    /**
+     * Get the file the pyramid of a data file is saved in
+     * @param dataPath The data file
+     * @param fftSize Number of FFT points
+     * @return Path of the pyramid file (next to the data file)
+     */
+    public static Path getPyramidPath(Path dataPath, int fftSize) {
+        String name = dataPath.getFileName().toString();
+        if (name.endsWith(".sigmf-data")) {
+            name = name.substring(0, name.length() - ".sigmf-data".length());
+        } else if (name.endsWith(SigMfArchive.EXTENSION)) {
+            name = name.substring(0, name.length() - SigMfArchive.EXTENSION.length());
+        }
+        return dataPath.resolveSibling(name + ".sigmf-pyramid-" + fftSize);
+    }
+
+    private static String getKey(SpectrogramRequest request) {
+        return request.dataKey() + "|" + request.fftSize() + "|" + request.getWindowKey();
+    }
+
+    /**
+     * Load the saved pyramid if it is still valid, otherwise compute and save it
+     * @param request The viewport (data file, FFT size and window)
+     * @param sidecarPath Where to write the spectrum sidecar (null to skip it)
+     * @param build Build state (for cancellation)
+     * @return The pyramid, null if the data file is shorter than one FFT
+     */
+    private SpectrogramPyramid loadOrBuild(SpectrogramRequest request, Path sidecarPath, Build build) {
+        Path dataPath = Path.of(request.dataKey());
+        Path pyramidPath = getPyramidPath(dataPath, request.fftSize());
+        long fftCount = request.getFftCount();
+        long sourceSize = 0;
+        long sourceModified = 0;
+        boolean sidecarValid = sidecarPath == null;
+        try {
+            sourceSize = Files.size(dataPath);
+            sourceModified = Files.getLastModifiedTime(dataPath).toMillis();
+            SpectrogramPyramid saved = SpectrogramPyramid.load(
+                pyramidPath, sourceSize, sourceModified, request.fftSize(), request.getWindowKey());
+            sidecarValid = sidecarValid || !isSidecarWanted(request.fftSize(), fftCount, sourceSize)
+                || SpectrumSidecar.isValid(sidecarPath, sourceSize, sourceModified, request.getWindowKey());
+            if (saved != null && sidecarValid) {
+                PS_LOGGER.info("Loaded spectrogram pyramid {}", pyramidPath);
+                return saved;
+            }
+        } catch (IOException e) {
+            PS_LOGGER.warn("Failed to load spectrogram pyramid {}", pyramidPath, e);
+        }
+
+        SpectrumSidecar.Writer sidecar = null;
+        // NOTE: a valid sidecar is kept, one for another window is replaced
+        // (written aside and moved, SigMfHelper may still have it mapped)
+        if (!sidecarValid && fftCount > 0 && isSidecarWanted(request.fftSize(), fftCount, sourceSize)) {
+            try {
+                sidecar = SpectrumSidecar.create(sidecarPath, request.fftSize(), fftCount, request.getWindowKey());
+            } catch (IOException e) {
+                // e.g. read-only media, the pyramid is still useful
+                PS_LOGGER.warn("Failed to create spectrum sidecar {}", sidecarPath, e);
+            }
+        }
+
+        long start = System.nanoTime();
+        SpectrogramPyramid pyramid;
+        try {
+            pyramid = build(request, sidecar, build);
+        } catch (RuntimeException e) {
+            if (sidecar != null) {
+                sidecar.abort();
+            }
+            throw e;
+        }
+        if (pyramid == null) {
+            return null;
+        }
+        if (sidecar != null) {
+            try {
+                sidecar.finish(sourceSize, sourceModified);
+            } catch (IOException e) {
+                PS_LOGGER.warn("Failed to write spectrum sidecar {}", sidecarPath, e);
+            }
+        }
+        PS_LOGGER.info("Built spectrogram pyramid ({} FFTs, {} levels) in {} s",
+            pyramid.getFftCount(), pyramid.getLevelCount(), (System.nanoTime() - start) / 1e9);
+
+        try {
+            pyramid.save(pyramidPath, sourceSize, sourceModified);
+        } catch (IOException e) {
+            // e.g. read-only media, keep the pyramid in memory only
+            PS_LOGGER.warn("Failed to save spectrogram pyramid {}", pyramidPath, e);
+        }
+        return pyramid;
+    }
+
+    /**
+     * Check if the spectrum sidecar of a data file should be written
+     * @param fftSize Number of FFT points
+     * @param fftCount Number of FFTs (columns)
+     * @param sourceSize Size of the data file
+     * @return False if the sidecar is disabled or would be too large
+     */
+    private boolean isSidecarWanted(int fftSize, long fftCount, long sourceSize) {
+        long sidecarSize = SpectrumSidecar.getFileSize(fftSize, fftCount);
+        if (!sidecarEnabled || sidecarSize > sidecarMaxFraction * sourceSize) {
+            PS_LOGGER.debug("No spectrum sidecar ({} bytes for a {} byte data file)", sidecarSize, sourceSize);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compute level 0 over the whole file (in parallel), then the levels above
+     * @param request The viewport (data file, FFT size and window)
+     * @param sidecar Receives the spectrum of every FFT (may be null)
+     * @param build Build state (for cancellation)
+     * @return The pyramid, null if the data file is shorter than one FFT
+     */
+    private SpectrogramPyramid build(SpectrogramRequest request, SpectrumSidecar.Writer sidecar, Build build) {
+        int fftSize = request.fftSize();
+        long fftCount = request.getFftCount();
+        WindowFunction window = request.getWindow();
+        if (fftCount == 0) {
+            return null;
+        }
+
+        int bins = SpectrogramPyramid.getBinCount(fftSize);
+        int binWidth = fftSize / bins;
+        int decimation = SpectrogramPyramid.getBaseDecimation(fftCount);
+        int columns = (int) ((fftCount + decimation - 1) / decimation);
+        float[] mean = new float[columns * bins];
+        float[] max = new float[columns * bins];
+        float[] min = new float[columns * bins];
+
+        AtomicInteger done = new AtomicInteger();
+        RangeTask.run(builderPool, 0, columns, COLUMNS_PER_TASK, c -> {
+            if (build.cancelled.get()) {
+                throw new CancellationException("Pyramid build cancelled");
+            }
+            float[] power = powerScratch.get();
+            if (power.length < fftSize) {
+                power = new float[fftSize];
+                powerScratch.set(power);
+            }
+
+            long firstFft = (long) c * decimation;
+            long lastFft = Math.min(firstFft + decimation, fftCount);
+            int offset = c * bins;
+            Arrays.fill(min, offset, offset + bins, Float.MAX_VALUE);
+            FrameReader reader = frameReaders.get();
+            reader.begin(request.buffer(), request.decoder(),
+                fftSize, request.getHopSize(), fftCount);
+            for (long k = firstFft; k < lastFft; k++) {
+                int at = reader.locate(k, lastFft);
+                spectralService.computePowerSpectrum(reader.getRe(), reader.getIm(), at, fftSize, window, power);
+                if (sidecar != null) {
+                    sidecar.putColumn(k, power);
+                }
+
+                // reduce the FFT bins to the pyramid bins
+                for (int b = 0; b < bins; b++) {
+                    float sum = 0;
+                    float peak = 0;
+                    for (int i = b * binWidth; i < (b + 1) * binWidth; i++) {
+                        sum += power[i];
+                        peak = Math.max(peak, power[i]);
+                    }
+                    mean[offset + b] += sum / binWidth;
+                    max[offset + b] = Math.max(max[offset + b], peak);
+                    min[offset + b] = Math.min(min[offset + b], peak);
+                }
+            }
+            float count = lastFft - firstFft;
+            for (int b = 0; b < bins; b++) {
+                mean[offset + b] /= count;
+            }
+
+            int finished = done.incrementAndGet();
+            if (finished % Math.max(1, columns / 10) == 0) {
+                PS_LOGGER.debug("Spectrogram pyramid {}% complete", 100 * finished / columns);
+            }
+        });
+
+        return SpectrogramPyramid.fromBase(fftSize, decimation, fftCount, request.getWindowKey(), mean, max, min);
+    }
+
+    /**
+     * State of a pyramid being built
+     */
+    private static final class Build {
+        private final String key;
+        private final AtomicBoolean cancelled = new AtomicBoolean(false);
+        private CompletableFuture<SpectrogramPyramid> future;
+
+        Build(String key) {
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Splits a range of indices (e.g. spectrogram columns) across a fork-join pool
+ */
+final class RangeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final int lo;
+    private final int hi;
+    private final int grain;
+    private final transient IntConsumer body;
+
+    /**
+     * Constructor
+     * @param lo First index (inclusive)
+     * @param hi Last index (exclusive)
+     * @param grain Number of indices below which a task stops splitting
+     * @param body Work for a single index
+     */
+    RangeTask(int lo, int hi, int grain, IntConsumer body) {
+        this.lo = lo;
+        this.hi = hi;
+        this.grain = grain;
+        this.body = body;
+    }
+
+    /**
+     * Run the body for each index of the range on the pool (blocks until done)
+     * @param pool The pool to run on
+     * @param lo First index (inclusive)
+     * @param hi Last index (exclusive)
+     * @param grain Number of indices below which a task stops splitting
+     * @param body Work for a single index
+     */
+    static void run(ForkJoinPool pool, int lo, int hi, int grain, IntConsumer body) {
+        RangeTask task = new RangeTask(lo, hi, grain, body);
+        if (ForkJoinTask.getPool() == pool) {
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    @Override
+    protected void compute() {
+        if (hi - lo <= grain) {
+            for (int i = lo; i < hi; i++) {
+                body.accept(i);
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        invokeAll(new RangeTask(lo, mid, grain, body), new RangeTask(mid, hi, grain, body));
+    }
+}
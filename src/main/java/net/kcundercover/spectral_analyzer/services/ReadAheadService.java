@@ -0,0 +1,234 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+
+/**
+ * Service to read the data file ahead of the viewport while scrolling
+ *
+ * The viewports shown by the spectrogram give the scroll direction and
+ * speed.  The samples the next viewports will need are loaded into memory
+ * on a low priority thread, so a cold file (e.g. on network storage) does
+ * not stall the render on page faults.  The bytes read ahead are kept as a
+ * single range next to the viewport, a jump elsewhere starts a new one.
+ *
+ * A viewport is a hit when its samples were loaded before it was shown,
+ * {@link #getHitRate} reports how often the read-ahead was in time.
+ */
+@Service
+public class ReadAheadService {
+    private static final Logger RAS_LOGGER = LoggerFactory.getLogger(ReadAheadService.class);
+
+    /** Number of viewports read ahead when scrolling slowly */
+    static final int MIN_VIEWPORTS = 2;
+
+    /** Number of viewports read ahead at most */
+    static final int MAX_VIEWPORTS = 8;
+
+    /** Scrolling time read ahead at the current speed */
+    static final double LOOKAHEAD_SECONDS = 2.0;
+
+    /** Bytes read ahead at most */
+    static final long MAX_BYTES = 1L << 30;
+
+    /** Bytes loaded between two checks for a newer viewport */
+    static final long STEP_BYTES = 4L << 20;
+
+    /** Weight of the last scroll in the smoothed speed */
+    private static final double SPEED_SMOOTHING = 0.5;
+
+    /** Default constructor */
+    public ReadAheadService() {}
+
+    // single low priority reader, the render workers have precedence
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread t = new Thread(runnable);
+        t.setName("ReadAhead");
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.setDaemon(true); // Ensures threads don't block app shutdown
+        return t;
+    });
+
+    /** Generation of the newest read-ahead, older ones stop at their next step */
+    private final AtomicLong generation = new AtomicLong();
+
+    // ---- state of the current file (guarded by this) ----
+    private SampleBuffer buffer;
+    private long lastSample = -1;
+    private long lastNanos;
+    private int direction = 1; // forward until the user scrolls
+    private double speed; // samples per second
+    private long loadedLo;
+    private long loadedHi;
+    private long hits;
+    private long misses;
+
+    /**
+     * Report the viewport being shown and read the next ones ahead
+     *
+     * Called for every render, a viewport that did not move is ignored.
+     * @param newBuffer The samples of the file
+     * @param bytesPerSample Size of a sample
+     * @param firstSample First sample of the viewport
+     * @param sampleCount Number of samples of the viewport
+     */
+    public synchronized void onViewport(SampleBuffer newBuffer, int bytesPerSample, long firstSample,
+            long sampleCount) {
+        if (buffer == null || !buffer.hasSameSource(newBuffer)) {
+            reset();
+        }
+        buffer = newBuffer; // same file, may have grown
+        if (firstSample == lastSample) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        long lo = Math.min(buffer.size(), firstSample * bytesPerSample);
+        long hi = Math.min(buffer.size(), (firstSample + sampleCount) * bytesPerSample);
+        if (lastSample >= 0) {
+            if (lo >= loadedLo && hi <= loadedHi) {
+                hits++;
+            } else {
+                misses++;
+            }
+            long delta = firstSample - lastSample;
+            double seconds = Math.max(1e-3, (now - lastNanos) / 1e9);
+            double instant = Math.abs(delta) / seconds;
+            int newDirection = Long.signum(delta);
+            speed = newDirection == direction ? SPEED_SMOOTHING * instant + (1 - SPEED_SMOOTHING) * speed : instant;
+            direction = newDirection;
+        }
+        lastSample = firstSample;
+        lastNanos = now;
+
+        // the viewport itself is read by the render
+        if (hi < loadedLo || lo > loadedHi) {
+            loadedLo = lo;
+            loadedHi = hi;
+        } else {
+            loadedLo = Math.min(loadedLo, lo);
+            loadedHi = Math.max(loadedHi, hi);
+        }
+
+        long viewBytes = Math.max(1, hi - lo);
+        long ahead = (long) (speed * LOOKAHEAD_SECONDS) * bytesPerSample;
+        ahead = Math.min(MAX_BYTES, Math.clamp(ahead, MIN_VIEWPORTS * viewBytes, MAX_VIEWPORTS * viewBytes));
+        long from;
+        long to;
+        if (direction >= 0) {
+            from = loadedHi;
+            to = Math.min(buffer.size(), hi + ahead);
+        } else {
+            from = Math.max(0, lo - ahead);
+            to = loadedLo;
+        }
+        long ticket = generation.incrementAndGet();
+        if (from < to) {
+            SampleBuffer target = buffer;
+            boolean forward = direction >= 0;
+            reader.execute(() -> readAhead(target, from, to, forward, ticket));
+        }
+    }
+
+    /**
+     * Get the fraction of the viewports whose samples were loaded ahead of time
+     * @return Hit rate (0 to 1), 0 before the first scroll
+     */
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    /**
+     * Get the number of viewports whose samples were loaded ahead of time
+     * @return Number of hits since the file was opened
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of viewports whose samples were not loaded ahead of time
+     * @return Number of misses since the file was opened
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the bytes loaded around the viewport (read by the render or read ahead)
+     * @return {first byte, end byte}
+     */
+    synchronized long[] getLoadedRange() {
+        return new long[] {loadedLo, loadedHi};
+    }
+
+    /**
+     * Wait for the read-ahead already requested to finish (for tests)
+     * @throws Exception Interrupted
+     */
+    void awaitReadAhead() throws Exception {
+        reader.submit(() -> { }).get();
+    }
+
+    /**
+     * Stop reading ahead and forget the current file
+     */
+    public synchronized void reset() {
+        if (hits + misses > 0) {
+            RAS_LOGGER.info("Read-ahead hit rate {}% ({} of {} viewports)",
+                String.format("%.1f", 100 * getHitRate()), hits, hits + misses);
+        }
+        generation.incrementAndGet();
+        buffer = null;
+        lastSample = -1;
+        direction = 1;
+        speed = 0;
+        loadedLo = 0;
+        loadedHi = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Load a range in steps, in scroll order, until a newer viewport comes in
+     * @param target The samples of the file
+     * @param from Byte offset of the range
+     * @param to End of the range
+     * @param forward True to load from the start of the range
+     * @param ticket Generation of the read-ahead
+     */
+    private void readAhead(SampleBuffer target, long from, long to, boolean forward, long ticket) {
+        for (long done = 0; done < to - from; done += STEP_BYTES) {
+            if (generation.get() != ticket) {
+                return;
+            }
+            long n = Math.min(STEP_BYTES, to - from - done);
+            long start = forward ? from + done : to - done - n;
+            try {
+                target.load(start, n);
+            } catch (RuntimeException e) {
+                RAS_LOGGER.debug("Read-ahead of {} bytes at {} failed", n, start, e);
+                return;
+            }
+            synchronized (this) {
+                if (buffer == null || !buffer.hasSameSource(target)) {
+                    return;
+                }
+                // contiguous with the viewport, so the loaded range stays a single range
+                if (forward && start <= loadedHi) {
+                    loadedHi = Math.max(loadedHi, start + n);
+                } else if (!forward && start + n >= loadedLo) {
+                    loadedLo = Math.min(loadedLo, start);
+                }
+            }
+        }
+    }
+}
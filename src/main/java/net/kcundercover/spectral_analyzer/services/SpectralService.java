@@ -1,86 +1,193 @@
 package net.kcundercover.spectral_analyzer.services;
 
-import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.nio.MappedByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import net.kcundercover.spectral_analyzer.dsp.Aggregation;
+import net.kcundercover.spectral_analyzer.dsp.FftEngine;
+import net.kcundercover.spectral_analyzer.dsp.RadixTwoFftEngine;
+import net.kcundercover.spectral_analyzer.dsp.SampleKernels;
+import net.kcundercover.spectral_analyzer.dsp.WindowFunction;
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
 
 /**
  * Service to perform FFT
  *
- * This service processes the FFT on an input buffer.
+ * This service processes the FFT on an input buffer.  The FFT itself is
+ * delegated to a {@link FftEngine} (primitive radix-2 by default, or the
+ * Apache Commons implementation for comparison).
+ *
+ * Samples can be decoded once with a {@link SampleDecoder} and windowed per
+ * frame, so overlapping frames do not read the data buffer again.  The
+ * window, power and dB loops run on the {@link SampleKernels} (SIMD when the
+ * Vector API module is available).
  */
 @Service
 public class SpectralService {
+    private static final Logger SS_LOGGER = LoggerFactory.getLogger(SpectralService.class);
+
     /** Default constructor */
     public SpectralService() {
+        this.fftEngine = new RadixTwoFftEngine();
+    }
 
+    /**
+     * Constructor selecting the FFT engine by name
+     * @param engineName Name of the FFT engine ("primitive" or "commons")
+     */
+    @Autowired
+    public SpectralService(@Value("${spectral.fft.engine:primitive}") String engineName) {
+        this.fftEngine = FftEngine.forName(engineName);
+        SS_LOGGER.info("Using FFT engine: {}, sample kernels: {}", fftEngine.getName(), kernels.getName());
+    }
+
+    /** FFT engine */
+    private volatile FftEngine fftEngine;
+
+    /** Window, power and dB loops */
+    private final SampleKernels kernels = SampleKernels.get();
+
+    /** Per-thread scratch arrays so that columns can be computed without allocation */
+    private final ThreadLocal<float[][]> workspace = ThreadLocal.withInitial(() -> new float[2][0]);
+
+    /**
+     * Get the active FFT engine
+     * @return The FFT engine
+     */
+    public FftEngine getFftEngine() {
+        return fftEngine;
     }
 
-    /** FFT Transformer */
-    private final FastFourierTransformer transformer = new FastFourierTransformer(DftNormalization.STANDARD);
+    /**
+     * Set the FFT engine
+     * @param fftEngine The new FFT engine
+     */
+    public void setFftEngine(FftEngine fftEngine) {
+        this.fftEngine = fftEngine;
+    }
 
     /**
      * Processes a chunk of IQ data into power magnitudes (dB).
-     * @param buffer The SigMF MappedByteBuffer
-     * @param startByte The byte offset to start reading
-     * @param nfft The number of samples and number fft points (MUST be a power of 2 for Apache Commons)
-     * @param datatype Specify the type of data from the buffer
+     * @param buffer The SigMF data buffer
+     * @param firstSample The sample offset to start reading (64-bit, files can be above 2 GB)
+     * @param nfft The number of samples and number fft points (MUST be a power of 2)
+     * @param decoder Decoder of the SigMF datatype of the buffer
      * @return Array of magnitudes for the spectrogram
      */
-    public double[] computeMagnitudes(MappedByteBuffer buffer, int startByte, int nfft, String datatype) {
-        Complex[] complexData = new Complex[nfft];
-        boolean isCi16 = datatype.startsWith("ci16");
-        boolean isCf32 = datatype.startsWith("cf32");
-        boolean isCu8 = datatype.startsWith("cu8");
-        boolean isCi8 = datatype.startsWith("ci8");
+    public double[] computeMagnitudes(SampleBuffer buffer, long firstSample, int nfft, SampleDecoder decoder) {
+        float[] magnitudes = new float[nfft];
+        computeMagnitudes(buffer, firstSample, nfft, decoder, magnitudes);
 
+        double[] shiftedMagnitudes = new double[nfft];
         for (int i = 0; i < nfft; i++) {
-            double real, imag;
-            if (isCi16) {
-                // Read 2-byte shorts for ci16 (Total 4 bytes per IQ pair)
-                real = buffer.getShort(startByte + (i * 4)) / 32768.0;
-                imag = buffer.getShort(startByte + (i * 4) + 2) / 32768.0;
-            } else if (isCf32) {
-                // Read 4-byte floats for cf32 (Total 8 bytes per IQ pair)
-                real = buffer.getFloat(startByte + (i * 8));
-                imag = buffer.getFloat(startByte + (i * 8) + 4);
-            } else if (isCu8) {
-                real = buffer.get(startByte + (i * 2)) & 0xFF;
-                imag = buffer.get(startByte + (i * 2) + 1) & 0xFF;
-                real = (real - 127.5) / 128;
-                imag = (imag - 127.5) / 128;
-            } else if (isCi8) {
-                real = buffer.get(startByte + (i * 2));
-                imag = buffer.get(startByte + (i * 2) + 1);
-                real = real / 128;
-                imag = imag / 128;
-            } else {
-                real = 0.0;
-                imag = 0.0;
-            }
-            complexData[i] = new Complex(real, imag);
+            shiftedMagnitudes[i] = magnitudes[i];
         }
+        return shiftedMagnitudes;
+    }
 
-        // calculate FFT (frequencies are from 0 to FS)
-        Complex[] fftResult = transformer.transform(complexData, TransformType.FORWARD);
+    /**
+     * Processes a chunk of IQ data into power magnitudes (dB) without allocating.
+     * @param buffer The SigMF data buffer
+     * @param firstSample The sample offset to start reading (64-bit, files can be above 2 GB)
+     * @param nfft The number of samples and number fft points (MUST be a power of 2)
+     * @param decoder Decoder of the SigMF datatype of the buffer
+     * @param out Output magnitudes (at least nfft long), frequency range is -fs/2 to fs/2
+     */
+    public void computeMagnitudes(SampleBuffer buffer, long firstSample, int nfft, SampleDecoder decoder,
+            float[] out) {
+        computePowerSpectrum(buffer, firstSample, nfft, decoder, out);
+        // NOTE: 20 * log10(|X|) == 10 * log10(|X|^2), avoids the sqrt
+        kernels.toDecibels(out, 0, nfft);
+    }
 
-        // --------------------------------------------------------------------
-        // Apply FFT Shift (make frequency range from -fs/2 to fs/2)
-        // --------------------------------------------------------------------
-        double[] shiftedMagnitudes = new double[nfft];
-        int half = nfft / 2;
+    /**
+     * Processes a chunk of IQ data into linear power (|X|^2) without allocating.
+     *
+     * Used when spectra are averaged before converting to dB.
+     * @param buffer The SigMF data buffer
+     * @param firstSample The sample offset to start reading (64-bit, files can be above 2 GB)
+     * @param nfft The number of samples and number fft points (MUST be a power of 2)
+     * @param decoder Decoder of the SigMF datatype of the buffer
+     * @param out Output power (at least nfft long), frequency range is -fs/2 to fs/2
+     */
+    public void computePowerSpectrum(SampleBuffer buffer, long firstSample, int nfft, SampleDecoder decoder,
+            float[] out) {
+        float[][] work = getWorkspace(nfft);
+        decoder.decode(buffer, firstSample, nfft, work[0], work[1]);
+        fftEngine.forward(work[0], work[1], nfft);
+        shiftPower(work, nfft, Aggregation.MAX, out, true);
+    }
 
-        for (int i = 0; i < nfft; i++) {
-            // Swap halves: index i becomes (i + half) % n
-            int shiftedIndex = (i + half) % nfft;
+    /**
+     * Computes the linear power (|X|^2) of a frame of decoded samples.
+     * @param re Decoded in-phase samples
+     * @param im Decoded quadrature samples
+     * @param offset Index of the first sample of the frame
+     * @param nfft The number of samples and number fft points (MUST be a power of 2)
+     * @param window Window applied before the FFT
+     * @param out Output power (at least nfft long), frequency range is -fs/2 to fs/2
+     */
+    public void computePowerSpectrum(float[] re, float[] im, int offset, int nfft, WindowFunction window,
+            float[] out) {
+        accumulatePowerSpectrum(re, im, offset, nfft, window, Aggregation.MAX, out, true);
+    }
 
-            double abs = fftResult[i].abs();
-            shiftedMagnitudes[shiftedIndex] = 20 * Math.log10(abs + 1e-10);
+    /**
+     * Computes the linear power of a frame of decoded samples and combines it into an accumulator.
+     *
+     * The power is reduced straight into the accumulator (no intermediate
+     * spectrum), call {@link Aggregation#finish} once all the FFTs are combined.
+     * @param re Decoded in-phase samples
+     * @param im Decoded quadrature samples
+     * @param offset Index of the first sample of the frame
+     * @param nfft The number of samples and number fft points (MUST be a power of 2)
+     * @param window Window applied before the FFT
+     * @param aggregation How the power is combined
+     * @param accumulated Accumulated power (at least nfft long), frequency range is -fs/2 to fs/2
+     * @param first True for the first FFT, which initializes the accumulator
+     */
+    public void accumulatePowerSpectrum(float[] re, float[] im, int offset, int nfft, WindowFunction window,
+            Aggregation aggregation, float[] accumulated, boolean first) {
+        float[][] work = getWorkspace(nfft);
+        float[] wre = work[0];
+        float[] wim = work[1];
+        if (window == WindowFunction.RECTANGULAR) {
+            System.arraycopy(re, offset, wre, 0, nfft);
+            System.arraycopy(im, offset, wim, 0, nfft);
+        } else {
+            kernels.window(re, im, offset, window.getCoefficients(nfft), wre, wim, nfft);
         }
 
-        return shiftedMagnitudes;
+        // calculate FFT (frequencies are from 0 to FS)
+        fftEngine.forward(wre, wim, nfft);
+        shiftPower(work, nfft, aggregation, accumulated, first);
+    }
+
+    private float[][] getWorkspace(int nfft) {
+        float[][] work = workspace.get();
+        if (work[0].length < nfft) {
+            work[0] = new float[nfft];
+            work[1] = new float[nfft];
+        }
+        return work;
+    }
+
+    /**
+     * Apply the FFT shift (frequency range from -fs/2 to fs/2) and combine |X|^2 into an accumulator
+     * @param work {re, im} of the FFT (frequencies are from 0 to FS)
+     * @param nfft Number of FFT points
+     * @param aggregation How the power is combined
+     * @param accumulated Accumulated power
+     * @param first True to overwrite the accumulator
+     */
+    private void shiftPower(float[][] work, int nfft, Aggregation aggregation, float[] accumulated,
+            boolean first) {
+        // Swap halves: index i becomes (i + half) % n
+        int half = nfft / 2;
+        kernels.accumulatePower(work[0], work[1], 0, accumulated, half, nfft - half, aggregation, first);
+        kernels.accumulatePower(work[0], work[1], nfft - half, accumulated, 0, half, aggregation, first);
     }
 }
@@ -0,0 +1,594 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import net.kcundercover.spectral_analyzer.dsp.Aggregation;
+import net.kcundercover.spectral_analyzer.dsp.SampleKernels;
+import net.kcundercover.spectral_analyzer.dsp.WindowFunction;
+import net.kcundercover.spectral_analyzer.render.ColorMap;
+import net.kcundercover.spectral_analyzer.render.SpectrogramFrame;
+import net.kcundercover.spectral_analyzer.render.SpectrogramPyramid;
+import net.kcundercover.spectral_analyzer.render.SpectrogramRequest;
+import net.kcundercover.spectral_analyzer.render.SpectrogramTile;
+import net.kcundercover.spectral_analyzer.render.TileCache;
+import net.kcundercover.spectral_analyzer.render.TileKey;
+import net.kcundercover.spectral_analyzer.sigmf.SpectrumSidecar;
+
+/**
+ * Service to compute spectrogram frames off the JavaFX Application Thread
+ *
+ * The columns of the viewport are split across a fork-join pool.  Each
+ * worker computes the FFT of its columns, reduces the spectrum to the
+ * display rows and colors its pixels.  Only the finished frame is handed
+ * back to the caller.
+ *
+ * Columns are computed in tiles of {@link #TILE_COLUMNS} columns that are
+ * kept in a {@link TileCache}, so revisiting a region does not recompute
+ * its FFTs.
+ *
+ * When the data file grows (file still being recorded), only the columns
+ * that were not complete are computed again: the tail of the previous frame
+ * and the incomplete columns of the last cached tile.
+ *
+ * Interactive views go through {@link #renderLatest}: every call takes a new
+ * generation number and the renders of older generations give up, so only
+ * the newest viewport keeps the workers busy.
+ */
+@Service
+public class SpectrogramRenderService {
+    private static final Logger SRS_LOGGER = LoggerFactory.getLogger(SpectrogramRenderService.class);
+
+    /** Magnitude (dB) used for columns past the end of the file (renders black) */
+    public static final float NO_DATA_DB = -150.0f;
+
+    /** Number of columns per cached tile */
+    public static final int TILE_COLUMNS = 64;
+
+    /** Number of consecutive columns computed by a task (divides {@link #TILE_COLUMNS}) */
+    private static final int COLUMNS_PER_TASK = 8;
+
+    /** Number of FFTs combined between two cancellation checks */
+    private static final int FFTS_PER_CHECK = 64;
+
+    /** Never cancelled, for renders that are not scheduled */
+    private static final BooleanSupplier NOT_CANCELLED = () -> false;
+
+    /** dB conversion of the combined spectra (SIMD when available) */
+    private static final SampleKernels KERNELS = SampleKernels.get();
+
+    /** Default size of the tile cache (MB) */
+    private static final long DEFAULT_CACHE_MB = 256;
+
+    /** Default constructor */
+    public SpectrogramRenderService() {
+        this.tileCache = new TileCache(DEFAULT_CACHE_MB * 1024 * 1024);
+    }
+
+    /**
+     * Constructor setting the size of the tile cache
+     * @param cacheMegabytes Maximum size of the tile cache (MB)
+     */
+    @Autowired
+    public SpectrogramRenderService(@Value("${spectral.cache.max-mb:256}") long cacheMegabytes) {
+        this.tileCache = new TileCache(cacheMegabytes * 1024 * 1024);
+    }
+
+    @Autowired
+    private SpectralService spectralService;
+
+    @Autowired
+    private ColorMapService colorMapService;
+
+    // Dedicated pool so the spectrogram does not compete with the common pool
+    private final ForkJoinPool workerPool = new ForkJoinPool(
+        Runtime.getRuntime().availableProcessors(),
+        pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("Spectrogram-Worker-" + t.getPoolIndex());
+            t.setDaemon(true); // Ensures threads don't block app shutdown
+            return t;
+        },
+        null, false);
+
+    /** Per-thread scratch for the combined power of a column */
+    private final ThreadLocal<float[]> spectrumScratch = ThreadLocal.withInitial(() -> new float[0]);
+
+    /** Per-thread decoded samples, shared by the overlapping FFTs of consecutive columns */
+    private final ThreadLocal<FrameReader> frameReaders = ThreadLocal.withInitial(FrameReader::new);
+
+    /** Computed columns, shared between frames */
+    private final TileCache tileCache;
+
+    /** Generation of the newest {@link #renderLatest} request */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Get the worker pool used to compute the spectrogram
+     * @return The fork-join pool
+     */
+    public ForkJoinPool getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Get the cache of computed tiles
+     * @return The tile cache
+     */
+    public TileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Render the spectrogram viewport asynchronously
+     * @param request Snapshot of the viewport to render
+     * @return Future completed with the rendered frame
+     */
+    public CompletableFuture<SpectrogramFrame> renderAsync(SpectrogramRequest request) {
+        return renderAsync(request, null);
+    }
+
+    /**
+     * Render the spectrogram viewport asynchronously, reusing a previous frame
+     * @param request Snapshot of the viewport to render
+     * @param previous The frame currently displayed (may be null)
+     * @return Future completed with the rendered frame
+     */
+    public CompletableFuture<SpectrogramFrame> renderAsync(SpectrogramRequest request, SpectrogramFrame previous) {
+        return CompletableFuture.supplyAsync(() -> render(request, previous), workerPool);
+    }
+
+    /**
+     * Render the newest viewport asynchronously, cancelling the older ones
+     *
+     * The request takes the next generation number.  Renders of older
+     * generations stop at their next column (tiles they already finished stay
+     * cached) and their futures complete with a {@link CancellationException}.
+     * A render still waiting for a worker when it is superseded does not start.
+     * @param request Snapshot of the viewport to render
+     * @param previous The frame currently displayed (may be null)
+     * @return Future completed with the rendered frame, or cancelled if a newer request came in
+     */
+    public CompletableFuture<SpectrogramFrame> renderLatest(SpectrogramRequest request, SpectrogramFrame previous) {
+        long ticket = generation.incrementAndGet();
+        BooleanSupplier cancelled = () -> generation.get() != ticket;
+        return CompletableFuture.supplyAsync(() -> {
+            checkCancelled(cancelled);
+            SpectrogramFrame frame = render(request, previous, cancelled);
+            checkCancelled(cancelled);
+            return frame;
+        }, workerPool);
+    }
+
+    /**
+     * Render the newest viewports of the channels of a recording asynchronously, cancelling the older ones
+     *
+     * The channels are rendered at the same time: the columns of all the
+     * channels are tasks of the same worker pool.  Takes a single generation
+     * number for all the channels, like {@link #renderLatest(SpectrogramRequest, SpectrogramFrame)}.
+     * @param requests Snapshot of the viewport of each channel
+     * @param previous The frames currently displayed, by channel (may be null)
+     * @return Future completed with the rendered frames (same order as the requests),
+     *      or cancelled if a newer request came in
+     */
+    public CompletableFuture<List<SpectrogramFrame>> renderLatest(List<SpectrogramRequest> requests,
+            List<SpectrogramFrame> previous) {
+        long ticket = generation.incrementAndGet();
+        BooleanSupplier cancelled = () -> generation.get() != ticket;
+        return CompletableFuture.supplyAsync(() -> {
+            checkCancelled(cancelled);
+            SpectrogramFrame[] frames = new SpectrogramFrame[requests.size()];
+            RangeTask.run(workerPool, 0, frames.length, 1, c -> {
+                SpectrogramFrame old = previous != null && c < previous.size() ? previous.get(c) : null;
+                frames[c] = render(requests.get(c), old, cancelled);
+            });
+            checkCancelled(cancelled);
+            return List.of(frames);
+        }, workerPool);
+    }
+
+    /**
+     * Get the generation of the newest {@link #renderLatest} request
+     * @return The generation number
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Render the spectrogram viewport (blocks until all columns are computed)
+     * @param request Snapshot of the viewport to render
+     * @return The rendered frame
+     */
+    public SpectrogramFrame render(SpectrogramRequest request) {
+        return render(request, null);
+    }
+
+    /**
+     * Render the spectrogram viewport (blocks until all columns are computed)
+     *
+     * When the previous frame only differs by the scroll position, its columns
+     * and pixels are shifted by the scroll delta and only the newly exposed
+     * columns (and the ones past the end of its data, if the data grew) are
+     * computed and colored.
+     * @param request Snapshot of the viewport to render
+     * @param previous The frame currently displayed (may be null)
+     * @return The rendered frame
+     */
+    public SpectrogramFrame render(SpectrogramRequest request, SpectrogramFrame previous) {
+        return render(request, previous, NOT_CANCELLED);
+    }
+
+    /**
+     * Render the spectrogram viewport, giving up when cancelled
+     * @param request Snapshot of the viewport to render
+     * @param previous The frame currently displayed (may be null)
+     * @param cancelled Checked between columns
+     * @return The rendered frame
+     * @throws CancellationException The render was cancelled
+     */
+    private SpectrogramFrame render(SpectrogramRequest request, SpectrogramFrame previous,
+            BooleanSupplier cancelled) {
+        long start = System.nanoTime();
+        int width = request.width();
+        int height = request.height();
+
+        float[][] columns = new float[width][];
+        int[] pixels = new int[width * height];
+
+        // --------------------------------------------------------------------
+        // Shift the overlapping part of the previous frame
+        // --------------------------------------------------------------------
+        int exposedLo = 0;
+        int exposedHi = width;
+        int staleLo = width;
+        if (previous != null && request.isSameViewAs(previous.request())) {
+            long delta = request.getFirstColumn() - previous.request().getFirstColumn();
+            if (Math.abs(delta) < width) {
+                int shift = (int) delta;
+                int keep = width - Math.abs(shift);
+                int src = Math.max(shift, 0);
+                int dst = Math.max(-shift, 0);
+                System.arraycopy(previous.columns(), src, columns, dst, keep);
+                for (int row = 0; row < height; row++) {
+                    System.arraycopy(previous.pixels(), row * width + src, pixels, row * width + dst, keep);
+                }
+                // scrolling right exposes columns on the right, and vice versa
+                exposedLo = shift > 0 ? keep : 0;
+                exposedHi = shift > 0 ? width : -shift;
+
+                // the data grew, the columns that were not complete are out of date
+                long previousFftCount = previous.request().getFftCount();
+                if (request.getFftCount() > previousFftCount) {
+                    staleLo = Math.clamp(previousFftCount / request.zoom() - request.getFirstColumn(), 0, width);
+                }
+            }
+        }
+
+        // --------------------------------------------------------------------
+        // Compute and color the exposed columns
+        // --------------------------------------------------------------------
+        int computedTiles = fillColumns(request, columns, exposedLo, exposedHi, cancelled);
+        runParallel(exposedLo, exposedHi, t -> colorColumn(request, t, columns[t], pixels));
+
+        // stale columns that were kept (the exposed range is at one end of the frame)
+        int staleFrom = exposedHi < width ? Math.max(staleLo, exposedHi) : staleLo;
+        int staleTo = exposedHi < width ? width : exposedLo;
+        computedTiles += fillColumns(request, columns, staleFrom, staleTo, cancelled);
+        runParallel(staleFrom, staleTo, t -> colorColumn(request, t, columns[t], pixels));
+
+        SRS_LOGGER.debug("Rendered {}/{} columns (nfft = {}, {} tiles computed) in {} ms, cache hit rate {}",
+            exposedHi - exposedLo + Math.max(0, staleTo - staleFrom), width, request.fftSize(), computedTiles,
+            (System.nanoTime() - start) / 1e6, tileCache.getHitRate());
+        return new SpectrogramFrame(request, columns, pixels);
+    }
+
+    /**
+     * Fill a range of the viewport columns from the tile cache, computing the missing tiles
+     * @param request The viewport
+     * @param columns The viewport columns
+     * @param lo First viewport column to fill (inclusive)
+     * @param hi Last viewport column to fill (exclusive)
+     * @param cancelled Checked between columns
+     * @return The number of tiles that were computed (or completed)
+     */
+    private int fillColumns(SpectrogramRequest request, float[][] columns, int lo, int hi,
+            BooleanSupplier cancelled) {
+        if (lo >= hi) {
+            return 0;
+        }
+        int height = request.height();
+        int fftSize = request.fftSize();
+
+        // --------------------------------------------------------------------
+        // Look up the tiles covering the range
+        // --------------------------------------------------------------------
+        long firstColumn = request.getFirstColumn() + lo;
+        long firstTile = Math.floorDiv(firstColumn, TILE_COLUMNS);
+        long lastTile = Math.floorDiv(request.getFirstColumn() + hi - 1, TILE_COLUMNS);
+
+        SpectrogramTile[] tiles = new SpectrogramTile[(int) (lastTile - firstTile + 1)];
+        List<SpectrogramTile> missing = new ArrayList<>();
+        for (int i = 0; i < tiles.length; i++) {
+            TileKey key = new TileKey(
+                request.dataKey(), firstTile + i, fftSize, height, request.getSettingsKey());
+            SpectrogramTile tile = tileCache.get(key);
+            if (tile == null) {
+                tile = new SpectrogramTile(key, new float[TILE_COLUMNS][height], 0);
+                missing.add(tile);
+            } else if (!tile.isComplete()) {
+                // end of the data when cached, only its incomplete columns are computed
+                float[][] tileColumns = tile.columns().clone();
+                for (int c = tile.completeColumns(); c < TILE_COLUMNS; c++) {
+                    tileColumns[c] = new float[height];
+                }
+                tile = new SpectrogramTile(key, tileColumns, tile.completeColumns());
+                missing.add(tile);
+            }
+            tiles[i] = tile;
+        }
+
+        // --------------------------------------------------------------------
+        // Compute the missing tiles, caching each one as soon as its last
+        // column is done (kept even if cancelled later)
+        // --------------------------------------------------------------------
+        if (!missing.isEmpty()) {
+            AtomicIntegerArray remaining = new AtomicIntegerArray(missing.size());
+            for (int i = 0; i < missing.size(); i++) {
+                remaining.set(i, TILE_COLUMNS);
+            }
+            int tasksPerTile = TILE_COLUMNS / COLUMNS_PER_TASK;
+            RangeTask.run(workerPool, 0, missing.size() * tasksPerTile, 1, i -> {
+                SpectrogramTile tile = missing.get(i / tasksPerTile);
+                int first = (i % tasksPerTile) * COLUMNS_PER_TASK;
+                int from = Math.max(first, tile.completeColumns());
+                if (from < first + COLUMNS_PER_TASK) {
+                    computeColumns(request, tile.key().tileIndex() * TILE_COLUMNS + from,
+                        tile.columns(), from, first + COLUMNS_PER_TASK - from, cancelled);
+                }
+                if (remaining.addAndGet(i / tasksPerTile, -COLUMNS_PER_TASK) == 0) {
+                    int complete = getCompleteColumns(request, tile.key().tileIndex());
+                    if (complete > 0) {
+                        tileCache.put(new SpectrogramTile(tile.key(), tile.columns(), complete));
+                    }
+                }
+            });
+        }
+
+        for (int t = lo; t < hi; t++) {
+            long column = request.getFirstColumn() + t;
+            SpectrogramTile tile = tiles[(int) (Math.floorDiv(column, TILE_COLUMNS) - firstTile)];
+            columns[t] = tile.columns()[(int) Math.floorMod(column, TILE_COLUMNS)];
+        }
+        return missing.size();
+    }
+
+    /**
+     * Run the body for each index of the range on the worker pool
+     * @param lo First index (inclusive)
+     * @param hi Last index (exclusive)
+     * @param body Work for a single index
+     */
+    private void runParallel(int lo, int hi, IntConsumer body) {
+        RangeTask.run(workerPool, lo, hi, COLUMNS_PER_TASK, body);
+    }
+
+    /**
+     * Give up on a render that is no longer needed
+     * @param cancelled The cancellation check
+     * @throws CancellationException The render was cancelled
+     */
+    private static void checkCancelled(BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Spectrogram render superseded");
+        }
+    }
+
+    /**
+     * Get the number of leading columns of a tile that have all their FFTs in the data
+     * @param request The viewport
+     * @param tileIndex The tile index
+     * @return {@link #TILE_COLUMNS} for a tile inside the data, 0 for a tile past its end
+     */
+    private static int getCompleteColumns(SpectrogramRequest request, long tileIndex) {
+        if (tileIndex < 0) {
+            return 0;
+        }
+        long completeColumns = request.getFftCount() / request.zoom();
+        return Math.clamp(completeColumns - tileIndex * TILE_COLUMNS, 0, TILE_COLUMNS);
+    }
+
+    /**
+     * Compute consecutive columns, reduced to the display rows
+     *
+     * The columns share a {@link FrameReader}, so the samples of FFTs that
+     * overlap (within a column or across columns) are decoded once.
+     * @param request The viewport
+     * @param firstColumn Index of the first column from the start of the data
+     * @param out Output columns
+     * @param offset Index in {@code out} of the first column
+     * @param count Number of columns
+     * @param cancelled Checked between columns
+     */
+    private void computeColumns(SpectrogramRequest request, long firstColumn, float[][] out, int offset,
+            int count, BooleanSupplier cancelled) {
+        FrameReader reader = frameReaders.get();
+        reader.begin(request.buffer(), request.decoder(),
+            request.fftSize(), request.getHopSize(), request.getFftCount());
+        long endFft = (firstColumn + count) * request.zoom();
+        for (int c = 0; c < count; c++) {
+            checkCancelled(cancelled);
+            computeColumn(request, firstColumn + c, out[offset + c], reader, endFft, cancelled);
+        }
+    }
+
+    /**
+     * Compute the magnitudes of a single column, reduced to the display rows
+     *
+     * When zoomed out far enough the column is read from the pyramid,
+     * otherwise all the {@code zoom} FFTs of the column are combined (mean,
+     * max-hold or min-hold power), read from the spectrum sidecar when there
+     * is one.  Every sample of the column contributes, so short bursts are
+     * not skipped when zoomed out.  The FFTs are windowed and reduced in
+     * place into a single accumulator.
+     * @param request The viewport
+     * @param columnIndex Index of the column from the start of the data
+     *        (columnIndex * samplesPerColumn is the first sample)
+     * @param column Output magnitudes (dB), one per display row
+     * @param reader Decoded samples of the FFTs
+     * @param endFft FFTs up to this index (exclusive) are going to be read by the caller
+     * @param cancelled Checked while combining the FFTs of the column
+     */
+    private void computeColumn(SpectrogramRequest request, long columnIndex, float[] column,
+            FrameReader reader, long endFft, BooleanSupplier cancelled) {
+        int fftSize = request.fftSize();
+        float[] combined = spectrumScratch.get();
+        if (combined.length < fftSize) {
+            combined = new float[fftSize];
+            spectrumScratch.set(combined);
+        }
+        Aggregation aggregation = request.getAggregation();
+        WindowFunction window = request.getWindow();
+
+        // --------------------------------------------------------------------
+        // Zoomed out, read the column from the pyramid (the columns past the
+        // data of the pyramid are computed from the samples)
+        // --------------------------------------------------------------------
+        long fftCount = request.getFftCount();
+        if (request.usesPyramid() && isInPyramid(request.pyramid(), columnIndex, request.zoom(), fftCount)) {
+            SpectrogramPyramid pyramid = request.pyramid();
+            if (!pyramid.copyColumn(request.zoom(), columnIndex, aggregation, combined)) {
+                Arrays.fill(column, NO_DATA_DB);
+                return;
+            }
+            toDecibels(combined, pyramid.getBinCount());
+            reduceToRows(combined, pyramid.getBinCount(), column);
+            return;
+        }
+
+        // --------------------------------------------------------------------
+        // Combine the FFTs of the column
+        // --------------------------------------------------------------------
+        long firstFft = columnIndex * request.zoom();
+        long lastFft = Math.min(firstFft + request.zoom(), fftCount);
+        if (firstFft < 0 || firstFft >= lastFft) {
+            // Fill with a very low dB value so the end of file is black
+            Arrays.fill(column, NO_DATA_DB);
+            return;
+        }
+
+        if (request.usesSidecar() && lastFft <= request.sidecar().getFftCount()) {
+            SpectrumSidecar sidecar = request.sidecar();
+            int bins = sidecar.getBinCount();
+            for (long k = firstFft; k < lastFft; k++) {
+                sidecar.accumulateColumn(k, aggregation, combined, k == firstFft);
+            }
+            if (aggregation == Aggregation.MEAN) {
+                aggregation.finish(combined, bins, lastFft - firstFft);
+                toDecibels(combined, bins);
+            }
+            reduceToRows(combined, bins, column);
+            return;
+        }
+
+        for (long k = firstFft; k < lastFft; k++) {
+            // zoomed out without a pyramid, a column can take many FFTs
+            if ((k - firstFft) % FFTS_PER_CHECK == FFTS_PER_CHECK - 1) {
+                checkCancelled(cancelled);
+            }
+            int at = reader.locate(k, endFft);
+            spectralService.accumulatePowerSpectrum(reader.getRe(), reader.getIm(), at, fftSize,
+                window, aggregation, combined, k == firstFft);
+        }
+        aggregation.finish(combined, fftSize, lastFft - firstFft);
+        toDecibels(combined, fftSize);
+        reduceToRows(combined, fftSize, column);
+    }
+
+    /**
+     * Check if the pyramid has the complete data of a column
+     *
+     * A pyramid built while the file was shorter does not have the columns
+     * past its end, and its last column may miss FFTs.
+     * @param pyramid The pyramid
+     * @param columnIndex Index of the column from the start of the data
+     * @param zoom FFTs per column
+     * @param fftCount Number of FFTs in the data now
+     * @return True if the column can be read from the pyramid
+     */
+    private static boolean isInPyramid(SpectrogramPyramid pyramid, long columnIndex, int zoom, long fftCount) {
+        return pyramid.getFftCount() >= fftCount || (columnIndex + 1) * zoom <= pyramid.getFftCount();
+    }
+
+    /**
+     * Convert power to dB in place
+     * @param values Power (linear), converted to dB
+     * @param length Number of values to convert
+     */
+    private static void toDecibels(float[] values, int length) {
+        // NOTE: 20 * log10(|X|) == 10 * log10(|X|^2), avoids the sqrt
+        KERNELS.toDecibels(values, 0, length);
+    }
+
+    /**
+     * Reduce a spectrum to the display rows
+     *
+     * When there are more bins than rows, the peak of the bins that fall on a
+     * row is kept so that narrow band signals do not disappear.
+     * @param spectrum Spectrum (dB), bins from -fs/2 to fs/2
+     * @param fftSize Number of bins
+     * @param rows Output rows, row 0 is the lowest frequency
+     */
+    public static void reduceToRows(float[] spectrum, int fftSize, float[] rows) {
+        int height = rows.length;
+        for (int r = 0; r < height; r++) {
+            int lo = (int) ((long) r * fftSize / height);
+            int hi = (int) ((long) (r + 1) * fftSize / height);
+            float peak = spectrum[lo];
+            for (int b = lo + 1; b < hi; b++) {
+                peak = Math.max(peak, spectrum[b]);
+            }
+            rows[r] = peak;
+        }
+    }
+
+    /**
+     * Color a column into the frame pixels
+     * @param request The viewport
+     * @param t The column index
+     * @param column Magnitudes (dB) of the column
+     * @param pixels ARGB pixels of the frame
+     */
+    private void colorColumn(SpectrogramRequest request, int t, float[] column, int[] pixels) {
+        int width = request.width();
+        int height = request.height();
+        int[] lut = colorMapService.get(request.colorMap()).getTable();
+
+        // NOTE: trying to compensate so threshold is not dependent of NFFT
+        float lowest = (float) (request.getDbConversion() + request.minDb());
+        float scale = (float) ((ColorMap.SIZE - 1) / (request.maxDb() - request.minDb()));
+
+        for (int f = 0; f < height; f++) {
+            int index = (int) ((column[f] - lowest) * scale + 0.5f);
+            index = Math.clamp(index, 0, ColorMap.SIZE - 1);
+
+            // Draw time on X, Frequency on Y (inverted so low freq is bottom)
+            pixels[(height - 1 - f) * width + t] = lut[index];
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time and frequency index of annotations
+ *
+ * Finds the annotations intersecting a window of samples and frequencies
+ * without visiting the others, so a redraw only touches the annotations in
+ * view.  The entries are kept in an interval tree over the sample range,
+ * stored as an array sorted by sample start where every midpoint holds the
+ * largest end of its half.  The frequency range is checked on the entries
+ * the tree returns.
+ *
+ * Entries added or moved since the tree was built are kept in a short list
+ * that is scanned by every query, and the tree is rebuilt once the list
+ * grows.  Removed entries are only marked.  Not thread safe.
+ *
+ * @param <T> Type of the keys (e.g. the display of an annotation)
+ */
+public final class AnnotationIndex<T> {
+    /** Number of added entries scanned before the tree is rebuilt */
+    private static final int MIN_PENDING = 256;
+
+    /** Bounds of an annotation, as of when it was put */
+    private static final class Entry<T> {
+        private final T key;
+        private final long start;
+        private final long end;
+        private final double freqLow;
+        private final double freqHigh;
+        private boolean removed;
+
+        private Entry(T key, SigMfAnnotation annotation) {
+            this.key = key;
+            this.start = annotation.getSampleStart();
+            // empty annotations still cover their first sample
+            long count = Math.max(1, annotation.getSampleCount());
+            this.end = start > Long.MAX_VALUE - count ? Long.MAX_VALUE : start + count;
+            Double low = annotation.getFreqLowerEdge();
+            Double high = annotation.getFreqUpperEdge();
+            this.freqLow = low == null ? Double.NEGATIVE_INFINITY : low;
+            this.freqHigh = high == null ? Double.POSITIVE_INFINITY : high;
+        }
+
+        private boolean sameBounds(Entry<T> other) {
+            return start == other.start && end == other.end
+                && freqLow == other.freqLow && freqHigh == other.freqHigh;
+        }
+
+        private boolean intersects(long fromSample, long toSample, double low, double high) {
+            return start < toSample && end > fromSample && freqLow <= high && freqHigh >= low;
+        }
+    }
+
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+
+    // ---- interval tree (sorted by start) ----
+    private List<Entry<T>> tree = List.of();
+    private long[] starts = new long[0];
+    private long[] maxEnds = new long[0];
+    private int removedInTree;
+
+    /** Entries put since the tree was built */
+    private final List<Entry<T>> pending = new ArrayList<>();
+
+    /** Default constructor */
+    public AnnotationIndex() {}
+
+    /**
+     * Add an annotation, or update it after it was edited
+     * @param key Key of the annotation
+     * @param annotation The annotation, its current bounds are indexed
+     */
+    public void put(T key, SigMfAnnotation annotation) {
+        Entry<T> entry = new Entry<>(key, annotation);
+        Entry<T> previous = entries.get(key);
+        if (previous != null && previous.sameBounds(entry)) {
+            return; // not moved
+        }
+        entries.put(key, entry);
+        markRemoved(previous);
+        pending.add(entry);
+    }
+
+    /**
+     * Remove an annotation
+     * @param key Key of the annotation
+     */
+    public void remove(T key) {
+        markRemoved(entries.remove(key));
+    }
+
+    /**
+     * Remove every annotation
+     */
+    public void clear() {
+        entries.clear();
+        pending.clear();
+        tree = List.of();
+        starts = new long[0];
+        maxEnds = new long[0];
+        removedInTree = 0;
+    }
+
+    /**
+     * Get the number of annotations
+     * @return Number of keys in the index
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Find the annotations intersecting a window
+     * @param fromSample First sample of the window
+     * @param toSample Sample after the window
+     * @param freqLow Lowest frequency of the window (Hz)
+     * @param freqHigh Highest frequency of the window (Hz)
+     * @return Keys of the annotations in the window, in no particular order
+     */
+    public List<T> query(long fromSample, long toSample, double freqLow, double freqHigh) {
+        if (pending.size() > MIN_PENDING + tree.size() / 64 || removedInTree > tree.size() / 2) {
+            rebuild();
+        }
+        List<T> found = new ArrayList<>();
+        if (fromSample >= toSample || freqLow > freqHigh) {
+            return found;
+        }
+        query(0, tree.size(), fromSample, toSample, freqLow, freqHigh, found);
+        for (Entry<T> entry : pending) {
+            if (!entry.removed && entry.intersects(fromSample, toSample, freqLow, freqHigh)) {
+                found.add(entry.key);
+            }
+        }
+        return found;
+    }
+
+    // ---- interval tree ----
+
+    private void markRemoved(Entry<T> entry) {
+        if (entry != null) {
+            entry.removed = true;
+            removedInTree++; // over-counts pending entries, only brings the rebuild forward
+        }
+    }
+
+    private void rebuild() {
+        List<Entry<T>> sorted = new ArrayList<>(entries.values());
+        sorted.sort(Comparator.comparingLong(e -> e.start));
+        tree = sorted;
+        starts = new long[sorted.size()];
+        maxEnds = new long[sorted.size()];
+        Arrays.fill(maxEnds, Long.MIN_VALUE);
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = sorted.get(i).start;
+        }
+        build(0, sorted.size());
+        pending.clear();
+        removedInTree = 0;
+    }
+
+    /**
+     * Compute the largest end of a half of the tree
+     * @param lo First position of the half
+     * @param hi Position after the half
+     * @return Largest end, Long.MIN_VALUE for an empty half
+     */
+    private long build(int lo, int hi) {
+        if (lo >= hi) {
+            return Long.MIN_VALUE;
+        }
+        int mid = (lo + hi) >>> 1;
+        long max = Math.max(tree.get(mid).end, Math.max(build(lo, mid), build(mid + 1, hi)));
+        maxEnds[mid] = max;
+        return max;
+    }
+
+    private void query(int lo, int hi, long fromSample, long toSample, double freqLow, double freqHigh,
+            List<T> found) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (maxEnds[mid] <= fromSample) {
+                return; // everything in this half ends before the window
+            }
+            query(lo, mid, fromSample, toSample, freqLow, freqHigh, found);
+            if (starts[mid] >= toSample) {
+                return; // this entry and the ones after it start after the window
+            }
+            Entry<T> entry = tree.get(mid);
+            if (!entry.removed && entry.intersects(fromSample, toSample, freqLow, freqHigh)) {
+                found.add(entry.key);
+            }
+            lo = mid + 1; // right half, without recursion
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Finds the capture segment of a sample
+ *
+ * A recording can have many capture segments (e.g. one per hop of a
+ * frequency hopping receiver), each one starting at its
+ * {@code core:sample_start} with its own center frequency and timestamp.
+ * The starts are kept in a sorted array so a lookup is a binary search.
+ */
+public final class CaptureIndex {
+    /** Index without captures */
+    public static final CaptureIndex EMPTY = new CaptureIndex(new Capture[0]);
+
+    private final Capture[] captures;
+    private final long[] starts;
+
+    private CaptureIndex(Capture[] captures) {
+        this.captures = captures;
+        this.starts = new long[captures.length];
+        for (int i = 0; i < captures.length; i++) {
+            starts[i] = captures[i].sampleStart();
+        }
+    }
+
+    /**
+     * Build the index of a list of captures
+     * @param captures The captures (sorted by sample start or not)
+     * @return The index
+     */
+    public static CaptureIndex of(List<Capture> captures) {
+        if (captures == null || captures.isEmpty()) {
+            return EMPTY;
+        }
+        Capture[] sorted = captures.toArray(new Capture[0]);
+        // stable, captures starting on the same sample keep their order
+        Arrays.sort(sorted, Comparator.comparingLong(Capture::sampleStart));
+        return new CaptureIndex(sorted);
+    }
+
+    /**
+     * Get the number of captures
+     * @return Number of capture segments
+     */
+    public int size() {
+        return captures.length;
+    }
+
+    /**
+     * Get the position of the capture holding a sample
+     *
+     * Samples before the first capture belong to the first capture.  When
+     * several captures start on the same sample, the last one is used.
+     * @param sample Sample index from the start of the data
+     * @return Position of the capture (0 to size() - 1), -1 if there are no captures
+     */
+    public int indexOf(long sample) {
+        if (captures.length == 0) {
+            return -1;
+        }
+        int lo = 0;
+        int hi = starts.length;
+        // first capture starting after the sample
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (starts[mid] <= sample) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return Math.max(0, lo - 1);
+    }
+
+    /**
+     * Get a capture by position
+     * @param index Position of the capture (0 to size() - 1)
+     * @return The capture
+     */
+    public Capture get(int index) {
+        return captures[index];
+    }
+
+    /**
+     * Get the capture holding a sample
+     * @param sample Sample index from the start of the data
+     * @return The capture, null if there are no captures
+     */
+    public Capture getCapture(long sample) {
+        int index = indexOf(sample);
+        return index < 0 ? null : captures[index];
+    }
+
+    /**
+     * Get the center frequency of the capture holding a sample
+     * @param sample Sample index from the start of the data
+     * @return The center frequency (Hz), 0 if there are no captures
+     */
+    public double getFrequency(long sample) {
+        Capture capture = getCapture(sample);
+        return capture == null ? 0.0 : capture.frequency();
+    }
+
+    /**
+     * Get the first sample after the capture at a position
+     * @param index Position of the capture
+     * @return Start of the next capture, Long.MAX_VALUE for the last capture
+     */
+    public long getEndSample(int index) {
+        return index + 1 < starts.length ? starts[index + 1] : Long.MAX_VALUE;
+    }
+}
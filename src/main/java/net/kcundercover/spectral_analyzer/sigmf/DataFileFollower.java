@@ -0,0 +1,150 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reports the growth of a data file that is still being recorded
+ *
+ * The directory of the file is watched with a {@link WatchService} so that
+ * new samples show up quickly, and the size is also polled since some file
+ * systems (e.g. network shares) do not report modifications.  The listener
+ * is called on the follower thread, once per size change.
+ */
+public final class DataFileFollower implements Closeable {
+    private static final Logger DFF_LOGGER = LoggerFactory.getLogger(DataFileFollower.class);
+
+    /** Default interval of the size polling */
+    public static final Duration DEFAULT_POLL_INTERVAL = Duration.ofMillis(500);
+
+    private final Path dataPath;
+    private final LongConsumer listener;
+    private final ScheduledExecutorService poller;
+    private final WatchService watchService;
+    private long lastSize;
+
+    /**
+     * Start following a data file
+     * @param dataPath The data file
+     * @param pollInterval Interval between two size checks
+     * @param listener Called with the new size (bytes) when the file grew
+     * @throws IOException Failed to read the size of the file
+     */
+    public DataFileFollower(Path dataPath, Duration pollInterval, LongConsumer listener) throws IOException {
+        this.dataPath = dataPath.toAbsolutePath();
+        this.listener = listener;
+        this.lastSize = Files.size(this.dataPath);
+        this.poller = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "DataFile-Follower");
+            t.setDaemon(true);
+            return t;
+        });
+        this.watchService = startWatching();
+        poller.scheduleWithFixedDelay(this::check, pollInterval.toMillis(), pollInterval.toMillis(),
+            TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Get the followed data file
+     * @return Absolute path of the data file
+     */
+    public Path getDataPath() {
+        return dataPath;
+    }
+
+    /**
+     * Stop following the file (the listener is not called anymore)
+     */
+    @Override
+    public void close() {
+        poller.shutdownNow();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                DFF_LOGGER.debug("Failed to close the watch service", e);
+            }
+        }
+    }
+
+    /**
+     * Watch the directory of the file, polling alone still works if this fails
+     * @return The watch service, null if the directory cannot be watched
+     */
+    private WatchService startWatching() {
+        Path directory = dataPath.getParent();
+        if (directory == null) {
+            return null;
+        }
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_MODIFY);
+            Thread watcher = new Thread(() -> watch(service), "DataFile-Watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+            return service;
+        } catch (IOException | UnsupportedOperationException e) {
+            DFF_LOGGER.info("Cannot watch {}, polling its size only: {}", directory, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Wait for modifications of the directory until the service is closed
+     * @param service The watch service
+     */
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean modified = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    modified |= dataPath.getFileName().equals(event.context())
+                        || event.kind() == StandardWatchEventKinds.OVERFLOW;
+                }
+                if (modified) {
+                    // checked on the poller thread, so the listener has a single caller
+                    poller.execute(this::check);
+                }
+                if (!key.reset()) {
+                    return; // directory gone, the poller keeps trying
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException | RejectedExecutionException e) {
+            // closed
+        }
+    }
+
+    /**
+     * Compare the size of the file with the last known size
+     */
+    private void check() {
+        long size;
+        try {
+            size = Files.size(dataPath);
+        } catch (IOException e) {
+            DFF_LOGGER.debug("Failed to read the size of {}", dataPath, e);
+            return;
+        }
+        if (size > lastSize) {
+            lastSize = size;
+            listener.accept(size);
+        }
+    }
+}
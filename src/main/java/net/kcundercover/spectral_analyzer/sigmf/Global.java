@@ -1,13 +1,12 @@
 package net.kcundercover.spectral_analyzer.sigmf;
 
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * The global field of the SigMF meta data
@@ -28,6 +27,12 @@ public record Global(
     @JsonAnyGetter
     Map<String, Object> extensions) {
 
+    /** SigMF key of the number of channels */
+    public static final String NUM_CHANNELS = "core:num_channels";
+
+    /** SigMF key of the SHA-512 hash of the dataset */
+    public static final String SHA512 = "core:sha512";
+
     /**
      * Constructor
      * @param datatype Data type string
@@ -47,10 +52,6 @@ public record Global(
         extensions = (extensions == null) ? Map.of() : Map.copyOf(extensions);
     }
 
-    /** Supported data types */
-    private static final Set<String> SUPPORTED_TYPES = Set.of(
-        "cf32_le", "cf32_be", "ci16_le", "ci16_be", "ci8", "cu8", "cf64_le", "cf64_be");
-
     /**
      * Getter for extensions fields
      * @return The custom fields
@@ -61,20 +62,60 @@ public record Global(
     }
 
     /**
-     * Calculates bytes per I/Q pair based on SigMF convention
+     * Get the decoder of the datatype
+     *
+     * For a multi-channel recording, this is the decoder of the first channel
+     * (see {@link SampleDecoder#forChannel} for the other ones).
+     * @return The decoder (resolve it once and keep it)
+     * @throws IllegalArgumentException The datatype is not a SigMF datatype
+     */
+    @JsonIgnore
+    public SampleDecoder getDecoder() {
+        return SampleDecoder.forDatatype(datatype).forChannel(0, getNumChannels());
+    }
+
+    /**
+     * Get the number of interleaved channels ({@code core:num_channels}, kept in the extensions)
+     * @return Number of channels, 1 if not specified
+     */
+    @JsonIgnore
+    public int getNumChannels() {
+        Object value = extensions.get(NUM_CHANNELS);
+        if (value instanceof Number number && number.intValue() > 0) {
+            return number.intValue();
+        }
+        return 1;
+    }
+
+    /**
+     * Get the SHA-512 hash of the dataset ({@code core:sha512}, kept in the extensions)
+     * @return The hexadecimal hash, null if not specified
+     */
+    @JsonIgnore
+    public String getSha512() {
+        Object value = extensions.get(SHA512);
+        return value instanceof String hash && !hash.isBlank() ? hash : null;
+    }
+
+    /**
+     * Copy of this global section with another dataset hash
+     * @param sha512 The hexadecimal SHA-512 hash of the dataset
+     * @return The new global section
+     */
+    public Global withSha512(String sha512) {
+        Map<String, Object> newExtensions = new HashMap<>(extensions);
+        newExtensions.put(SHA512, sha512);
+        return new Global(datatype, sampleRate, version, dataset, newExtensions);
+    }
+
+    /**
+     * Calculates bytes per sample (I/Q pair for complex types, of all the channels) based on SigMF convention
      * @return The number of bytes per sample
      */
     public int getBytesPerSample() {
-        if (datatype.startsWith("cf32")) {
-            return 8; // 4 bytes I + 4 bytes Q
-        } else if (datatype.startsWith("ci16")) {
-            return 4; // 2 bytes I + 2 bytes Q
-        } else if (datatype.startsWith("cu8") || datatype.startsWith("ci8")) {
-            // unsigned 8 bits
-            return 2;
-        } else if (datatype.startsWith("cf64")) {
-            return 16; // 8 bytes I + 8 bytes Q
+        if (!SampleDecoder.isSupported(datatype)) {
+            return 8; // Fallback
         }
-        return 8; // Fallback
+        return getDecoder().getBytesPerSample();
     }
 }
@@ -0,0 +1,254 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Read-only view of the samples of a data file with 64-bit byte offsets.
+ *
+ * A {@link MappedByteBuffer} is limited to 2 GB, so the file is mapped in
+ * chunks of {@link #CHUNK_BYTES}.  Each chunk also maps the first
+ * {@link #CHUNK_OVERLAP} bytes of the next one, so a value never straddles
+ * two chunks and every read is a single buffer access.  Nothing is copied,
+ * the pages are loaded by the OS when they are read.
+ *
+ * A file that is still being written can be {@link #extend extended}: the
+ * complete chunks are shared with the new buffer and only the tail is mapped
+ * again.
+ */
+public final class SampleBuffer {
+    /** Size of a mapped chunk (power of 2) */
+    public static final long CHUNK_BYTES = 1L << 30;
+
+    /** Bytes shared by consecutive chunks (largest value that can be read) */
+    static final int CHUNK_OVERLAP = 64;
+
+    private final ByteBuffer[] chunks;
+    private final long size;
+    private final int chunkShift;
+    private final long chunkMask;
+    private final ByteOrder order;
+    private final long position;
+    /** Shared by a buffer and the buffers extended from it */
+    private final Object source;
+
+    private SampleBuffer(ByteBuffer[] chunks, long size, long chunkBytes, ByteOrder order, long position,
+            Object source) {
+        this.chunks = chunks;
+        this.size = size;
+        this.chunkShift = Long.numberOfTrailingZeros(chunkBytes);
+        this.chunkMask = chunkBytes - 1;
+        this.order = order;
+        this.position = position;
+        this.source = source;
+    }
+
+    /**
+     * Map a region of a file
+     * @param channel The open file (can be closed once mapped)
+     * @param position Byte offset of the region in the file (e.g. after a header)
+     * @param size Number of bytes of the region
+     * @param order Byte order of the samples
+     * @return The buffer
+     * @throws IOException Failed to map the file
+     */
+    public static SampleBuffer map(FileChannel channel, long position, long size, ByteOrder order)
+            throws IOException {
+        return map(channel, position, size, order, CHUNK_BYTES);
+    }
+
+    /**
+     * Map a region of a file with a given chunk size
+     * @param channel The open file (can be closed once mapped)
+     * @param position Byte offset of the region in the file
+     * @param size Number of bytes of the region
+     * @param order Byte order of the samples
+     * @param chunkBytes Size of a chunk (power of 2, larger than {@link #CHUNK_OVERLAP})
+     * @return The buffer
+     * @throws IOException Failed to map the file
+     */
+    static SampleBuffer map(FileChannel channel, long position, long size, ByteOrder order, long chunkBytes)
+            throws IOException {
+        ByteBuffer[] chunks = mapChunks(channel, position, size, order, chunkBytes, new ByteBuffer[0]);
+        return new SampleBuffer(chunks, size, chunkBytes, order, position, new Object());
+    }
+
+    /**
+     * Map the bytes appended to the file since this buffer was mapped
+     *
+     * The complete chunks are reused, only the last chunk and the new ones are
+     * mapped.  This buffer is left unchanged (readers holding it keep a
+     * consistent view).
+     * @param channel The open file (the same file as the one first mapped)
+     * @param newSize Number of bytes of the region now
+     * @return The extended buffer, this buffer when the size did not grow
+     * @throws IOException Failed to map the file
+     */
+    public SampleBuffer extend(FileChannel channel, long newSize) throws IOException {
+        if (newSize <= size) {
+            return this;
+        }
+        long chunkBytes = chunkMask + 1;
+        ByteBuffer[] extended = mapChunks(channel, position, newSize, order, chunkBytes, chunks);
+        return new SampleBuffer(extended, newSize, chunkBytes, order, position, source);
+    }
+
+    /**
+     * Check if a buffer maps the same data as this one (possibly extended)
+     * @param other The other buffer
+     * @return True if one was extended from the other (or they are the same)
+     */
+    public boolean hasSameSource(SampleBuffer other) {
+        return other != null && other.source == source;
+    }
+
+    private static ByteBuffer[] mapChunks(FileChannel channel, long position, long size, ByteOrder order,
+            long chunkBytes, ByteBuffer[] reused) throws IOException {
+        int count = (int) Math.max(1, (size + chunkBytes - 1) / chunkBytes);
+        ByteBuffer[] chunks = Arrays.copyOf(reused, count);
+        for (int i = 0; i < count; i++) {
+            long start = i * chunkBytes;
+            long length = Math.max(0, Math.min(chunkBytes + CHUNK_OVERLAP, size - start));
+            if (chunks[i] != null && chunks[i].limit() == length) {
+                continue; // complete, nothing new in it
+            }
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position + start, length).order(order);
+        }
+        return chunks;
+    }
+
+    /**
+     * Wrap a buffer (e.g. samples already in memory)
+     * @param buffer The bytes, from its position to its limit
+     * @return The sample buffer (shares the bytes)
+     */
+    public static SampleBuffer wrap(ByteBuffer buffer) {
+        ByteBuffer view = buffer.slice().order(buffer.order());
+        return new SampleBuffer(new ByteBuffer[] {view}, view.remaining(),
+            Long.highestOneBit(Math.max(CHUNK_OVERLAP + 1L, view.remaining())) << 1, buffer.order(), 0,
+            new Object());
+    }
+
+    /**
+     * Get the number of bytes
+     * @return The size (can be above 2 GB)
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Get the byte order of the samples
+     * @return The byte order
+     */
+    public ByteOrder order() {
+        return order;
+    }
+
+    /**
+     * Read a byte
+     * @param offset Byte offset
+     * @return The value
+     */
+    public byte get(long offset) {
+        return chunks[(int) (offset >>> chunkShift)].get((int) (offset & chunkMask));
+    }
+
+    /**
+     * Read a 16-bit value
+     * @param offset Byte offset
+     * @return The value
+     */
+    public short getShort(long offset) {
+        return chunks[(int) (offset >>> chunkShift)].getShort((int) (offset & chunkMask));
+    }
+
+    /**
+     * Read a 32-bit value
+     * @param offset Byte offset
+     * @return The value
+     */
+    public int getInt(long offset) {
+        return chunks[(int) (offset >>> chunkShift)].getInt((int) (offset & chunkMask));
+    }
+
+    /**
+     * Read a 32-bit float
+     * @param offset Byte offset
+     * @return The value
+     */
+    public float getFloat(long offset) {
+        return chunks[(int) (offset >>> chunkShift)].getFloat((int) (offset & chunkMask));
+    }
+
+    /**
+     * Read a 64-bit float
+     * @param offset Byte offset
+     * @return The value
+     */
+    public double getDouble(long offset) {
+        return chunks[(int) (offset >>> chunkShift)].getDouble((int) (offset & chunkMask));
+    }
+
+    /**
+     * Get a range of bytes as a buffer indexed from 0 (with the byte order of the samples)
+     *
+     * The range is a view of the mapping when it is inside a chunk, it is
+     * only copied when it crosses a chunk boundary.
+     * @param offset Byte offset of the range
+     * @param length Number of bytes
+     * @return Buffer holding the range
+     */
+    public ByteBuffer view(long offset, int length) {
+        int chunk = (int) (offset >>> chunkShift);
+        int local = (int) (offset & chunkMask);
+        if (local + length <= chunks[chunk].limit()) {
+            return chunks[chunk].slice(local, length).order(order);
+        }
+        ByteBuffer copy = ByteBuffer.allocate(length).order(order);
+        for (long at = offset; copy.hasRemaining(); ) {
+            ByteBuffer source = chunks[(int) (at >>> chunkShift)];
+            int start = (int) (at & chunkMask);
+            int n = (int) Math.min(copy.remaining(), Math.min(chunkMask + 1, source.limit()) - start);
+            copy.put(source.slice(start, n));
+            at += n;
+        }
+        return copy.flip();
+    }
+
+    /**
+     * Read the pages of a range into memory ahead of their use (read-ahead)
+     *
+     * Blocks until the pages are loaded, later reads of the range do not
+     * fault.  Does nothing for a buffer that is not mapped.
+     * @param offset Byte offset of the range
+     * @param length Number of bytes
+     */
+    public void load(long offset, long length) {
+        long end = Math.min(size, offset + length);
+        for (long at = Math.max(0, offset); at < end; ) {
+            int chunk = (int) (at >>> chunkShift);
+            int start = (int) (at & chunkMask);
+            int n = (int) Math.min(end - at, chunkMask + 1 - start);
+            if (chunks[chunk] instanceof MappedByteBuffer mapped) {
+                mapped.slice(start, n).load();
+            }
+            at += n;
+        }
+    }
+
+    /**
+     * Copy a range of bytes
+     * @param offset Byte offset of the range
+     * @param dst Destination
+     * @param dstOffset Index of the first byte in the destination
+     * @param length Number of bytes
+     */
+    public void get(long offset, byte[] dst, int dstOffset, int length) {
+        view(offset, length).get(dst, dstOffset, length);
+    }
+}
@@ -0,0 +1,530 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import net.kcundercover.spectral_analyzer.dsp.SampleKernels;
+
+/**
+ * Decodes the samples of a SigMF datatype into floats (full scale is 1.0)
+ *
+ * Every SigMF type is supported: complex ("c") and real ("r"), float
+ * ("f32", "f64"), signed ("i8", "i16", "i32") and unsigned ("u8", "u16",
+ * "u32") integers, little ("_le") and big ("_be") endian.  A decoder is
+ * resolved once per datatype with {@link #forDatatype} and shared between
+ * threads.  Blocks of samples are read through typed views of the data
+ * buffer ({@link ByteBuffer#asShortBuffer()}, {@link ByteBuffer#asFloatBuffer()}, ...)
+ * by one implementation per component type, so the inner loops have no
+ * branch on the datatype.  The 8-bit, 16-bit and complex float types are
+ * copied in bulk and converted by the {@link SampleKernels}.
+ *
+ * Real samples are decoded with a quadrature part of 0.
+ *
+ * The channels of a multi-channel recording ({@code core:num_channels}) are
+ * interleaved sample by sample, {@link #forChannel} gives the decoder of a
+ * single channel: it reads every n-th sample of the same data buffer.
+ */
+public abstract class SampleDecoder {
+    /** SigMF datatype: (complex|real)(component type)(_endianness) */
+    private static final Pattern DATATYPE = Pattern.compile("([cr])(f32|f64|i8|i16|i32|u8|u16|u32)(?:_(le|be))?");
+
+    /** Samples decoded per view, keeps views small and inside one chunk most of the time */
+    private static final int BLOCK_SAMPLES = 1 << 16;
+
+    /** Decoders by datatype */
+    private static final Map<String, SampleDecoder> DECODERS = new ConcurrentHashMap<>();
+
+    /** Conversion loops of the 8-bit, 16-bit and complex float types (SIMD when available) */
+    private static final SampleKernels KERNELS = SampleKernels.get();
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final String datatype;
+    private final boolean complex;
+    private final int bytesPerValue;
+    private final ByteOrder order;
+
+    private SampleDecoder(String datatype, boolean complex, int bytesPerValue, ByteOrder order) {
+        this.datatype = datatype;
+        this.complex = complex;
+        this.bytesPerValue = bytesPerValue;
+        this.order = order;
+    }
+
+    /**
+     * Get the decoder of a datatype
+     *
+     * Multi-byte types without an endianness suffix are read as big endian, as
+     * the data buffer was before the decoders.
+     * @param datatype SigMF datatype (e.g. "cf32_le", "ri16_be", "cu8")
+     * @return The decoder (shared)
+     * @throws IllegalArgumentException The datatype is not a SigMF datatype
+     */
+    public static SampleDecoder forDatatype(String datatype) {
+        if (datatype == null) {
+            throw new IllegalArgumentException("Missing SigMF datatype");
+        }
+        return DECODERS.computeIfAbsent(datatype.trim().toLowerCase(Locale.ROOT), SampleDecoder::create);
+    }
+
+    /**
+     * Check if a datatype can be decoded
+     * @param datatype SigMF datatype
+     * @return True if {@link #forDatatype} accepts it
+     */
+    public static boolean isSupported(String datatype) {
+        return datatype != null && DATATYPE.matcher(datatype.trim().toLowerCase(Locale.ROOT)).matches();
+    }
+
+    private static SampleDecoder create(String datatype) {
+        Matcher matcher = DATATYPE.matcher(datatype);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Unsupported SigMF datatype: " + datatype);
+        }
+        boolean complex = matcher.group(1).equals("c");
+        ByteOrder order = "le".equals(matcher.group(3)) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+
+        return switch (matcher.group(2)) {
+            case "f32" -> new Float32(datatype, complex, order);
+            case "f64" -> new Float64(datatype, complex, order);
+            case "i8" -> new Int8(datatype, complex, false);
+            case "i16" -> new Int16(datatype, complex, false, order);
+            case "i32" -> new Int32(datatype, complex, order);
+            case "u8" -> new Int8(datatype, complex, true);
+            case "u16" -> new Int16(datatype, complex, true, order);
+            default -> new UInt32(datatype, complex, order);
+        };
+    }
+
+    /**
+     * Get the datatype
+     * @return The SigMF datatype (lower case)
+     */
+    public String getDatatype() {
+        return datatype;
+    }
+
+    /**
+     * Check if the samples are complex
+     * @return True for I/Q samples, false for real samples
+     */
+    public boolean isComplex() {
+        return complex;
+    }
+
+    /**
+     * Get the size of a sample
+     * @return Number of bytes per sample (I/Q pair for complex samples, of all the channels)
+     */
+    public int getBytesPerSample() {
+        return complex ? 2 * bytesPerValue : bytesPerValue;
+    }
+
+    /**
+     * Get the number of interleaved channels
+     * @return Number of channels of the recording (1 unless from {@link #forChannel})
+     */
+    public int getChannelCount() {
+        return 1;
+    }
+
+    /**
+     * Get the channel decoded
+     * @return Index of the channel (0 for a single channel recording)
+     */
+    public int getChannel() {
+        return 0;
+    }
+
+    /**
+     * Get the decoder of one channel of a multi-channel recording
+     * @param channel Index of the channel (0 to channelCount - 1)
+     * @param channelCount Number of interleaved channels ({@code core:num_channels})
+     * @return The decoder of the channel (this decoder for a single channel)
+     * @throws IllegalArgumentException The channel is out of range
+     */
+    public SampleDecoder forChannel(int channel, int channelCount) {
+        if (channelCount < 1 || channel < 0 || channel >= channelCount) {
+            throw new IllegalArgumentException("Channel " + channel + " of " + channelCount + " channels");
+        }
+        return channelCount == 1 ? this : new Channel(this, channel, channelCount);
+    }
+
+    /**
+     * Get the byte order of the samples
+     * @return The byte order (little endian for 8-bit types)
+     */
+    public ByteOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * Decode samples into floats
+     * @param buffer The data buffer
+     * @param firstSample Index of the first sample (64-bit, files can be above 2 GB)
+     * @param count Number of samples to decode
+     * @param re Output in-phase samples (at least count long)
+     * @param im Output quadrature samples (at least count long)
+     */
+    public void decode(SampleBuffer buffer, long firstSample, int count, float[] re, float[] im) {
+        for (int done = 0; done < count; done += BLOCK_SAMPLES) {
+            int n = Math.min(BLOCK_SAMPLES, count - done);
+            readFloats(view(buffer, firstSample + done, n), n, re, im, done);
+        }
+        if (!complex) {
+            Arrays.fill(im, 0, count, 0.0f);
+        }
+    }
+
+    /**
+     * Decode samples into doubles (keeps the precision of "f64" and 32-bit integer types)
+     * @param buffer The data buffer
+     * @param firstSample Index of the first sample (64-bit, files can be above 2 GB)
+     * @param count Number of samples to decode
+     * @param re Output in-phase samples (at least count long)
+     * @param im Output quadrature samples (at least count long)
+     */
+    public void decode(SampleBuffer buffer, long firstSample, int count, double[] re, double[] im) {
+        int step = getStep();
+        for (int done = 0; done < count; done += BLOCK_SAMPLES) {
+            int n = Math.min(BLOCK_SAMPLES, count - done);
+            ByteBuffer bytes = view(buffer, firstSample + done, n);
+            readDoubles(bytes, 0, step, n, re, done);
+            if (complex) {
+                readDoubles(bytes, 1, step, n, im, done);
+            }
+        }
+        if (!complex) {
+            Arrays.fill(im, 0, count, 0.0);
+        }
+    }
+
+    private ByteBuffer view(SampleBuffer buffer, long firstSample, int count) {
+        int bytesPerSample = getBytesPerSample();
+        // the view is a new buffer, setting its order does not change the data buffer
+        return buffer.view(firstSample * bytesPerSample, count * bytesPerSample).order(order);
+    }
+
+    /**
+     * Read a block of samples, scaled to full scale 1.0
+     * @param bytes The block (indexed from 0)
+     * @param count Number of samples to read
+     * @param re Output in-phase samples
+     * @param im Output quadrature samples (untouched for real samples)
+     * @param outOffset Index of the first output
+     */
+    abstract void readFloats(ByteBuffer bytes, int count, float[] re, float[] im, int outOffset);
+
+    /**
+     * Read every step-th value of a block, scaled to full scale 1.0
+     * @param bytes The block (indexed from 0)
+     * @param first Index of the first value
+     * @param step Number of values between two reads (2 to read one part of complex samples)
+     * @param count Number of values to read
+     * @param out Output
+     * @param outOffset Index of the first output
+     */
+    abstract void readDoubles(ByteBuffer bytes, int first, int step, int count, double[] out, int outOffset);
+
+    @Override
+    public String toString() {
+        return datatype;
+    }
+
+    /**
+     * Number of values per sample
+     * @return 2 for complex samples, 1 for real samples
+     */
+    final int getStep() {
+        return complex ? 2 : 1;
+    }
+
+    /**
+     * Per-thread copies of the raw values of a block, converted by the sample kernels
+     */
+    private static final class Scratch {
+        private byte[] bytes = new byte[0];
+        private short[] shorts = new short[0];
+        private float[] floats = new float[0];
+        private ByteBuffer gathered = ByteBuffer.allocate(0);
+
+        byte[] bytes(int length) {
+            if (bytes.length < length) {
+                bytes = new byte[length];
+            }
+            return bytes;
+        }
+
+        short[] shorts(int length) {
+            if (shorts.length < length) {
+                shorts = new short[length];
+            }
+            return shorts;
+        }
+
+        float[] floats(int length) {
+            if (floats.length < length) {
+                floats = new float[length];
+            }
+            return floats;
+        }
+
+        ByteBuffer gathered(int length, ByteOrder order) {
+            if (gathered.capacity() < length) {
+                gathered = ByteBuffer.allocate(length);
+            }
+            return gathered.clear().limit(length).order(order);
+        }
+    }
+
+    // ---- one channel of a multi-channel recording ----
+
+    /** Samples of one channel, every channelCount-th sample of the data */
+    private static final class Channel extends SampleDecoder {
+        private final SampleDecoder base;
+        private final int channel;
+        private final int channelCount;
+
+        Channel(SampleDecoder base, int channel, int channelCount) {
+            super(base.datatype, base.complex, base.bytesPerValue, base.order);
+            this.base = base instanceof Channel other ? other.base : base;
+            this.channel = channel;
+            this.channelCount = channelCount;
+        }
+
+        @Override
+        public int getBytesPerSample() {
+            return base.getBytesPerSample() * channelCount;
+        }
+
+        @Override
+        public int getChannelCount() {
+            return channelCount;
+        }
+
+        @Override
+        public int getChannel() {
+            return channel;
+        }
+
+        @Override
+        public SampleDecoder forChannel(int newChannel, int newChannelCount) {
+            return base.forChannel(newChannel, newChannelCount);
+        }
+
+        @Override
+        void readFloats(ByteBuffer bytes, int count, float[] re, float[] im, int outOffset) {
+            // gather the samples of the channel, then use the bulk conversion of the type
+            int size = base.getBytesPerSample();
+            int frame = getBytesPerSample();
+            ByteBuffer samples = SCRATCH.get().gathered(count * size, bytes.order());
+            for (int k = 0, at = channel * size; k < count; k++, at += frame) {
+                switch (size) {
+                    case 1 -> samples.put(k, bytes.get(at));
+                    case 2 -> samples.putShort(2 * k, bytes.getShort(at));
+                    case 4 -> samples.putInt(4 * k, bytes.getInt(at));
+                    case 8 -> samples.putLong(8 * k, bytes.getLong(at));
+                    default -> samples.put(k * size, bytes, at, size);
+                }
+            }
+            base.readFloats(samples, count, re, im, outOffset);
+        }
+
+        @Override
+        void readDoubles(ByteBuffer bytes, int first, int step, int count, double[] out, int outOffset) {
+            // strided read in place, a sample holds step values
+            base.readDoubles(bytes, channel * step + first, step * channelCount, count, out, outOffset);
+        }
+
+        @Override
+        public String toString() {
+            return getDatatype() + " (channel " + channel + " of " + channelCount + ")";
+        }
+    }
+
+    // ---- implementations by component type ----
+
+    /** 8-bit integers ("ci8", "cu8", "ri8", "ru8"), unsigned values are centered on 127.5 */
+    private static final class Int8 extends SampleDecoder {
+        private final boolean unsigned;
+
+        Int8(String datatype, boolean complex, boolean unsigned) {
+            super(datatype, complex, 1, ByteOrder.LITTLE_ENDIAN);
+            this.unsigned = unsigned;
+        }
+
+        @Override
+        void readFloats(ByteBuffer bytes, int count, float[] re, float[] im, int outOffset) {
+            byte[] raw = SCRATCH.get().bytes(count * getStep());
+            bytes.get(0, raw, 0, count * getStep());
+            if (isComplex()) {
+                KERNELS.deinterleave(raw, unsigned, re, im, outOffset, count);
+            } else {
+                KERNELS.convert(raw, unsigned, re, outOffset, count);
+            }
+        }
+
+        @Override
+        void readDoubles(ByteBuffer bytes, int first, int step, int count, double[] out, int outOffset) {
+            for (int i = 0, j = first; i < count; i++, j += step) {
+                out[outOffset + i] = unsigned ? ((bytes.get(j) & 0xFF) - 127.5) / 128.0 : bytes.get(j) / 128.0;
+            }
+        }
+    }
+
+    /** 16-bit integers ("ci16_le", "cu16_be", "ri16_le", ...), unsigned values are centered on 32767.5 */
+    private static final class Int16 extends SampleDecoder {
+        private final boolean unsigned;
+
+        Int16(String datatype, boolean complex, boolean unsigned, ByteOrder order) {
+            super(datatype, complex, 2, order);
+            this.unsigned = unsigned;
+        }
+
+        @Override
+        void readFloats(ByteBuffer bytes, int count, float[] re, float[] im, int outOffset) {
+            short[] raw = SCRATCH.get().shorts(count * getStep());
+            bytes.asShortBuffer().get(0, raw, 0, count * getStep());
+            if (isComplex()) {
+                KERNELS.deinterleave(raw, unsigned, re, im, outOffset, count);
+            } else {
+                KERNELS.convert(raw, unsigned, re, outOffset, count);
+            }
+        }
+
+        @Override
+        void readDoubles(ByteBuffer bytes, int first, int step, int count, double[] out, int outOffset) {
+            ShortBuffer values = bytes.asShortBuffer();
+            for (int i = 0, j = first; i < count; i++, j += step) {
+                out[outOffset + i] = unsigned
+                    ? ((values.get(j) & 0xFFFF) - 32767.5) / 32768.0 : values.get(j) / 32768.0;
+            }
+        }
+    }
+
+    /** Signed 32-bit ("ci32_le", ...) */
+    private static final class Int32 extends SampleDecoder {
+        private static final double FULL_SCALE = 2147483648.0;
+
+        Int32(String datatype, boolean complex, ByteOrder order) {
+            super(datatype, complex, 4, order);
+        }
+
+        @Override
+        void readFloats(ByteBuffer bytes, int count, float[] re, float[] im, int outOffset) {
+            IntBuffer values = bytes.asIntBuffer();
+            int step = getStep();
+            for (int part = 0; part < step; part++) {
+                float[] out = part == 0 ? re : im;
+                for (int i = 0, j = part; i < count; i++, j += step) {
+                    out[outOffset + i] = (float) (values.get(j) / FULL_SCALE);
+                }
+            }
+        }
+
+        @Override
+        void readDoubles(ByteBuffer bytes, int first, int step, int count, double[] out, int outOffset) {
+            IntBuffer values = bytes.asIntBuffer();
+            for (int i = 0, j = first; i < count; i++, j += step) {
+                out[outOffset + i] = values.get(j) / FULL_SCALE;
+            }
+        }
+    }
+
+    /** Unsigned 32-bit ("cu32_le", ...), centered on 2^31 - 0.5 */
+    private static final class UInt32 extends SampleDecoder {
+        private static final double FULL_SCALE = 2147483648.0;
+        private static final double CENTER = 2147483647.5;
+
+        UInt32(String datatype, boolean complex, ByteOrder order) {
+            super(datatype, complex, 4, order);
+        }
+
+        @Override
+        void readFloats(ByteBuffer bytes, int count, float[] re, float[] im, int outOffset) {
+            IntBuffer values = bytes.asIntBuffer();
+            int step = getStep();
+            for (int part = 0; part < step; part++) {
+                float[] out = part == 0 ? re : im;
+                for (int i = 0, j = part; i < count; i++, j += step) {
+                    out[outOffset + i] = (float) (((values.get(j) & 0xFFFFFFFFL) - CENTER) / FULL_SCALE);
+                }
+            }
+        }
+
+        @Override
+        void readDoubles(ByteBuffer bytes, int first, int step, int count, double[] out, int outOffset) {
+            IntBuffer values = bytes.asIntBuffer();
+            for (int i = 0, j = first; i < count; i++, j += step) {
+                out[outOffset + i] = ((values.get(j) & 0xFFFFFFFFL) - CENTER) / FULL_SCALE;
+            }
+        }
+    }
+
+    /** 32-bit float ("cf32_le", "rf32_be", ...) */
+    private static final class Float32 extends SampleDecoder {
+        Float32(String datatype, boolean complex, ByteOrder order) {
+            super(datatype, complex, 4, order);
+        }
+
+        @Override
+        void readFloats(ByteBuffer bytes, int count, float[] re, float[] im, int outOffset) {
+            FloatBuffer values = bytes.asFloatBuffer();
+            if (!isComplex()) {
+                values.get(0, re, outOffset, count);
+                return;
+            }
+            float[] raw = SCRATCH.get().floats(2 * count);
+            values.get(0, raw, 0, 2 * count);
+            KERNELS.deinterleave(raw, re, im, outOffset, count);
+        }
+
+        @Override
+        void readDoubles(ByteBuffer bytes, int first, int step, int count, double[] out, int outOffset) {
+            FloatBuffer values = bytes.asFloatBuffer();
+            for (int i = 0, j = first; i < count; i++, j += step) {
+                out[outOffset + i] = values.get(j);
+            }
+        }
+    }
+
+    /** 64-bit float ("cf64_le", "rf64_be", ...) */
+    private static final class Float64 extends SampleDecoder {
+        Float64(String datatype, boolean complex, ByteOrder order) {
+            super(datatype, complex, 8, order);
+        }
+
+        @Override
+        void readFloats(ByteBuffer bytes, int count, float[] re, float[] im, int outOffset) {
+            DoubleBuffer values = bytes.asDoubleBuffer();
+            int step = getStep();
+            for (int part = 0; part < step; part++) {
+                float[] out = part == 0 ? re : im;
+                for (int i = 0, j = part; i < count; i++, j += step) {
+                    out[outOffset + i] = (float) values.get(j);
+                }
+            }
+        }
+
+        @Override
+        void readDoubles(ByteBuffer bytes, int first, int step, int count, double[] out, int outOffset) {
+            DoubleBuffer values = bytes.asDoubleBuffer();
+            if (step == 1) {
+                values.get(first, out, outOffset, count);
+                return;
+            }
+            for (int i = 0, j = first; i < count; i++, j += step) {
+                out[outOffset + i] = values.get(j);
+            }
+        }
+    }
+}
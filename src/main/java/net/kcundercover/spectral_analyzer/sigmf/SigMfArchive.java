@@ -0,0 +1,276 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the members of a SigMF archive ({@code .sigmf}, a tar file)
+ *
+ * Only the 512 byte tar headers are read, the data of the members is
+ * skipped, so opening a large archive is fast.  The members are stored
+ * uncompressed, so the samples of the {@code .sigmf-data} member can be
+ * mapped directly out of the archive.
+ *
+ * Supports ustar and GNU tar headers, base-256 sizes (members above 8 GB),
+ * GNU long names and pax extended headers (path and size).
+ */
+public final class SigMfArchive {
+    private static final Logger SMA_LOGGER = LoggerFactory.getLogger(SigMfArchive.class);
+
+    /** Extension of SigMF archives */
+    public static final String EXTENSION = ".sigmf";
+
+    private static final int BLOCK = 512;
+
+    /**
+     * A regular file of the archive
+     * @param name Path of the member in the archive
+     * @param offset Byte offset of its data in the archive
+     * @param size Number of bytes of its data
+     */
+    public record Member(String name, long offset, long size) {
+    }
+
+    private final Path path;
+    private final List<Member> members;
+
+    private SigMfArchive(Path path, List<Member> members) {
+        this.path = path;
+        this.members = List.copyOf(members);
+    }
+
+    /**
+     * Check if a file is a SigMF archive (by its extension)
+     * @param path The file
+     * @return True for a {@code .sigmf} file
+     */
+    public static boolean isArchive(Path path) {
+        return path.getFileName().toString().toLowerCase().endsWith(EXTENSION);
+    }
+
+    /**
+     * Read the tar headers of an archive
+     * @param path The archive
+     * @return The index of its members
+     * @throws IOException Failed to read the archive, or it is not a tar file
+     */
+    public static SigMfArchive open(Path path) throws IOException {
+        List<Member> members = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(BLOCK);
+            String longName = null;
+            String paxPath = null;
+            long paxSize = -1;
+
+            long position = 0;
+            while (position + BLOCK <= size) {
+                readFully(channel, header.clear(), position);
+                byte[] block = header.array();
+                if (isZero(block)) {
+                    break; // end of archive
+                }
+                if (!checksumMatches(block)) {
+                    throw new IOException("Not a tar archive (bad header checksum at " + position + "): " + path);
+                }
+
+                long memberSize = paxSize >= 0 ? paxSize : parseNumber(block, 124, 12);
+                long dataOffset = position + BLOCK;
+                char type = (char) block[156];
+                switch (type) {
+                    case 'L' -> longName = trimName(readString(channel, dataOffset, (int) memberSize));
+                    case 'x' -> {
+                        String pax = readString(channel, dataOffset, (int) memberSize);
+                        paxPath = getPaxValue(pax, "path");
+                        String paxSizeValue = getPaxValue(pax, "size");
+                        paxSize = paxSizeValue == null ? -1 : Long.parseLong(paxSizeValue);
+                    }
+                    case '0', '\0', '7' -> {
+                        String name = paxPath != null ? paxPath : longName != null ? longName : getName(block);
+                        members.add(new Member(name, dataOffset, memberSize));
+                    }
+                    default -> {
+                        // directories, links and global headers have nothing to map
+                    }
+                }
+                if (type != 'L' && type != 'x') {
+                    longName = null;
+                    paxPath = null;
+                    paxSize = -1;
+                }
+                position = dataOffset + (memberSize + BLOCK - 1) / BLOCK * BLOCK;
+            }
+        }
+        SMA_LOGGER.info("Indexed {} members of {}", members.size(), path.getFileName());
+        return new SigMfArchive(path, members);
+    }
+
+    /**
+     * Get the archive file
+     * @return Path of the archive
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Get the regular files of the archive
+     * @return The members, in archive order
+     */
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    /**
+     * Get the first metadata member (an archive can hold several recordings)
+     * @return The {@code .sigmf-meta} member, null if there is none
+     */
+    public Member getMetaMember() {
+        for (Member member : members) {
+            if (member.name().endsWith(".sigmf-meta")) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the dataset member of a recording
+     * @param meta The metadata member of the recording
+     * @param dataset Name of the data file given by the metadata (core:dataset), null for the default
+     * @return The {@code .sigmf-data} member, null if there is none
+     */
+    public Member getDataMember(Member meta, String dataset) {
+        String base = meta.name().substring(0, meta.name().length() - ".sigmf-meta".length());
+        int slash = base.lastIndexOf('/');
+        String expected = dataset != null
+            ? base.substring(0, slash + 1) + dataset
+            : base + ".sigmf-data";
+        for (Member member : members) {
+            if (member.name().equals(expected)) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read the data of a (small) member
+     * @param member The member, e.g. the metadata
+     * @return The bytes of the member
+     * @throws IOException Failed to read the archive
+     */
+    public byte[] read(Member member) throws IOException {
+        if (member.size() > Integer.MAX_VALUE - 8) {
+            throw new IOException("Member too large to read in memory: " + member.name());
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer bytes = ByteBuffer.allocate((int) member.size());
+            readFully(channel, bytes, member.offset());
+            return bytes.array();
+        }
+    }
+
+    // ---- tar header fields ----
+
+    private static String getName(byte[] block) {
+        String name = readField(block, 0, 100);
+        // ustar splits long paths into a prefix and a name
+        if (new String(block, 257, 5, StandardCharsets.US_ASCII).equals("ustar")) {
+            String prefix = readField(block, 345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+        return trimName(name);
+    }
+
+    private static String trimName(String name) {
+        String trimmed = name.startsWith("./") ? name.substring(2) : name;
+        int nul = trimmed.indexOf('\0');
+        return nul < 0 ? trimmed : trimmed.substring(0, nul);
+    }
+
+    private static String readField(byte[] block, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && block[end] != 0) {
+            end++;
+        }
+        return new String(block, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parse a numeric field, octal or base-256 (GNU, high bit of the first byte set)
+     */
+    private static long parseNumber(byte[] block, int offset, int length) throws IOException {
+        if ((block[offset] & 0x80) != 0) {
+            long value = block[offset] & 0x7F;
+            for (int i = 1; i < length; i++) {
+                value = (value << 8) | (block[offset + i] & 0xFF);
+            }
+            return value;
+        }
+        String octal = readField(block, offset, length).trim();
+        try {
+            return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad numeric field in tar header: " + octal, e);
+        }
+    }
+
+    private static boolean checksumMatches(byte[] block) throws IOException {
+        long expected = parseNumber(block, 148, 8);
+        long sum = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            // the checksum field counts as spaces
+            sum += i >= 148 && i < 156 ? ' ' : block[i] & 0xFF;
+        }
+        return sum == expected;
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get a value of pax records ("length key=value\n")
+     */
+    private static String getPaxValue(String pax, String key) {
+        for (String record : pax.split("\n")) {
+            int space = record.indexOf(' ');
+            int equals = record.indexOf('=');
+            if (space >= 0 && equals > space && record.substring(space + 1, equals).equals(key)) {
+                return record.substring(equals + 1);
+            }
+        }
+        return null;
+    }
+
+    private static String readString(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        readFully(channel, bytes, position);
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated tar archive");
+            }
+        }
+    }
+}
@@ -1,16 +1,16 @@
 package net.kcundercover.spectral_analyzer.sigmf;
 
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.apache.logging.log4j.internal.annotation.SuppressFBWarnings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,12 +20,21 @@ import org.slf4j.LoggerFactory;
  */
 public class SigMfHelper {
     private static final Logger SMH_LOGGER = LoggerFactory.getLogger(SigMfHelper.class);
-    private final ObjectMapper mapper = new ObjectMapper()
-        // This prevents the UnrecognizedPropertyException
-        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     private SigMfMetadata metadata;
-    private MappedByteBuffer dataBuffer;
+    private SampleBuffer dataBuffer;
+    private SampleDecoder decoder;
+    private CaptureIndex captureIndex = CaptureIndex.EMPTY;
     private Path inputMeta;
+    private Path dataPath;
+    /** Byte offset of the samples in the data file (header bytes) */
+    private long dataOffset;
+    /** Byte offset of the end of the samples (end of the archive member), Long.MAX_VALUE for a data file */
+    private long dataEnd = Long.MAX_VALUE;
+    /** Byte offset of the dataset in the data file (start of the archive member, header included) */
+    private long datasetStart;
+
+    /** Valid spectrum sidecars of the loaded recording, by FFT size */
+    private final Map<Integer, SpectrumSidecar> sidecars = new ConcurrentHashMap<>();
 
     /**
      * Default constructor
@@ -35,14 +44,23 @@ public class SigMfHelper {
     }
 
     /**
-     * Loads a SigMF meta file
+     * Loads a SigMF meta file, or a SigMF archive ({@code .sigmf})
      *
-     * @param metaPath Path to the SigMF meta file.
+     * @param metaPath Path to the SigMF meta file (or archive).
      * @throws Exception I/O or Json parsing exception
      */
     public void load(Path metaPath) throws Exception {
+        if (SigMfArchive.isArchive(metaPath)) {
+            loadArchive(metaPath);
+            return;
+        }
+
         // Load Metadata
-        this.metadata = mapper.readValue(metaPath.toFile(), SigMfMetadata.class);
+        this.metadata = SigMfMetaFile.read(metaPath);
+
+        // resolved once, fails early on an unsupported datatype
+        SampleDecoder newDecoder = this.metadata.global().getDecoder();
+        this.captureIndex = CaptureIndex.of(this.metadata.captures());
 
         Path dataPath, parentPath;
         parentPath = metaPath.getParent();
@@ -56,7 +74,61 @@ public class SigMfHelper {
             dataPath = Path.of(dataFileName);
         }
 
-        // Determine if there are header bytes to skip (usually in the first capture segment)
+        mapData(dataPath, getHeaderBytes(), Long.MAX_VALUE, newDecoder);
+        datasetStart = 0;
+        inputMeta = metaPath;
+
+        detectSpectrumSidecars();
+    }
+
+    /**
+     * Loads the first recording of a SigMF archive without extracting it
+     *
+     * The tar headers are indexed, the metadata member is parsed and the data
+     * member is mapped directly out of the archive.  The archive is never
+     * modified: saved annotations go to a meta file next to it, which is
+     * read instead of the archived metadata the next time.
+     * @param archivePath Path to the archive
+     * @throws Exception I/O or Json parsing exception
+     */
+    private void loadArchive(Path archivePath) throws Exception {
+        SigMfArchive archive = SigMfArchive.open(archivePath);
+        SigMfArchive.Member metaMember = archive.getMetaMember();
+        if (metaMember == null) {
+            throw new IOException("No .sigmf-meta file in archive " + archivePath.getFileName());
+        }
+        String metaName = metaMember.name().substring(metaMember.name().lastIndexOf('/') + 1);
+        Path savedMeta = archivePath.toAbsolutePath().resolveSibling(metaName);
+
+        // Load Metadata
+        if (Files.exists(savedMeta)) {
+            SMH_LOGGER.info("Using the metadata saved next to the archive: {}", savedMeta);
+            this.metadata = SigMfMetaFile.read(savedMeta);
+        } else {
+            this.metadata = SigMfMetaFile.read(archive.read(metaMember));
+        }
+
+        SampleDecoder newDecoder = this.metadata.global().getDecoder();
+        this.captureIndex = CaptureIndex.of(this.metadata.captures());
+
+        SigMfArchive.Member dataMember = archive.getDataMember(metaMember, this.metadata.global().dataset());
+        if (dataMember == null) {
+            throw new IOException("No data file for " + metaMember.name() + " in archive " + archivePath.getFileName());
+        }
+
+        mapData(archivePath, dataMember.offset() + getHeaderBytes(), dataMember.offset() + dataMember.size(),
+            newDecoder);
+        datasetStart = dataMember.offset();
+        inputMeta = savedMeta;
+
+        detectSpectrumSidecars();
+    }
+
+    /**
+     * Get the header bytes to skip (usually in the first capture segment)
+     * @return Number of bytes before the first sample
+     */
+    private long getHeaderBytes() {
         long headerBytes = 0;
         if (this.metadata.captures() != null && !this.metadata.captures().isEmpty()) {
             var firstCapture = this.metadata.captures().get(0);
@@ -65,38 +137,132 @@ public class SigMfHelper {
                 headerBytes = firstCapture.headerBytes();
             }
         }
+        return headerBytes;
+    }
 
-        // Memory Map the Data File
-        try (RandomAccessFile raf = new RandomAccessFile(dataPath.toFile(), "r");
+    /**
+     * Memory map the samples of a data file (or of an archive member)
+     * @param file The file holding the samples
+     * @param start Byte offset of the first sample in the file
+     * @param end Byte offset of the end of the samples (Long.MAX_VALUE for the end of the file)
+     * @param newDecoder Decoder of the samples
+     * @throws IOException Failed to map the file
+     */
+    private void mapData(Path file, long start, long end, SampleDecoder newDecoder) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r");
             FileChannel channel = raf.getChannel()) {
 
             long channelSize = channel.size();
 
             // Calculate the maximum available data bytes remaining after skipping the header
-            long availableDataBytes = Math.max(0, channelSize - headerBytes);
+            long availableDataBytes = Math.max(0, Math.min(channelSize, end) - start);
 
-            // Limit mapping buffer to the maximum 2 GB integer boundary capacity
-            long safeSize = Math.min(availableDataBytes, (long) Integer.MAX_VALUE);
-            if (safeSize != availableDataBytes) {
-                SMH_LOGGER.info("Data file payload is large, limiting buffer to first 2 GB of signal samples");
+            // Set Endianness based on SigMF datatype (e.g., cf32_le)
+            ByteOrder order = newDecoder.getOrder();
+
+            // mapped in 1 GB chunks, files above 2 GB are supported
+            this.dataBuffer = SampleBuffer.map(channel, start, availableDataBytes, order);
+            this.decoder = newDecoder;
+            this.dataPath = file;
+            this.dataOffset = start;
+            this.dataEnd = end;
+        }
+    }
+
+    /**
+     * Map the samples appended to the data file since it was loaded (file still being recorded)
+     *
+     * Only whole samples are mapped, a sample being written is picked up by
+     * the next refresh.  The previous buffer stays valid for its readers.
+     * @return True if the data buffer grew
+     * @throws IOException Failed to map the file
+     */
+    public boolean refreshDataBuffer() throws IOException {
+        if (dataPath == null || dataBuffer == null) {
+            return false;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(dataPath.toFile(), "r");
+            FileChannel channel = raf.getChannel()) {
+            long available = Math.max(0, Math.min(channel.size(), dataEnd) - dataOffset);
+            available -= available % decoder.getBytesPerSample();
+            if (available <= dataBuffer.size()) {
+                return false;
             }
+            dataBuffer = dataBuffer.extend(channel, available);
+            return true;
+        }
+    }
 
-            this.dataBuffer = channel.map(FileChannel.MapMode.READ_ONLY, headerBytes, safeSize);
+    /**
+     * Look for spectrum sidecars next to the meta file
+     *
+     * Only the sidecars that match the current size and modification time of
+     * the data file are kept.
+     */
+    public void detectSpectrumSidecars() {
+        sidecars.clear();
+        File metaFile = getCurrentMetaFile();
+        if (metaFile == null || dataPath == null) {
+            return;
+        }
+        Path metaPath = metaFile.toPath().toAbsolutePath();
+        String name = SpectrumSidecar.getPath(metaPath, 0).getFileName().toString();
+        String prefix = name.substring(0, name.length() - 1); // drop the FFT size
 
-            // Set Endianness based on SigMF datatype (e.g., cf32_le)
-            if (this.metadata.global().datatype().endsWith("_le")) {
-                dataBuffer.order(ByteOrder.LITTLE_ENDIAN);
-            } else {
-                dataBuffer.order(ByteOrder.BIG_ENDIAN);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(
+                metaPath.getParent(), p -> p.getFileName().toString().startsWith(prefix)
+                    && !p.getFileName().toString().endsWith(".tmp"))) {
+            long sourceSize = Files.size(dataPath);
+            long sourceModified = Files.getLastModifiedTime(dataPath).toMillis();
+            for (Path path : stream) {
+                SpectrumSidecar sidecar = SpectrumSidecar.open(path, sourceSize, sourceModified);
+                if (sidecar != null) {
+                    sidecars.put(sidecar.getFftSize(), sidecar);
+                    SMH_LOGGER.info("Found spectrum sidecar {}", path.getFileName());
+                }
             }
-            inputMeta = metaPath;
+        } catch (IOException e) {
+            SMH_LOGGER.warn("Failed to look for spectrum sidecars", e);
         }
     }
 
+    /**
+     * Get the spectrum sidecar for an FFT size
+     * @param fftSize Number of FFT points
+     * @param window The window applied before the FFT
+     * @return The sidecar, null if there is no valid sidecar
+     */
+    public SpectrumSidecar getSpectrumSidecar(int fftSize, String window) {
+        SpectrumSidecar sidecar = sidecars.get(fftSize);
+        return sidecar != null && sidecar.getWindow().equals(window) ? sidecar : null;
+    }
+
+    /**
+     * Get the path of the spectrum sidecar for an FFT size (next to the meta file)
+     * @param fftSize Number of FFT points
+     * @return The sidecar path, null if nothing is loaded
+     */
+    public Path getSpectrumSidecarPath(int fftSize) {
+        File metaFile = getCurrentMetaFile();
+        return metaFile == null ? null : SpectrumSidecar.getPath(metaFile.toPath().toAbsolutePath(), fftSize);
+    }
+
+    /**
+     * Get the data file mapped by `load()`
+     *
+     * @return Path to the data file (the archive for a SigMF archive), null if nothing is loaded
+     */
+    public Path getDataPath() {
+        return dataPath;
+    }
+
     /**
      * Get the file specified by property `inputMeta`,
      * initialized in the `load()` method.
      *
+     * For an archive, this is the meta file next to it (where the
+     * annotations are saved).
+     *
      * @return File to the input metafila
      */
     public File getCurrentMetaFile() {
@@ -131,10 +297,69 @@ public class SigMfHelper {
     @SuppressFBWarnings(
         value = "EI_EXPOSE_REP",
         justification = "Intentional: buffer is shared for performance")
-    public MappedByteBuffer getDataBuffer() {
+    public SampleBuffer getDataBuffer() {
         return dataBuffer;
     }
 
+    /**
+     * Get the index of the capture segments, built when the file was loaded
+     * @return The capture index (empty if nothing is loaded)
+     */
+    public CaptureIndex getCaptureIndex() {
+        return captureIndex;
+    }
+
+    /**
+     * Get the decoder of the data buffer, resolved from the datatype when the file was loaded
+     * @return the decoder
+     */
+    public SampleDecoder getDecoder() {
+        return decoder;
+    }
+
+    /**
+     * Get the byte offset of the dataset in the data file (the bytes covered by core:sha512)
+     * @return 0 for a data file, the offset of the data member for an archive
+     */
+    public long getDatasetStart() {
+        return datasetStart;
+    }
+
+    /**
+     * Get the current size of the dataset (the bytes covered by core:sha512)
+     * @return Number of bytes of the data file (or of the archive member)
+     * @throws IOException Failed to read the size of the file
+     */
+    public long getDatasetLength() throws IOException {
+        return Math.min(Files.size(dataPath), dataEnd) - datasetStart;
+    }
+
+    /**
+     * Set the SHA-512 hash of the dataset, written by the next save
+     * @param sha512 The hexadecimal hash
+     */
+    public void setSha512(String sha512) {
+        this.metadata = new SigMfMetadata(metadata.global().withSha512(sha512), metadata.captures(),
+            metadata.annotations());
+    }
+
+    /**
+     * Get the decoder of one channel of the data buffer
+     * @param channel Index of the channel (0 to getChannelCount() - 1)
+     * @return the decoder of the channel
+     */
+    public SampleDecoder getDecoder(int channel) {
+        return decoder.forChannel(channel, decoder.getChannelCount());
+    }
+
+    /**
+     * Get the number of channels interleaved in the data buffer (core:num_channels)
+     * @return Number of channels, 1 if nothing is loaded
+     */
+    public int getChannelCount() {
+        return decoder == null ? 1 : decoder.getChannelCount();
+    }
+
     /**
      * Get the annotations list and return the List of SigMfAnnotations
      * @return List of SigMF Annotation objects
@@ -145,24 +370,27 @@ public class SigMfHelper {
 
     /**
      * Save the SigMF file with the updated annotationList
+     *
+     * The annotations are streamed to a temporary file that replaces the
+     * meta file, see {@link SigMfMetaFile#write}.
      * @param annotationList List of annotations.
+     * @return True if the meta file was written
      */
-    public void saveSigMF(List<SigMfAnnotation> annotationList) {
+    public boolean saveSigMF(List<SigMfAnnotation> annotationList) {
         try {
-            // Use the class-level mapper and just enable the feature for this call
-            mapper.enable(SerializationFeature.INDENT_OUTPUT);
-
             this.metadata = new SigMfMetadata(
                 metadata.global(),
                 metadata.captures(),
                 annotationList
             );
 
-            mapper.writeValue(getCurrentMetaFile(), this.metadata);
+            SigMfMetaFile.write(getCurrentMetaFile().toPath(), this.metadata);
             SMH_LOGGER.info("SigMF metadata saved successfully.");
+            return true;
 
         } catch (IOException e) {
             SMH_LOGGER.error("Failed to save SigMF file", e);
+            return false;
         }
     }
 
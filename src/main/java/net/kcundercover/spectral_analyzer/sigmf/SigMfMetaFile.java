@@ -0,0 +1,162 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming reader and writer of {@code .sigmf-meta} files
+ *
+ * Generated meta files can hold hundreds of thousands of annotations.  The
+ * file is parsed token by token and each annotation is bound as soon as it
+ * is read, so neither the text nor a JSON tree of the whole file is held in
+ * memory.  Saving streams the annotations of the model to a temporary file
+ * that replaces the meta file once complete, a failed save leaves the
+ * previous file untouched.
+ */
+public final class SigMfMetaFile {
+    private static final Logger SMF_LOGGER = LoggerFactory.getLogger(SigMfMetaFile.class);
+
+    /** Size of the output buffer */
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        // one flush at the end, not one per annotation
+        .configure(SerializationFeature.FLUSH_AFTER_WRITE_VALUE, false);
+
+    private SigMfMetaFile() {
+    }
+
+    /**
+     * Read a meta file
+     * @param metaPath The {@code .sigmf-meta} file
+     * @return The metadata
+     * @throws IOException Failed to read or parse the file
+     */
+    public static SigMfMetadata read(Path metaPath) throws IOException {
+        long start = System.nanoTime();
+        try (JsonParser parser = MAPPER.getFactory().createParser(metaPath.toFile())) {
+            SigMfMetadata metadata = read(parser);
+            SMF_LOGGER.info("Read {} annotations from {} in {} ms", metadata.annotations().size(),
+                metaPath.getFileName(), (System.nanoTime() - start) / 1_000_000);
+            return metadata;
+        }
+    }
+
+    /**
+     * Read metadata held in memory (e.g. a member of an archive)
+     * @param meta The bytes of the meta file
+     * @return The metadata
+     * @throws IOException Failed to parse the metadata
+     */
+    public static SigMfMetadata read(byte[] meta) throws IOException {
+        try (JsonParser parser = MAPPER.getFactory().createParser(meta)) {
+            return read(parser);
+        }
+    }
+
+    /**
+     * Write a meta file atomically (temporary file, then rename)
+     * @param metaPath The {@code .sigmf-meta} file
+     * @param metadata The metadata
+     * @throws IOException Failed to write the file (the previous file is kept)
+     */
+    public static void write(Path metaPath, SigMfMetadata metadata) throws IOException {
+        long start = System.nanoTime();
+        Path target = metaPath.toAbsolutePath();
+        Path temp = target.resolveSibling("." + target.getFileName() + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), WRITE_BUFFER_BYTES);
+                JsonGenerator generator = MAPPER.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+                generator.useDefaultPrettyPrinter();
+                write(generator, metadata);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        SMF_LOGGER.info("Wrote {} annotations to {} in {} ms", metadata.annotations().size(),
+            target.getFileName(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // ---- streaming ----
+
+    private static SigMfMetadata read(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Not a SigMF meta file, expected a JSON object");
+        }
+        Global global = null;
+        List<Capture> captures = List.of();
+        List<SigMfAnnotation> annotations = List.of();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "global" -> global = MAPPER.readValue(parser, Global.class);
+                case "captures" -> captures = readArray(parser, Capture.class);
+                case "annotations" -> annotations = readArray(parser, SigMfAnnotation.class);
+                default -> parser.skipChildren(); // unknown top level field
+            }
+        }
+        return new SigMfMetadata(global, captures, annotations);
+    }
+
+    /**
+     * Bind the elements of an array one at a time
+     * @param parser Parser on the start of the array
+     * @param type Type of the elements
+     * @return The elements
+     */
+    private static <T> List<T> readArray(JsonParser parser, Class<T> type) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return List.of();
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new IOException("Expected an array of " + type.getSimpleName() + " at " + parser.currentLocation());
+        }
+        List<T> values = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            values.add(MAPPER.readValue(parser, type));
+        }
+        return values;
+    }
+
+    private static void write(JsonGenerator generator, SigMfMetadata metadata) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName("global");
+        MAPPER.writeValue(generator, metadata.global());
+        generator.writeFieldName("captures");
+        writeArray(generator, metadata.captures());
+        generator.writeFieldName("annotations");
+        writeArray(generator, metadata.annotations());
+        generator.writeEndObject();
+    }
+
+    private static void writeArray(JsonGenerator generator, List<?> values) throws IOException {
+        generator.writeStartArray();
+        for (Object value : values) {
+            MAPPER.writeValue(generator, value);
+        }
+        generator.writeEndArray();
+    }
+}
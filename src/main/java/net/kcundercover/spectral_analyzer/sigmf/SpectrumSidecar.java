@@ -0,0 +1,368 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import net.kcundercover.spectral_analyzer.dsp.Aggregation;
+
+/**
+ * Memory-mapped sidecar file holding the power spectrum of every FFT of a recording.
+ *
+ * The sidecar is stored next to the SigMF meta file as
+ * {@code <name>.sigmf-spectra-<nfft>}.  Each FFT is stored as one column of
+ * {@code bins} 16-bit values (dB in steps of {@link #DB_STEP}), the peak of
+ * the FFT bins that fall on a sidecar bin.  The header records the FFT size,
+ * the window and the size/modification time of the data file, a sidecar that
+ * does not match the data file is ignored.
+ *
+ * Files larger than 2 GB are mapped in several chunks.
+ */
+public final class SpectrumSidecar {
+    /** Maximum number of bins per column */
+    public static final int MAX_BINS = 512;
+
+    /** Resolution of the stored values (dB) */
+    public static final float DB_STEP = 0.01f;
+
+    /** Suffix of the sidecar file, followed by the FFT size */
+    public static final String SUFFIX = ".sigmf-spectra-";
+
+    private static final int MAGIC = 0x53535043; // "SSPC"
+    private static final int VERSION = 1;
+
+    // the header is padded to a page so the columns are page aligned
+    private static final int HEADER_BYTES = 4096;
+
+    // maximum size of a mapped chunk
+    private static final long CHUNK_BYTES = 1L << 30;
+
+    private final Path path;
+    private final int fftSize;
+    private final int bins;
+    private final long fftCount;
+    private final String window;
+    private final int columnsPerChunk;
+    private final MappedByteBuffer[] chunks;
+
+    private SpectrumSidecar(Path path, int fftSize, int bins, long fftCount, String window,
+            MappedByteBuffer[] chunks) {
+        this.path = path;
+        this.fftSize = fftSize;
+        this.bins = bins;
+        this.fftCount = fftCount;
+        this.window = window;
+        this.columnsPerChunk = getColumnsPerChunk(bins);
+        this.chunks = chunks;
+    }
+
+    /**
+     * Get the sidecar file of a recording
+     * @param metaPath The SigMF meta file
+     * @param fftSize Number of FFT points
+     * @return Path of the sidecar (next to the meta file)
+     */
+    public static Path getPath(Path metaPath, int fftSize) {
+        String name = metaPath.getFileName().toString();
+        if (name.endsWith(".sigmf-meta")) {
+            name = name.substring(0, name.length() - ".sigmf-meta".length());
+        }
+        return metaPath.resolveSibling(name + SUFFIX + fftSize);
+    }
+
+    /**
+     * Get the number of bins per column for an FFT size
+     * @param fftSize Number of FFT points
+     * @return Number of bins
+     */
+    public static int getBinCount(int fftSize) {
+        return Math.min(fftSize, MAX_BINS);
+    }
+
+    /**
+     * Get the size of the sidecar of a recording
+     * @param fftSize Number of FFT points
+     * @param fftCount Number of FFTs (columns)
+     * @return Size of the file (bytes)
+     */
+    public static long getFileSize(int fftSize, long fftCount) {
+        return HEADER_BYTES + fftCount * getBinCount(fftSize) * Short.BYTES;
+    }
+
+    /**
+     * Open a sidecar
+     *
+     * @param path The sidecar file
+     * @param sourceSize Current size of the data file
+     * @param sourceModified Current last modified time (ms) of the data file
+     * @return The sidecar, or null if it is missing, incomplete, from another version or stale
+     * @throws IOException Failed to read the file
+     */
+    public static SpectrumSidecar open(Path path, long sourceSize, long sourceModified) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // read the complete header
+            }
+            header.flip();
+            if (header.getInt() != MAGIC
+                    || header.getInt() != VERSION
+                    || header.getInt() != 1 // complete
+                    || header.getLong() != sourceSize
+                    || header.getLong() != sourceModified) {
+                return null;
+            }
+            int fftSize = header.getInt();
+            int bins = header.getInt();
+            long fftCount = header.getLong();
+            byte[] windowBytes = new byte[header.getInt()];
+            header.get(windowBytes);
+            if (channel.size() != HEADER_BYTES + fftCount * bins * Short.BYTES) {
+                return null;
+            }
+            MappedByteBuffer[] chunks = map(channel, FileChannel.MapMode.READ_ONLY, bins, fftCount);
+            return new SpectrumSidecar(path, fftSize, bins, fftCount,
+                new String(windowBytes, StandardCharsets.UTF_8), chunks);
+        }
+    }
+
+    /**
+     * Check if a valid sidecar exists
+     * @param path The sidecar file
+     * @param sourceSize Current size of the data file
+     * @param sourceModified Current last modified time (ms) of the data file
+     * @param window The expected window
+     * @return True if the sidecar can be used
+     */
+    public static boolean isValid(Path path, long sourceSize, long sourceModified, String window) {
+        try {
+            SpectrumSidecar sidecar = open(path, sourceSize, sourceModified);
+            return sidecar != null && sidecar.getWindow().equals(window);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create a sidecar to be filled column by column
+     *
+     * The columns are written to a temporary file that replaces the sidecar
+     * in {@link Writer#finish(long, long)}, so a sidecar that is still mapped
+     * (e.g. computed with another window) stays readable.
+     * @param path The sidecar file
+     * @param fftSize Number of FFT points
+     * @param fftCount Number of FFTs (columns)
+     * @param window The window applied before the FFT
+     * @return The writer
+     * @throws IOException Failed to create the file
+     */
+    public static Writer create(Path path, int fftSize, long fftCount, String window) throws IOException {
+        return new Writer(path, fftSize, getBinCount(fftSize), fftCount, window);
+    }
+
+    /**
+     * Get the sidecar file
+     * @return The path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Get the number of FFT points
+     * @return The FFT size
+     */
+    public int getFftSize() {
+        return fftSize;
+    }
+
+    /**
+     * Get the number of bins per column
+     * @return Number of bins
+     */
+    public int getBinCount() {
+        return bins;
+    }
+
+    /**
+     * Get the number of FFTs (columns)
+     * @return Number of FFTs
+     */
+    public long getFftCount() {
+        return fftCount;
+    }
+
+    /**
+     * Get the window applied before the FFT
+     * @return The window key
+     */
+    public String getWindow() {
+        return window;
+    }
+
+    /**
+     * Read the spectrum of an FFT
+     * @param fft Index of the FFT from the start of the data
+     * @param out Output magnitudes (dB), at least {@link #getBinCount()} long
+     */
+    public void readColumn(long fft, float[] out) {
+        MappedByteBuffer chunk = chunks[(int) (fft / columnsPerChunk)];
+        int offset = (int) (fft % columnsPerChunk) * bins * Short.BYTES;
+        for (int b = 0; b < bins; b++) {
+            out[b] = chunk.getShort(offset + b * Short.BYTES) * DB_STEP;
+        }
+    }
+
+    /**
+     * Combine the spectrum of an FFT into an accumulator, without reading it into a separate array
+     *
+     * Max and min-hold accumulate dB (same order as the power), the mean
+     * accumulates linear power to be finished with {@link Aggregation#finish}
+     * and converted to dB.
+     * @param fft Index of the FFT from the start of the data
+     * @param aggregation How the spectra are combined
+     * @param accumulated Accumulated values, at least {@link #getBinCount()} long
+     * @param first True for the first FFT, which initializes the accumulator
+     */
+    public void accumulateColumn(long fft, Aggregation aggregation, float[] accumulated, boolean first) {
+        MappedByteBuffer chunk = chunks[(int) (fft / columnsPerChunk)];
+        int offset = (int) (fft % columnsPerChunk) * bins * Short.BYTES;
+        boolean linear = aggregation == Aggregation.MEAN;
+        for (int b = 0; b < bins; b++) {
+            float value = chunk.getShort(offset + b * Short.BYTES) * DB_STEP;
+            if (linear) {
+                value = (float) Math.pow(10, value / 10);
+            }
+            accumulated[b] = first ? value : aggregation.combine(accumulated[b], value);
+        }
+    }
+
+    private static int getColumnsPerChunk(int bins) {
+        return (int) Math.max(1, CHUNK_BYTES / ((long) bins * Short.BYTES));
+    }
+
+    private static MappedByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, int bins, long fftCount)
+            throws IOException {
+        int columnsPerChunk = getColumnsPerChunk(bins);
+        int count = (int) ((fftCount + columnsPerChunk - 1) / columnsPerChunk);
+        MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long columns = Math.min(columnsPerChunk, fftCount - (long) i * columnsPerChunk);
+            long position = HEADER_BYTES + (long) i * columnsPerChunk * bins * Short.BYTES;
+            chunks[i] = channel.map(mode, position, columns * bins * Short.BYTES);
+            chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return chunks;
+    }
+
+    private static ByteBuffer header(boolean complete, long sourceSize, long sourceModified,
+            int fftSize, int bins, long fftCount, String window) {
+        byte[] windowBytes = window.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(complete ? 1 : 0)
+            .putLong(sourceSize).putLong(sourceModified)
+            .putInt(fftSize).putInt(bins).putLong(fftCount)
+            .putInt(windowBytes.length).put(windowBytes);
+        header.clear(); // write the whole (zero padded) header
+        return header;
+    }
+
+    /**
+     * Fills a new sidecar, columns can be written from several threads
+     */
+    public static final class Writer {
+        private final Path path;
+        private final Path temp;
+        private final int fftSize;
+        private final int bins;
+        private final long fftCount;
+        private final String window;
+        private final int columnsPerChunk;
+        private final FileChannel channel;
+        private final MappedByteBuffer[] chunks;
+
+        private Writer(Path path, int fftSize, int bins, long fftCount, String window) throws IOException {
+            this.path = path;
+            this.temp = path.resolveSibling(path.getFileName() + ".tmp");
+            this.fftSize = fftSize;
+            this.bins = bins;
+            this.fftCount = fftCount;
+            this.window = window;
+            this.columnsPerChunk = getColumnsPerChunk(bins);
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            try {
+                channel.write(header(false, 0, 0, fftSize, bins, fftCount, window), 0);
+                this.chunks = map(channel, FileChannel.MapMode.READ_WRITE, bins, fftCount);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Store the spectrum of an FFT
+         * @param fft Index of the FFT from the start of the data
+         * @param power Power spectrum (linear) of the FFT, fftSize bins from -fs/2 to fs/2
+         */
+        public void putColumn(long fft, float[] power) {
+            MappedByteBuffer chunk = chunks[(int) (fft / columnsPerChunk)];
+            int offset = (int) (fft % columnsPerChunk) * bins * Short.BYTES;
+            int binWidth = fftSize / bins;
+            for (int b = 0; b < bins; b++) {
+                float peak = power[b * binWidth];
+                for (int i = b * binWidth + 1; i < (b + 1) * binWidth; i++) {
+                    peak = Math.max(peak, power[i]);
+                }
+                double db = 10 * Math.log10(peak + 1e-20);
+                long quantized = Math.round(db / DB_STEP);
+                chunk.putShort(offset + b * Short.BYTES,
+                    (short) Math.clamp(quantized, Short.MIN_VALUE, Short.MAX_VALUE));
+            }
+        }
+
+        /**
+         * Mark the sidecar complete and move it in place
+         * @param sourceSize Size of the data file the spectra were computed from
+         * @param sourceModified Last modified time (ms) of the data file
+         * @throws IOException Failed to write the file
+         */
+        public void finish(long sourceSize, long sourceModified) throws IOException {
+            try {
+                for (MappedByteBuffer chunk : chunks) {
+                    chunk.force();
+                }
+                channel.write(header(true, sourceSize, sourceModified, fftSize, bins, fftCount, window), 0);
+                channel.force(true);
+            } finally {
+                channel.close();
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        /**
+         * Give up on the sidecar (e.g. cancelled), the file is deleted
+         */
+        public void abort() {
+            try {
+                channel.close();
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                // incomplete sidecars are ignored when opened
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package net.kcundercover.spectral_analyzer.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javafx.application.Platform;
+import javafx.scene.layout.Pane;
+import javafx.scene.shape.Rectangle;
+import net.kcundercover.spectral_analyzer.data.AnnotationGroup;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class AnnotationNodePoolTest {
+
+    /** Spare nodes the pool keeps (AnnotationNodePool.MIN_SPARE) */
+    private static final int MIN_SPARE = 64;
+
+    private static boolean toolkit;
+
+    @BeforeAll
+    static void startToolkit() throws InterruptedException {
+        // same headless setup as SpectralAnalyzerApplicationTests, tooltips need the toolkit
+        System.setProperty("java.awt.headless", "true");
+        System.setProperty("glass.platform", "Monocle");
+        System.setProperty("monocle.platform", "Headless");
+        System.setProperty("prism.order", "sw");
+        CountDownLatch started = new CountDownLatch(1);
+        try {
+            Platform.startup(started::countDown);
+        } catch (IllegalStateException e) {
+            started.countDown(); // already running
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            return; // no display, the tests are skipped
+        }
+        toolkit = started.await(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void reusesTheNodesOfReleasedAnnotations() throws Exception {
+        onFxThread(() -> {
+            Pane overlay = new Pane();
+            AnnotationNodePool pool = new AnnotationNodePool(overlay, e -> { });
+            List<AnnotationGroup> groups = groups(3);
+            groups.forEach(pool::bind);
+            assertEquals(3, pool.getBoundCount());
+            assertEquals(0, pool.getSpareCount());
+            assertEquals(6, overlay.getChildren().size()); // a rectangle and a label each
+            for (AnnotationGroup group : groups) {
+                assertSame(group, group.rect.getUserData());
+                assertNotNull(group.label);
+                assertNotNull(group.tooltip);
+            }
+
+            // binding again keeps the same nodes
+            Rectangle rect = groups.get(1).rect;
+            pool.bind(groups.get(1));
+            assertSame(rect, groups.get(1).rect);
+            assertEquals(3, pool.getBoundCount());
+
+            // released nodes are hidden and unlinked, the next annotation gets them
+            pool.release(groups.get(1));
+            assertNull(groups.get(1).rect);
+            assertNull(groups.get(1).label);
+            assertNull(groups.get(1).tooltip);
+            assertFalse(rect.isVisible());
+            assertNull(rect.getUserData());
+            assertEquals(1, pool.getSpareCount());
+
+            AnnotationGroup next = groups(1).get(0);
+            pool.bind(next);
+            assertSame(rect, next.rect);
+            assertSame(next, rect.getUserData());
+            assertEquals(0, pool.getSpareCount());
+            assertEquals(6, overlay.getChildren().size());
+
+            // releasing twice does not return the nodes twice
+            pool.release(next);
+            pool.release(next);
+            assertEquals(1, pool.getSpareCount());
+            assertEquals(2, pool.getBoundCount());
+        });
+    }
+
+    @Test
+    void trimsTheSpareNodesOffTheOverlay() throws Exception {
+        onFxThread(() -> {
+            Pane overlay = new Pane();
+            AnnotationNodePool pool = new AnnotationNodePool(overlay, e -> { });
+            List<AnnotationGroup> groups = groups(3 * MIN_SPARE);
+            groups.forEach(pool::bind);
+            List<Rectangle> rects = new ArrayList<>();
+            for (AnnotationGroup group : groups) {
+                rects.add(group.rect);
+            }
+
+            // a few annotations left the view: fewer spares than the minimum, all kept
+            for (int i = 0; i < 10; i++) {
+                pool.release(groups.get(i));
+            }
+            pool.trim();
+            assertEquals(10, pool.getSpareCount());
+            assertEquals(2 * groups.size(), overlay.getChildren().size());
+
+            // more spares than in use, trimmed down to the number in use
+            for (int i = 10; i < 2 * MIN_SPARE + 20; i++) {
+                pool.release(groups.get(i));
+            }
+            int inUse = groups.size() - (2 * MIN_SPARE + 20);
+            assertEquals(inUse, pool.getBoundCount());
+            pool.trim();
+            assertEquals(Math.max(MIN_SPARE, inUse), pool.getSpareCount());
+
+            // then never below the minimum, even with nothing in view
+            groups.forEach(pool::release);
+            pool.trim();
+            assertEquals(0, pool.getBoundCount());
+            assertEquals(MIN_SPARE, pool.getSpareCount());
+            assertEquals(2 * MIN_SPARE, overlay.getChildren().size());
+
+            // the trimmed nodes left the overlay, the kept ones are hidden
+            int onOverlay = 0;
+            for (Rectangle rect : rects) {
+                if (overlay.getChildren().contains(rect)) {
+                    onOverlay++;
+                    assertFalse(rect.isVisible());
+                }
+            }
+            assertEquals(MIN_SPARE, onOverlay);
+
+            // after the overlay was cleared for a new file
+            overlay.getChildren().clear();
+            pool.clear();
+            assertEquals(0, pool.getSpareCount());
+            pool.bind(groups.get(0));
+            assertTrue(overlay.getChildren().contains(groups.get(0).rect));
+            assertEquals(2, overlay.getChildren().size());
+        });
+    }
+
+    private static List<AnnotationGroup> groups(int count) {
+        List<AnnotationGroup> groups = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            groups.add(new AnnotationGroup());
+        }
+        return groups;
+    }
+
+    /** Run on the JavaFX thread (the nodes and tooltips belong to it), rethrowing its failures */
+    private static void onFxThread(Runnable body) throws Exception {
+        Assumptions.assumeTrue(toolkit, "JavaFX toolkit not available");
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Platform.runLater(() -> {
+            try {
+                body.run();
+            } catch (Throwable t) {
+                failure.set(t);
+            } finally {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        if (failure.get() instanceof AssertionError error) {
+            throw error;
+        } else if (failure.get() != null) {
+            throw new IllegalStateException(failure.get());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package net.kcundercover.spectral_analyzer.data;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import net.kcundercover.spectral_analyzer.data.AnnotationColumns.Column;
+import net.kcundercover.spectral_analyzer.sigmf.SigMfAnnotation;
+import org.junit.jupiter.api.Test;
+
+class AnnotationColumnsTest {
+
+    @Test
+    void ordersMatchAStableComparatorSort() {
+        Random random = new Random(7);
+        List<AnnotationGroup> groups = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            double low = random.nextInt(20) == 0 ? -random.nextDouble(1e6) : random.nextDouble(1e9);
+            boolean noEdges = random.nextInt(50) == 0;
+            groups.add(group(random.nextLong(1_000_000), random.nextInt(3000),
+                noEdges ? null : low, noEdges ? null : low + random.nextInt(100) * 1e3,
+                random.nextInt(10) == 0 ? null : "label" + random.nextInt(30)));
+        }
+        AnnotationColumns columns = AnnotationColumns.of(groups, 1e6);
+
+        assertOrder(columns, Column.START, Comparator.comparingLong(columns::getSampleStart));
+        assertOrder(columns, Column.DURATION, Comparator.comparingLong(columns::getSampleCount));
+        // Double.compare puts NaN (no frequency edges) last, as the radix order does
+        assertOrder(columns, Column.CENTER_FREQ, Comparator.comparingDouble(columns::getCenterFreq));
+        assertOrder(columns, Column.BANDWIDTH, Comparator.comparingDouble(columns::getBandwidth));
+        assertOrder(columns, Column.LABEL, Comparator.comparing(columns::getLabel,
+            Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        // an edit drops the order of the column
+        columns.setLabel(4999, "aaa");
+        assertOrder(columns, Column.LABEL, Comparator.comparing(columns::getLabel,
+            Comparator.nullsFirst(Comparator.naturalOrder())));
+        columns.setSelected(10, true);
+        assertEquals(10, columns.order(Column.SELECTED)[4999]);
+        assertEquals(1, columns.getSelectedCount());
+
+        columns.writeBack();
+        assertEquals("aaa", groups.get(4999).data.getLabel());
+    }
+
+    @Test
+    void itemsFilterAndReverseTheOrder() {
+        List<AnnotationGroup> groups = List.of(
+            group(300, 10, 1e6, 2e6, "b"), group(100, 10, 1e6, 2e6, "a"), group(200, 10, 1e6, 2e6, "b"));
+        AnnotationTableItems items = new AnnotationTableItems(AnnotationColumns.of(groups, 100));
+
+        items.sort(Column.START, false);
+        assertEquals(List.of(0, 2, 1), items.stream().map(AnnotationRow::getPosition).toList());
+        items.setFilter(position -> "b".equals(items.getColumns().getLabel(position)));
+        assertEquals(List.of(0, 2), items.stream().map(AnnotationRow::getPosition).toList());
+
+        items.setSelectedInView(true);
+        assertEquals(2, items.getSelectedRows().size());
+        assertEquals(2.0, items.get(1).getStartTime());
+        // rows are created once and kept
+        assertEquals(items.get(0), items.getRow(0));
+    }
+
+    @Test
+    void selectedRowsIncludeTheOnesHiddenByTheFilter() {
+        List<AnnotationGroup> groups = List.of(
+            group(300, 10, 1e6, 2e6, "b"), group(100, 10, 1e6, 2e6, "a"), group(200, 10, 1e6, 2e6, "b"));
+        AnnotationTableItems items = new AnnotationTableItems(AnnotationColumns.of(groups, 100));
+        items.sort(Column.START, true);
+        items.setFilter(position -> "b".equals(items.getColumns().getLabel(position)));
+
+        // e.g. Select Matching with a query also matching the hidden annotation
+        BitSet matching = new BitSet();
+        matching.set(0, 3);
+        items.select(matching);
+        assertEquals(List.of(2, 0, 1), items.getSelectedRows().stream().map(AnnotationRow::getPosition).toList());
+        assertEquals(3, items.getColumns().getSelectedCount());
+
+        // select none only clears the annotations shown
+        items.setSelectedInView(false);
+        assertEquals(List.of(1), items.getSelectedRows().stream().map(AnnotationRow::getPosition).toList());
+    }
+
+    private static void assertOrder(AnnotationColumns columns, Column column, Comparator<Integer> comparator) {
+        int[] expected = IntStream.range(0, columns.size()).boxed()
+            .sorted(comparator).mapToInt(Integer::intValue).toArray();
+        assertArrayEquals(expected, columns.order(column), column.name());
+    }
+
+    private static AnnotationGroup group(long start, long count, Double low, Double high, String label) {
+        AnnotationGroup group = new AnnotationGroup();
+        group.data = new SigMfAnnotation(start, count, low, high, label, null);
+        return group;
+    }
+}
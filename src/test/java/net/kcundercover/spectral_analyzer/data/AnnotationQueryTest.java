@@ -0,0 +1,68 @@
+package net.kcundercover.spectral_analyzer.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+import net.kcundercover.spectral_analyzer.sigmf.SigMfAnnotation;
+import org.junit.jupiter.api.Test;
+
+class AnnotationQueryTest {
+
+    private static final String[] LABELS = {"wifi", "WiFi-6", "bluetooth", "lte", null};
+
+    @Test
+    void matchesTheSameAnnotationsAsAScan() {
+        Random random = new Random(11);
+        List<AnnotationGroup> groups = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            AnnotationGroup group = new AnnotationGroup();
+            double low = 2.4e9 + random.nextDouble(80e6);
+            group.data = new SigMfAnnotation(random.nextLong(30_000_000), random.nextInt(100_000),
+                low, low + random.nextDouble(40e6), LABELS[random.nextInt(LABELS.length)], null);
+            groups.add(group);
+        }
+        AnnotationColumns c = AnnotationColumns.of(groups, 1e6);
+
+        assertQuery(c, "label=wifi AND bw>15e6 AND t in [10,20]",
+            i -> "wifi".equals(c.getLabel(i)) && c.getBandwidth(i) > 15e6
+                && c.getStartTime(i) >= 10 && c.getStartTime(i) <= 20);
+        assertQuery(c, "label~wifi OR (dur<=0.01 && NOT fc>=2.44G)",
+            i -> (c.getLabel(i) != null && c.getLabel(i).toLowerCase().contains("wifi"))
+                || (c.getDuration(i) <= 0.01 && !(c.getCenterFreq(i) >= 2.44e9)));
+        assertQuery(c, "label!=\"wifi|lte\" and bw != 0 and t < 5", i -> !(c.getLabel(i) != null
+            && c.getLabel(i).matches("(?i)wifi|lte")) && c.getStartTime(i) < 5);
+        // AND binds tighter than OR
+        assertQuery(c, "t>29 OR t<1 AND label=lte",
+            i -> c.getStartTime(i) > 29 || (c.getStartTime(i) < 1 && "lte".equals(c.getLabel(i))));
+    }
+
+    @Test
+    void reportsWhereTheQueryIsWrong() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+            () -> AnnotationQuery.parse("label=wifi AND snr>3"));
+        assertTrue(e.getMessage().contains("Unknown field 'snr'"), e.getMessage());
+        assertTrue(e.getMessage().endsWith("position 16"), e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> AnnotationQuery.parse("t in [1,"));
+        assertThrows(IllegalArgumentException.class, () -> AnnotationQuery.parse("label=(wifi"));
+        assertThrows(IllegalArgumentException.class, () -> AnnotationQuery.parse("bw>1 bw<2"));
+        assertThrows(IllegalArgumentException.class, () -> AnnotationQuery.parse(""));
+    }
+
+    private static void assertQuery(AnnotationColumns columns, String query, IntPredicate expected) {
+        BitSet matches = AnnotationQuery.parse(query).evaluate(columns);
+        BitSet scan = new BitSet();
+        for (int i = 0; i < columns.size(); i++) {
+            if (expected.test(i)) {
+                scan.set(i);
+            }
+        }
+        assertTrue(!scan.isEmpty(), query);
+        assertEquals(scan, matches, query);
+    }
+}
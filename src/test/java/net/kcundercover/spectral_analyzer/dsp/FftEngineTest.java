@@ -0,0 +1,64 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class FftEngineTest {
+
+    /**
+     * Reference O(n^2) DFT
+     */
+    private static double[][] dft(double[] re, double[] im) {
+        int n = re.length;
+        double[][] out = new double[2][n];
+        for (int k = 0; k < n; k++) {
+            for (int t = 0; t < n; t++) {
+                double angle = -2.0 * Math.PI * ((long) k * t % n) / n;
+                out[0][k] += re[t] * Math.cos(angle) - im[t] * Math.sin(angle);
+                out[1][k] += re[t] * Math.sin(angle) + im[t] * Math.cos(angle);
+            }
+        }
+        return out;
+    }
+
+    @Test
+    void primitiveMatchesDft() {
+        Random rand = new Random(42);
+        for (int n = 1; n <= 1024; n <<= 1) {
+            double[] re = rand.doubles(n, -1, 1).toArray();
+            double[] im = rand.doubles(n, -1, 1).toArray();
+            double[][] expected = dft(re, im);
+
+            new RadixTwoFftEngine().forward(re, im, n);
+            for (int k = 0; k < n; k++) {
+                assertEquals(expected[0][k], re[k], 1e-9, "real, n=" + n + " k=" + k);
+                assertEquals(expected[1][k], im[k], 1e-9, "imag, n=" + n + " k=" + k);
+            }
+        }
+    }
+
+    @Test
+    void primitiveMatchesCommons() {
+        Random rand = new Random(7);
+        int n = 4096;
+        float[] re = new float[n];
+        float[] im = new float[n];
+        double[] dRe = new double[n];
+        double[] dIm = new double[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = (float) rand.nextGaussian();
+            im[i] = (float) rand.nextGaussian();
+            dRe[i] = re[i];
+            dIm[i] = im[i];
+        }
+
+        new RadixTwoFftEngine().forward(re, im, n);
+        new CommonsFftEngine().forward(dRe, dIm, n);
+        for (int k = 0; k < n; k++) {
+            assertEquals(dRe[k], re[k], 1e-2);
+            assertEquals(dIm[k], im[k], 1e-2);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package net.kcundercover.spectral_analyzer.dsp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.Test;
+
+class SampleKernelsTest {
+
+    @Test
+    void vectorMatchesScalar() {
+        SampleKernels vector = SampleKernelsLoader.loadVector();
+        assumeTrue(vector != null, "jdk.incubator.vector not available");
+        assertNull(SampleKernelsLoader.crossCheck(vector, ScalarSampleKernels.INSTANCE));
+    }
+
+    @Test
+    void shiftedPowerInDecibels() {
+        SampleKernels kernels = SampleKernels.get();
+        float[] re = {3, 0, 1, 0};
+        float[] im = {4, 0, 0, 1};
+        float[] power = new float[4];
+        // second half of the bins first, as with the FFT shift
+        kernels.accumulatePower(re, im, 0, power, 2, 2, Aggregation.MAX, true);
+        kernels.accumulatePower(re, im, 2, power, 0, 2, Aggregation.MAX, true);
+        kernels.toDecibels(power, 0, 4);
+
+        assertEquals(0.0, power[0], 1e-3);
+        assertEquals(0.0, power[1], 1e-3);
+        assertEquals(10 * Math.log10(25), power[2], 1e-3);
+        assertEquals(-200.0, power[3], 1e-3);
+    }
+}
@@ -0,0 +1,77 @@
+package net.kcundercover.spectral_analyzer.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class ColorMapTest {
+
+    @Test
+    void interpolatesBetweenTheStops() {
+        ColorMap map = ColorMap.fromColors("gray", new double[][] {{0, 0, 0}, {1, 1, 1}});
+        assertEquals("gray", map.getName());
+        assertEquals(ColorMap.SIZE, map.getTable().length);
+        assertEquals(0xFF000000, map.getTable()[0]);
+        assertEquals(0xFFFFFFFF, map.getTable()[ColorMap.SIZE - 1]);
+        assertEquals(0xFF808080, map.getColor(0.5));
+
+        // clamped
+        assertEquals(0xFF000000, map.getColor(-1));
+        assertEquals(0xFFFFFFFF, map.getColor(2));
+
+        for (int i = 1; i < ColorMap.SIZE; i++) {
+            assertTrue((map.getTable()[i] & 0xFF) >= (map.getTable()[i - 1] & 0xFF), "entry " + i);
+        }
+    }
+
+    @Test
+    void makesSharpTransitionsAtRepeatedStops() {
+        ColorMap map = ColorMap.fromStops("step", new double[] {0.0, 0.5, 0.5, 1.0},
+            new double[][] {{0, 0, 0}, {0, 0, 0}, {1, 0, 0}, {1, 0, 0}});
+        assertEquals(0xFF000000, map.getColor(0.49));
+        assertEquals(0xFFFF0000, map.getColor(0.51));
+        assertEquals(0xFFFF0000, map.getTable()[ColorMap.SIZE - 1]);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> ColorMap.fromStops("one", new double[] {0.0}, new double[][] {{0, 0, 0}}));
+        assertThrows(IllegalArgumentException.class,
+            () -> ColorMap.fromStops("mismatch", new double[] {0.0, 1.0}, new double[][] {{0, 0, 0}}));
+    }
+
+    @Test
+    void loadsUnitAndByteScales() throws IOException {
+        ColorMap unit = load("# blue to red\n\n0.0,0.0,1.0\n1.0, 0.0, 0.0\n");
+        ColorMap bytes = load("0 0 255\n255;0;0\n");
+        assertEquals(0xFF0000FF, unit.getTable()[0]);
+        assertEquals(0xFFFF0000, unit.getTable()[ColorMap.SIZE - 1]);
+        assertArrayEquals(unit.getTable(), bytes.getTable());
+
+        // a single value above 1 switches the whole file to 0 to 255
+        ColorMap mixed = load("1,1,1\n2,0,0\n");
+        assertEquals(0xFF010101, mixed.getTable()[0]);
+        assertEquals(0xFF020000, mixed.getTable()[ColorMap.SIZE - 1]);
+
+        ColorMap three = load("0,0,0\n0,1,0\n0,0,1\n");
+        assertEquals(0xFF00FF00, three.getColor(0.5));
+    }
+
+    @Test
+    void rejectsMalformedFiles() {
+        IOException missing = assertThrows(IOException.class, () -> load("0,0,0\n1,1\n"));
+        assertTrue(missing.getMessage().contains("1,1"), missing.getMessage());
+        IOException invalid = assertThrows(IOException.class, () -> load("0,0,0\n1,x,1\n"));
+        assertTrue(invalid.getMessage().contains("1,x,1"), invalid.getMessage());
+        assertThrows(IOException.class, () -> load("# a single color\n0,0,0\n"));
+        assertThrows(IOException.class, () -> load(""));
+    }
+
+    private static ColorMap load(String content) throws IOException {
+        return ColorMap.load("test", new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,184 @@
+package net.kcundercover.spectral_analyzer.render;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import net.kcundercover.spectral_analyzer.dsp.Aggregation;
+import net.kcundercover.spectral_analyzer.services.PyramidService;
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpectrogramPyramidTest {
+
+    private static final int FFT_SIZE = 4;
+    private static final long SOURCE_SIZE = 4096;
+    private static final long SOURCE_MODIFIED = 1700000000000L;
+    private static final String SETTINGS = "hann";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void choosesTheBaseDecimation() {
+        assertEquals(1, SpectrogramPyramid.getBaseDecimation(100));
+        assertEquals(1, SpectrogramPyramid.getBaseDecimation(SpectrogramPyramid.MAX_BASE_COLUMNS));
+        assertEquals(2, SpectrogramPyramid.getBaseDecimation(SpectrogramPyramid.MAX_BASE_COLUMNS + 1));
+        assertEquals(8, SpectrogramPyramid.getBaseDecimation(8L * SpectrogramPyramid.MAX_BASE_COLUMNS));
+        assertEquals(FFT_SIZE, SpectrogramPyramid.getBinCount(FFT_SIZE));
+        assertEquals(SpectrogramPyramid.MAX_BINS, SpectrogramPyramid.getBinCount(4096));
+    }
+
+    @Test
+    void reducesEachLevelFromTheOneBelow() {
+        SpectrogramPyramid pyramid = pyramid(2);
+
+        // 5 columns: 5, 3, 2, 1
+        assertEquals(4, pyramid.getLevelCount());
+        assertEquals(5, pyramid.getColumnCount(0));
+        assertEquals(3, pyramid.getColumnCount(1));
+        assertEquals(2, pyramid.getColumnCount(2));
+        assertEquals(1, pyramid.getColumnCount(3));
+
+        float[] out = new float[FFT_SIZE];
+        // zoom 4 = 2 base columns: (c0, c1), (c2, c3), then c4 without a sibling
+        assertTrue(pyramid.copyColumn(4, 0, Aggregation.MEAN, out));
+        assertArrayEquals(new float[] {1.5f, 2.5f, 3.5f, 4.5f}, out, "mean of c0, c1");
+        assertTrue(pyramid.copyColumn(4, 1, Aggregation.MAX, out));
+        assertArrayEquals(new float[] {40, 50, 60, 70}, out, "max of c2, c3");
+        assertTrue(pyramid.copyColumn(4, 1, Aggregation.MIN, out));
+        assertArrayEquals(new float[] {0.1f * 3, 0.1f * 4, 0.1f * 5, 0.1f * 6}, out, "min of c2, c3");
+        assertTrue(pyramid.copyColumn(4, 2, Aggregation.MEAN, out));
+        assertArrayEquals(new float[] {5, 6, 7, 8}, out, "lone c4");
+        assertFalse(pyramid.copyColumn(4, 3, Aggregation.MEAN, out));
+        assertFalse(pyramid.copyColumn(4, -1, Aggregation.MEAN, out));
+
+        // zoom 8 = 4 base columns: c0..c3, then c4
+        assertTrue(pyramid.copyColumn(8, 0, Aggregation.MEAN, out));
+        assertArrayEquals(new float[] {2.5f, 3.5f, 4.5f, 5.5f}, out, "mean of c0..c3");
+        assertTrue(pyramid.copyColumn(8, 0, Aggregation.MAX, out));
+        assertArrayEquals(new float[] {40, 50, 60, 70}, out, "max of c0..c3");
+        assertTrue(pyramid.copyColumn(8, 1, Aggregation.MEAN, out));
+        assertArrayEquals(base(4), out, "lone c4");
+    }
+
+    @Test
+    void selectsTheLevelOfTheZoom() {
+        SpectrogramPyramid pyramid = pyramid(2);
+        assertFalse(pyramid.covers(1));
+        assertTrue(pyramid.covers(2));
+        assertTrue(pyramid.covers(64));
+
+        float[] out = new float[FFT_SIZE];
+        // zoom 2 is level 0
+        assertTrue(pyramid.copyColumn(2, 3, Aggregation.MEAN, out));
+        assertArrayEquals(base(3), out, "level 0");
+        // past the top level, a single column covers the whole file
+        assertTrue(pyramid.copyColumn(64, 0, Aggregation.MAX, out));
+        assertArrayEquals(new float[] {50, 60, 70, 80}, out, "top");
+        assertFalse(pyramid.copyColumn(64, 1, Aggregation.MAX, out));
+    }
+
+    @Test
+    void isOnlyUsedAtZoomOneWithEnoughBins() {
+        SampleBuffer buffer = SampleBuffer.wrap(ByteBuffer.allocate(8 * 4096));
+        float[] base = new float[4 * SpectrogramPyramid.MAX_BINS];
+        SpectrogramPyramid pyramid = SpectrogramPyramid.fromBase(1024, 1, 4, SETTINGS, base, base, base);
+        assertTrue(pyramid.covers(1));
+
+        // zoom 1 on a canvas taller than the bins, the FFTs are computed
+        assertFalse(request(buffer, 1024, 1, 700).withPyramid(pyramid).usesPyramid());
+        assertTrue(request(buffer, 1024, 1, 500).withPyramid(pyramid).usesPyramid());
+        assertTrue(request(buffer, 1024, 2, 700).withPyramid(pyramid).usesPyramid());
+
+        SpectrogramPyramid small = SpectrogramPyramid.fromBase(256, 1, 4, SETTINGS, base, base, base);
+        assertTrue(request(buffer, 256, 1, 700).withPyramid(small).usesPyramid());
+    }
+
+    @Test
+    void savesAndLoads() throws IOException {
+        Path path = PyramidService.getPyramidPath(dir.resolve("rec.sigmf-data"), FFT_SIZE);
+        assertEquals(dir.resolve("rec.sigmf-pyramid-" + FFT_SIZE), path);
+
+        SpectrogramPyramid pyramid = pyramid(2);
+        pyramid.save(path, SOURCE_SIZE, SOURCE_MODIFIED);
+        assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+
+        SpectrogramPyramid loaded = SpectrogramPyramid.load(path, SOURCE_SIZE, SOURCE_MODIFIED, FFT_SIZE, SETTINGS);
+        assertNotNull(loaded);
+        assertEquals(pyramid.getBaseDecimation(), loaded.getBaseDecimation());
+        assertEquals(pyramid.getFftCount(), loaded.getFftCount());
+        assertEquals(pyramid.getLevelCount(), loaded.getLevelCount());
+        float[] expected = new float[FFT_SIZE];
+        float[] actual = new float[FFT_SIZE];
+        for (int zoom = 2; zoom <= 16; zoom *= 2) {
+            for (Aggregation aggregation : Aggregation.values()) {
+                for (int c = 0; pyramid.copyColumn(zoom, c, aggregation, expected); c++) {
+                    assertTrue(loaded.copyColumn(zoom, c, aggregation, actual));
+                    assertArrayEquals(expected, actual, "zoom " + zoom + " column " + c + " " + aggregation);
+                }
+            }
+        }
+    }
+
+    @Test
+    void ignoresStalePyramids() throws IOException {
+        Path path = dir.resolve("rec.sigmf-pyramid-" + FFT_SIZE);
+        assertNull(SpectrogramPyramid.load(path, SOURCE_SIZE, SOURCE_MODIFIED, FFT_SIZE, SETTINGS));
+
+        pyramid(2).save(path, SOURCE_SIZE, SOURCE_MODIFIED);
+        assertNull(SpectrogramPyramid.load(path, SOURCE_SIZE + 8, SOURCE_MODIFIED, FFT_SIZE, SETTINGS));
+        assertNull(SpectrogramPyramid.load(path, SOURCE_SIZE, SOURCE_MODIFIED + 1, FFT_SIZE, SETTINGS));
+        assertNull(SpectrogramPyramid.load(path, SOURCE_SIZE, SOURCE_MODIFIED, 2 * FFT_SIZE, SETTINGS));
+        assertNull(SpectrogramPyramid.load(path, SOURCE_SIZE, SOURCE_MODIFIED, FFT_SIZE, "rectangular"));
+
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 4));
+        assertNull(SpectrogramPyramid.load(path, SOURCE_SIZE, SOURCE_MODIFIED, FFT_SIZE, SETTINGS));
+    }
+
+    /**
+     * Pyramid of 5 base columns, column c has mean c + 1 + bin, max 10 * (c + 1 + bin)
+     * and min 0.1 * (c + 1 + bin)
+     */
+    private static SpectrogramPyramid pyramid(int baseDecimation) {
+        int columns = 5;
+        float[] mean = new float[columns * FFT_SIZE];
+        float[] max = new float[columns * FFT_SIZE];
+        float[] min = new float[columns * FFT_SIZE];
+        for (int c = 0; c < columns; c++) {
+            float[] values = base(c);
+            for (int b = 0; b < FFT_SIZE; b++) {
+                mean[c * FFT_SIZE + b] = values[b];
+                max[c * FFT_SIZE + b] = 10 * values[b];
+                min[c * FFT_SIZE + b] = 0.1f * values[b];
+            }
+        }
+        return SpectrogramPyramid.fromBase(FFT_SIZE, baseDecimation, columns * baseDecimation, SETTINGS,
+            mean, max, min);
+    }
+
+    private static float[] base(int column) {
+        float[] values = new float[FFT_SIZE];
+        for (int b = 0; b < FFT_SIZE; b++) {
+            values[b] = column + 1 + b;
+        }
+        return values;
+    }
+
+    private static SpectrogramRequest request(SampleBuffer buffer, int fftSize, int zoom, int height) {
+        return new SpectrogramRequest(buffer, "rec.sigmf-data", SampleDecoder.forDatatype("cf32_le"), 0,
+            100, height, fftSize, zoom, SpectrogramRequest.MAX_HOLD, "Hann", 0, null, null, 1e6, -40, 20,
+            "Grayscale");
+    }
+}
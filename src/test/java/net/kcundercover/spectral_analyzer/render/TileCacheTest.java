@@ -0,0 +1,115 @@
+package net.kcundercover.spectral_analyzer.render;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+class TileCacheTest {
+
+    private static final int COLUMNS = 4;
+    private static final int HEIGHT = 8;
+
+    /** Size of each test tile */
+    private static final long TILE_BYTES = (long) COLUMNS * HEIGHT * Float.BYTES;
+
+    @Test
+    void evictsTheLeastRecentlyUsedTiles() {
+        TileCache cache = new TileCache(3 * TILE_BYTES);
+        SpectrogramTile a = tile("rec", 0, "hann");
+        SpectrogramTile b = tile("rec", 1, "hann");
+        SpectrogramTile c = tile("rec", 2, "hann");
+        cache.put(a);
+        cache.put(b);
+        cache.put(c);
+        assertEquals(3, cache.size());
+        assertEquals(3 * TILE_BYTES, cache.getSizeBytes());
+
+        // a is used again, b becomes the least recently used one
+        assertSame(a, cache.get(a.key()));
+        SpectrogramTile d = tile("rec", 3, "hann");
+        cache.put(d);
+        assertEquals(3, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(b.key()));
+        assertSame(a, cache.get(a.key()));
+        assertSame(c, cache.get(c.key()));
+        assertSame(d, cache.get(d.key()));
+
+        // then the oldest lookup goes first: a
+        cache.put(tile("rec", 4, "hann"));
+        assertNull(cache.get(a.key()));
+        assertSame(c, cache.get(c.key()));
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(3 * TILE_BYTES, cache.getSizeBytes());
+    }
+
+    @Test
+    void countsHitsAndMisses() {
+        TileCache cache = new TileCache(10 * TILE_BYTES);
+        assertEquals(0.0, cache.getHitRate());
+        SpectrogramTile a = tile("rec", 0, "hann");
+        assertNull(cache.get(a.key()));
+        cache.put(a);
+        cache.get(a.key());
+        cache.get(a.key());
+        cache.get(a.key());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.75, cache.getHitRate());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    void keepsTheSettingsApart() {
+        TileCache cache = new TileCache(10 * TILE_BYTES);
+        SpectrogramTile hann = tile("rec", 0, "hann");
+        SpectrogramTile rectangular = tile("rec", 0, "rectangular");
+        cache.put(hann);
+        assertNull(cache.get(rectangular.key()));
+        assertNull(cache.get(new TileKey("rec", 0, 128, HEIGHT, "hann")));
+        assertNull(cache.get(new TileKey("rec", 0, 64, 2 * HEIGHT, "hann")));
+        assertNull(cache.get(new TileKey("other", 0, 64, HEIGHT, "hann")));
+
+        cache.put(rectangular);
+        assertSame(hann, cache.get(hann.key()));
+        assertSame(rectangular, cache.get(rectangular.key()));
+
+        // replacing a tile does not count it twice
+        SpectrogramTile again = tile("rec", 0, "hann");
+        cache.put(again);
+        assertSame(again, cache.get(hann.key()));
+        assertEquals(2, cache.size());
+        assertEquals(2 * TILE_BYTES, cache.getSizeBytes());
+    }
+
+    @Test
+    void invalidatesAFileAndSkipsOversizedTiles() {
+        TileCache cache = new TileCache(3 * TILE_BYTES);
+        cache.put(tile("rec", 0, "hann"));
+        cache.put(tile("rec", 1, "hann"));
+        SpectrogramTile other = tile("other", 0, "hann");
+        cache.put(other);
+
+        cache.invalidate("rec");
+        assertEquals(1, cache.size());
+        assertEquals(TILE_BYTES, cache.getSizeBytes());
+        assertSame(other, cache.get(other.key()));
+
+        // larger than the whole cache, not kept
+        TileKey key = new TileKey("big", 0, 64, HEIGHT, "hann");
+        cache.put(new SpectrogramTile(key, new float[4 * COLUMNS][HEIGHT], 4 * COLUMNS));
+        assertNull(cache.get(key));
+        assertSame(other, cache.get(other.key()));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getSizeBytes());
+    }
+
+    private static SpectrogramTile tile(String dataKey, long tileIndex, String settings) {
+        TileKey key = new TileKey(dataKey, tileIndex, 64, HEIGHT, settings);
+        return new SpectrogramTile(key, new float[COLUMNS][HEIGHT], COLUMNS);
+    }
+}
@@ -0,0 +1,97 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import net.kcundercover.spectral_analyzer.dsp.WindowFunction;
+import net.kcundercover.spectral_analyzer.sigmf.Capture;
+import net.kcundercover.spectral_analyzer.sigmf.CaptureIndex;
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
+import net.kcundercover.spectral_analyzer.sigmf.SigMfAnnotation;
+import org.junit.jupiter.api.Test;
+
+class BurstDetectorServiceTest {
+
+    private static final int FFT_SIZE = 64;
+    private static final double SAMPLE_RATE = 1e6;
+    private static final double CENTER_FREQ = 1e9;
+
+    private final BurstDetectorService service = new BurstDetectorService(new SpectralService());
+
+    @Test
+    void findsBurstsAcrossChunks() {
+        BurstDetectorService.Settings settings = BurstDetectorService.Settings.defaults(FFT_SIZE, WindowFunction.HANN);
+        long chunkSamples = BurstDetectorService.ROWS_PER_CHUNK * settings.getRowSamples();
+        int samples = (int) (4 * chunkSamples);
+        // the first burst crosses the edge of the first chunk
+        long firstStart = chunkSamples - 5000;
+        float[][] iq = noise(samples);
+        addTone(iq, firstStart, chunkSamples + 10000, 10);
+        addTone(iq, 2 * chunkSamples + 3000, 2 * chunkSamples + 13000, -20);
+
+        double[] last = {0};
+        List<SigMfAnnotation> bursts = service.detect(toBuffer(iq), SampleDecoder.forDatatype("cf32_le"),
+            CaptureIndex.of(List.of(new Capture(0L, CENTER_FREQ, null, 0L, Map.of()))), SAMPLE_RATE, settings,
+            p -> last[0] = p, () -> false);
+
+        assertEquals(2, bursts.size());
+        assertEquals(1.0, last[0]);
+        assertBurst(bursts.get(0), firstStart, chunkSamples + 10000, 10, settings.getRowSamples());
+        assertBurst(bursts.get(1), 2 * chunkSamples + 3000, 2 * chunkSamples + 13000, -20, settings.getRowSamples());
+        assertEquals(BurstDetectorService.LABEL, bursts.get(0).getLabel());
+    }
+
+    @Test
+    void stopsWhenCancelled() {
+        SampleBuffer buffer = toBuffer(noise(FFT_SIZE * 1024));
+        assertThrows(CancellationException.class, () -> service.detect(buffer, SampleDecoder.forDatatype("cf32_le"),
+            CaptureIndex.EMPTY, SAMPLE_RATE, BurstDetectorService.Settings.defaults(FFT_SIZE, WindowFunction.HANN),
+            p -> { }, () -> true));
+    }
+
+    private static void assertBurst(SigMfAnnotation burst, long start, long end, int bin, long rowSamples) {
+        String text = burst.getSampleStart() + "+" + burst.getSampleCount() + " samples, "
+            + burst.getFreqLowerEdge() + " to " + burst.getFreqUpperEdge() + " Hz";
+        // the rows of the edges are only partly covered, they may or may not be detected
+        assertTrue(Math.abs(burst.getSampleStart() - start) < rowSamples, text);
+        assertTrue(Math.abs(burst.getSampleStart() + burst.getSampleCount() - end) < rowSamples, text);
+
+        double freq = CENTER_FREQ + bin * SAMPLE_RATE / FFT_SIZE;
+        assertTrue(burst.getFreqLowerEdge() < freq && burst.getFreqUpperEdge() > freq, text);
+        assertTrue(burst.getFreqUpperEdge() - burst.getFreqLowerEdge() < 8 * SAMPLE_RATE / FFT_SIZE, text);
+    }
+
+    private static float[][] noise(int samples) {
+        Random random = new Random(3);
+        float[][] iq = new float[2][samples];
+        for (int i = 0; i < samples; i++) {
+            iq[0][i] = (float) random.nextGaussian();
+            iq[1][i] = (float) random.nextGaussian();
+        }
+        return iq;
+    }
+
+    private static void addTone(float[][] iq, long start, long end, int bin) {
+        for (int i = (int) start; i < end; i++) {
+            double phase = 2 * Math.PI * bin * i / FFT_SIZE;
+            iq[0][i] += (float) (5 * Math.cos(phase));
+            iq[1][i] += (float) (5 * Math.sin(phase));
+        }
+    }
+
+    private static SampleBuffer toBuffer(float[][] iq) {
+        ByteBuffer bytes = ByteBuffer.allocate(8 * iq[0].length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < iq[0].length; i++) {
+            bytes.putFloat(iq[0][i]).putFloat(iq[1][i]);
+        }
+        return SampleBuffer.wrap(bytes.flip());
+    }
+}
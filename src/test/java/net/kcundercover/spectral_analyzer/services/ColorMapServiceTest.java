@@ -0,0 +1,62 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import net.kcundercover.spectral_analyzer.render.ColorMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ColorMapServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fallsBackToGrayscale() {
+        ColorMapService service = new ColorMapService();
+        ColorMap grayscale = service.get(ColorMapService.GRAYSCALE);
+        assertEquals(ColorMapService.GRAYSCALE, grayscale.getName());
+        assertEquals(0xFF000000, grayscale.getTable()[0]);
+        assertEquals(0xFFFFFFFF, grayscale.getTable()[ColorMap.SIZE - 1]);
+
+        assertSame(grayscale, service.get("unknown"));
+        assertSame(grayscale, service.get(null));
+    }
+
+    @Test
+    void listsTheBuiltInAndBundledColormaps() {
+        List<String> names = new ColorMapService().getNames();
+        assertEquals(List.of(ColorMapService.GRAYSCALE, "Heatmap", "viridis", "inferno", "turbo"), names);
+    }
+
+    @Test
+    void loadsTheUserDirectory() throws IOException {
+        Files.writeString(dir.resolve("ocean.csv"), "0,0,64\n0,128,255\n");
+        Files.writeString(dir.resolve("broken.csv"), "0,0\n");
+        Files.writeString(dir.resolve("notes.txt"), "0,0,0\n1,1,1\n");
+
+        ColorMapService service = new ColorMapService(dir.toString());
+        List<String> names = service.getNames();
+        assertTrue(names.contains("ocean"));
+        assertFalse(names.contains("broken")); // logged and skipped
+        assertFalse(names.contains("notes"));
+        assertEquals(0xFF000040, service.get("ocean").getTable()[0]);
+        assertEquals(0xFF0080FF, service.get("ocean").getTable()[ColorMap.SIZE - 1]);
+
+        // a colormap with the same name replaces the previous one, keeping its place
+        service.add(ColorMap.fromColors("ocean", new double[][] {{1, 1, 1}, {0, 0, 0}}));
+        assertEquals(names, service.getNames());
+        assertEquals(0xFFFFFFFF, service.get("ocean").getTable()[0]);
+
+        // a missing directory is only logged
+        service.loadDirectory(dir.resolve("missing"));
+        assertEquals(names, service.getNames());
+    }
+}
@@ -0,0 +1,56 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IntegrityServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final IntegrityService service = new IntegrityService();
+
+    @Test
+    void hashesAcrossBlocks() throws Exception {
+        byte[] data = new byte[2 * IntegrityService.BLOCK_BYTES + 12345];
+        new Random(1).nextBytes(data);
+        Path path = dir.resolve("rec.sigmf-data");
+        Files.write(path, data);
+
+        MessageDigest digest = MessageDigest.getInstance(IntegrityService.ALGORITHM);
+        String expected = HexFormat.of().formatHex(digest.digest(data));
+        double[] last = {0};
+        assertEquals(expected, service.hash(path, 0, data.length, p -> last[0] = p, () -> false));
+        assertEquals(1.0, last[0]);
+
+        // a member of an archive
+        digest.update(data, 100, 5000);
+        String member = HexFormat.of().formatHex(digest.digest());
+        assertEquals(member, service.hashAsync(path, 100, 5000, p -> { }, () -> false).get());
+
+        assertTrue(IntegrityService.matches(expected.toUpperCase(), expected));
+        assertFalse(IntegrityService.matches(null, expected));
+    }
+
+    @Test
+    void stopsWhenCancelledOrTruncated() throws IOException {
+        Path path = dir.resolve("rec.sigmf-data");
+        Files.write(path, new byte[3 * IntegrityService.BLOCK_BYTES]);
+
+        assertThrows(CancellationException.class, () -> service.hash(path, 0, Files.size(path), p -> { }, () -> true));
+        assertThrows(EOFException.class, () -> service.hash(path, 0, Files.size(path) + 1, p -> { }, () -> false));
+    }
+}
@@ -0,0 +1,71 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import org.junit.jupiter.api.Test;
+
+class ReadAheadServiceTest {
+
+    private static final int BYTES_PER_SAMPLE = 4;
+
+    /** Samples of a viewport */
+    private static final long VIEW = 1000;
+
+    private static final long VIEW_BYTES = VIEW * BYTES_PER_SAMPLE;
+
+    private final ReadAheadService service = new ReadAheadService();
+    private final SampleBuffer buffer = SampleBuffer.wrap(ByteBuffer.allocate(1 << 20));
+
+    @Test
+    void readsAheadInTheScrollDirection() throws Exception {
+        // before any scroll: forward, the minimum distance
+        show(0);
+        assertArrayEquals(new long[] {0, VIEW_BYTES + ReadAheadService.MIN_VIEWPORTS * VIEW_BYTES},
+            service.getLoadedRange());
+
+        // a fast scroll forward reads further ahead (at most MAX_VIEWPORTS)
+        show(VIEW);
+        assertArrayEquals(new long[] {0, 2 * VIEW_BYTES + ReadAheadService.MAX_VIEWPORTS * VIEW_BYTES},
+            service.getLoadedRange());
+
+        // a jump starts a new range
+        long far = 100 * VIEW * BYTES_PER_SAMPLE;
+        show(100 * VIEW);
+        assertArrayEquals(new long[] {far, far + VIEW_BYTES + ReadAheadService.MAX_VIEWPORTS * VIEW_BYTES},
+            service.getLoadedRange());
+
+        // scrolling back reads before the viewport
+        show(99 * VIEW);
+        assertArrayEquals(new long[] {far - VIEW_BYTES - ReadAheadService.MAX_VIEWPORTS * VIEW_BYTES,
+            far + VIEW_BYTES + ReadAheadService.MAX_VIEWPORTS * VIEW_BYTES}, service.getLoadedRange());
+    }
+
+    @Test
+    void countsHitsAndMisses() throws Exception {
+        assertEquals(0.0, service.getHitRate());
+        show(0);
+        show(VIEW); // read ahead
+        show(2 * VIEW); // read ahead
+        show(200 * VIEW); // jump
+        show(199 * VIEW); // backward, only the jump was loaded
+        show(198 * VIEW); // read ahead backward
+        assertEquals(3, service.getHits());
+        assertEquals(2, service.getMisses());
+        assertEquals(0.6, service.getHitRate(), 1e-9);
+
+        // the same viewport again is not counted
+        show(198 * VIEW);
+        assertEquals(5, service.getHits() + service.getMisses());
+
+        service.reset();
+        assertEquals(0, service.getHits() + service.getMisses());
+    }
+
+    private void show(long firstSample) throws Exception {
+        service.onViewport(buffer, BYTES_PER_SAMPLE, firstSample, VIEW);
+        service.awaitReadAhead();
+    }
+}
@@ -0,0 +1,123 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import net.kcundercover.spectral_analyzer.dsp.Aggregation;
+import net.kcundercover.spectral_analyzer.dsp.WindowFunction;
+import org.junit.jupiter.api.Test;
+
+class SpectralServiceTest {
+
+    private static final int FFT_SIZE = 64;
+
+    /** FFTs combined into a column */
+    private static final int FFTS = 8;
+
+    /** The burst only lasts one FFT, in the middle of the column */
+    private static final int BURST_FFT = 5;
+
+    private static final int TONE_BIN = 10;
+
+    private final SpectralService service = new SpectralService();
+
+    @Test
+    void maxHoldShowsABurstBetweenColumnStarts() {
+        float[][] iq = signal();
+        float[] max = accumulate(iq, Aggregation.MAX);
+        float[] min = accumulate(iq, Aggregation.MIN);
+        float[] burst = spectrum(iq, BURST_FFT);
+        float[] quiet = spectrum(iq, 0);
+
+        int bin = FFT_SIZE / 2 + TONE_BIN;
+        assertTrue(burst[bin] > 1000 * quiet[bin], burst[bin] + " vs " + quiet[bin]);
+        // max-hold keeps the burst, min-hold shows the noise under it
+        assertEquals(burst[bin], max[bin], 1e-6 * burst[bin]);
+        assertTrue(min[bin] < burst[bin] / 1000, min[bin] + " vs " + burst[bin]);
+        for (int b = 0; b < FFT_SIZE; b++) {
+            float lowest = Float.MAX_VALUE;
+            float highest = 0;
+            for (int k = 0; k < FFTS; k++) {
+                float power = spectrum(iq, k)[b];
+                lowest = Math.min(lowest, power);
+                highest = Math.max(highest, power);
+            }
+            assertEquals(highest, max[b], 1e-6 * highest, "max, bin " + b);
+            assertEquals(lowest, min[b], 1e-6 * lowest, "min, bin " + b);
+        }
+    }
+
+    @Test
+    void meanIsTheAveragePower() {
+        float[][] iq = signal();
+        float[] mean = accumulate(iq, Aggregation.MEAN);
+
+        double[] expected = new double[FFT_SIZE];
+        for (int k = 0; k < FFTS; k++) {
+            float[] power = spectrum(iq, k);
+            for (int b = 0; b < FFT_SIZE; b++) {
+                expected[b] += power[b] / FFTS;
+            }
+        }
+        for (int b = 0; b < FFT_SIZE; b++) {
+            assertEquals(expected[b], mean[b], 1e-5 * expected[b], "bin " + b);
+        }
+        // the burst is diluted over the column, not dropped
+        int bin = FFT_SIZE / 2 + TONE_BIN;
+        assertEquals(spectrum(iq, BURST_FFT)[bin] / FFTS, mean[bin], 0.01 * mean[bin]);
+    }
+
+    @Test
+    void combinesAndFinishes() {
+        assertEquals(5.0f, Aggregation.MEAN.combine(2, 3));
+        assertEquals(3.0f, Aggregation.MAX.combine(2, 3));
+        assertEquals(2.0f, Aggregation.MIN.combine(2, 3));
+
+        float[] sums = {8, 4, 2};
+        Aggregation.MEAN.finish(sums, 2, 4);
+        assertEquals(2.0f, sums[0]);
+        assertEquals(1.0f, sums[1]);
+        assertEquals(2.0f, sums[2]); // past the length
+
+        float[] peaks = {8, 4};
+        Aggregation.MAX.finish(peaks, 2, 4);
+        assertEquals(8.0f, peaks[0]);
+
+        assertEquals(Aggregation.MIN, Aggregation.forName("min"));
+        assertEquals(Aggregation.MEAN, Aggregation.forName("Mean"));
+        assertEquals(Aggregation.MAX, Aggregation.forName("unknown"));
+    }
+
+    private float[] accumulate(float[][] iq, Aggregation aggregation) {
+        float[] accumulated = new float[FFT_SIZE];
+        for (int k = 0; k < FFTS; k++) {
+            service.accumulatePowerSpectrum(iq[0], iq[1], k * FFT_SIZE, FFT_SIZE, WindowFunction.HANN,
+                aggregation, accumulated, k == 0);
+        }
+        aggregation.finish(accumulated, FFT_SIZE, FFTS);
+        return accumulated;
+    }
+
+    private float[] spectrum(float[][] iq, int fft) {
+        float[] power = new float[FFT_SIZE];
+        service.computePowerSpectrum(iq[0], iq[1], fft * FFT_SIZE, FFT_SIZE, WindowFunction.HANN, power);
+        return power;
+    }
+
+    /** Noise with a tone during {@link #BURST_FFT} only */
+    private static float[][] signal() {
+        Random random = new Random(11);
+        float[][] iq = new float[2][FFTS * FFT_SIZE];
+        for (int i = 0; i < iq[0].length; i++) {
+            iq[0][i] = (float) random.nextGaussian();
+            iq[1][i] = (float) random.nextGaussian();
+        }
+        for (int i = BURST_FFT * FFT_SIZE; i < (BURST_FFT + 1) * FFT_SIZE; i++) {
+            double phase = 2 * Math.PI * TONE_BIN * i / FFT_SIZE;
+            iq[0][i] += (float) (20 * Math.cos(phase));
+            iq[1][i] += (float) (20 * Math.sin(phase));
+        }
+        return iq;
+    }
+}
@@ -0,0 +1,222 @@
+package net.kcundercover.spectral_analyzer.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.kcundercover.spectral_analyzer.dsp.Aggregation;
+import net.kcundercover.spectral_analyzer.dsp.WindowFunction;
+import net.kcundercover.spectral_analyzer.render.SpectrogramFrame;
+import net.kcundercover.spectral_analyzer.render.SpectrogramRequest;
+import net.kcundercover.spectral_analyzer.sigmf.SampleBuffer;
+import net.kcundercover.spectral_analyzer.sigmf.SampleDecoder;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class SpectrogramRenderServiceTest {
+
+    private static final int FFT_SIZE = 64;
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 32;
+
+    private final SampleBuffer buffer = toBuffer(signal(FFT_SIZE * 8000));
+
+    @Test
+    void parallelRenderMatchesASingleThreadedRender() {
+        ForkJoinPool single = new ForkJoinPool(1);
+        ForkJoinPool parallel = new ForkJoinPool(4);
+        try {
+            SpectrogramRenderService serial = newService();
+            ReflectionTestUtils.setField(serial, "workerPool", single);
+            SpectrogramRenderService service = newService();
+            ReflectionTestUtils.setField(service, "workerPool", parallel);
+
+            // columns of one FFT, zoomed out columns (max, mean and min) and overlapping FFTs
+            List<SpectrogramRequest> requests = List.of(
+                request(3 * FFT_SIZE),
+                request(-5 * FFT_SIZE, 4, SpectrogramRequest.MAX_HOLD),
+                request(100, 8, SpectrogramRequest.MEAN),
+                request(0, 16, SpectrogramRequest.MIN_HOLD),
+                request(7 * FFT_SIZE, 2, SpectrogramRequest.MEAN, 50));
+            for (SpectrogramRequest request : requests) {
+                assertSameFrame(serial.render(request), service.render(request),
+                    "zoom " + request.zoom() + " " + request.aggregation() + " overlap " + request.overlap());
+            }
+        } finally {
+            single.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    void scrolledFrameMatchesAFreshRender() {
+        SpectrogramRenderService service = newService();
+        SpectrogramFrame previous = service.render(request(100 * FFT_SIZE));
+
+        // N columns to the right, then back to the left past the first position
+        for (int columns : new int[] {37, -90, 5}) {
+            long offset = previous.request().sampleOffset() + (long) columns * FFT_SIZE;
+            SpectrogramFrame scrolled = service.render(request(offset), previous);
+            assertSameFrame(newService().render(request(offset)), scrolled, "scrolled by " + columns);
+
+            // the columns still in view are reused, not computed again
+            int kept = columns > 0 ? 0 : -columns;
+            assertSame(previous.columns()[kept + columns], scrolled.columns()[kept]);
+            previous = scrolled;
+        }
+    }
+
+    @Test
+    void scrolledFrameMatchesPastTheEndOfTheData() {
+        SpectrogramRenderService service = newService();
+        long end = buffer.size() / 8;
+        SpectrogramFrame previous = service.render(request(end - 150 * FFT_SIZE));
+
+        // the columns past the end of the data are filled with the no-data level
+        SpectrogramFrame scrolled = service.render(request(end - 50 * FFT_SIZE), previous);
+        assertSameFrame(newService().render(request(end - 50 * FFT_SIZE)), scrolled, "past the end");
+        assertEquals(SpectrogramRenderService.NO_DATA_DB, scrolled.columns()[WIDTH - 1][0]);
+
+        // and before its start
+        scrolled = service.render(request(-20 * FFT_SIZE), service.render(request(30 * FFT_SIZE)));
+        assertSameFrame(newService().render(request(-20 * FFT_SIZE)), scrolled, "before the start");
+    }
+
+    @Test
+    void supersededRenderNeverReachesTheConsumer() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger ffts = new AtomicInteger();
+        SpectralService gated = new SpectralService() {
+            @Override
+            public void accumulatePowerSpectrum(float[] re, float[] im, int offset, int nfft, WindowFunction window,
+                    Aggregation aggregation, float[] accumulated, boolean first) {
+                if (aggregation == Aggregation.MIN) {
+                    ffts.incrementAndGet(); // the old request
+                }
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.accumulatePowerSpectrum(re, im, offset, nfft, window, aggregation, accumulated, first);
+            }
+        };
+        SpectrogramRenderService service = newService();
+        ReflectionTestUtils.setField(service, "spectralService", gated);
+
+        // zoomed out, each column of the old request takes 32 FFTs
+        List<SpectrogramFrame> shown = new CopyOnWriteArrayList<>();
+        SpectrogramRequest old = request(0, 32, SpectrogramRequest.MIN_HOLD);
+        CompletableFuture<SpectrogramFrame> oldFuture = service.renderLatest(old, null);
+        oldFuture.thenAccept(shown::add);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        // a newer viewport comes in while the old one is computing
+        SpectrogramRequest latest = request(10 * FFT_SIZE);
+        CompletableFuture<SpectrogramFrame> latestFuture = service.renderLatest(latest, null);
+        assertEquals(2, service.getGeneration());
+        release.countDown();
+
+        assertSameFrame(newService().render(latest), latestFuture.get(10, TimeUnit.SECONDS), "latest");
+        assertCancelled(oldFuture);
+        assertTrue(shown.isEmpty());
+
+        // each worker stopped the old columns at its next check, far from all of them
+        long oldFfts = (long) WIDTH * 32;
+        assertTrue(ffts.get() < oldFfts / 2, ffts.get() + " FFTs of " + oldFfts);
+    }
+
+    @Test
+    void onlyTheLatestOfBackToBackRequestsIsShown() throws Exception {
+        SpectrogramRenderService service = newService();
+        List<SpectrogramFrame> shown = new CopyOnWriteArrayList<>();
+        CompletableFuture<SpectrogramFrame> future = null;
+        CompletableFuture<Void> consumed = null;
+        for (int i = 0; i < 5; i++) {
+            long generation = i + 1;
+            future = service.renderLatest(request(i * 7L * FFT_SIZE), null);
+            // what the controller does: a frame is only shown if no newer request came in
+            consumed = future.thenAccept(frame -> {
+                if (service.getGeneration() == generation) {
+                    shown.add(frame);
+                }
+            });
+        }
+        consumed.get(10, TimeUnit.SECONDS);
+        SpectrogramFrame frame = future.get();
+        assertSameFrame(newService().render(request(28L * FFT_SIZE)), frame, "latest");
+        assertEquals(List.of(frame), shown);
+    }
+
+    private static void assertCancelled(CompletableFuture<?> future) throws Exception {
+        Throwable failure = future.handle((frame, e) -> e).get(10, TimeUnit.SECONDS);
+        if (failure instanceof CompletionException) {
+            failure = failure.getCause();
+        }
+        assertTrue(failure instanceof CancellationException, String.valueOf(failure));
+    }
+
+    private static void assertSameFrame(SpectrogramFrame expected, SpectrogramFrame actual, String message) {
+        for (int t = 0; t < WIDTH; t++) {
+            assertArrayEquals(expected.columns()[t], actual.columns()[t], message + ", column " + t);
+        }
+        assertArrayEquals(expected.pixels(), actual.pixels(), message);
+    }
+
+    private static SpectrogramRenderService newService() {
+        SpectrogramRenderService service = new SpectrogramRenderService(16);
+        ReflectionTestUtils.setField(service, "spectralService", new SpectralService());
+        ReflectionTestUtils.setField(service, "colorMapService", new ColorMapService());
+        return service;
+    }
+
+    private SpectrogramRequest request(long sampleOffset) {
+        return request(sampleOffset, 1, SpectrogramRequest.MAX_HOLD);
+    }
+
+    private SpectrogramRequest request(long sampleOffset, int zoom, String aggregation) {
+        return request(sampleOffset, zoom, aggregation, 0);
+    }
+
+    private SpectrogramRequest request(long sampleOffset, int zoom, String aggregation, int overlap) {
+        return new SpectrogramRequest(buffer, "rec.sigmf-data", SampleDecoder.forDatatype("cf32_le"),
+            sampleOffset, WIDTH, HEIGHT, FFT_SIZE, zoom, aggregation, "Hann", overlap,
+            null, null, 1e6, -40, 20, ColorMapService.GRAYSCALE);
+    }
+
+    /** Noise with a tone that sweeps up, so every column differs */
+    private static float[][] signal(int samples) {
+        Random random = new Random(7);
+        float[][] iq = new float[2][samples];
+        double phase = 0;
+        for (int i = 0; i < samples; i++) {
+            phase += 2 * Math.PI * (0.05 + 0.4 * i / samples);
+            iq[0][i] = (float) (random.nextGaussian() + 4 * Math.cos(phase));
+            iq[1][i] = (float) (random.nextGaussian() + 4 * Math.sin(phase));
+        }
+        return iq;
+    }
+
+    private static SampleBuffer toBuffer(float[][] iq) {
+        ByteBuffer bytes = ByteBuffer.allocate(8 * iq[0].length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < iq[0].length; i++) {
+            bytes.putFloat(iq[0][i]).putFloat(iq[1][i]);
+        }
+        return SampleBuffer.wrap(bytes.flip());
+    }
+}
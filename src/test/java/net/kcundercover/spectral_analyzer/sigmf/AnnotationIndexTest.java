@@ -0,0 +1,74 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class AnnotationIndexTest {
+
+    @Test
+    void findsTheSameAnnotationsAsAScan() {
+        Random random = new Random(3);
+        AnnotationIndex<Integer> index = new AnnotationIndex<>();
+        Map<Integer, SigMfAnnotation> annotations = new HashMap<>();
+        for (int i = 0; i < 20_000; i++) {
+            annotations.put(i, randomAnnotation(random));
+            index.put(i, annotations.get(i));
+        }
+        for (int round = 0; round < 200; round++) {
+            // move and remove some annotations between queries
+            for (int k = 0; k < 50; k++) {
+                int key = random.nextInt(20_000);
+                if (random.nextBoolean()) {
+                    annotations.put(key, randomAnnotation(random));
+                    index.put(key, annotations.get(key));
+                } else {
+                    annotations.remove(key);
+                    index.remove(key);
+                }
+            }
+            long from = random.nextLong(1_000_000);
+            long to = from + random.nextLong(50_000);
+            double low = random.nextDouble(100e6);
+            double high = low + random.nextDouble(20e6);
+
+            List<Integer> expected = new ArrayList<>();
+            annotations.forEach((key, annot) -> {
+                long end = annot.getSampleStart() + Math.max(1, annot.getSampleCount());
+                if (annot.getSampleStart() < to && end > from
+                        && annot.getFreqLowerEdge() <= high && annot.getFreqUpperEdge() >= low) {
+                    expected.add(key);
+                }
+            });
+            List<Integer> found = index.query(from, to, low, high);
+            expected.sort(null);
+            found.sort(null);
+            assertEquals(expected, found);
+        }
+        assertEquals(annotations.size(), index.size());
+    }
+
+    @Test
+    void openFrequencyEdgesMatchAnyBand() {
+        AnnotationIndex<String> index = new AnnotationIndex<>();
+        index.put("burst", new SigMfAnnotation(100, 0, null, null, "burst", null));
+
+        assertEquals(List.of("burst"), index.query(100, 101, 1e9, 2e9));
+        assertEquals(List.of(), index.query(101, 200, 1e9, 2e9));
+        index.clear();
+        assertEquals(List.of(), index.query(0, 200, 1e9, 2e9));
+    }
+
+    private static SigMfAnnotation randomAnnotation(Random random) {
+        long start = random.nextLong(1_000_000);
+        // mostly short bursts, a few long ones
+        long count = random.nextInt(100) == 0 ? random.nextLong(500_000) : random.nextLong(2_000);
+        double low = random.nextDouble(100e6);
+        return new SigMfAnnotation(start, count, low, low + random.nextDouble(5e6), "auto", null);
+    }
+}
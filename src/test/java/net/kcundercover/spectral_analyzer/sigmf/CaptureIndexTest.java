@@ -0,0 +1,48 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class CaptureIndexTest {
+
+    @Test
+    void findsTheSegmentOfASample() {
+        CaptureIndex index = CaptureIndex.of(List.of(
+            capture(2000, 915e6), capture(0, 902e6), capture(1000, 908e6)));
+
+        assertEquals(3, index.size());
+        assertEquals(902e6, index.getFrequency(0));
+        assertEquals(902e6, index.getFrequency(999));
+        assertEquals(908e6, index.getFrequency(1000));
+        assertEquals(908e6, index.getFrequency(1999));
+        assertEquals(915e6, index.getFrequency(Long.MAX_VALUE));
+        assertEquals(2000, index.getEndSample(index.indexOf(1500)));
+        assertEquals(Long.MAX_VALUE, index.getEndSample(2));
+    }
+
+    @Test
+    void samplesBeforeTheFirstSegmentUseIt() {
+        CaptureIndex index = CaptureIndex.of(List.of(capture(500, 1e9), capture(500, 2e9)));
+
+        assertEquals(0, index.indexOf(0));
+        // the last capture starting on a sample wins
+        assertEquals(2e9, index.getFrequency(500));
+    }
+
+    @Test
+    void emptyIndex() {
+        CaptureIndex index = CaptureIndex.of(List.of());
+
+        assertEquals(-1, index.indexOf(10));
+        assertNull(index.getCapture(10));
+        assertEquals(0.0, index.getFrequency(10));
+    }
+
+    private static Capture capture(long sampleStart, double frequency) {
+        return new Capture(sampleStart, frequency, null, 0L, Map.of());
+    }
+}
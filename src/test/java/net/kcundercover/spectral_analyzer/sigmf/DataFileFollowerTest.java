@@ -0,0 +1,68 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DataFileFollowerTest {
+
+    private static final Duration POLL = Duration.ofMillis(20);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void reportsEachGrowthUntilClosed() throws Exception {
+        Path path = dir.resolve("rec.sigmf-data");
+        Files.write(path, new byte[100]);
+        BlockingQueue<Long> sizes = new LinkedBlockingQueue<>();
+        try (DataFileFollower follower = new DataFileFollower(path, POLL, sizes::add)) {
+            assertEquals(path.toAbsolutePath(), follower.getDataPath());
+            assertNull(sizes.poll(100, TimeUnit.MILLISECONDS)); // no growth yet
+
+            append(path, 60);
+            assertEquals(Long.valueOf(160), sizes.poll(5, TimeUnit.SECONDS));
+            append(path, 40);
+            assertEquals(Long.valueOf(200), sizes.poll(5, TimeUnit.SECONDS));
+            assertNull(sizes.poll(100, TimeUnit.MILLISECONDS)); // once per change
+
+            follower.close();
+            append(path, 50);
+            assertNull(sizes.poll(200, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    void extendsTheBufferWithTheNewSamples() throws Exception {
+        Path path = dir.resolve("rec.sigmf-data");
+        Files.write(path, new byte[] {1, 2, 3, 4});
+        BlockingQueue<Long> sizes = new LinkedBlockingQueue<>();
+        try (DataFileFollower follower = new DataFileFollower(path, POLL, sizes::add);
+                FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            SampleBuffer buffer = SampleBuffer.map(channel, 0, 4, ByteOrder.LITTLE_ENDIAN);
+            Files.write(path, new byte[] {5, 6}, StandardOpenOption.APPEND);
+
+            long size = sizes.poll(5, TimeUnit.SECONDS);
+            SampleBuffer extended = buffer.extend(channel, size);
+            assertEquals(6, extended.size());
+            assertEquals(6, extended.get(5));
+            assertEquals(1, extended.get(0));
+        }
+    }
+
+    private static void append(Path path, int count) throws IOException {
+        Files.write(path, new byte[count], StandardOpenOption.APPEND);
+    }
+}
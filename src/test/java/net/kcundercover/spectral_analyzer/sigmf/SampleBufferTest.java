@@ -0,0 +1,140 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SampleBufferTest {
+
+    /** Small chunks so the values straddle many boundaries */
+    private static final long CHUNK = 128;
+
+    /** Bytes before the samples (e.g. a header) */
+    private static final int HEADER = 16;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsValuesAcrossChunks() throws IOException {
+        byte[] data = randomBytes(1000);
+        Path path = write(data);
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            ByteBuffer expected = ByteBuffer.wrap(data, HEADER, data.length - HEADER).slice().order(order);
+            SampleBuffer buffer;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                buffer = SampleBuffer.map(channel, HEADER, data.length - HEADER, order, CHUNK);
+            }
+            assertEquals(data.length - HEADER, buffer.size());
+
+            // every offset, including the ones reading through the overlap of a chunk
+            for (int offset = 0; offset + 8 <= buffer.size(); offset++) {
+                String at = order + " offset " + offset;
+                assertEquals(expected.get(offset), buffer.get(offset), at);
+                assertEquals(expected.getShort(offset), buffer.getShort(offset), at);
+                assertEquals(expected.getInt(offset), buffer.getInt(offset), at);
+                assertEquals(Float.floatToRawIntBits(expected.getFloat(offset)),
+                    Float.floatToRawIntBits(buffer.getFloat(offset)), at);
+                assertEquals(Double.doubleToRawLongBits(expected.getDouble(offset)),
+                    Double.doubleToRawLongBits(buffer.getDouble(offset)), at);
+            }
+            assertEquals(expected.get(data.length - HEADER - 1), buffer.get(buffer.size() - 1));
+        }
+    }
+
+    @Test
+    void viewsInsideAndAcrossChunks() throws IOException {
+        byte[] data = randomBytes(1000);
+        SampleBuffer buffer;
+        try (FileChannel channel = FileChannel.open(write(data), StandardOpenOption.READ)) {
+            buffer = SampleBuffer.map(channel, HEADER, data.length - HEADER, ByteOrder.LITTLE_ENDIAN, CHUNK);
+        }
+
+        // inside a chunk (and its overlap), a view of the mapping
+        ByteBuffer inside = buffer.view(100, 80);
+        assertTrue(inside.isDirect());
+        assertArrayEquals(range(data, 100, 80), toArray(inside));
+        assertEquals(ByteOrder.LITTLE_ENDIAN, inside.order());
+
+        // across several chunks, a copy
+        ByteBuffer across = buffer.view(120, 500);
+        assertFalse(across.isDirect());
+        assertEquals(0, across.position());
+        assertArrayEquals(range(data, 120, 500), toArray(across));
+        assertEquals(ByteOrder.LITTLE_ENDIAN, across.order());
+
+        // up to the last byte
+        int tail = (int) buffer.size() - 300;
+        assertArrayEquals(range(data, tail, 300), toArray(buffer.view(tail, 300)));
+
+        byte[] copy = new byte[260];
+        buffer.get(250, copy, 5, 255);
+        assertArrayEquals(range(data, 250, 255), Arrays.copyOfRange(copy, 5, 260));
+        buffer.load(0, buffer.size());
+    }
+
+    @Test
+    void extendsAFileBeingWritten() throws IOException {
+        byte[] data = randomBytes(1000);
+        Path path = write(Arrays.copyOf(data, 300));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            SampleBuffer buffer = SampleBuffer.map(channel, HEADER, 300 - HEADER, ByteOrder.BIG_ENDIAN, CHUNK);
+            assertSame(buffer, buffer.extend(channel, 300 - HEADER));
+
+            Files.write(path, Arrays.copyOfRange(data, 300, data.length), StandardOpenOption.APPEND);
+            SampleBuffer extended = buffer.extend(channel, data.length - HEADER);
+
+            assertEquals(300 - HEADER, buffer.size()); // left unchanged
+            assertEquals(data.length - HEADER, extended.size());
+            assertTrue(extended.hasSameSource(buffer));
+            assertTrue(buffer.hasSameSource(extended));
+            assertFalse(extended.hasSameSource(
+                SampleBuffer.map(channel, HEADER, data.length - HEADER, ByteOrder.BIG_ENDIAN, CHUNK)));
+
+            // the reused complete chunk, the remapped partial one and the new ones
+            assertArrayEquals(range(data, 0, (int) extended.size()), toArray(extended.view(0, (int) extended.size())));
+            ByteBuffer expected = ByteBuffer.wrap(data, HEADER, data.length - HEADER).slice();
+            for (int offset = 0; offset + 8 <= extended.size(); offset++) {
+                assertEquals(expected.getLong(offset) >>> 32, extended.getInt(offset) & 0xFFFFFFFFL,
+                    "offset " + offset);
+            }
+        }
+    }
+
+    private Path write(byte[] data) throws IOException {
+        Path path = dir.resolve("rec.sigmf-data");
+        Files.write(path, data);
+        return path;
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        new Random(5).nextBytes(data);
+        return data;
+    }
+
+    /** Bytes of the samples (after the header) */
+    private static byte[] range(byte[] data, int offset, int length) {
+        return Arrays.copyOfRange(data, HEADER + offset, HEADER + offset + length);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,149 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.jupiter.api.Test;
+
+class SampleDecoderTest {
+
+    @Test
+    void decodesBothEndiannesses() {
+        for (ByteOrder order : new ByteOrder[] {ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            String suffix = order == ByteOrder.LITTLE_ENDIAN ? "_le" : "_be";
+
+            ByteBuffer bytes = ByteBuffer.allocate(32).order(order);
+            bytes.putDouble(0.25).putDouble(-0.5).putDouble(1.0).putDouble(0.125).flip();
+            assertDecoded("cf64" + suffix, bytes, new double[] {0.25, 1.0}, new double[] {-0.5, 0.125});
+
+            bytes = ByteBuffer.allocate(16).order(order);
+            bytes.putInt(1 << 30).putInt(-(1 << 30)).putInt(Integer.MIN_VALUE).putInt(0).flip();
+            assertDecoded("ci32" + suffix, bytes, new double[] {0.5, -1.0}, new double[] {-0.5, 0.0});
+
+            bytes = ByteBuffer.allocate(8).order(order);
+            bytes.putShort((short) 0xFFFF).putShort((short) 0).putShort((short) 0x8000).putShort((short) 0x7FFF).flip();
+            assertDecoded("cu16" + suffix, bytes,
+                new double[] {32767.5 / 32768, 0.5 / 32768}, new double[] {-32767.5 / 32768, -0.5 / 32768});
+
+            bytes = ByteBuffer.allocate(8).order(order);
+            bytes.putFloat(0.75f).putFloat(-0.25f).flip();
+            assertDecoded("rf32" + suffix, bytes, new double[] {0.75, -0.25}, new double[] {0, 0});
+
+            bytes = ByteBuffer.allocate(4).order(order);
+            bytes.putShort((short) 16384).putShort((short) -32768).flip();
+            assertDecoded("ri16" + suffix, bytes, new double[] {0.5, -1.0}, new double[] {0, 0});
+        }
+    }
+
+    @Test
+    void unsuffixedTypesAreBigEndian() {
+        assertEquals(ByteOrder.BIG_ENDIAN, SampleDecoder.forDatatype("ci16").getOrder());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, SampleDecoder.forDatatype("ci16_le").getOrder());
+
+        ByteBuffer bytes = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN);
+        bytes.putFloat(0.75f).putFloat(-0.25f).flip();
+        assertDecoded("cf32", bytes, new double[] {0.75}, new double[] {-0.25});
+
+        bytes = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN);
+        bytes.putShort((short) 16384).putShort((short) -32768).flip();
+        assertDecoded("ci16", bytes, new double[] {0.5}, new double[] {-1.0});
+    }
+
+    @Test
+    void decodesEightBitTypes() {
+        ByteBuffer bytes = ByteBuffer.wrap(new byte[] {64, -128, 0, 127});
+        assertDecoded("ci8", bytes, new double[] {0.5, 0.0}, new double[] {-1.0, 127.0 / 128});
+
+        bytes = ByteBuffer.wrap(new byte[] {(byte) 255, 0});
+        assertDecoded("cu8", bytes, new double[] {127.5 / 128}, new double[] {-127.5 / 128});
+    }
+
+    @Test
+    void sampleSizes() {
+        assertEquals(16, SampleDecoder.forDatatype("cf64_le").getBytesPerSample());
+        assertEquals(8, SampleDecoder.forDatatype("ci32_be").getBytesPerSample());
+        assertEquals(4, SampleDecoder.forDatatype("cu16_le").getBytesPerSample());
+        assertEquals(4, SampleDecoder.forDatatype("rf32_le").getBytesPerSample());
+        assertEquals(2, SampleDecoder.forDatatype("ri16_be").getBytesPerSample());
+        assertEquals(2, SampleDecoder.forDatatype("cu8").getBytesPerSample());
+        assertFalse(SampleDecoder.forDatatype("rf32_le").isComplex());
+    }
+
+    @Test
+    void decodesInterleavedChannels() {
+        int channels = 3;
+        int count = 100;
+        for (String datatype : new String[] {"ci8", "ci16_le", "cu16_be", "cf32_le", "cf64_be", "rf32_le", "ri16_le"}) {
+            SampleDecoder base = SampleDecoder.forDatatype(datatype);
+            int size = base.getBytesPerSample();
+            byte[] frames = new byte[count * channels * size];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = (byte) ((i * 37 + 11) & 0xBF); // no NaN or infinite floats
+            }
+            SampleBuffer interleaved = SampleBuffer.wrap(ByteBuffer.wrap(frames).order(base.getOrder()));
+
+            for (int channel = 0; channel < channels; channel++) {
+                SampleDecoder decoder = base.forChannel(channel, channels);
+                assertEquals(channels * size, decoder.getBytesPerSample());
+                assertEquals(channel, decoder.getChannel());
+
+                // the same samples copied out of the frames
+                byte[] single = new byte[count * size];
+                for (int k = 0; k < count; k++) {
+                    System.arraycopy(frames, (k * channels + channel) * size, single, k * size, size);
+                }
+                SampleBuffer expected = SampleBuffer.wrap(ByteBuffer.wrap(single).order(base.getOrder()));
+
+                float[] re = new float[count];
+                float[] im = new float[count];
+                float[] expectedRe = new float[count];
+                float[] expectedIm = new float[count];
+                decoder.decode(interleaved, 0, count, re, im);
+                base.decode(expected, 0, count, expectedRe, expectedIm);
+                assertArrayEquals(expectedRe, re, datatype);
+                assertArrayEquals(expectedIm, im, datatype);
+
+                double[] doubleRe = new double[count - 5];
+                double[] doubleIm = new double[count - 5];
+                double[] expectedDoubleRe = new double[count - 5];
+                double[] expectedDoubleIm = new double[count - 5];
+                decoder.decode(interleaved, 5, count - 5, doubleRe, doubleIm);
+                base.decode(expected, 5, count - 5, expectedDoubleRe, expectedDoubleIm);
+                assertArrayEquals(expectedDoubleRe, doubleRe, datatype);
+                assertArrayEquals(expectedDoubleIm, doubleIm, datatype);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> SampleDecoder.forDatatype("ci16_le").forChannel(2, 2));
+    }
+
+    @Test
+    void rejectsUnknownTypes() {
+        assertFalse(SampleDecoder.isSupported("cf16_le"));
+        assertThrows(IllegalArgumentException.class, () -> SampleDecoder.forDatatype("cf16_le"));
+        assertThrows(IllegalArgumentException.class, () -> SampleDecoder.forDatatype("iq"));
+    }
+
+    private static void assertDecoded(String datatype, ByteBuffer bytes, double[] re, double[] im) {
+        SampleDecoder decoder = SampleDecoder.forDatatype(datatype);
+        SampleBuffer buffer = SampleBuffer.wrap(bytes);
+        int count = re.length;
+
+        float[] floatRe = new float[count];
+        float[] floatIm = new float[count];
+        decoder.decode(buffer, 0, count, floatRe, floatIm);
+        double[] doubleRe = new double[count];
+        double[] doubleIm = new double[count];
+        decoder.decode(buffer, 0, count, doubleRe, doubleIm);
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(re[i], floatRe[i], 1e-7, datatype + " float re[" + i + "]");
+            assertEquals(im[i], floatIm[i], 1e-7, datatype + " float im[" + i + "]");
+            assertEquals(re[i], doubleRe[i], 1e-12, datatype + " double re[" + i + "]");
+            assertEquals(im[i], doubleIm[i], 1e-12, datatype + " double im[" + i + "]");
+        }
+    }
+}
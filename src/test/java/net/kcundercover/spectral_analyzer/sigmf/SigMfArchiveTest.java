@@ -0,0 +1,86 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SigMfArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void indexesTheMembers() throws IOException {
+        byte[] meta = "{\"global\": {}}".getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteArrayOutputStream tar = new ByteArrayOutputStream();
+        writeEntry(tar, "rec/", '5', new byte[0]);
+        writeEntry(tar, "rec/rec.sigmf-meta", '0', meta);
+        writeEntry(tar, "rec/rec.sigmf-data", '0', data);
+        tar.write(new byte[1024]);
+        Path path = dir.resolve("rec.sigmf");
+        Files.write(path, tar.toByteArray());
+
+        SigMfArchive archive = SigMfArchive.open(path);
+
+        assertEquals(2, archive.getMembers().size());
+        SigMfArchive.Member metaMember = archive.getMetaMember();
+        assertArrayEquals(meta, archive.read(metaMember));
+        SigMfArchive.Member dataMember = archive.getDataMember(metaMember, null);
+        assertEquals("rec/rec.sigmf-data", dataMember.name());
+        assertEquals(data.length, dataMember.size());
+        // header blocks: directory, meta, meta data, data
+        assertEquals(4 * 512, dataMember.offset());
+        assertNull(archive.getDataMember(metaMember, "other.sigmf-data"));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path path = dir.resolve("bad.sigmf");
+        byte[] junk = new byte[1024];
+        junk[0] = 'x';
+        Files.write(path, junk);
+
+        assertThrows(IOException.class, () -> SigMfArchive.open(path));
+    }
+
+    private static void writeEntry(ByteArrayOutputStream tar, String name, char type, byte[] content)
+            throws IOException {
+        byte[] header = new byte[512];
+        put(header, 0, name);
+        put(header, 100, "0000644");
+        put(header, 124, String.format("%011o", content.length));
+        put(header, 136, "00000000000");
+        header[156] = (byte) type;
+        put(header, 257, "ustar");
+        put(header, 263, "00");
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        int sum = 0;
+        for (byte b : header) {
+            sum += b & 0xFF;
+        }
+        put(header, 148, String.format("%06o", sum));
+        tar.write(header);
+        tar.write(content);
+        tar.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static void put(byte[] header, int offset, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
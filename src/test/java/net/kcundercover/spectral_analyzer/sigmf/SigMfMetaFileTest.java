@@ -0,0 +1,60 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SigMfMetaFileTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesAndReadsBack() throws IOException {
+        List<SigMfAnnotation> annotations = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            annotations.add(new SigMfAnnotation(i * 100L, 50, 1e6 + i, 2e6 + i, "label" + (i % 3), "comment " + i));
+        }
+        SigMfMetadata metadata = new SigMfMetadata(
+            new Global("ci16_le", 2e6, "1.0.0", null, Map.of()),
+            List.of(new Capture(0L, 915e6, "2024-01-01T00:00:00Z", null, Map.of())),
+            annotations);
+        Path path = dir.resolve("rec.sigmf-meta");
+
+        SigMfMetaFile.write(path, metadata);
+        SigMfMetadata read = SigMfMetaFile.read(path);
+
+        assertEquals("ci16_le", read.global().datatype());
+        assertEquals(2e6, read.global().sampleRate());
+        assertEquals(915e6, read.captures().get(0).frequency());
+        assertEquals(annotations.size(), read.annotations().size());
+        SigMfAnnotation last = read.annotations().get(999);
+        assertEquals(99900L, last.getSampleStart());
+        assertEquals("label0", last.getLabel());
+        // only the meta file is left, the temporary file was renamed
+        try (var files = Files.list(dir)) {
+            assertEquals(List.of(path), files.toList());
+        }
+    }
+
+    @Test
+    void skipsUnknownFields() throws IOException {
+        String json = "{\"x:extra\": [1, {\"a\": [2]}], \"global\": {\"core:datatype\": \"cf32_le\"},"
+            + " \"annotations\": null}";
+        SigMfMetadata read = SigMfMetaFile.read(json.getBytes(StandardCharsets.UTF_8));
+
+        assertEquals("cf32_le", read.global().datatype());
+        assertEquals(0, read.captures().size());
+        assertEquals(0, read.annotations().size());
+        assertThrows(IOException.class, () -> SigMfMetaFile.read("[]".getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,150 @@
+package net.kcundercover.spectral_analyzer.sigmf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import net.kcundercover.spectral_analyzer.dsp.Aggregation;
+import net.kcundercover.spectral_analyzer.render.SpectrogramRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SpectrumSidecarTest {
+
+    private static final long SOURCE_SIZE = 123456;
+    private static final long SOURCE_MODIFIED = 1700000000000L;
+    private static final String WINDOW = "hann";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackTheWrittenColumns() throws IOException {
+        Path path = SpectrumSidecar.getPath(dir.resolve("rec.sigmf-meta"), 64);
+        assertEquals(dir.resolve("rec.sigmf-spectra-64"), path);
+
+        SpectrumSidecar.Writer writer = SpectrumSidecar.create(path, 64, 3, WINDOW);
+        for (int fft = 0; fft < 3; fft++) {
+            writer.putColumn(fft, power(64, fft));
+        }
+        writer.finish(SOURCE_SIZE, SOURCE_MODIFIED);
+
+        SpectrumSidecar sidecar = SpectrumSidecar.open(path, SOURCE_SIZE, SOURCE_MODIFIED);
+        assertNotNull(sidecar);
+        assertEquals(64, sidecar.getFftSize());
+        assertEquals(64, sidecar.getBinCount());
+        assertEquals(3, sidecar.getFftCount());
+        assertEquals(WINDOW, sidecar.getWindow());
+        assertEquals(SpectrumSidecar.getFileSize(64, 3), Files.size(path));
+
+        float[] column = new float[64];
+        for (int fft = 0; fft < 3; fft++) {
+            sidecar.readColumn(fft, column);
+            float[] expected = power(64, fft);
+            for (int b = 0; b < 64; b++) {
+                assertEquals(10 * Math.log10(expected[b]), column[b], SpectrumSidecar.DB_STEP, "bin " + b);
+            }
+        }
+
+        // max-hold of the three FFTs is the last one (the power grows with the FFT index)
+        float[] held = new float[64];
+        for (int fft = 0; fft < 3; fft++) {
+            sidecar.accumulateColumn(fft, Aggregation.MAX, held, fft == 0);
+        }
+        assertEquals(10 * Math.log10(power(64, 2)[5]), held[5], SpectrumSidecar.DB_STEP);
+    }
+
+    @Test
+    void keepsThePeakOfTheBinsOfLargeFfts() throws IOException {
+        Path path = dir.resolve("rec.sigmf-spectra-2048");
+        SpectrumSidecar.Writer writer = SpectrumSidecar.create(path, 2048, 1, WINDOW);
+        float[] power = new float[2048];
+        Arrays.fill(power, 1.0f);
+        power[4 * 100 + 3] = 1000.0f; // in sidecar bin 100
+        writer.putColumn(0, power);
+        writer.finish(SOURCE_SIZE, SOURCE_MODIFIED);
+
+        SpectrumSidecar sidecar = SpectrumSidecar.open(path, SOURCE_SIZE, SOURCE_MODIFIED);
+        assertEquals(SpectrumSidecar.MAX_BINS, sidecar.getBinCount());
+        float[] column = new float[sidecar.getBinCount()];
+        sidecar.readColumn(0, column);
+        assertEquals(30.0, column[100], SpectrumSidecar.DB_STEP);
+        assertEquals(0.0, column[99], SpectrumSidecar.DB_STEP);
+        assertEquals(0.0, column[101], SpectrumSidecar.DB_STEP);
+    }
+
+    @Test
+    void ignoresStaleSidecars() throws IOException {
+        Path path = dir.resolve("rec.sigmf-spectra-64");
+        SpectrumSidecar.Writer writer = SpectrumSidecar.create(path, 64, 2, WINDOW);
+        writer.putColumn(0, power(64, 0));
+        writer.putColumn(1, power(64, 1));
+        writer.finish(SOURCE_SIZE, SOURCE_MODIFIED);
+
+        assertTrue(SpectrumSidecar.isValid(path, SOURCE_SIZE, SOURCE_MODIFIED, WINDOW));
+        assertNull(SpectrumSidecar.open(path, SOURCE_SIZE + 8, SOURCE_MODIFIED)); // data file grew
+        assertNull(SpectrumSidecar.open(path, SOURCE_SIZE, SOURCE_MODIFIED + 1)); // data file rewritten
+        assertFalse(SpectrumSidecar.isValid(path, SOURCE_SIZE, SOURCE_MODIFIED, "rectangular"));
+        assertFalse(SpectrumSidecar.isValid(dir.resolve("missing"), SOURCE_SIZE, SOURCE_MODIFIED, WINDOW));
+
+        // truncated
+        Path truncated = dir.resolve("truncated");
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 2));
+        assertNull(SpectrumSidecar.open(truncated, SOURCE_SIZE, SOURCE_MODIFIED));
+    }
+
+    @Test
+    void ignoresIncompleteSidecars() throws IOException {
+        Path path = dir.resolve("rec.sigmf-spectra-64");
+        Path temp = dir.resolve("rec.sigmf-spectra-64.tmp");
+        SpectrumSidecar.Writer writer = SpectrumSidecar.create(path, 64, 2, WINDOW);
+        writer.putColumn(0, power(64, 0));
+        assertFalse(Files.exists(path)); // written aside until finished
+
+        // e.g. the application was killed while writing
+        Files.copy(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        assertNull(SpectrumSidecar.open(path, 0, 0));
+        assertNull(SpectrumSidecar.open(path, SOURCE_SIZE, SOURCE_MODIFIED));
+
+        writer.abort();
+        assertFalse(Files.exists(temp));
+    }
+
+    @Test
+    void isNotUsedForMoreRowsThanBins() throws IOException {
+        Path path = dir.resolve("rec.sigmf-spectra-2048");
+        SpectrumSidecar.Writer writer = SpectrumSidecar.create(path, 2048, 1, WINDOW);
+        writer.putColumn(0, new float[2048]);
+        writer.finish(SOURCE_SIZE, SOURCE_MODIFIED);
+        SpectrumSidecar sidecar = SpectrumSidecar.open(path, SOURCE_SIZE, SOURCE_MODIFIED);
+
+        assertTrue(request(2048, 400).withSidecar(sidecar).usesSidecar());
+        assertTrue(request(2048, 512).withSidecar(sidecar).usesSidecar());
+        // a taller canvas shows more of the 2048 FFT bins than the sidecar has
+        assertFalse(request(2048, 700).withSidecar(sidecar).usesSidecar());
+    }
+
+    private static SpectrogramRequest request(int fftSize, int height) {
+        SampleBuffer buffer = SampleBuffer.wrap(ByteBuffer.allocate(8 * fftSize));
+        return new SpectrogramRequest(buffer, "rec.sigmf-data", SampleDecoder.forDatatype("cf32_le"), 0,
+            100, height, fftSize, 1, SpectrogramRequest.MAX_HOLD, "Hann", 0, null, null, 1e6, -40, 20, "Grayscale");
+    }
+
+    /** Power that differs per bin and grows with the FFT index */
+    private static float[] power(int fftSize, int fft) {
+        float[] power = new float[fftSize];
+        for (int b = 0; b < fftSize; b++) {
+            power[b] = (float) Math.pow(10, (b - 20 + 5 * fft) / 10.0);
+        }
+        return power;
+    }
+}